@@ -0,0 +1,161 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.indices.recovery;
+
+import org.elasticsearch.action.admin.cluster.snapshots.create.CreateSnapshotResponse;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.repositories.blobstore.BlobStoreRepository;
+import org.elasticsearch.test.ESIntegTestCase;
+import org.elasticsearch.test.transport.MockTransportService;
+import org.elasticsearch.transport.ActionNotFoundTransportException;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.in;
+import static org.hamcrest.Matchers.not;
+
+@ESIntegTestCase.ClusterScope(scope = ESIntegTestCase.Scope.TEST, numDataNodes = 0)
+public class PeerRecoveryFromSnapshotIT extends ESIntegTestCase {
+
+    private static final String REPO_NAME = "repo";
+    private static final String INDEX_NAME = "test-index";
+
+    @Override
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return Collections.singletonList(MockTransportService.TestPlugin.class);
+    }
+
+    public void testRecoversFilesFromSnapshotRepository() throws Exception {
+        final long numDocs = createSnapshottedIndex(true);
+        final Set<String> restoredFiles = ConcurrentCollections.newConcurrentSet();
+        final Set<String> sentFiles = ConcurrentCollections.newConcurrentSet();
+        trackRecoveredFiles(restoredFiles, sentFiles, false);
+
+        addReplica();
+
+        assertThat(restoredFiles, not(empty()));
+        assertThat(sentFiles, everyItem(not(in(restoredFiles))));
+        assertSearchOnReplica(numDocs);
+    }
+
+    public void testSendsFilesThatTheTargetFailsToRestore() throws Exception {
+        final long numDocs = createSnapshottedIndex(true);
+        final Set<String> restoredFiles = ConcurrentCollections.newConcurrentSet();
+        final Set<String> sentFiles = ConcurrentCollections.newConcurrentSet();
+        // the target either fails to download the files or doesn't know the action, like older nodes
+        trackRecoveredFiles(restoredFiles, sentFiles, true);
+
+        addReplica();
+
+        assertThat(restoredFiles, not(empty()));
+        assertThat(restoredFiles, everyItem(in(sentFiles)));
+        assertSearchOnReplica(numDocs);
+    }
+
+    public void testDoesNotUseRepositoriesThatAreNotEnabledForPeerRecoveries() throws Exception {
+        final long numDocs = createSnapshottedIndex(false);
+        final Set<String> restoredFiles = ConcurrentCollections.newConcurrentSet();
+        final Set<String> sentFiles = ConcurrentCollections.newConcurrentSet();
+        trackRecoveredFiles(restoredFiles, sentFiles, false);
+
+        addReplica();
+
+        assertThat(restoredFiles, empty());
+        assertThat(sentFiles, not(empty()));
+        assertSearchOnReplica(numDocs);
+    }
+
+    /**
+     * Creates an index with a single primary, and snapshots it into a local {@code fs} repository once all its documents are flushed.
+     */
+    private long createSnapshottedIndex(boolean useForPeerRecovery) throws Exception {
+        internalCluster().startMasterOnlyNode();
+        internalCluster().startDataOnlyNodes(2);
+        createIndex(INDEX_NAME, Settings.builder()
+            .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 0)
+            .build());
+        ensureGreen(INDEX_NAME);
+        final int numDocs = between(1, 200);
+        final List<IndexRequestBuilder> indexRequests = IntStream.range(0, numDocs)
+            .mapToObj(n -> client().prepareIndex(INDEX_NAME, "_doc").setSource("field", randomAlphaOfLength(10)))
+            .collect(Collectors.toList());
+        indexRandom(true, indexRequests);
+        assertThat(client().admin().indices().prepareFlush(INDEX_NAME).setForce(true).get().getFailedShards(), equalTo(0));
+
+        assertAcked(client().admin().cluster().preparePutRepository(REPO_NAME)
+            .setType("fs").setSettings(Settings.builder()
+                .put("location", randomRepoPath())
+                .put("chunk_size", randomIntBetween(100, 1000), ByteSizeUnit.BYTES)
+                .put(BlobStoreRepository.USE_FOR_PEER_RECOVERY_SETTING.getKey(), useForPeerRecovery)));
+        final CreateSnapshotResponse createSnapshotResponse = client().admin().cluster().prepareCreateSnapshot(REPO_NAME, "snap")
+            .setWaitForCompletion(true).setIndices(INDEX_NAME).get();
+        assertThat(createSnapshotResponse.getSnapshotInfo().successfulShards(), equalTo(1));
+        return numDocs;
+    }
+
+    /**
+     * Records the files that the recovery targets download from the repository and the files that the recovery sources send, and
+     * optionally fails all the downloads on the target.
+     */
+    private void trackRecoveredFiles(Set<String> restoredFiles, Set<String> sentFiles, boolean failRestores) {
+        for (TransportService transportService : internalCluster().getInstances(TransportService.class)) {
+            final MockTransportService mockTransportService = (MockTransportService) transportService;
+            mockTransportService.addRequestHandlingBehavior(PeerRecoveryTargetService.Actions.RESTORE_FILE_FROM_SNAPSHOT,
+                (handler, request, channel, task) -> {
+                    restoredFiles.add(((RecoveryRestoreFileFromSnapshotRequest) request).snapshotFile().physicalName());
+                    if (failRestores == false) {
+                        handler.messageReceived(request, channel, task);
+                    } else if (randomBoolean()) {
+                        channel.sendResponse(new IOException("simulated failure to read from the repository"));
+                    } else {
+                        channel.sendResponse(new ActionNotFoundTransportException(
+                            PeerRecoveryTargetService.Actions.RESTORE_FILE_FROM_SNAPSHOT));
+                    }
+                });
+            mockTransportService.addRequestHandlingBehavior(PeerRecoveryTargetService.Actions.FILE_CHUNK,
+                (handler, request, channel, task) -> {
+                    sentFiles.add(((RecoveryFileChunkRequest) request).name());
+                    handler.messageReceived(request, channel, task);
+                });
+        }
+    }
+
+    private void addReplica() {
+        assertAcked(client().admin().indices().prepareUpdateSettings(INDEX_NAME)
+            .setSettings(Settings.builder().put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 1)));
+        ensureGreen(INDEX_NAME);
+    }
+
+    private void assertSearchOnReplica(long numDocs) {
+        final ClusterState state = client().admin().cluster().prepareState().get().getState();
+        final ShardRouting replica = state.routingTable().index(INDEX_NAME).shard(0).replicaShards().get(0);
+        final String replicaNode = state.nodes().get(replica.currentNodeId()).getName();
+        assertHitCount(client(replicaNode).prepareSearch(INDEX_NAME).setPreference("_only_local").setSize(0).get(), numDocs);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.search.fetch;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+
+public class ConcurrentFetchIT extends ESIntegTestCase {
+
+    public void testConcurrentFetchReturnsTheSameHits() throws Exception {
+        assertAcked(prepareCreate("test")
+            .setSettings(Settings.builder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+            .addMapping("_doc", "text", "type=text", "number", "type=long"));
+        int numDocs = randomIntBetween(FetchPhase.MIN_DOCS_PER_CHUNK * 2, 500);
+        List<IndexRequestBuilder> docs = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            docs.add(client().prepareIndex("test", "_doc", Integer.toString(i))
+                .setSource("text", "the quick brown fox " + randomAlphaOfLength(5) + " jumps over the lazy dog", "number", i));
+        }
+        indexRandom(true, docs);
+
+        SearchResponse sequential = search(numDocs);
+        try {
+            int maxConcurrency = randomIntBetween(2, 8);
+            assertAcked(client().admin().cluster().prepareUpdateSettings()
+                .setTransientSettings(Settings.builder().put(SearchService.FETCH_MAX_CONCURRENCY_SETTING.getKey(), maxConcurrency)));
+            SearchResponse concurrent = search(numDocs);
+            assertEquals(sequential.getHits().getHits().length, concurrent.getHits().getHits().length);
+            for (int i = 0; i < numDocs; i++) {
+                SearchHit expected = sequential.getHits().getAt(i);
+                SearchHit actual = concurrent.getHits().getAt(i);
+                assertEquals(expected.getId(), actual.getId());
+                assertEquals(expected.getSourceAsMap(), actual.getSourceAsMap());
+                assertEquals(expected.getFields(), actual.getFields());
+                assertEquals(expected.getHighlightFields(), actual.getHighlightFields());
+            }
+        } finally {
+            assertAcked(client().admin().cluster().prepareUpdateSettings()
+                .setTransientSettings(Settings.builder().putNull(SearchService.FETCH_MAX_CONCURRENCY_SETTING.getKey())));
+        }
+    }
+
+    private SearchResponse search(int numDocs) {
+        SearchResponse response = client().prepareSearch("test")
+            .setQuery(matchQuery("text", "fox"))
+            .addSort("number", SortOrder.ASC)
+            .setSize(numDocs)
+            .addDocValueField("number")
+            .highlighter(new HighlightBuilder().field("text"))
+            .get();
+        assertNoFailures(response);
+        return response;
+    }
+}
@@ -143,7 +143,8 @@ public class Version implements Comparable<Version>, ToXContentFragment {
     public static final Version V_7_11_0 = new Version(7110099, org.apache.lucene.util.Version.LUCENE_8_7_0);
     public static final Version V_7_11_1 = new Version(7110199, org.apache.lucene.util.Version.LUCENE_8_7_0);
     public static final Version V_7_11_2 = new Version(7110299, org.apache.lucene.util.Version.LUCENE_8_7_0);
-    public static final Version CURRENT = V_7_11_2;
+    public static final Version V_7_11_3 = new Version(7110399, org.apache.lucene.util.Version.LUCENE_8_7_0);
+    public static final Version CURRENT = V_7_11_3;
 
     private static final ImmutableOpenIntMap<Version> idToVersion;
     private static final ImmutableOpenMap<String, Version> stringToVersion;
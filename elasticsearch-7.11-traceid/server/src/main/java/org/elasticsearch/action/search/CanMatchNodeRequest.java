@@ -0,0 +1,103 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.action.IndicesRequest;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskId;
+import org.elasticsearch.transport.TransportRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A request to run the can_match phase on all the shards of a search that are allocated on the same node. The shard
+ * requests of a search all share the same {@link SearchSourceBuilder}, which is sent only once for the whole node.
+ */
+public final class CanMatchNodeRequest extends TransportRequest implements IndicesRequest {
+
+    private final SearchSourceBuilder source;
+    private final List<ShardSearchRequest> shardRequests;
+
+    public CanMatchNodeRequest(SearchSourceBuilder source, List<ShardSearchRequest> shardRequests) {
+        assert shardRequests.isEmpty() == false : "can_match node request without shards";
+        assert shardRequests.stream().allMatch(r -> r.source() == source) : "shard requests must share the same source";
+        this.source = source;
+        this.shardRequests = shardRequests;
+    }
+
+    public CanMatchNodeRequest(StreamInput in) throws IOException {
+        super(in);
+        source = in.readOptionalWriteable(SearchSourceBuilder::new);
+        final int size = in.readVInt();
+        shardRequests = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ShardSearchRequest shardRequest = new ShardSearchRequest(in);
+            shardRequest.source(source);
+            shardRequests.add(shardRequest);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeOptionalWriteable(source);
+        out.writeVInt(shardRequests.size());
+        for (ShardSearchRequest shardRequest : shardRequests) {
+            // the source is written once for all shards
+            ShardSearchRequest withoutSource = new ShardSearchRequest(shardRequest);
+            withoutSource.source(null);
+            withoutSource.writeTo(out);
+        }
+    }
+
+    /**
+     * Returns the requests of the individual shards, in the order of the results of the {@link CanMatchNodeResponse}.
+     */
+    public List<ShardSearchRequest> getShardRequests() {
+        return shardRequests;
+    }
+
+    @Override
+    public String[] indices() {
+        final Set<String> indices = new LinkedHashSet<>();
+        for (ShardSearchRequest shardRequest : shardRequests) {
+            if (shardRequest.indices() != null) {
+                indices.addAll(Arrays.asList(shardRequest.indices()));
+            }
+        }
+        return indices.toArray(new String[0]);
+    }
+
+    @Override
+    public IndicesOptions indicesOptions() {
+        return shardRequests.get(0).indicesOptions();
+    }
+
+    @Override
+    public String getDescription() {
+        return "shards=" + shardRequests.size();
+    }
+
+    @Override
+    public Task createTask(long id, String type, String action, TaskId parentTaskId, Map<String, String> headers) {
+        return new SearchShardTask(id, type, action, getDescription(), parentTaskId, headers);
+    }
+}
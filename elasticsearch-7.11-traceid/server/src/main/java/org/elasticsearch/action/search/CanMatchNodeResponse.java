@@ -0,0 +1,102 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.search.SearchService.CanMatchResponse;
+import org.elasticsearch.transport.TransportResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The response to a {@link CanMatchNodeRequest}, which holds either the {@link CanMatchResponse} or the failure of each
+ * shard, in the order of {@link CanMatchNodeRequest#getShardRequests()}.
+ */
+public final class CanMatchNodeResponse extends TransportResponse {
+
+    private final List<ResponseOrFailure> responses;
+
+    public CanMatchNodeResponse(List<ResponseOrFailure> responses) {
+        this.responses = responses;
+    }
+
+    public CanMatchNodeResponse(StreamInput in) throws IOException {
+        super(in);
+        final int size = in.readVInt();
+        responses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            responses.add(new ResponseOrFailure(in));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(responses.size());
+        for (ResponseOrFailure response : responses) {
+            response.writeTo(out);
+        }
+    }
+
+    public List<ResponseOrFailure> getResponses() {
+        return responses;
+    }
+
+    public static final class ResponseOrFailure {
+        private final CanMatchResponse response;
+        private final Exception exception;
+
+        public ResponseOrFailure(CanMatchResponse response) {
+            this.response = response;
+            this.exception = null;
+        }
+
+        public ResponseOrFailure(Exception exception) {
+            this.response = null;
+            this.exception = exception;
+        }
+
+        ResponseOrFailure(StreamInput in) throws IOException {
+            if (in.readBoolean()) {
+                response = new CanMatchResponse(in);
+                exception = null;
+            } else {
+                response = null;
+                exception = in.readException();
+            }
+        }
+
+        void writeTo(StreamOutput out) throws IOException {
+            if (response != null) {
+                out.writeBoolean(true);
+                response.writeTo(out);
+            } else {
+                out.writeBoolean(false);
+                out.writeException(exception);
+            }
+        }
+
+        /**
+         * The response of the shard, or {@code null} if it failed.
+         */
+        public CanMatchResponse getResponse() {
+            return response;
+        }
+
+        /**
+         * The failure of the shard, or {@code null} if it succeeded.
+         */
+        public Exception getException() {
+            return exception;
+        }
+    }
+}
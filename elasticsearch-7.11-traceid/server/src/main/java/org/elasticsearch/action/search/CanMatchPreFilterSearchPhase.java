@@ -9,6 +9,7 @@ package org.elasticsearch.action.search;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
@@ -24,9 +25,12 @@ import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.MinAndMax;
 import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.transport.ActionNotFoundTransportException;
 import org.elasticsearch.transport.Transport;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
@@ -52,6 +56,11 @@ final class CanMatchPreFilterSearchPhase extends AbstractSearchAsyncAction<CanMa
     private final Function<GroupShardsIterator<SearchShardIterator>, SearchPhase> phaseFactory;
     private final GroupShardsIterator<SearchShardIterator> shardsIts;
     private final CoordinatorRewriteContextProvider coordinatorRewriteContextProvider;
+    private final boolean batchByNode;
+
+    // the thread running the initial fan out, and the requests it has grouped by node so far
+    private volatile Thread fanOutThread;
+    private Map<String, List<PendingShardRequest>> pendingNodeRequests;
 
     CanMatchPreFilterSearchPhase(Logger logger, SearchTransportService searchTransportService,
                                  BiFunction<String, String, Transport.Connection> nodeIdToConnection,
@@ -61,6 +70,19 @@ final class CanMatchPreFilterSearchPhase extends AbstractSearchAsyncAction<CanMa
                                  TransportSearchAction.SearchTimeProvider timeProvider, ClusterState clusterState,
                                  SearchTask task, Function<GroupShardsIterator<SearchShardIterator>, SearchPhase> phaseFactory,
                                  SearchResponse.Clusters clusters, CoordinatorRewriteContextProvider coordinatorRewriteContextProvider) {
+        this(logger, searchTransportService, nodeIdToConnection, aliasFilter, concreteIndexBoosts, executor, request, listener,
+            shardsIts, timeProvider, clusterState, task, phaseFactory, clusters, coordinatorRewriteContextProvider, false);
+    }
+
+    CanMatchPreFilterSearchPhase(Logger logger, SearchTransportService searchTransportService,
+                                 BiFunction<String, String, Transport.Connection> nodeIdToConnection,
+                                 Map<String, AliasFilter> aliasFilter, Map<String, Float> concreteIndexBoosts,
+                                 Executor executor, SearchRequest request,
+                                 ActionListener<SearchResponse> listener, GroupShardsIterator<SearchShardIterator> shardsIts,
+                                 TransportSearchAction.SearchTimeProvider timeProvider, ClusterState clusterState,
+                                 SearchTask task, Function<GroupShardsIterator<SearchShardIterator>, SearchPhase> phaseFactory,
+                                 SearchResponse.Clusters clusters, CoordinatorRewriteContextProvider coordinatorRewriteContextProvider,
+                                 boolean batchByNode) {
         //We set max concurrent shard requests to the number of shards so no throttling happens for can_match requests
         super("can_match", logger, searchTransportService, nodeIdToConnection, aliasFilter, concreteIndexBoosts,
                 executor, request, listener, shardsIts, timeProvider, clusterState, task,
@@ -68,6 +90,28 @@ final class CanMatchPreFilterSearchPhase extends AbstractSearchAsyncAction<CanMa
         this.phaseFactory = phaseFactory;
         this.shardsIts = shardsIts;
         this.coordinatorRewriteContextProvider = coordinatorRewriteContextProvider;
+        this.batchByNode = batchByNode;
+    }
+
+    @Override
+    public void run() {
+        if (batchByNode == false) {
+            super.run();
+            return;
+        }
+        // The initial requests to the shards of the local cluster are grouped by node and sent once they are all known. Retries
+        // on other shard copies happen on other threads and are sent one by one.
+        pendingNodeRequests = new LinkedHashMap<>();
+        fanOutThread = Thread.currentThread();
+        try {
+            super.run();
+        } finally {
+            fanOutThread = null;
+        }
+        for (List<PendingShardRequest> nodeRequests : pendingNodeRequests.values()) {
+            sendNodeRequest(nodeRequests);
+        }
+        pendingNodeRequests = null;
     }
 
     @Override
@@ -78,10 +122,66 @@ final class CanMatchPreFilterSearchPhase extends AbstractSearchAsyncAction<CanMa
     @Override
     protected void executePhaseOnShard(SearchShardIterator shardIt, SearchShardTarget shard,
                                        SearchActionListener<CanMatchResponse> listener) {
+        if (fanOutThread == Thread.currentThread() && shard.getClusterAlias() == null) {
+            pendingNodeRequests.computeIfAbsent(shard.getNodeId(), nodeId -> new ArrayList<>())
+                .add(new PendingShardRequest(shard.getNodeId(), buildShardSearchRequest(shardIt, listener.requestIndex), listener));
+            return;
+        }
         getSearchTransport().sendCanMatch(getConnection(shard.getClusterAlias(), shard.getNodeId()),
             buildShardSearchRequest(shardIt, listener.requestIndex), getTask(), listener);
     }
 
+    private void sendNodeRequest(List<PendingShardRequest> requests) {
+        final Transport.Connection connection;
+        try {
+            connection = getConnection(null, requests.get(0).nodeId);
+        } catch (Exception e) {
+            // the node is not connected, so we move on to the next copy of each shard
+            for (PendingShardRequest request : requests) {
+                fork(() -> request.listener.onFailure(e));
+            }
+            return;
+        }
+        if (requests.size() == 1) {
+            sendShardRequest(connection, requests.get(0));
+            return;
+        }
+        final List<ShardSearchRequest> shardRequests = requests.stream().map(r -> r.request).collect(Collectors.toList());
+        getSearchTransport().sendCanMatch(connection, new CanMatchNodeRequest(getRequest().source(), shardRequests), getTask(),
+            new ActionListener<CanMatchNodeResponse>() {
+                @Override
+                public void onResponse(CanMatchNodeResponse response) {
+                    assert response.getResponses().size() == requests.size();
+                    for (int i = 0; i < requests.size(); i++) {
+                        final CanMatchNodeResponse.ResponseOrFailure shardResponse = response.getResponses().get(i);
+                        if (shardResponse.getResponse() != null) {
+                            requests.get(i).listener.onResponse(shardResponse.getResponse());
+                        } else {
+                            requests.get(i).listener.onFailure(shardResponse.getException());
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    if (ExceptionsHelper.unwrapCause(e) instanceof ActionNotFoundTransportException) {
+                        // the node does not know about node requests yet
+                        for (PendingShardRequest request : requests) {
+                            sendShardRequest(connection, request);
+                        }
+                    } else {
+                        for (PendingShardRequest request : requests) {
+                            request.listener.onFailure(e);
+                        }
+                    }
+                }
+            });
+    }
+
+    private void sendShardRequest(Transport.Connection connection, PendingShardRequest request) {
+        getSearchTransport().sendCanMatch(connection, request.request, getTask(), request.listener);
+    }
+
     @Override
     protected SearchPhase getNextPhase(SearchPhaseResults<CanMatchResponse> results, SearchPhaseContext context) {
 
@@ -189,6 +289,18 @@ final class CanMatchPreFilterSearchPhase extends AbstractSearchAsyncAction<CanMa
         return comparator.thenComparing(index -> shardsIts.get(index));
     }
 
+    private static final class PendingShardRequest {
+        final String nodeId;
+        final ShardSearchRequest request;
+        final SearchActionListener<CanMatchResponse> listener;
+
+        PendingShardRequest(String nodeId, ShardSearchRequest request, SearchActionListener<CanMatchResponse> listener) {
+            this.nodeId = nodeId;
+            this.request = request;
+            this.listener = listener;
+        }
+    }
+
     private static final class CanMatchSearchPhaseResults extends SearchPhaseResults<CanMatchResponse> {
         private final FixedBitSet possibleMatches;
         private final MinAndMax<?>[] minAndMaxes;
@@ -30,6 +30,7 @@ import org.elasticsearch.search.query.QuerySearchResult;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -182,7 +183,7 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
                 aggsList.add(lastMerge.reducedAggs);
             }
             for (QuerySearchResult result : toConsume) {
-                aggsList.add(result.consumeAggs().expand());
+                aggsList.add(expandAggs(result));
             }
             newAggs = InternalAggregations.topLevelReduce(aggsList, aggReduceContextBuilder.forPartialReduction());
         } else {
@@ -203,6 +204,18 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
         return new MergeResult(processedShards, newTopDocs, newAggs, hasAggs ? serializedSize : 0);
     }
 
+    private static InternalAggregations expandAggs(QuerySearchResult result) {
+        try (DelayableWriteable<InternalAggregations> aggs = result.consumeAggs()) {
+            return aggs.expand();
+        }
+    }
+
+    private static void releaseAggs(Collection<QuerySearchResult> results) {
+        for (QuerySearchResult result : results) {
+            result.releaseAggs();
+        }
+    }
+
     public int getNumReducePhases() {
         return pendingMerges.numReducePhases;
     }
@@ -234,6 +247,8 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
         @Override
         public synchronized void close() {
             assert hasPendingMerges() == false : "cannot close with partial reduce in-flight";
+            // results that were not reduced may still hold on to the buffers of their transport messages
+            releaseAggs(buffer);
             if (hasFailure()) {
                 assert circuitBreakerBytes == 0;
                 return;
@@ -276,11 +291,12 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
         }
 
         /**
-         * Returns the size of the serialized aggregation that is contained in the
-         * provided {@link QuerySearchResult}.
+         * Returns the memory that the serialized aggregation that is contained in the
+         * provided {@link QuerySearchResult} keeps until it is reduced. That is the whole
+         * inbound message if the aggregation is a slice of it.
          */
         long ramBytesUsedQueryResult(QuerySearchResult result) {
-            return hasAggs ? result.aggregations().getSerializedSize() : 0;
+            return hasAggs ? result.aggregations().getRetainedSizeInBytes() : 0;
         }
 
         /**
@@ -343,6 +359,7 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
                 circuitBreakerBytes = 0;
             }
             failure.compareAndSet(null, exc);
+            releaseAggs(buffer);
             MergeTask task = runningTask.get();
             runningTask.compareAndSet(task, null);
             onPartialMergeFailure.accept(exc);
@@ -395,17 +412,18 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
                     final MergeResult thisMergeResult = mergeResult;
                     long estimatedTotalSize = (thisMergeResult != null ? thisMergeResult.estimatedSize : 0) + task.aggsBufferSize;
                     final MergeResult newMerge;
+                    final QuerySearchResult[] toConsume = task.consumeBuffer();
+                    if (toConsume == null) {
+                        return;
+                    }
                     try {
-                        final QuerySearchResult[] toConsume = task.consumeBuffer();
-                        if (toConsume == null) {
-                            return;
-                        }
                         long estimatedMergeSize = estimateRamBytesUsedForReduce(estimatedTotalSize);
                         addEstimateAndMaybeBreak(estimatedMergeSize);
                         estimatedTotalSize += estimatedMergeSize;
                         ++ numReducePhases;
                         newMerge = partialReduce(toConsume, task.emptyResults, topDocsStats, thisMergeResult, numReducePhases);
                     } catch (Exception t) {
+                        releaseAggs(Arrays.asList(toConsume));
                         onMergeFailure(t);
                         return;
                     }
@@ -452,7 +470,7 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
                 aggsList.add(mergeResult.reducedAggs);
             }
             for (QuerySearchResult result : buffer) {
-                aggsList.add(result.consumeAggs().expand());
+                aggsList.add(expandAggs(result));
             }
             return aggsList;
         }
@@ -500,7 +518,10 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
         }
 
         public synchronized void cancel() {
-            consumeBuffer();
+            QuerySearchResult[] buffer = consumeBuffer();
+            if (buffer != null) {
+                releaseAggs(Arrays.asList(buffer));
+            }
             consumeListener();
         }
     }
@@ -34,6 +34,7 @@ import org.elasticsearch.discovery.zen.PublishClusterStateAction;
 import org.elasticsearch.discovery.zen.PublishClusterStateStats;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.BytesTransportRequest;
+import org.elasticsearch.transport.Compression;
 import org.elasticsearch.transport.TransportChannel;
 import org.elasticsearch.transport.TransportException;
 import org.elasticsearch.transport.TransportRequest;
@@ -43,6 +44,7 @@ import org.elasticsearch.transport.TransportResponseHandler;
 import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -61,6 +63,7 @@ public class PublicationTransportHandler {
 
     private final TransportService transportService;
     private final NamedWriteableRegistry namedWriteableRegistry;
+    private final Compression.Scheme compressionScheme;
     private final Function<PublishRequest, PublishWithJoinResponse> handlePublishRequest;
 
     private final AtomicReference<ClusterState> lastSeenClusterState = new AtomicReference<>();
@@ -80,10 +83,24 @@ public class PublicationTransportHandler {
     private static final TransportRequestOptions STATE_REQUEST_OPTIONS =
             TransportRequestOptions.of(null, TransportRequestOptions.Type.STATE);
 
+    /**
+     * The first version that can read cluster states compressed with {@link Compression.Scheme#LZ4}, which is the same version
+     * that can read transport messages compressed with it.
+     */
+    static final Version LZ4_PUBLICATION_VERSION = Compression.Scheme.LZ4_VERSION;
+
+    public PublicationTransportHandler(TransportService transportService, NamedWriteableRegistry namedWriteableRegistry,
+                                       Function<PublishRequest, PublishWithJoinResponse> handlePublishRequest,
+                                       BiConsumer<ApplyCommitRequest, ActionListener<Void>> handleApplyCommit) {
+        this(transportService, namedWriteableRegistry, Compression.Scheme.DEFLATE, handlePublishRequest, handleApplyCommit);
+    }
+
     public PublicationTransportHandler(TransportService transportService, NamedWriteableRegistry namedWriteableRegistry,
+                                       Compression.Scheme compressionScheme,
                                        Function<PublishRequest, PublishWithJoinResponse> handlePublishRequest,
                                        BiConsumer<ApplyCommitRequest, ActionListener<Void>> handleApplyCommit) {
         this.transportService = transportService;
+        this.compressionScheme = compressionScheme;
         this.namedWriteableRegistry = namedWriteableRegistry;
         this.handlePublishRequest = handlePublishRequest;
 
@@ -147,12 +164,8 @@ public class PublicationTransportHandler {
     }
 
     private PublishWithJoinResponse handleIncomingPublishRequest(BytesTransportRequest request) throws IOException {
-        final Compressor compressor = CompressorFactory.compressor(request.bytes());
-        StreamInput in = request.bytes().streamInput();
+        StreamInput in = uncompressedStreamInput(request.bytes());
         try {
-            if (compressor != null) {
-                in = new InputStreamStreamInput(compressor.threadLocalInputStream(in));
-            }
             in = new NamedWriteableAwareStreamInput(in, namedWriteableRegistry);
             in.setVersion(request.version());
             // If true we received full cluster state - otherwise diffs
@@ -206,6 +219,18 @@ public class PublicationTransportHandler {
         }
     }
 
+    static StreamInput uncompressedStreamInput(BytesReference bytes) throws IOException {
+        if (Compression.Scheme.isLZ4(bytes)) {
+            return Compression.uncompressLZ4(bytes).streamInput();
+        }
+        final Compressor compressor = CompressorFactory.compressor(bytes);
+        final StreamInput in = bytes.streamInput();
+        if (compressor != null) {
+            return new InputStreamStreamInput(compressor.threadLocalInputStream(in));
+        }
+        return in;
+    }
+
     private PublishWithJoinResponse acceptState(ClusterState incomingState) {
         // if the state is coming from the current node, use original request instead (see currentPublishRequestToSelf for explanation)
         if (transportService.getLocalNode().equals(incomingState.nodes().getMasterNode())) {
@@ -229,9 +254,10 @@ public class PublicationTransportHandler {
         return publicationContext;
     }
 
-    private static BytesReference serializeFullClusterState(ClusterState clusterState, Version nodeVersion) throws IOException {
+    static BytesReference serializeFullClusterState(ClusterState clusterState, Version nodeVersion,
+                                                    Compression.Scheme compressionScheme) throws IOException {
         final BytesStreamOutput bStream = new BytesStreamOutput();
-        try (StreamOutput stream = new OutputStreamStreamOutput(CompressorFactory.COMPRESSOR.threadLocalOutputStream(bStream))) {
+        try (StreamOutput stream = new OutputStreamStreamOutput(compressedOutputStream(bStream, nodeVersion, compressionScheme))) {
             stream.setVersion(nodeVersion);
             stream.writeBoolean(true);
             clusterState.writeTo(stream);
@@ -242,9 +268,10 @@ public class PublicationTransportHandler {
         return serializedState;
     }
 
-    private static BytesReference serializeDiffClusterState(Diff<ClusterState> diff, Version nodeVersion) throws IOException {
+    static BytesReference serializeDiffClusterState(Diff<ClusterState> diff, Version nodeVersion,
+                                                    Compression.Scheme compressionScheme) throws IOException {
         final BytesStreamOutput bStream = new BytesStreamOutput();
-        try (StreamOutput stream = new OutputStreamStreamOutput(CompressorFactory.COMPRESSOR.threadLocalOutputStream(bStream))) {
+        try (StreamOutput stream = new OutputStreamStreamOutput(compressedOutputStream(bStream, nodeVersion, compressionScheme))) {
             stream.setVersion(nodeVersion);
             stream.writeBoolean(false);
             diff.writeTo(stream);
@@ -252,6 +279,15 @@ public class PublicationTransportHandler {
         return bStream.bytes();
     }
 
+    private static OutputStream compressedOutputStream(OutputStream out, Version nodeVersion,
+                                                       Compression.Scheme compressionScheme) throws IOException {
+        // LZ4 is much cheaper to compress and decompress than DEFLATE, which matters for large states published to many nodes
+        if (compressionScheme == Compression.Scheme.LZ4 && nodeVersion.onOrAfter(LZ4_PUBLICATION_VERSION)) {
+            return compressionScheme.outputStream(out, 0);
+        }
+        return CompressorFactory.COMPRESSOR.threadLocalOutputStream(out);
+    }
+
     /**
      * Publishing a cluster state typically involves sending the same cluster state (or diff) to every node, so the work of diffing,
      * serializing, and compressing the state can be done once and the results shared across publish requests. The
@@ -279,7 +315,8 @@ public class PublicationTransportHandler {
                 try {
                     if (sendFullVersion || previousState.nodes().nodeExists(node) == false) {
                         if (serializedStates.containsKey(node.getVersion()) == false) {
-                            serializedStates.put(node.getVersion(), serializeFullClusterState(newState, node.getVersion()));
+                            serializedStates.put(node.getVersion(),
+                                serializeFullClusterState(newState, node.getVersion(), compressionScheme));
                         }
                     } else {
                         // will send a diff
@@ -287,7 +324,7 @@ public class PublicationTransportHandler {
                             diff = newState.diff(previousState);
                         }
                         if (serializedDiffs.containsKey(node.getVersion()) == false) {
-                            final BytesReference serializedDiff = serializeDiffClusterState(diff, node.getVersion());
+                            final BytesReference serializedDiff = serializeDiffClusterState(diff, node.getVersion(), compressionScheme);
                             serializedDiffs.put(node.getVersion(), serializedDiff);
                             logger.trace("serialized cluster state diff for version [{}] in for node version [{}] with size [{}]",
                                 newState.version(), node.getVersion(), serializedDiff.length());
@@ -376,7 +413,7 @@ public class PublicationTransportHandler {
             BytesReference bytes = serializedStates.get(destination.getVersion());
             if (bytes == null) {
                 try {
-                    bytes = serializeFullClusterState(newState, destination.getVersion());
+                    bytes = serializeFullClusterState(newState, destination.getVersion(), compressionScheme);
                     serializedStates.put(destination.getVersion(), bytes);
                 } catch (Exception e) {
                     logger.warn(() -> new ParameterizedMessage(
@@ -43,6 +43,8 @@ public class RoutingNode implements Iterable<ShardRouting> {
 
     private final HashMap<Index, LinkedHashSet<ShardRouting>> shardsByIndex;
 
+    private long modificationCount;
+
     public RoutingNode(String nodeId, DiscoveryNode node, ShardRouting... shards) {
         this(nodeId, node, buildShardRoutingMap(shards));
     }
@@ -126,6 +128,7 @@ public class RoutingNode implements Iterable<ShardRouting> {
             relocatingShards.add(shard);
         }
         shardsByIndex.computeIfAbsent(shard.index(), k -> new LinkedHashSet<>()).add(shard);
+        modificationCount++;
         assert invariant();
     }
 
@@ -156,6 +159,7 @@ public class RoutingNode implements Iterable<ShardRouting> {
             relocatingShards.add(newShard);
         }
         shardsByIndex.computeIfAbsent(newShard.index(), k -> new LinkedHashSet<>()).add(newShard);
+        modificationCount++;
         assert invariant();
     }
 
@@ -174,9 +178,18 @@ public class RoutingNode implements Iterable<ShardRouting> {
         if (shardsByIndex.get(shard.index()).isEmpty()) {
             shardsByIndex.remove(shard.index());
         }
+        modificationCount++;
         assert invariant();
     }
 
+    /**
+     * Returns a counter that is incremented every time a shard is added to, updated on or removed from this node. Facts that only
+     * depend on the shards of this node remain valid for as long as this counter doesn't change.
+     */
+    public long modificationCount() {
+        return modificationCount;
+    }
+
     /**
      * Determine the number of shards with a specific state
      * @param states set of states which should be counted
@@ -14,6 +14,7 @@ import org.elasticsearch.cluster.RestoreInProgress;
 import org.elasticsearch.cluster.metadata.Metadata;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.routing.RoutingChangesObserver;
+import org.elasticsearch.cluster.routing.RoutingNode;
 import org.elasticsearch.cluster.routing.RoutingNodes;
 import org.elasticsearch.cluster.routing.RoutingTable;
 import org.elasticsearch.cluster.routing.ShardRouting;
@@ -28,6 +29,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 import static java.util.Collections.emptySet;
 import static java.util.Collections.unmodifiableSet;
@@ -57,6 +59,8 @@ public class RoutingAllocation {
 
     private Map<ShardId, Set<String>> ignoredShardToNodes = null;
 
+    private final Map<String, Map<String, MemoizedNodeValue>> memoizedNodeValues = new HashMap<>();
+
     private boolean ignoreDisable = false;
 
     private DebugMode debugDecision = DebugMode.OFF;
@@ -266,6 +270,34 @@ public class RoutingAllocation {
         }
     }
 
+    /**
+     * Returns the value computed by the given function for the given node, memoized under the given key for as long as the shards
+     * of the node don't change. Deciders use this for facts about a node that are expensive to compute, and that only depend on
+     * the shards of the node and on state that doesn't change during an allocation run, like the cluster info or the metadata.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T memoizeForNode(RoutingNode node, String key, Function<RoutingNode, T> function) {
+        final Map<String, MemoizedNodeValue> nodeValues = memoizedNodeValues.computeIfAbsent(node.nodeId(), n -> new HashMap<>());
+        MemoizedNodeValue memoized = nodeValues.get(key);
+        if (memoized == null || memoized.node != node || memoized.modificationCount != node.modificationCount()) {
+            memoized = new MemoizedNodeValue(node, function.apply(node));
+            nodeValues.put(key, memoized);
+        }
+        return (T) memoized.value;
+    }
+
+    private static final class MemoizedNodeValue {
+        private final RoutingNode node;
+        private final long modificationCount;
+        private final Object value;
+
+        MemoizedNodeValue(RoutingNode node, Object value) {
+            this.node = node;
+            this.modificationCount = node.modificationCount();
+            this.value = value;
+        }
+    }
+
     /**
      * Returns <code>true</code> iff the current allocation run has not processed all of the in-flight or available
      * shard or store fetches. Otherwise <code>true</code>
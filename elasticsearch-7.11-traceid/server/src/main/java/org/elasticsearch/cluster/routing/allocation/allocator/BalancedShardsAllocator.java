@@ -454,6 +454,11 @@ public class BalancedShardsAllocator implements ShardsAllocator {
             final ModelNode[] modelNodes = sorter.modelNodes;
             final float[] weights = sorter.weights;
             for (String index : buildWeightOrderedIndices()) {
+                if (isBalanced(index)) {
+                    // none of the nodes this index may be balanced over can have a weight delta above the threshold, so there is
+                    // no need to ask the deciders which nodes these are
+                    continue;
+                }
                 IndexMetadata indexMetadata = metadata.index(index);
 
                 // find nodes that have a shard of this index or where shards of this index are allowed to be allocated to,
@@ -555,6 +560,21 @@ public class BalancedShardsAllocator implements ShardsAllocator {
             }
         }
 
+        /**
+         * Returns {@code true} iff the weight delta between the lightest and the heaviest of all nodes is under the threshold for
+         * the given index. The weights are recomputed since relocations of shards of other indices may have changed them.
+         */
+        private boolean isBalanced(String index) {
+            float minWeight = Float.POSITIVE_INFINITY;
+            float maxWeight = Float.NEGATIVE_INFINITY;
+            for (ModelNode node : nodes.values()) {
+                final float nodeWeight = weight.weight(this, node, index);
+                minWeight = Math.min(minWeight, nodeWeight);
+                maxWeight = Math.max(maxWeight, nodeWeight);
+            }
+            return lessThan(absDelta(minWeight, maxWeight), threshold);
+        }
+
         /**
          * This builds a initial index ordering where the indices are returned
          * in most unbalanced first. We need this in order to prevent over
@@ -72,6 +72,10 @@ public class DiskThresholdDecider extends AllocationDecider {
     public static final Setting<Boolean> ENABLE_FOR_SINGLE_DATA_NODE =
         Setting.boolSetting("cluster.routing.allocation.disk.watermark.enable_for_single_data_node", false, Setting.Property.NodeScope);
 
+    // the keys under which the disk usages used by canAllocate and canRemain are memoized per node
+    private static final String CAN_ALLOCATE_DISK_USAGE_KEY = NAME + "[can_allocate_usage]";
+    private static final String CAN_REMAIN_DISK_USAGE_KEY = NAME + "[can_remain_usage]";
+
     private final DiskThresholdSettings diskThresholdSettings;
     private final boolean enableForSingleDataNode;
 
@@ -146,7 +150,7 @@ public class DiskThresholdDecider extends AllocationDecider {
 
         // subtractLeavingShards is passed as false here, because they still use disk space, and therefore we should be extra careful
         // and take the size into account
-        final DiskUsageWithRelocations usage = getDiskUsage(node, allocation, usages, false);
+        final DiskUsageWithRelocations usage = getDiskUsage(node, allocation, usages, false, CAN_ALLOCATE_DISK_USAGE_KEY);
         // First, check that the node currently over the low watermark
         double freeDiskPercentage = usage.getFreeDiskAsPercentage();
         // Cache the used disk percentage for displaying disk percentages consistent with documentation
@@ -310,7 +314,7 @@ public class DiskThresholdDecider extends AllocationDecider {
 
         // subtractLeavingShards is passed as true here, since this is only for shards remaining, we will *eventually* have enough disk
         // since shards are moving away. No new shards will be incoming since in canAllocate we pass false for this check.
-        final DiskUsageWithRelocations usage = getDiskUsage(node, allocation, usages, true);
+        final DiskUsageWithRelocations usage = getDiskUsage(node, allocation, usages, true, CAN_REMAIN_DISK_USAGE_KEY);
         final String dataPath = clusterInfo.getDataPath(shardRouting);
         // If this node is already above the high threshold, the shard cannot remain (get it off!)
         final double freeDiskPercentage = usage.getFreeDiskAsPercentage();
@@ -362,7 +366,18 @@ public class DiskThresholdDecider extends AllocationDecider {
     }
 
     private DiskUsageWithRelocations getDiskUsage(RoutingNode node, RoutingAllocation allocation,
-                                                  ImmutableOpenMap<String, DiskUsage> usages, boolean subtractLeavingShards) {
+                                                  ImmutableOpenMap<String, DiskUsage> usages, boolean subtractLeavingShards,
+                                                  String memoizationKey) {
+        if (diskThresholdSettings.includeRelocations() == false) {
+            return computeDiskUsage(node, allocation, usages, subtractLeavingShards);
+        }
+        // the size of the relocating shards is computed from all the shards of the node, so it is only computed once per node
+        // and allocation run unless the shards of the node change
+        return allocation.memoizeForNode(node, memoizationKey, n -> computeDiskUsage(n, allocation, usages, subtractLeavingShards));
+    }
+
+    private DiskUsageWithRelocations computeDiskUsage(RoutingNode node, RoutingAllocation allocation,
+                                                      ImmutableOpenMap<String, DiskUsage> usages, boolean subtractLeavingShards) {
         DiskUsage usage = usages.get(node.nodeId());
         if (usage == null) {
             // If there is no usage, and we have other nodes in the cluster,
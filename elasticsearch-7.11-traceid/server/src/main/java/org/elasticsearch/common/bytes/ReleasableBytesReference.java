@@ -10,6 +10,7 @@ package org.elasticsearch.common.bytes;
 
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefIterator;
+import org.elasticsearch.common.io.stream.FilterStreamInput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.util.concurrent.AbstractRefCounted;
@@ -27,15 +28,18 @@ public final class ReleasableBytesReference implements Releasable, BytesReferenc
     public static final Releasable NO_OP = () -> {};
     private final BytesReference delegate;
     private final AbstractRefCounted refCounted;
+    private final long retainedSizeInBytes;
 
     public ReleasableBytesReference(BytesReference delegate, Releasable releasable) {
         this.delegate = delegate;
         this.refCounted = new RefCountedReleasable(releasable);
+        this.retainedSizeInBytes = delegate.length();
     }
 
-    private ReleasableBytesReference(BytesReference delegate, AbstractRefCounted refCounted) {
+    private ReleasableBytesReference(BytesReference delegate, AbstractRefCounted refCounted, long retainedSizeInBytes) {
         this.delegate = delegate;
         this.refCounted = refCounted;
+        this.retainedSizeInBytes = retainedSizeInBytes;
         refCounted.incRef();
     }
 
@@ -53,7 +57,15 @@ public final class ReleasableBytesReference implements Releasable, BytesReferenc
     }
 
     public ReleasableBytesReference retainedSlice(int from, int length) {
-        return new ReleasableBytesReference(delegate.slice(from, length), refCounted);
+        return new ReleasableBytesReference(delegate.slice(from, length), refCounted, retainedSizeInBytes);
+    }
+
+    /**
+     * Returns the number of bytes that this reference keeps from being released. Slices keep the whole content of the
+     * reference they were sliced from, so this is usually larger than their {@link #length()}.
+     */
+    public long retainedSizeInBytes() {
+        return retainedSizeInBytes;
     }
 
     @Override
@@ -93,7 +105,39 @@ public final class ReleasableBytesReference implements Releasable, BytesReferenc
 
     @Override
     public StreamInput streamInput() throws IOException {
-        return delegate.streamInput();
+        assert refCount() > 0;
+        return new FilterStreamInput(delegate.streamInput()) {
+            @Override
+            public ReleasableBytesReference readReleasableBytesReference() throws IOException {
+                final int length = readArraySize();
+                // slice the remaining bytes instead of copying them, the slice keeps them from being released until it is closed
+                final int offset = ReleasableBytesReference.this.length() - delegate.available();
+                final ReleasableBytesReference slice = retainedSlice(offset, length);
+                final long skipped = delegate.skip(length);
+                assert skipped == length : skipped + " vs " + length;
+                return slice;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return delegate.read(b, off, len);
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                return delegate.skip(n);
+            }
+
+            @Override
+            public boolean markSupported() {
+                return delegate.markSupported();
+            }
+
+            @Override
+            public void mark(int readLimit) {
+                delegate.mark(readLimit);
+            }
+        };
     }
 
     @Override
@@ -11,13 +11,18 @@ package org.elasticsearch.common.cache;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.util.concurrent.ReleasableLock;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -53,6 +58,19 @@ import java.util.function.ToLongBiFunction;
  * <p>
  * Evictions only occur after a mutation to the cache (meaning an entry promotion, a cache insertion, or a manual
  * invalidation) or an explicit call to {@link #refresh()}.
+ * <p>
+ * With the {@link EvictionPolicy#W_TINY_LFU} eviction policy, two of the above improvements are implemented:
+ * <ol>
+ * <li>Reads don't promote entries directly. They record the entry in one of several lock-free read buffers, which
+ * are drained in batches by whichever thread gets the LRU lock next, so readers don't serialize on the lock. Reads
+ * may be dropped if the buffers are full or contended, in which case the entry is not promoted.</li>
+ * <li>Entries are evicted based on how often their key was accessed recently rather than only on recency. New
+ * entries go to a small LRU window (1% of the maximum weight). Entries that overflow the window move to the
+ * probation part of the main space and are only kept if their key was accessed more often than the key of the
+ * least recently used entry in probation, as estimated by a {@link FrequencySketch}, otherwise they are evicted.
+ * Entries accessed while on probation move to the protected part of the main space (80% of its weight). This
+ * prevents scans of entries that are used once from flushing entries that are used repeatedly.</li>
+ * </ol>
  *
  * @param <K> The type of the keys
  * @param <V> The type of the values
@@ -87,6 +105,20 @@ public class Cache<K, V> {
     private RemovalListener<K, V> removalListener = notification -> {
     };
 
+    // how entries are chosen for eviction
+    private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+    // the maximum weight of the window and the protected space, for the W_TINY_LFU policy
+    private long windowMaximumWeight = Long.MAX_VALUE;
+    private long protectedMaximumWeight = Long.MAX_VALUE;
+
+    // the access frequencies of keys and the number of keys it was sized for, for the W_TINY_LFU policy
+    private FrequencySketch sketch;
+    private long sketchCapacity;
+
+    // the reads that haven't been applied to the access order yet, for the W_TINY_LFU policy
+    private ReadBuffer<K, V>[] readBuffers;
+
     // use CacheBuilder to construct
     Cache() {
     }
@@ -122,6 +154,45 @@ public class Cache<K, V> {
             throw new IllegalArgumentException("maximumWeight < 0");
         }
         this.maximumWeight = maximumWeight;
+        configureEvictionPolicy();
+    }
+
+    @SuppressWarnings("unchecked")
+    void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        Objects.requireNonNull(evictionPolicy);
+        this.evictionPolicy = evictionPolicy;
+        if (evictionPolicy == EvictionPolicy.W_TINY_LFU) {
+            // a power of two that is at least the number of processors, so that threads rarely share a buffer
+            int numBuffers = 1;
+            while (numBuffers < Runtime.getRuntime().availableProcessors() && numBuffers < MAX_READ_BUFFERS) {
+                numBuffers <<= 1;
+            }
+            readBuffers = new ReadBuffer[numBuffers];
+            for (int i = 0; i < numBuffers; i++) {
+                readBuffers[i] = new ReadBuffer<>();
+            }
+            sketchCapacity = INITIAL_SKETCH_CAPACITY;
+            sketch = new FrequencySketch(sketchCapacity);
+        } else {
+            readBuffers = null;
+            sketch = null;
+        }
+        configureEvictionPolicy();
+    }
+
+    // pkg-private for testing
+    EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    private void configureEvictionPolicy() {
+        if (evictionPolicy == EvictionPolicy.W_TINY_LFU && maximumWeight != -1) {
+            windowMaximumWeight = Math.max(1, maximumWeight / 100);
+            protectedMaximumWeight = (maximumWeight - windowMaximumWeight) * 8 / 10;
+        } else {
+            windowMaximumWeight = Long.MAX_VALUE;
+            protectedMaximumWeight = Long.MAX_VALUE;
+        }
     }
 
     void setWeigher(ToLongBiFunction<K, V> weigher) {
@@ -145,6 +216,20 @@ public class Cache<K, V> {
         return entriesExpireAfterAccess || entriesExpireAfterWrite ? System.nanoTime() : 0;
     }
 
+    /**
+     * How entries are chosen for eviction when the cache exceeds its maximum weight.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Evicts the least recently used entries.
+         */
+        LRU,
+        /**
+         * Evicts entries based on how recently and how frequently they were used, see {@link Cache}.
+         */
+        W_TINY_LFU
+    }
+
     // the state of an entry in the LRU list
     enum State {
         NEW, EXISTING, DELETED
@@ -157,6 +242,8 @@ public class Cache<K, V> {
         volatile long accessTime;
         Entry<K, V> before;
         Entry<K, V> after;
+        // the list this entry is linked in
+        AccessOrder<K, V> accessOrder;
         State state = State.NEW;
 
         Entry(K key, V value, long writeTime) {
@@ -334,12 +421,76 @@ public class Cache<K, V> {
         }
     }
 
-    Entry<K, V> head;
-    Entry<K, V> tail;
+    /**
+     * A doubly-linked list of entries, from the most recently used (head) to the least recently used (tail).
+     */
+    static class AccessOrder<K, V> {
+        Entry<K, V> head;
+        Entry<K, V> tail;
+        long weight;
+    }
+
+    // the entries of the cache in LRU order with the LRU policy, the admission window with the W_TINY_LFU policy
+    final AccessOrder<K, V> window = new AccessOrder<>();
+    // the main space of the W_TINY_LFU policy
+    final AccessOrder<K, V> probation = new AccessOrder<>();
+    final AccessOrder<K, V> protectedEntries = new AccessOrder<>();
 
     // lock protecting mutations to the LRU list
     private final ReleasableLock lruLock = new ReleasableLock(new ReentrantLock());
 
+    private static final int MAX_READ_BUFFERS = 64;
+    private static final long INITIAL_SKETCH_CAPACITY = 1024;
+
+    /**
+     * A buffer of entries that were read but not promoted yet. Readers add entries without taking a lock and the
+     * buffer is drained under the LRU lock. Entries are dropped when the buffer is full or contended.
+     */
+    private static class ReadBuffer<K, V> {
+        static final int SIZE = 16;
+
+        final AtomicReferenceArray<Entry<K, V>> buffer = new AtomicReferenceArray<>(SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        // only updated under the LRU lock
+        volatile long readCounter;
+
+        /**
+         * Adds the entry to the buffer, returns {@code false} if it was dropped.
+         */
+        boolean offer(Entry<K, V> entry) {
+            final long writes = writeCounter.get();
+            if (writes - readCounter >= SIZE) {
+                return false;
+            }
+            if (writeCounter.compareAndSet(writes, writes + 1)) {
+                buffer.lazySet((int) (writes & (SIZE - 1)), entry);
+                return true;
+            }
+            return false;
+        }
+
+        boolean isFull() {
+            return writeCounter.get() - readCounter >= SIZE;
+        }
+
+        void drainTo(Consumer<Entry<K, V>> consumer) {
+            long reads = readCounter;
+            final long writes = writeCounter.get();
+            while (reads < writes) {
+                final int index = (int) (reads & (SIZE - 1));
+                final Entry<K, V> entry = buffer.get(index);
+                if (entry == null) {
+                    // the writer incremented the counter but didn't publish the entry yet
+                    break;
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(entry);
+                reads++;
+            }
+            readCounter = reads;
+        }
+    }
+
     /**
      * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key.
      *
@@ -356,11 +507,41 @@ public class Cache<K, V> {
         if (entry == null) {
             return null;
         } else {
-            promote(entry, now);
+            afterRead(entry, now);
             return entry.value;
         }
     }
 
+    private void afterRead(Entry<K, V> entry, long now) {
+        if (readBuffers == null) {
+            promote(entry, now);
+            return;
+        }
+        final ReadBuffer<K, V> buffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+        final boolean added = buffer.offer(entry);
+        if (added == false || buffer.isFull()) {
+            // drain if nobody else is doing it, otherwise a read that couldn't be added is dropped
+            try (ReleasableLock locked = lruLock.tryAcquire()) {
+                if (locked != null) {
+                    drainReadBuffers();
+                    if (added == false) {
+                        onAccess(entry);
+                    }
+                    evict(now);
+                }
+            }
+        }
+    }
+
+    private void drainReadBuffers() {
+        assert lruLock.isHeldByCurrentThread();
+        if (readBuffers != null) {
+            for (ReadBuffer<K, V> buffer : readBuffers) {
+                buffer.drainTo(this::onAccess);
+            }
+        }
+    }
+
     /**
      * If the specified key is not already associated with a value (or is mapped to null), attempts to compute its
      * value using the given mapping function and enters it into this map unless null. The load method for a given key
@@ -522,7 +703,7 @@ public class Cache<K, V> {
      * {@link org.elasticsearch.common.cache.RemovalNotification.RemovalReason} INVALIDATED.
      */
     public void invalidateAll() {
-        Entry<K, V> h;
+        List<Entry<K, V>> heads = new ArrayList<>(3);
 
         boolean[] haveSegmentLock = new boolean[NUMBER_OF_SEGMENTS];
         try {
@@ -531,14 +712,17 @@ public class Cache<K, V> {
                 haveSegmentLock[i] = true;
             }
             try (ReleasableLock ignored = lruLock.acquire()) {
-                h = head;
                 Arrays.stream(segments).forEach(segment -> segment.map = new HashMap<>());
-                Entry<K, V> current = head;
-                while (current != null) {
-                    current.state = State.DELETED;
-                    current = current.after;
+                for (AccessOrder<K, V> accessOrder : accessOrders()) {
+                    heads.add(accessOrder.head);
+                    Entry<K, V> current = accessOrder.head;
+                    while (current != null) {
+                        current.state = State.DELETED;
+                        current = current.after;
+                    }
+                    accessOrder.head = accessOrder.tail = null;
+                    accessOrder.weight = 0;
                 }
-                head = tail = null;
                 count = 0;
                 weight = 0;
             }
@@ -549,9 +733,11 @@ public class Cache<K, V> {
                 }
             }
         }
-        while (h != null) {
-            removalListener.onRemoval(new RemovalNotification<>(h.key, h.value, RemovalNotification.RemovalReason.INVALIDATED));
-            h = h.after;
+        for (Entry<K, V> h : heads) {
+            while (h != null) {
+                removalListener.onRemoval(new RemovalNotification<>(h.key, h.value, RemovalNotification.RemovalReason.INVALIDATED));
+                h = h.after;
+            }
         }
     }
 
@@ -561,6 +747,7 @@ public class Cache<K, V> {
     public void refresh() {
         long now = now();
         try (ReleasableLock ignored = lruLock.acquire()) {
+            drainReadBuffers();
             evict(now);
         }
     }
@@ -586,13 +773,14 @@ public class Cache<K, V> {
     /**
      * An LRU sequencing of the keys in the cache that supports removal. This sequence is not protected from mutations
      * to the cache (except for {@link Iterator#remove()}. The result of iteration under any other mutation is
-     * undefined.
+     * undefined. With the {@link EvictionPolicy#W_TINY_LFU} policy, the keys of the window come first, followed by
+     * the keys on probation and then the protected keys, each in LRU order.
      *
      * @return an LRU-ordered {@link Iterable} over the keys in the cache
      */
     public Iterable<K> keys() {
         return () -> new Iterator<K>() {
-            private CacheIterator iterator = new CacheIterator(head);
+            private CacheIterator iterator = new CacheIterator();
 
             @Override
             public boolean hasNext() {
@@ -614,13 +802,13 @@ public class Cache<K, V> {
     /**
      * An LRU sequencing of the values in the cache. This sequence is not protected from mutations
      * to the cache (except for {@link Iterator#remove()}. The result of iteration under any other mutation is
-     * undefined.
+     * undefined. The order is the same as for {@link #keys()}.
      *
      * @return an LRU-ordered {@link Iterable} over the values in the cache
      */
     public Iterable<V> values() {
         return () -> new Iterator<V>() {
-            private CacheIterator iterator = new CacheIterator(head);
+            private CacheIterator iterator = new CacheIterator();
 
             @Override
             public boolean hasNext() {
@@ -665,12 +853,29 @@ public class Cache<K, V> {
     }
 
     private class CacheIterator implements Iterator<Entry<K, V>> {
+        private final List<AccessOrder<K, V>> accessOrders;
+        private int accessOrderIndex;
         private Entry<K, V> current;
         private Entry<K, V> next;
 
-        CacheIterator(Entry<K, V> head) {
+        CacheIterator() {
+            if (readBuffers != null) {
+                // apply pending promotions so that the order is up-to-date
+                try (ReleasableLock ignored = lruLock.acquire()) {
+                    drainReadBuffers();
+                }
+            }
+            accessOrders = accessOrders();
             current = null;
-            next = head;
+            next = accessOrders.get(0).head;
+            advanceToNonEmptyAccessOrder();
+        }
+
+        private void advanceToNonEmptyAccessOrder() {
+            while (next == null && accessOrderIndex < accessOrders.size() - 1) {
+                accessOrderIndex++;
+                next = accessOrders.get(accessOrderIndex).head;
+            }
         }
 
         @Override
@@ -682,6 +887,7 @@ public class Cache<K, V> {
         public Entry<K, V> next() {
             current = next;
             next = next.after;
+            advanceToNonEmptyAccessOrder();
             return current;
         }
 
@@ -742,19 +948,10 @@ public class Cache<K, V> {
     }
 
     private boolean promote(Entry<K, V> entry, long now) {
-        boolean promoted = true;
+        boolean promoted;
         try (ReleasableLock ignored = lruLock.acquire()) {
-            switch (entry.state) {
-                case DELETED:
-                    promoted = false;
-                    break;
-                case EXISTING:
-                    relinkAtHead(entry);
-                    break;
-                case NEW:
-                    linkAtHead(entry);
-                    break;
-            }
+            drainReadBuffers();
+            promoted = onAccess(entry);
             if (promoted) {
                 evict(now);
             }
@@ -762,12 +959,110 @@ public class Cache<K, V> {
         return promoted;
     }
 
+    /**
+     * Moves the entry according to the eviction policy after it was added or read.
+     *
+     * @return false if the entry was deleted in the meantime
+     */
+    private boolean onAccess(Entry<K, V> entry) {
+        assert lruLock.isHeldByCurrentThread();
+
+        if (entry.state == State.DELETED) {
+            return false;
+        }
+        if (evictionPolicy == EvictionPolicy.LRU) {
+            if (entry.state == State.EXISTING) {
+                relinkAtHead(entry);
+            } else {
+                linkAtHead(window, entry);
+            }
+            return true;
+        }
+
+        sketch.increment(entry.key.hashCode());
+        if (entry.state == State.NEW) {
+            linkAtHead(window, entry);
+            if (count > sketchCapacity) {
+                // the sketch is too small to tell keys apart, start over with a bigger one
+                sketchCapacity = 2L * count;
+                sketch = new FrequencySketch(sketchCapacity);
+            }
+        } else if (entry.accessOrder == probation) {
+            // accessed again while on probation: protect it, and make room in the protected space
+            unlink(entry);
+            linkAtHead(protectedEntries, entry);
+            while (protectedEntries.weight > protectedMaximumWeight && protectedEntries.tail != entry) {
+                final Entry<K, V> demoted = protectedEntries.tail;
+                unlink(demoted);
+                linkAtHead(probation, demoted);
+            }
+        } else {
+            relinkAtHead(entry);
+        }
+        return true;
+    }
+
     private void evict(long now) {
         assert lruLock.isHeldByCurrentThread();
 
-        while (tail != null && shouldPrune(tail, now)) {
-            evictEntry(tail);
+        if (evictionPolicy == EvictionPolicy.W_TINY_LFU) {
+            evictWindowTinyLfu(now);
+            return;
+        }
+        while (window.tail != null && shouldPrune(window.tail, now)) {
+            evictEntry(window.tail);
+        }
+    }
+
+    private void evictWindowTinyLfu(long now) {
+        assert lruLock.isHeldByCurrentThread();
+
+        for (AccessOrder<K, V> accessOrder : accessOrders()) {
+            while (accessOrder.tail != null && isExpired(accessOrder.tail, now)) {
+                evictEntry(accessOrder.tail);
+            }
+        }
+
+        // entries that overflow the window move to probation, where they compete with the least recently used entry;
+        // they are linked at the head so the first candidate is the least recent one and next ones are before it
+        Entry<K, V> candidate = null;
+        while (window.weight > windowMaximumWeight && window.tail != null) {
+            final Entry<K, V> entry = window.tail;
+            unlink(entry);
+            linkAtHead(probation, entry);
+            if (candidate == null) {
+                candidate = entry;
+            }
+        }
+
+        while (exceedsWeight()) {
+            Entry<K, V> victim = probation.tail;
+            if (victim == null) {
+                victim = protectedEntries.tail != null ? protectedEntries.tail : window.tail;
+            }
+            if (victim == null) {
+                break;
+            }
+            if (candidate == null || candidate.state != State.EXISTING || candidate == victim) {
+                if (candidate == victim) {
+                    candidate = candidate.before;
+                }
+                evictEntry(victim);
+            } else if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                evictEntry(victim);
+            } else {
+                final Entry<K, V> next = candidate.before;
+                evictEntry(candidate);
+                candidate = next;
+            }
+        }
+    }
+
+    private List<AccessOrder<K, V>> accessOrders() {
+        if (evictionPolicy == EvictionPolicy.LRU) {
+            return Collections.singletonList(window);
         }
+        return Arrays.asList(window, probation, protectedEntries);
     }
 
     private void evictEntry(Entry<K, V> entry) {
@@ -805,15 +1100,16 @@ public class Cache<K, V> {
         assert lruLock.isHeldByCurrentThread();
 
         if (entry.state == State.EXISTING) {
+            final AccessOrder<K, V> accessOrder = entry.accessOrder;
             final Entry<K, V> before = entry.before;
             final Entry<K, V> after = entry.after;
 
             if (before == null) {
                 // removing the head
-                assert head == entry;
-                head = after;
-                if (head != null) {
-                    head.before = null;
+                assert accessOrder.head == entry;
+                accessOrder.head = after;
+                if (accessOrder.head != null) {
+                    accessOrder.head.before = null;
                 }
             } else {
                 // removing inner element
@@ -823,10 +1119,10 @@ public class Cache<K, V> {
 
             if (after == null) {
                 // removing tail
-                assert tail == entry;
-                tail = before;
-                if (tail != null) {
-                    tail.after = null;
+                assert accessOrder.tail == entry;
+                accessOrder.tail = before;
+                if (accessOrder.tail != null) {
+                    accessOrder.tail.after = null;
                 }
             } else {
                 // removing inner element
@@ -834,8 +1130,11 @@ public class Cache<K, V> {
                 entry.after = null;
             }
 
+            final long entryWeight = weigher.applyAsLong(entry.key, entry.value);
             count--;
-            weight -= weigher.applyAsLong(entry.key, entry.value);
+            weight -= entryWeight;
+            accessOrder.weight -= entryWeight;
+            entry.accessOrder = null;
             entry.state = State.DELETED;
             return true;
         } else {
@@ -843,30 +1142,34 @@ public class Cache<K, V> {
         }
     }
 
-    private void linkAtHead(Entry<K, V> entry) {
+    private void linkAtHead(AccessOrder<K, V> accessOrder, Entry<K, V> entry) {
         assert lruLock.isHeldByCurrentThread();
 
-        Entry<K, V> h = head;
+        Entry<K, V> h = accessOrder.head;
         entry.before = null;
-        entry.after = head;
-        head = entry;
+        entry.after = h;
+        accessOrder.head = entry;
         if (h == null) {
-            tail = entry;
+            accessOrder.tail = entry;
         } else {
             h.before = entry;
         }
 
+        final long entryWeight = weigher.applyAsLong(entry.key, entry.value);
         count++;
-        weight += weigher.applyAsLong(entry.key, entry.value);
+        weight += entryWeight;
+        accessOrder.weight += entryWeight;
+        entry.accessOrder = accessOrder;
         entry.state = State.EXISTING;
     }
 
     private void relinkAtHead(Entry<K, V> entry) {
         assert lruLock.isHeldByCurrentThread();
 
-        if (head != entry) {
+        final AccessOrder<K, V> accessOrder = entry.accessOrder;
+        if (accessOrder.head != entry) {
             unlink(entry);
-            linkAtHead(entry);
+            linkAtHead(accessOrder, entry);
         }
     }
 
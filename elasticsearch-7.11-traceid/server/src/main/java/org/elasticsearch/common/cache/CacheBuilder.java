@@ -19,6 +19,7 @@ public class CacheBuilder<K, V> {
     private long expireAfterWriteNanos = -1;
     private ToLongBiFunction<K, V> weigher;
     private RemovalListener<K, V> removalListener;
+    private Cache.EvictionPolicy evictionPolicy;
 
     public static <K, V> CacheBuilder<K, V> builder() {
         return new CacheBuilder<>();
@@ -79,6 +80,16 @@ public class CacheBuilder<K, V> {
         return this;
     }
 
+    /**
+     * Sets how entries are chosen for eviction when the cache exceeds its maximum weight, defaults to
+     * {@link Cache.EvictionPolicy#LRU}.
+     */
+    public CacheBuilder<K, V> setEvictionPolicy(Cache.EvictionPolicy evictionPolicy) {
+        Objects.requireNonNull(evictionPolicy);
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
     public Cache<K, V> build() {
         Cache<K, V> cache = new Cache<>();
         if (maximumWeight != -1) {
@@ -96,6 +107,9 @@ public class CacheBuilder<K, V> {
         if (removalListener != null) {
             cache.setRemovalListener(removalListener);
         }
+        if (evictionPolicy != null) {
+            cache.setEvictionPolicy(evictionPolicy);
+        }
         return cache;
     }
 }
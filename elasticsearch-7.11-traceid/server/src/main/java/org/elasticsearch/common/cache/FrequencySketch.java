@@ -0,0 +1,127 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.common.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A probabilistic estimate of how often keys have been seen recently, used to decide whether a new entry deserves
+ * to replace an existing one in a cache (the TinyLFU admission policy).
+ * <p>
+ * The sketch is a count-min sketch of 4-bit counters, so frequencies saturate at 15. Once the number of recorded
+ * increments reaches ten times the maximum size of the cache all counters are halved so that the estimates favor
+ * recent activity. Counters are updated with compare-and-set so that the sketch can be shared between threads
+ * without a lock; the resulting estimates are approximate under concurrency, which is fine for admission decisions.
+ */
+public final class FrequencySketch {
+
+    private static final long[] SEEDS = new long[] {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAX_TABLE_SIZE = 1 << 26;
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates a sketch that is sized for a cache holding up to {@code maximumSize} entries.
+     */
+    public FrequencySketch(long maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximum size must not be negative but was [" + maximumSize + "]");
+        }
+        final int maximum = (int) Math.min(Math.max(maximumSize, 1), MAX_TABLE_SIZE);
+        final int length = Integer.highestOneBit(maximum) == maximum ? maximum : Integer.highestOneBit(maximum) << 1;
+        this.table = new AtomicLongArray(length);
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * maximum;
+    }
+
+    /**
+     * Returns the estimated number of times the key with the given hash code was seen recently, between 0 and 15.
+     */
+    public int frequency(int hashCode) {
+        final int hash = spread(hashCode);
+        final int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            final long word = table.get(indexOf(hash, i));
+            final int count = (int) ((word >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an occurrence of the key with the given hash code.
+     */
+    public void increment(int hashCode) {
+        final int hash = spread(hashCode);
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && size.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Increments the {@code j}-th counter of the {@code i}-th word unless it is saturated.
+     */
+    private boolean incrementAt(int i, int j) {
+        final int offset = j << 2;
+        final long mask = 0xfL << offset;
+        while (true) {
+            final long word = table.get(i);
+            if ((word & mask) == mask) {
+                return false;
+            }
+            if (table.compareAndSet(i, word, word + (1L << offset))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Halves all counters so that old activity ages out.
+     */
+    private synchronized void reset() {
+        if (size.get() < sampleSize) {
+            // another thread reset the sketch in the meantime
+            return;
+        }
+        int odd = 0;
+        for (int i = 0; i < table.length(); i++) {
+            long word;
+            do {
+                word = table.get(i);
+            } while (table.compareAndSet(i, word, (word >>> 1) & RESET_MASK) == false);
+            odd += Long.bitCount(word & ONE_MASK);
+        }
+        // each increment touches four counters, so odd counters lose a quarter of an increment each
+        size.set(Math.max(0, (size.get() - (odd >>> 2)) >>> 1));
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -143,14 +143,16 @@ public final class CompressedXContent {
 
         CompressedXContent that = (CompressedXContent) o;
 
-        if (Arrays.equals(compressed(), that.compressed())) {
-            return true;
-        }
-
+        // the checksum is computed over the uncompressed bytes, so different checksums mean different content: mappings that
+        // changed are told apart without comparing the arrays, only equal checksums need the byte comparison below
         if (crc32 != that.crc32) {
             return false;
         }
 
+        if (Arrays.equals(compressed(), that.compressed())) {
+            return true;
+        }
+
         return uncompressed().equals(that.uncompressed());
     }
 
@@ -9,7 +9,8 @@
 package org.elasticsearch.common.io.stream;
 
 import org.elasticsearch.Version;
-import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.ReleasableBytesReference;
+import org.elasticsearch.common.lease.Releasable;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -31,8 +32,12 @@ import java.io.UncheckedIOException;
  * to delayed expansion). When such objects are buffered for some time it may be desirable
  * to force their buffering in serialized format by calling
  * {@link #asSerialized(Reader, NamedWriteableRegistry)}.
+ * When the {@link StreamInput} reads from a {@link ReleasableBytesReference}, like the content of
+ * an inbound transport message, the buffer is a retained slice of that content rather than a
+ * copy, so {@link DelayableWriteable}s must be {@link #close() closed} once they have been
+ * expanded or are no longer needed.
  */
-public abstract class DelayableWriteable<T extends Writeable> implements Writeable {
+public abstract class DelayableWriteable<T extends Writeable> implements Writeable, Releasable {
     /**
      * Build a {@linkplain DelayableWriteable} that wraps an existing object
      * but is serialized so that deserializing it can be delayed.
@@ -41,12 +46,12 @@ public abstract class DelayableWriteable<T extends Writeable> implements Writeab
         return new Referencing<>(reference);
     }
     /**
-     * Build a {@linkplain DelayableWriteable} that copies a buffer from
+     * Build a {@linkplain DelayableWriteable} that reads a buffer from
      * the provided {@linkplain StreamInput} and deserializes the buffer
      * when {@link #expand()} is called.
      */
     public static <T extends Writeable> DelayableWriteable<T> delayed(Writeable.Reader<T> reader, StreamInput in) throws IOException {
-        return new Serialized<>(reader, in.getVersion(), in.namedWriteableRegistry(), in.readBytesReference());
+        return new Serialized<>(reader, in.getVersion(), in.namedWriteableRegistry(), in.readReleasableBytesReference());
     }
 
     private DelayableWriteable() {}
@@ -73,6 +78,14 @@ public abstract class DelayableWriteable<T extends Writeable> implements Writeab
      */
     public abstract long getSerializedSize();
 
+    /**
+     * Returns the number of bytes that this instance keeps in memory until it is
+     * {@link #close() closed}. That is more than its {@link #getSerializedSize() serialized size}
+     * if its buffer is a slice of a larger inbound transport message, since the slice keeps the
+     * whole message from being released.
+     */
+    public abstract long getRetainedSizeInBytes();
+
     private static class Referencing<T extends Writeable> extends DelayableWriteable<T> {
         private final T reference;
 
@@ -98,7 +111,7 @@ public abstract class DelayableWriteable<T extends Writeable> implements Writeab
             } catch (IOException e) {
                 throw new RuntimeException("unexpected error writing writeable to buffer", e);
             }
-            return new Serialized<>(reader, Version.CURRENT, registry, buffer.bytes());
+            return new Serialized<>(reader, Version.CURRENT, registry, ReleasableBytesReference.wrap(buffer.bytes()));
         }
 
         @Override
@@ -111,6 +124,16 @@ public abstract class DelayableWriteable<T extends Writeable> implements Writeab
             return DelayableWriteable.getSerializedSize(reference);
         }
 
+        @Override
+        public long getRetainedSizeInBytes() {
+            return getSerializedSize();
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+
         private BytesStreamOutput writeToBuffer(Version version) throws IOException {
             try (BytesStreamOutput buffer = new BytesStreamOutput()) {
                 buffer.setVersion(version);
@@ -127,10 +150,10 @@ public abstract class DelayableWriteable<T extends Writeable> implements Writeab
         private final Writeable.Reader<T> reader;
         private final Version serializedAtVersion;
         private final NamedWriteableRegistry registry;
-        private final BytesReference serialized;
+        private final ReleasableBytesReference serialized;
 
         private Serialized(Writeable.Reader<T> reader, Version serializedAtVersion,
-                NamedWriteableRegistry registry, BytesReference serialized) {
+                NamedWriteableRegistry registry, ReleasableBytesReference serialized) {
             this.reader = reader;
             this.serializedAtVersion = serializedAtVersion;
             this.registry = registry;
@@ -186,6 +209,16 @@ public abstract class DelayableWriteable<T extends Writeable> implements Writeab
             // We're already serialized
             return serialized.length();
         }
+
+        @Override
+        public long getRetainedSizeInBytes() {
+            return serialized.retainedSizeInBytes();
+        }
+
+        @Override
+        public void close() {
+            serialized.close();
+        }
     }
 
     /**
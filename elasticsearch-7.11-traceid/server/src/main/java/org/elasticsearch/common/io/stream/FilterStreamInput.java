@@ -9,6 +9,7 @@
 package org.elasticsearch.common.io.stream;
 
 import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.ReleasableBytesReference;
 
 import java.io.EOFException;
 import java.io.IOException;
@@ -34,6 +35,11 @@ public abstract class FilterStreamInput extends StreamInput {
         delegate.readBytes(b, offset, len);
     }
 
+    @Override
+    public ReleasableBytesReference readReleasableBytesReference() throws IOException {
+        return delegate.readReleasableBytesReference();
+    }
+
     @Override
     public short readShort() throws IOException {
         return delegate.readShort();
@@ -80,10 +80,12 @@ import org.elasticsearch.indices.IndexingMemoryController;
 import org.elasticsearch.indices.IndicesQueryCache;
 import org.elasticsearch.indices.IndicesRequestCache;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.indices.IndicesStoredFieldsCache;
 import org.elasticsearch.indices.ShardLimitValidator;
 import org.elasticsearch.indices.analysis.HunspellService;
 import org.elasticsearch.indices.breaker.BreakerSettings;
 import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
+import org.elasticsearch.indices.cluster.IndicesClusterStateService;
 import org.elasticsearch.indices.fielddata.cache.IndicesFieldDataCache;
 import org.elasticsearch.indices.recovery.RecoverySettings;
 import org.elasticsearch.indices.store.IndicesStore;
@@ -107,6 +109,7 @@ import org.elasticsearch.search.aggregations.MultiBucketConsumerService;
 import org.elasticsearch.search.fetch.subphase.highlight.FastVectorHighlighter;
 import org.elasticsearch.snapshots.InternalSnapshotsInfoService;
 import org.elasticsearch.snapshots.SnapshotsService;
+import org.elasticsearch.threadpool.AdaptiveThreadPoolSizer;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.ProxyConnectionStrategy;
 import org.elasticsearch.transport.RemoteClusterService;
@@ -214,6 +217,8 @@ public final class ClusterSettings extends AbstractScopedSettings {
             IndicesQueryCache.INDICES_CACHE_QUERY_SIZE_SETTING,
             IndicesQueryCache.INDICES_CACHE_QUERY_COUNT_SETTING,
             IndicesQueryCache.INDICES_QUERIES_CACHE_ALL_SEGMENTS_SETTING,
+            IndicesQueryCache.INDICES_QUERIES_CACHE_STRIPED_SETTING,
+            IndicesStoredFieldsCache.INDICES_STORED_FIELDS_CACHE_SIZE_SETTING,
             IndicesService.INDICES_ID_FIELD_DATA_ENABLED_SETTING,
             IndicesService.WRITE_DANGLING_INDICES_INFO_SETTING,
             MappingUpdatedAction.INDICES_MAPPING_DYNAMIC_TIMEOUT_SETTING,
@@ -228,6 +233,7 @@ public final class ClusterSettings extends AbstractScopedSettings {
             RecoverySettings.INDICES_RECOVERY_INTERNAL_ACTION_TIMEOUT_SETTING,
             RecoverySettings.INDICES_RECOVERY_INTERNAL_LONG_ACTION_TIMEOUT_SETTING,
             RecoverySettings.INDICES_RECOVERY_MAX_CONCURRENT_FILE_CHUNKS_SETTING,
+            RecoverySettings.INDICES_RECOVERY_ADAPTIVE_FILE_CHUNKS_SETTING,
             RecoverySettings.INDICES_RECOVERY_MAX_CONCURRENT_OPERATIONS_SETTING,
             ThrottlingAllocationDecider.CLUSTER_ROUTING_ALLOCATION_NODE_INITIAL_PRIMARIES_RECOVERIES_SETTING,
             ThrottlingAllocationDecider.CLUSTER_ROUTING_ALLOCATION_NODE_CONCURRENT_INCOMING_RECOVERIES_SETTING,
@@ -317,6 +323,7 @@ public final class ClusterSettings extends AbstractScopedSettings {
             SearchService.DEFAULT_ALLOW_PARTIAL_SEARCH_RESULTS,
             ElectMasterService.DISCOVERY_ZEN_MINIMUM_MASTER_NODES_SETTING,
             TransportSearchAction.SHARD_COUNT_LIMIT_SETTING,
+            TransportSearchAction.CAN_MATCH_BATCH_BY_NODE_SETTING,
             RemoteClusterService.REMOTE_CLUSTER_SKIP_UNAVAILABLE,
             RemoteClusterService.SEARCH_REMOTE_CLUSTER_SKIP_UNAVAILABLE,
             SniffConnectionStrategy.REMOTE_CONNECTIONS_PER_CLUSTER,
@@ -358,6 +365,8 @@ public final class ClusterSettings extends AbstractScopedSettings {
             TransportSettings.PUBLISH_PORT_PROFILE,
             TransportSettings.OLD_TRANSPORT_COMPRESS,
             TransportSettings.TRANSPORT_COMPRESS,
+            TransportSettings.TRANSPORT_COMPRESSION_SCHEME,
+            TransportSettings.TRANSPORT_COMPRESSION_MIN_SIZE,
             TransportSettings.PING_SCHEDULE,
             TransportSettings.TCP_CONNECT_TIMEOUT,
             TransportSettings.CONNECT_TIMEOUT,
@@ -392,6 +401,8 @@ public final class ClusterSettings extends AbstractScopedSettings {
             TransportSettings.TRACE_LOG_EXCLUDE_SETTING,
             TransportSettings.TRACE_LOG_INCLUDE_SETTING,
             TransportSettings.SLOW_OPERATION_THRESHOLD_SETTING,
+            TransportSettings.REQUEST_BATCHING_WINDOW,
+            TransportSettings.REQUEST_BATCHING_MAX_SIZE,
             NetworkService.NETWORK_SERVER,
             NetworkService.GLOBAL_NETWORK_HOST_SETTING,
             NetworkService.GLOBAL_NETWORK_BIND_HOST_SETTING,
@@ -418,9 +429,11 @@ public final class ClusterSettings extends AbstractScopedSettings {
             ScriptService.TYPES_ALLOWED_SETTING,
             ScriptService.CONTEXTS_ALLOWED_SETTING,
             IndicesService.INDICES_CACHE_CLEAN_INTERVAL_SETTING,
+            IndicesClusterStateService.INDICES_CLUSTER_UPDATE_CONCURRENCY_SETTING,
             IndicesFieldDataCache.INDICES_FIELDDATA_CACHE_SIZE_KEY,
             IndicesRequestCache.INDICES_CACHE_QUERY_SIZE,
             IndicesRequestCache.INDICES_CACHE_QUERY_EXPIRE,
+            IndicesRequestCache.INDICES_CACHE_QUERY_EVICTION_POLICY,
             HunspellService.HUNSPELL_LAZY_LOAD,
             HunspellService.HUNSPELL_IGNORE_CASE,
             HunspellService.HUNSPELL_DICTIONARY_OPTIONS,
@@ -464,6 +477,7 @@ public final class ClusterSettings extends AbstractScopedSettings {
             SearchService.ALLOW_EXPENSIVE_QUERIES,
             MultiBucketConsumerService.MAX_BUCKET_SETTING,
             SearchService.LOW_LEVEL_CANCELLATION_SETTING,
+            SearchService.FETCH_MAX_CONCURRENCY_SETTING,
             SearchService.MAX_OPEN_SCROLL_CONTEXT,
             Node.WRITE_PORTS_FILE_SETTING,
             Node.NODE_NAME_SETTING,
@@ -515,6 +529,12 @@ public final class ClusterSettings extends AbstractScopedSettings {
             ResourceWatcherService.RELOAD_INTERVAL_LOW,
             SearchModule.INDICES_MAX_CLAUSE_COUNT_SETTING,
             ThreadPool.ESTIMATED_TIME_INTERVAL_SETTING,
+            AdaptiveThreadPoolSizer.ENABLED_SETTING,
+            AdaptiveThreadPoolSizer.POOLS_SETTING,
+            AdaptiveThreadPoolSizer.TOTAL_THREADS_SETTING,
+            AdaptiveThreadPoolSizer.MIN_THREADS_SETTING,
+            AdaptiveThreadPoolSizer.TARGET_QUEUE_WAIT_SETTING,
+            AdaptiveThreadPoolSizer.INTERVAL_SETTING,
             FastVectorHighlighter.SETTING_TV_HIGHLIGHT_MULTI_VALUE,
             Node.BREAKER_TYPE_KEY,
             OperationRouting.USE_ADAPTIVE_REPLICA_SELECTION_SETTING,
@@ -24,6 +24,7 @@ import org.elasticsearch.index.MergePolicyConfig;
 import org.elasticsearch.index.MergeSchedulerConfig;
 import org.elasticsearch.index.SearchSlowLog;
 import org.elasticsearch.index.cache.bitset.BitsetFilterCache;
+import org.elasticsearch.index.codec.rollup.SegmentRollupConfig;
 import org.elasticsearch.index.engine.EngineConfig;
 import org.elasticsearch.index.fielddata.IndexFieldDataService;
 import org.elasticsearch.index.mapper.FieldMapper;
@@ -156,6 +157,9 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
         FsDirectoryFactory.INDEX_LOCK_FACTOR_SETTING,
         Store.FORCE_RAM_TERM_DICT,
         EngineConfig.INDEX_CODEC_SETTING,
+        SegmentRollupConfig.DATE_FIELD_SETTING,
+        SegmentRollupConfig.INTERVAL_SETTING,
+        SegmentRollupConfig.METRIC_FIELDS_SETTING,
         EngineConfig.INDEX_OPTIMIZE_AUTO_GENERATED_IDS,
         IndexMetadata.SETTING_WAIT_FOR_ACTIVE_SHARDS,
         IndexSettings.DEFAULT_PIPELINE,
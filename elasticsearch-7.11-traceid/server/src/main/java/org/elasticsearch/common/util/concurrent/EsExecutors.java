@@ -18,6 +18,7 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.node.Node;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.BlockingQueue;
@@ -134,6 +135,28 @@ public class EsExecutors {
                 new EsAbortPolicy(), contextHolder);
     }
 
+    /**
+     * Return a new executor like {@link #newAutoQueueFixed(String, int, int, int, int, int, TimeValue, ThreadFactory, ThreadContext)}
+     * whose queue interleaves the tasks of different groups by weighted fair queueing rather than running them in order.
+     *
+     * @param groupHeader the thread context header that holds the group of a task
+     * @param groupWeights the weight of each group, groups that are not listed have a weight of 1
+     */
+    public static EsThreadPoolExecutor newAutoQueueFixedFair(String name, int size, int initialQueueCapacity, int minQueueSize,
+                                                             int maxQueueSize, int frameSize, TimeValue targetedResponseTime,
+                                                             String groupHeader, Map<String, Integer> groupWeights,
+                                                             ThreadFactory threadFactory, ThreadContext contextHolder) {
+        if (initialQueueCapacity <= 0) {
+            throw new IllegalArgumentException("initial queue capacity for [" + name + "] executor must be positive, got: " +
+                            initialQueueCapacity);
+        }
+        final WeightedFairBlockingQueue fairQueue = new WeightedFairBlockingQueue(contextHolder, groupHeader, groupWeights);
+        final ResizableBlockingQueue<Runnable> queue = new ResizableBlockingQueue<>(fairQueue, initialQueueCapacity);
+        return new QueueResizingEsThreadPoolExecutor(name, size, size, 0, TimeUnit.MILLISECONDS,
+                queue, fairQueue, minQueueSize, maxQueueSize, TimedRunnable::new, frameSize, targetedResponseTime, threadFactory,
+                new EsAbortPolicy(), contextHolder);
+    }
+
     /**
      * Checks if the runnable arose from asynchronous submission of a task to an executor. If an uncaught exception was thrown
      * during the execution of this task, we need to inspect this runnable and see if it is an error that should be propagated
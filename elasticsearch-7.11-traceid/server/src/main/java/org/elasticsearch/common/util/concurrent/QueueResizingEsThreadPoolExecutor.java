@@ -12,6 +12,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.elasticsearch.common.ExponentiallyWeightedMovingAverage;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.unit.TimeValue;
 
 import java.util.Locale;
@@ -41,6 +42,8 @@ public final class QueueResizingEsThreadPoolExecutor extends EsThreadPoolExecuto
     private final int maxQueueSize;
     private final long targetedResponseTimeNanos;
     private final ExponentiallyWeightedMovingAverage executionEWMA;
+    @Nullable
+    private final WeightedFairBlockingQueue fairQueue;
 
     private final AtomicLong totalTaskNanos = new AtomicLong(0);
     private final AtomicInteger taskCount = new AtomicInteger(0);
@@ -52,8 +55,25 @@ public final class QueueResizingEsThreadPoolExecutor extends EsThreadPoolExecuto
                                       Function<Runnable, WrappedRunnable> runnableWrapper, final int tasksPerFrame,
                                       TimeValue targetedResponseTime, ThreadFactory threadFactory, XRejectedExecutionHandler handler,
                                       ThreadContext contextHolder) {
+        this(name, corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, null, minQueueSize, maxQueueSize, runnableWrapper,
+            tasksPerFrame, targetedResponseTime, threadFactory, handler, contextHolder);
+    }
+
+    /**
+     * @param fairQueue the queue wrapped by {@code workQueue} if it is a {@link WeightedFairBlockingQueue}, which is told about
+     *                  the completion of its tasks
+     */
+    QueueResizingEsThreadPoolExecutor(String name, int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                      ResizableBlockingQueue<Runnable> workQueue, @Nullable WeightedFairBlockingQueue fairQueue,
+                                      int minQueueSize, int maxQueueSize, Function<Runnable, WrappedRunnable> runnableWrapper,
+                                      final int tasksPerFrame, TimeValue targetedResponseTime, ThreadFactory threadFactory,
+                                      XRejectedExecutionHandler handler, ThreadContext contextHolder) {
         super(name, corePoolSize, maximumPoolSize, keepAliveTime, unit,
                 workQueue, threadFactory, handler, contextHolder);
+        this.fairQueue = fairQueue;
+        if (fairQueue != null) {
+            fairQueue.setMaxConcurrency(this::getMaximumPoolSize);
+        }
         this.runnableWrapper = runnableWrapper;
         this.workQueue = workQueue;
         this.tasksPerFrame = tasksPerFrame;
@@ -148,6 +168,9 @@ public final class QueueResizingEsThreadPoolExecutor extends EsThreadPoolExecuto
             // taskExecutionNanos may be -1 if the task threw an exception
             executionEWMA.addValue(taskExecutionNanos);
         }
+        if (fairQueue != null) {
+            fairQueue.onCompletion(r, taskExecutionNanos);
+        }
 
         if (taskCount.incrementAndGet() == this.tasksPerFrame) {
             final long endTimeNs = System.nanoTime();
@@ -233,6 +256,9 @@ public final class QueueResizingEsThreadPoolExecutor extends EsThreadPoolExecuto
         sb.append("targeted response rate = ").append(TimeValue.timeValueNanos(targetedResponseTimeNanos)).append(", ");
         sb.append("task execution EWMA = ").append(TimeValue.timeValueNanos((long) executionEWMA.getAverage())).append(", ");
         sb.append("adjustment amount = ").append(QUEUE_ADJUSTMENT_AMOUNT).append(", ");
+        if (fairQueue != null) {
+            sb.append("fair queue, ");
+        }
     }
 
 }
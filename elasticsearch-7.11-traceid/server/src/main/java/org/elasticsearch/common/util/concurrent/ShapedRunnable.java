@@ -0,0 +1,22 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.common.util.concurrent;
+
+/**
+ * A {@link Runnable} that declares the shape of the work it does. Executors with a fair queue estimate the cost of a task from the
+ * previous executions of tasks of the same shape.
+ */
+public interface ShapedRunnable extends Runnable {
+
+    /**
+     * Returns the shape of this task. Tasks that do similar work should have the same shape.
+     */
+    String shape();
+}
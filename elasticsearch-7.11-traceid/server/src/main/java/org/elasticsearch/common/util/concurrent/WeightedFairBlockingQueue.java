@@ -0,0 +1,380 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.common.util.concurrent;
+
+import org.elasticsearch.common.ExponentiallyWeightedMovingAverage;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
+/**
+ * An unbounded blocking queue of tasks that interleaves the tasks of different groups by weighted fair queueing, rather than
+ * running them in the order they were submitted. The group of a task is read from a header of the thread context when it is
+ * submitted, which works because {@link java.util.concurrent.ThreadPoolExecutor} enqueues tasks on the submitting thread.
+ * <p>
+ * Each group is charged for the estimated cost of its tasks divided by its weight, and the next task is taken from the group
+ * that was charged the least. The cost of a {@link ShapedRunnable} is the average execution time of the previous tasks of the
+ * same shape, other tasks cost the average execution time of all tasks. A group also can't run more than its weighted share
+ * of the threads of the executor while the tasks of other groups are waiting.
+ * <p>
+ * The capacity of the queue is enforced by the {@link SizeBlockingQueue} that wraps it.
+ */
+final class WeightedFairBlockingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    /**
+     * The group of the tasks that are submitted without the group header.
+     */
+    static final String DEFAULT_GROUP = "";
+
+    static final double EWMA_ALPHA = 0.3;
+    static final long INITIAL_COST_NANOS = TimeValue.timeValueMillis(1).nanos();
+    private static final int MAX_SHAPES = 1000;
+
+    private final ThreadContext threadContext;
+    private final String groupHeader;
+    private final Map<String, Integer> groupWeights;
+    private final Cache<String, ExponentiallyWeightedMovingAverage> shapeCosts;
+    private final ExponentiallyWeightedMovingAverage defaultCost = new ExponentiallyWeightedMovingAverage(EWMA_ALPHA, INITIAL_COST_NANOS);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    // the groups that have queued or running tasks
+    private final Map<String, Group> groups = new HashMap<>();
+    // the group of each task that was taken from this queue and is still running
+    private final Map<Runnable, Group> runningTasks = new IdentityHashMap<>();
+    private volatile IntSupplier maxConcurrency = () -> Integer.MAX_VALUE;
+    private int count;
+    private long virtualTime;
+
+    /**
+     * @param threadContext the thread context to read the group header from
+     * @param groupHeader   the header that holds the group of a task
+     * @param groupWeights  the weight of each group, groups that are not listed have a weight of 1
+     */
+    WeightedFairBlockingQueue(ThreadContext threadContext, String groupHeader, Map<String, Integer> groupWeights) {
+        this.threadContext = threadContext;
+        this.groupHeader = groupHeader;
+        this.groupWeights = Collections.unmodifiableMap(new HashMap<>(groupWeights));
+        this.shapeCosts = CacheBuilder.<String, ExponentiallyWeightedMovingAverage>builder().setMaximumWeight(MAX_SHAPES).build();
+    }
+
+    /**
+     * Sets the supplier of the number of threads that take tasks from this queue, which bounds the share of each group.
+     */
+    void setMaxConcurrency(IntSupplier maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Called when a task that may have been taken from this queue completed, with its execution time or -1 if it failed.
+     */
+    void onCompletion(Runnable task, long executionNanos) {
+        if (executionNanos > 0) {
+            defaultCost.addValue(executionNanos);
+            final String shape = shapeOf(task);
+            if (shape != null) {
+                try {
+                    shapeCosts.computeIfAbsent(shape, s -> new ExponentiallyWeightedMovingAverage(EWMA_ALPHA, executionNanos))
+                        .addValue(executionNanos);
+                } catch (ExecutionException e) {
+                    throw new AssertionError("computing the cost of a new shape can't fail", e);
+                }
+            }
+        }
+        lock.lock();
+        try {
+            final Group group = runningTasks.remove(task);
+            if (group != null) {
+                group.running--;
+                removeIfIdle(group);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the estimated execution time of the given task in nanoseconds.
+     */
+    long estimateCostNanos(Runnable task) {
+        final String shape = shapeOf(task);
+        if (shape != null) {
+            final ExponentiallyWeightedMovingAverage cost = shapeCosts.get(shape);
+            if (cost != null) {
+                return Math.max(1L, (long) cost.getAverage());
+            }
+        }
+        return Math.max(1L, (long) defaultCost.getAverage());
+    }
+
+    private static String shapeOf(Runnable task) {
+        while (true) {
+            if (task instanceof ShapedRunnable) {
+                return ((ShapedRunnable) task).shape();
+            } else if (task instanceof WrappedRunnable) {
+                task = ((WrappedRunnable) task).unwrap();
+            } else {
+                return null;
+            }
+        }
+    }
+
+    private String currentGroup() {
+        final String group = threadContext.getHeader(groupHeader);
+        return group == null ? DEFAULT_GROUP : group;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        Objects.requireNonNull(task);
+        final String groupName = currentGroup();
+        final long cost = estimateCostNanos(task);
+        lock.lock();
+        try {
+            final Group group = groups.computeIfAbsent(groupName, name -> new Group(groupWeights.getOrDefault(name, 1)));
+            // a group that was idle starts from the current virtual time rather than from where it left, so it can't catch up
+            final long startTag = Math.max(virtualTime, group.lastFinishTag);
+            group.lastFinishTag = startTag + Math.max(1L, cost / group.weight);
+            group.tasks.addLast(new Entry(task, startTag));
+            count++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+        return offer(task);
+    }
+
+    @Override
+    public void put(Runnable task) {
+        offer(task);
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0L) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            return count == 0 ? null : nextGroup().tasks.peekFirst().task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Runnable dequeue() {
+        assert lock.isHeldByCurrentThread();
+        final Group group = nextGroup();
+        final Entry entry = group.tasks.pollFirst();
+        count--;
+        virtualTime = Math.max(virtualTime, entry.startTag);
+        group.running++;
+        runningTasks.put(entry.task, group);
+        return entry.task;
+    }
+
+    /**
+     * Returns the group whose next task has the smallest start tag, preferring the groups that run less than their share of
+     * the threads. Must only be called if there are queued tasks.
+     */
+    private Group nextGroup() {
+        assert lock.isHeldByCurrentThread();
+        assert count > 0;
+        int totalWeight = 0;
+        for (Group group : groups.values()) {
+            totalWeight += group.weight;
+        }
+        final int threads = maxConcurrency.getAsInt();
+        Group next = null;
+        boolean nextBelowShare = false;
+        for (Group group : groups.values()) {
+            if (group.tasks.isEmpty()) {
+                continue;
+            }
+            final int share = Math.max(1, (int) Math.min(Integer.MAX_VALUE, (long) threads * group.weight / totalWeight));
+            final boolean belowShare = group.running < share;
+            if (next == null
+                || (belowShare && nextBelowShare == false)
+                || (belowShare == nextBelowShare && group.tasks.peekFirst().startTag < next.tasks.peekFirst().startTag)) {
+                next = group;
+                nextBelowShare = belowShare;
+            }
+        }
+        assert next != null;
+        return next;
+    }
+
+    private void removeIfIdle(Group group) {
+        assert lock.isHeldByCurrentThread();
+        if (group.tasks.isEmpty() && group.running == 0) {
+            groups.values().remove(group);
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            for (Group group : groups.values()) {
+                for (Iterator<Entry> iterator = group.tasks.iterator(); iterator.hasNext(); ) {
+                    if (iterator.next().task == o) {
+                        iterator.remove();
+                        count--;
+                        removeIfIdle(group);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns a snapshot of the queued tasks, which does not support removal.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        lock.lock();
+        try {
+            final List<Runnable> tasks = new ArrayList<>(count);
+            for (Group group : groups.values()) {
+                for (Entry entry : group.tasks) {
+                    tasks.add(entry.task);
+                }
+            }
+            return Collections.unmodifiableList(tasks).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            for (Group group : groups.values()) {
+                while (drained < maxElements && group.tasks.isEmpty() == false) {
+                    c.add(group.tasks.pollFirst().task);
+                    drained++;
+                }
+            }
+            count -= drained;
+            groups.values().removeIf(group -> group.tasks.isEmpty() && group.running == 0);
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Group {
+        final int weight;
+        final ArrayDeque<Entry> tasks = new ArrayDeque<>();
+        // the virtual time at which the last queued task of this group finishes
+        long lastFinishTag;
+        int running;
+
+        Group(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final class Entry {
+        final Runnable task;
+        final long startTag;
+
+        Entry(Runnable task, long startTag) {
+            this.task = task;
+            this.startTag = startTag;
+        }
+    }
+}
@@ -14,11 +14,16 @@ import org.apache.lucene.util.automaton.CharacterRunAutomaton;
 import org.apache.lucene.util.automaton.Operations;
 import org.elasticsearch.ElasticsearchParseException;
 import org.elasticsearch.common.Booleans;
+import org.elasticsearch.common.CheckedBiConsumer;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Numbers;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -208,16 +213,56 @@ public class XContentMapValues {
      */
     public static Function<Map<String, ?>, Map<String, Object>> filter(String[] includes, String[] excludes) {
         CharacterRunAutomaton matchAllAutomaton = new CharacterRunAutomaton(Automata.makeAnyString());
+        CharacterRunAutomaton include = includeAutomaton(includes, matchAllAutomaton);
+        CharacterRunAutomaton exclude = excludeAutomaton(excludes);
 
-        CharacterRunAutomaton include;
+        // NOTE: We cannot use Operations.minus because of the special case that
+        // we want all sub properties to match as soon as an object matches
+
+        return (map) -> filter(map,
+            include, 0,
+            exclude, 0,
+            matchAllAutomaton);
+    }
+
+    /**
+     * Returns a function that copies the object a parser is positioned on to a builder, only keeping the properties that
+     * match the given include and exclude rules. The rules are the same as for {@link #filter(Map, String[], String[])},
+     * but the document is read in a single pass: properties that cannot match are skipped without being parsed into java
+     * objects and properties that match as a whole are copied as they are, so only the selected parts of the document are
+     * materialized. Unlike the map based filter, properties keep the order they have in the document.
+     */
+    public static CheckedBiConsumer<XContentParser, XContentBuilder, IOException> filterStreaming(String[] includes,
+                                                                                                  String[] excludes) {
+        CharacterRunAutomaton matchAllAutomaton = new CharacterRunAutomaton(Automata.makeAnyString());
+        CharacterRunAutomaton include = includeAutomaton(includes, matchAllAutomaton);
+        CharacterRunAutomaton exclude = excludeAutomaton(excludes);
+
+        return (parser, builder) -> {
+            XContentParser.Token token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+            if (token != XContentParser.Token.START_OBJECT) {
+                throw new ElasticsearchParseException("expected an object but got [{}]", token);
+            }
+            PendingContainer root = new PendingContainer(null, null, false);
+            root.start(builder);
+            filter(parser, builder, root,
+                include, 0,
+                exclude, 0,
+                matchAllAutomaton);
+            root.end(builder, true);
+        };
+    }
+
+    private static CharacterRunAutomaton includeAutomaton(String[] includes, CharacterRunAutomaton matchAllAutomaton) {
         if (includes == null || includes.length == 0) {
-            include = matchAllAutomaton;
-        } else {
-            Automaton includeA = Regex.simpleMatchToAutomaton(includes);
-            includeA = makeMatchDotsInFieldNames(includeA);
-            include = new CharacterRunAutomaton(includeA);
+            return matchAllAutomaton;
         }
+        Automaton includeA = Regex.simpleMatchToAutomaton(includes);
+        includeA = makeMatchDotsInFieldNames(includeA);
+        return new CharacterRunAutomaton(includeA);
+    }
 
+    private static CharacterRunAutomaton excludeAutomaton(String[] excludes) {
         Automaton excludeA;
         if (excludes == null || excludes.length == 0) {
             excludeA = Automata.makeEmpty();
@@ -225,15 +270,7 @@ public class XContentMapValues {
             excludeA = Regex.simpleMatchToAutomaton(excludes);
             excludeA = makeMatchDotsInFieldNames(excludeA);
         }
-        CharacterRunAutomaton exclude = new CharacterRunAutomaton(excludeA);
-
-        // NOTE: We cannot use Operations.minus because of the special case that
-        // we want all sub properties to match as soon as an object matches
-
-        return (map) -> filter(map,
-            include, 0,
-            exclude, 0,
-            matchAllAutomaton);
+        return new CharacterRunAutomaton(excludeA);
     }
 
     /** Make matches on objects also match dots in field names.
@@ -358,6 +395,170 @@ public class XContentMapValues {
         return filtered;
     }
 
+    /**
+     * Streaming counterpart of the map based filter above: reads the properties of the object the parser is positioned on
+     * and writes those that pass the filter to the builder.
+     */
+    private static void filter(XContentParser parser, XContentBuilder builder, PendingContainer container,
+            CharacterRunAutomaton includeAutomaton, int initialIncludeState,
+            CharacterRunAutomaton excludeAutomaton, int initialExcludeState,
+            CharacterRunAutomaton matchAllAutomaton) throws IOException {
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            assert token == XContentParser.Token.FIELD_NAME : "expected a field name but got " + token;
+            String key = parser.currentName();
+            token = parser.nextToken();
+
+            int includeState = step(includeAutomaton, key, initialIncludeState);
+            if (includeState == -1) {
+                parser.skipChildren();
+                continue;
+            }
+
+            int excludeState = step(excludeAutomaton, key, initialExcludeState);
+            if (excludeState != -1 && excludeAutomaton.isAccept(excludeState)) {
+                parser.skipChildren();
+                continue;
+            }
+
+            CharacterRunAutomaton subIncludeAutomaton = includeAutomaton;
+            int subIncludeState = includeState;
+            if (includeAutomaton.isAccept(includeState)) {
+                if (excludeState == -1 || excludeAutomaton.step(excludeState, '.') == -1) {
+                    // the exclude has no chances to match inner properties
+                    container.start(builder);
+                    builder.field(key);
+                    builder.copyCurrentStructure(parser);
+                    continue;
+                } else {
+                    // the object matched, so consider that the include matches every inner property
+                    // we only care about excludes now
+                    subIncludeAutomaton = matchAllAutomaton;
+                    subIncludeState = 0;
+                }
+            }
+
+            if (token == XContentParser.Token.START_OBJECT) {
+
+                subIncludeState = subIncludeAutomaton.step(subIncludeState, '.');
+                if (subIncludeState == -1) {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (excludeState != -1) {
+                    excludeState = excludeAutomaton.step(excludeState, '.');
+                }
+
+                PendingContainer object = new PendingContainer(container, key, false);
+                filter(parser, builder, object,
+                        subIncludeAutomaton, subIncludeState, excludeAutomaton, excludeState, matchAllAutomaton);
+                object.end(builder, includeAutomaton.isAccept(includeState));
+
+            } else if (token == XContentParser.Token.START_ARRAY) {
+
+                PendingContainer array = new PendingContainer(container, key, true);
+                filterArray(parser, builder, array,
+                        subIncludeAutomaton, subIncludeState, excludeAutomaton, excludeState, matchAllAutomaton);
+                array.end(builder, includeAutomaton.isAccept(includeState));
+
+            } else {
+
+                // leaf property
+                if (includeAutomaton.isAccept(includeState)
+                        && (excludeState == -1 || excludeAutomaton.isAccept(excludeState) == false)) {
+                    container.start(builder);
+                    builder.field(key);
+                    builder.copyCurrentStructure(parser);
+                }
+
+            }
+
+        }
+    }
+
+    private static void filterArray(XContentParser parser, XContentBuilder builder, PendingContainer container,
+            CharacterRunAutomaton includeAutomaton, int initialIncludeState,
+            CharacterRunAutomaton excludeAutomaton, int initialExcludeState,
+            CharacterRunAutomaton matchAllAutomaton) throws IOException {
+        boolean isInclude = includeAutomaton.isAccept(initialIncludeState);
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+            if (token == XContentParser.Token.START_OBJECT) {
+                int includeState = includeAutomaton.step(initialIncludeState, '.');
+                if (includeState == -1) {
+                    parser.skipChildren();
+                    continue;
+                }
+                int excludeState = initialExcludeState;
+                if (excludeState != -1) {
+                    excludeState = excludeAutomaton.step(excludeState, '.');
+                }
+                PendingContainer object = new PendingContainer(container, null, false);
+                filter(parser, builder, object,
+                        includeAutomaton, includeState, excludeAutomaton, excludeState, matchAllAutomaton);
+                object.end(builder, false);
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                PendingContainer array = new PendingContainer(container, null, true);
+                filterArray(parser, builder, array,
+                        includeAutomaton, initialIncludeState, excludeAutomaton, initialExcludeState, matchAllAutomaton);
+                array.end(builder, false);
+            } else if (isInclude) {
+                // #22557: only accept this array value if the key we are on is accepted:
+                container.start(builder);
+                builder.copyCurrentStructure(parser);
+            }
+        }
+    }
+
+    /**
+     * An object or array of the filtered document that is only written once something that passes the filter is written
+     * into it, so that objects and arrays that end up empty can be dropped like the map based filter does.
+     */
+    private static final class PendingContainer {
+        private final PendingContainer parent;
+        @Nullable
+        private final String fieldName;
+        private final boolean array;
+        private boolean started;
+
+        PendingContainer(@Nullable PendingContainer parent, @Nullable String fieldName, boolean array) {
+            this.parent = parent;
+            this.fieldName = fieldName;
+            this.array = array;
+        }
+
+        void start(XContentBuilder builder) throws IOException {
+            if (started) {
+                return;
+            }
+            if (parent != null) {
+                parent.start(builder);
+            }
+            if (fieldName != null) {
+                builder.field(fieldName);
+            }
+            if (array) {
+                builder.startArray();
+            } else {
+                builder.startObject();
+            }
+            started = true;
+        }
+
+        void end(XContentBuilder builder, boolean keepIfEmpty) throws IOException {
+            if (keepIfEmpty) {
+                start(builder);
+            }
+            if (started) {
+                if (array) {
+                    builder.endArray();
+                } else {
+                    builder.endObject();
+                }
+            }
+        }
+    }
+
     public static boolean isObject(Object node) {
         return node instanceof Map;
     }
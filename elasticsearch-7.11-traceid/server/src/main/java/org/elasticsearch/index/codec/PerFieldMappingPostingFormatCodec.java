@@ -10,10 +10,13 @@ package org.elasticsearch.index.codec;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.DocValuesFormat;
 import org.apache.lucene.codecs.PostingsFormat;
 import org.apache.lucene.codecs.lucene87.Lucene87StoredFieldsFormat;
 import org.apache.lucene.codecs.lucene87.Lucene87Codec;
 import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.index.codec.rollup.RollupDocValuesFormat;
+import org.elasticsearch.index.codec.rollup.SegmentRollupConfig;
 import org.elasticsearch.index.mapper.CompletionFieldMapper;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.MapperService;
@@ -25,10 +28,15 @@ import org.elasticsearch.index.mapper.MapperService;
  * allows users to change the low level postings format for individual fields
  * per index in real time via the mapping API. If no specific postings format is
  * configured for a specific field the default postings format is used.
+ * <p>
+ * If the index is configured with {@link SegmentRollupConfig segment rollups}
+ * the fields they are built from use the {@link RollupDocValuesFormat}.
  */
 public class PerFieldMappingPostingFormatCodec extends Lucene87Codec {
     private final Logger logger;
     private final MapperService mapperService;
+    private final SegmentRollupConfig rollupConfig;
+    private final DocValuesFormat rollupDocValuesFormat;
 
     static {
         assert Codec.forName(Lucene.LATEST_CODEC).getClass().isAssignableFrom(PerFieldMappingPostingFormatCodec.class) :
@@ -39,6 +47,8 @@ public class PerFieldMappingPostingFormatCodec extends Lucene87Codec {
         super(compressionMode);
         this.mapperService = mapperService;
         this.logger = logger;
+        this.rollupConfig = SegmentRollupConfig.fromSettings(mapperService.getIndexSettings().getSettings());
+        this.rollupDocValuesFormat = rollupConfig == null ? null : new RollupDocValuesFormat(rollupConfig, mapperService::fieldType);
     }
 
     @Override
@@ -52,4 +62,12 @@ public class PerFieldMappingPostingFormatCodec extends Lucene87Codec {
         return super.getPostingsFormatForField(field);
     }
 
+    @Override
+    public DocValuesFormat getDocValuesFormatForField(String field) {
+        if (rollupConfig != null && rollupConfig.isRollupField(field)) {
+            return rollupDocValuesFormat;
+        }
+        return super.getDocValuesFormatForField(field);
+    }
+
 }
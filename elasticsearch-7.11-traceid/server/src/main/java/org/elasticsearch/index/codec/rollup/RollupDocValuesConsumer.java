@@ -0,0 +1,213 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.index.codec.rollup;
+
+import org.apache.lucene.codecs.DocValuesConsumer;
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.document.HalfFloatPoint;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.common.CheckedSupplier;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongToDoubleFunction;
+
+/**
+ * Writes doc values with a delegate {@link DocValuesConsumer} and builds the
+ * {@link SegmentRollup} of the segment from them once all fields have been
+ * written. The doc values producers that Lucene passes to the consumer stay
+ * valid until the consumer is closed, both on flush and on merge.
+ */
+final class RollupDocValuesConsumer extends DocValuesConsumer {
+    /**
+     * We don't write rollups with more buckets than this, they'd be of
+     * little use for the aggregations that would have to read them.
+     */
+    static final int MAX_BUCKETS = 1 << 16;
+
+    private final DocValuesConsumer delegate;
+    private final SegmentWriteState state;
+    private final SegmentRollupConfig config;
+    private final Function<String, MappedFieldType> fieldTypes;
+    private final Map<String, CheckedSupplier<SortedNumericDocValues, IOException>> values = new HashMap<>();
+
+    RollupDocValuesConsumer(DocValuesConsumer delegate, SegmentWriteState state, SegmentRollupConfig config,
+                            Function<String, MappedFieldType> fieldTypes) {
+        this.delegate = delegate;
+        this.state = state;
+        this.config = config;
+        this.fieldTypes = fieldTypes;
+    }
+
+    @Override
+    public void addNumericField(FieldInfo field, DocValuesProducer valuesProducer) throws IOException {
+        delegate.addNumericField(field, valuesProducer);
+        if (config.isRollupField(field.name)) {
+            values.put(field.name, () -> DocValues.singleton(valuesProducer.getNumeric(field)));
+        }
+    }
+
+    @Override
+    public void addBinaryField(FieldInfo field, DocValuesProducer valuesProducer) throws IOException {
+        delegate.addBinaryField(field, valuesProducer);
+    }
+
+    @Override
+    public void addSortedField(FieldInfo field, DocValuesProducer valuesProducer) throws IOException {
+        delegate.addSortedField(field, valuesProducer);
+    }
+
+    @Override
+    public void addSortedNumericField(FieldInfo field, DocValuesProducer valuesProducer) throws IOException {
+        delegate.addSortedNumericField(field, valuesProducer);
+        if (config.isRollupField(field.name)) {
+            values.put(field.name, () -> valuesProducer.getSortedNumeric(field));
+        }
+    }
+
+    @Override
+    public void addSortedSetField(FieldInfo field, DocValuesProducer valuesProducer) throws IOException {
+        delegate.addSortedSetField(field, valuesProducer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        boolean success = false;
+        try {
+            writeRollup();
+            success = true;
+        } finally {
+            if (success) {
+                IOUtils.close(delegate);
+            } else {
+                IOUtils.closeWhileHandlingException(delegate);
+            }
+        }
+    }
+
+    private void writeRollup() throws IOException {
+        CheckedSupplier<SortedNumericDocValues, IOException> dateValuesSupplier = values.get(config.dateField());
+        MappedFieldType dateFieldType = fieldTypes.apply(config.dateField());
+        if (dateValuesSupplier == null
+            || dateFieldType instanceof DateFieldMapper.DateFieldType == false
+            || ((DateFieldMapper.DateFieldType) dateFieldType).resolution() != DateFieldMapper.Resolution.MILLISECONDS) {
+            return;
+        }
+        List<String> metricFields = new ArrayList<>();
+        List<LongToDoubleFunction> decoders = new ArrayList<>();
+        List<SortedNumericDocValues> metricValues = new ArrayList<>();
+        for (String field : config.metricFields()) {
+            CheckedSupplier<SortedNumericDocValues, IOException> supplier = values.get(field);
+            LongToDoubleFunction decoder = decoder(fieldTypes.apply(field));
+            if (supplier != null && decoder != null) {
+                metricFields.add(field);
+                decoders.add(decoder);
+                metricValues.add(supplier.get());
+            }
+        }
+        boolean[] keepMetric = new boolean[metricFields.size()];
+        Arrays.fill(keepMetric, true);
+
+        SegmentRollup.Builder builder =
+            new SegmentRollup.Builder(config.dateField(), config.interval(), metricFields.toArray(new String[0]));
+        SortedNumericDocValues dateValues = dateValuesSupplier.get();
+        int previousDoc = -1;
+        for (int doc = dateValues.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = dateValues.nextDoc()) {
+            if (dateValues.docValueCount() != 1) {
+                // documents with many timestamps are counted in more than one bucket
+                return;
+            }
+            SegmentRollup.BucketBuilder bucket = builder.addDoc(dateValues.nextValue());
+            if (builder.numBuckets() > MAX_BUCKETS) {
+                return;
+            }
+            for (int m = 0; m < metricValues.size(); m++) {
+                SortedNumericDocValues metric = metricValues.get(m);
+                if (metric.docID() < doc && advanceTo(metric, previousDoc, doc)) {
+                    // the rollup wouldn't know about values of documents without a timestamp
+                    keepMetric[m] = false;
+                }
+                if (metric.docID() == doc) {
+                    LongToDoubleFunction decoder = decoders.get(m);
+                    for (int i = 0; i < metric.docValueCount(); i++) {
+                        bucket.addValue(m, decoder.applyAsDouble(metric.nextValue()));
+                    }
+                }
+            }
+            previousDoc = doc;
+        }
+        for (int m = 0; m < metricValues.size(); m++) {
+            SortedNumericDocValues metric = metricValues.get(m);
+            if (metric.docID() < DocIdSetIterator.NO_MORE_DOCS
+                && (metric.docID() > previousDoc || metric.nextDoc() != DocIdSetIterator.NO_MORE_DOCS)) {
+                keepMetric[m] = false;
+            }
+        }
+
+        String fileName = IndexFileNames.segmentFileName(state.segmentInfo.name, "", SegmentRollup.EXTENSION);
+        try (IndexOutput out = state.directory.createOutput(fileName, state.context)) {
+            builder.write(out, state.segmentInfo.getId(), keepMetric);
+        }
+    }
+
+    /**
+     * Moves {@code values} to the first document on or after {@code target}
+     * and returns whether it skipped a document with values that comes after
+     * the {@code previous} document with a timestamp.
+     */
+    private static boolean advanceTo(SortedNumericDocValues values, int previous, int target) throws IOException {
+        boolean skipped = values.docID() > previous;
+        int doc = values.nextDoc();
+        while (doc < target) {
+            skipped = true;
+            doc = values.nextDoc();
+        }
+        return skipped;
+    }
+
+    /**
+     * Decodes the doc values of a numeric field or returns {@code null}
+     * if we don't roll up fields of this type.
+     */
+    private static LongToDoubleFunction decoder(MappedFieldType fieldType) {
+        if (fieldType instanceof NumberFieldMapper.NumberFieldType == false) {
+            return null;
+        }
+        switch (((NumberFieldMapper.NumberFieldType) fieldType).numericType()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return v -> v;
+            case HALF_FLOAT:
+                return v -> HalfFloatPoint.sortableShortToHalfFloat((short) v);
+            case FLOAT:
+                return v -> NumericUtils.sortableIntToFloat((int) v);
+            case DOUBLE:
+                return NumericUtils::sortableLongToDouble;
+            default:
+                return null;
+        }
+    }
+}
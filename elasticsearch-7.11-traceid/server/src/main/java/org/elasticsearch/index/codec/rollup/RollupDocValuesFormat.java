@@ -0,0 +1,65 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.index.codec.rollup;
+
+import org.apache.lucene.codecs.DocValuesConsumer;
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.codecs.lucene80.Lucene80DocValuesFormat;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.elasticsearch.index.mapper.MappedFieldType;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * {@link DocValuesFormat} for the fields that {@link SegmentRollup}s are
+ * built from. The doc values themselves are written and read with the
+ * default {@link Lucene80DocValuesFormat}, the rollup is written next to
+ * them when the segment is flushed or merged.
+ * <p>
+ * Lucene looks up formats by name when it opens a segment, this uses the
+ * no-argument constructor which only needs to read doc values since the
+ * rollup file is read by {@link SegmentRollupCache#load}.
+ */
+public final class RollupDocValuesFormat extends DocValuesFormat {
+
+    public static final String NAME = "ESRollup87";
+
+    private final DocValuesFormat delegate = new Lucene80DocValuesFormat();
+    private final SegmentRollupConfig config;
+    private final Function<String, MappedFieldType> fieldTypes;
+
+    /**
+     * Used by Lucene to read segments.
+     */
+    public RollupDocValuesFormat() {
+        this(null, null);
+    }
+
+    public RollupDocValuesFormat(SegmentRollupConfig config, Function<String, MappedFieldType> fieldTypes) {
+        super(NAME);
+        this.config = config;
+        this.fieldTypes = fieldTypes;
+    }
+
+    @Override
+    public DocValuesConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+        DocValuesConsumer consumer = delegate.fieldsConsumer(state);
+        if (config == null) {
+            return consumer;
+        }
+        return new RollupDocValuesConsumer(consumer, state, config, fieldTypes);
+    }
+
+    @Override
+    public DocValuesProducer fieldsProducer(SegmentReadState state) throws IOException {
+        return delegate.fieldsProducer(state);
+    }
+}
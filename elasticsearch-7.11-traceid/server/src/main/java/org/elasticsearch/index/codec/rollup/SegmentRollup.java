@@ -0,0 +1,516 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.index.codec.rollup;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.query.DateRangeIncludingNowQuery;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pre-computed per segment rollup of the documents of a segment: the number
+ * of documents per interval of a date field and the count, sum, min and max
+ * of some numeric fields within each interval. Rollups are written by
+ * {@link RollupDocValuesFormat} when a segment is flushed or merged, so they
+ * are always in sync with the documents of the segment as long as none of
+ * them are deleted.
+ * <p>
+ * Top level aggregations can use them instead of the doc values of the
+ * segment when the query selects whole buckets, see {@link #select(Query)}.
+ */
+public final class SegmentRollup implements Accountable {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(SegmentRollup.class);
+
+    static final String CODEC_NAME = "ESSegmentRollup";
+    static final String EXTENSION = "esr";
+    static final int VERSION_START = 0;
+    static final int VERSION_CURRENT = VERSION_START;
+
+    private final String dateField;
+    private final long interval;
+    private final long[] bucketStarts;
+    private final long[] docCounts;
+    private final long[] minTimestamps;
+    private final long[] maxTimestamps;
+    private final Map<String, MetricValues> metrics;
+    private final int offset;
+    private final int length;
+
+    private SegmentRollup(String dateField, long interval, long[] bucketStarts, long[] docCounts, long[] minTimestamps,
+                          long[] maxTimestamps, Map<String, MetricValues> metrics, int offset, int length) {
+        this.dateField = dateField;
+        this.interval = interval;
+        this.bucketStarts = bucketStarts;
+        this.docCounts = docCounts;
+        this.minTimestamps = minTimestamps;
+        this.maxTimestamps = maxTimestamps;
+        this.metrics = metrics;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * The date field that the documents are bucketed on.
+     */
+    public String dateField() {
+        return dateField;
+    }
+
+    /**
+     * The width of the buckets in milliseconds.
+     */
+    public long interval() {
+        return interval;
+    }
+
+    /**
+     * The number of non-empty buckets.
+     */
+    public int numBuckets() {
+        return length;
+    }
+
+    public long bucketStart(int bucket) {
+        return bucketStarts[offset + bucket];
+    }
+
+    public long docCount(int bucket) {
+        return docCounts[offset + bucket];
+    }
+
+    /**
+     * The smallest value of the date field in the bucket.
+     */
+    public long minTimestamp(int bucket) {
+        return minTimestamps[offset + bucket];
+    }
+
+    /**
+     * The largest value of the date field in the bucket.
+     */
+    public long maxTimestamp(int bucket) {
+        return maxTimestamps[offset + bucket];
+    }
+
+    /**
+     * The rolled up values of {@code field} or {@code null} if they weren't
+     * rolled up in this segment.
+     */
+    @Nullable
+    public Metric metric(String field) {
+        MetricValues values = metrics.get(field);
+        return values == null ? null : new Metric(values, offset);
+    }
+
+    /**
+     * Restricts this rollup to the buckets of the documents that match
+     * {@code query}, or returns {@code null} if it can't tell which documents
+     * match. That is the case unless the query only filters on ranges of the
+     * date field and each bucket is entirely inside or entirely outside of
+     * these ranges. A {@code null} query matches all documents.
+     */
+    @Nullable
+    public SegmentRollup select(@Nullable Query query) {
+        long[] bounds = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+        if (query != null && restrictBounds(dateField, query, bounds) == false) {
+            return null;
+        }
+        int from = -1;
+        int to = -1;
+        for (int i = 0; i < length; i++) {
+            long min = minTimestamp(i);
+            long max = maxTimestamp(i);
+            if (max < bounds[0] || min > bounds[1]) {
+                continue;
+            }
+            if (min < bounds[0] || max > bounds[1]) {
+                // only some of the documents in the bucket match
+                return null;
+            }
+            if (from == -1) {
+                from = i;
+            }
+            to = i + 1;
+        }
+        if (from == -1) {
+            return new SegmentRollup(dateField, interval, bucketStarts, docCounts, minTimestamps, maxTimestamps, metrics, offset, 0);
+        }
+        return new SegmentRollup(dateField, interval, bucketStarts, docCounts, minTimestamps, maxTimestamps, metrics,
+            offset + from, to - from);
+    }
+
+    /**
+     * Whether {@link #select} can restrict the rollups of {@code dateField}
+     * written with {@code interval} to {@code query} without splitting any
+     * bucket, whatever the documents of the segment. That is the case if the
+     * query only filters on ranges of the date field that start and end on
+     * bucket boundaries.
+     */
+    public static boolean selectsWholeBuckets(String dateField, long interval, @Nullable Query query) {
+        long[] bounds = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+        if (query != null && restrictBounds(dateField, query, bounds) == false) {
+            return false;
+        }
+        boolean alignedFrom = bounds[0] == Long.MIN_VALUE || Math.floorMod(bounds[0], interval) == 0;
+        boolean alignedTo = bounds[1] == Long.MAX_VALUE || Math.floorMod(bounds[1] + 1, interval) == 0;
+        return alignedFrom && alignedTo;
+    }
+
+    private static boolean restrictBounds(String dateField, Query query, long[] bounds) {
+        if (query instanceof MatchAllDocsQuery) {
+            return true;
+        }
+        if (query instanceof ConstantScoreQuery) {
+            return restrictBounds(dateField, ((ConstantScoreQuery) query).getQuery(), bounds);
+        }
+        if (query instanceof BoostQuery) {
+            return restrictBounds(dateField, ((BoostQuery) query).getQuery(), bounds);
+        }
+        if (query instanceof DateRangeIncludingNowQuery) {
+            return restrictBounds(dateField, ((DateRangeIncludingNowQuery) query).getQuery(), bounds);
+        }
+        if (query instanceof IndexOrDocValuesQuery) {
+            return restrictBounds(dateField, ((IndexOrDocValuesQuery) query).getIndexQuery(), bounds);
+        }
+        if (query instanceof PointRangeQuery) {
+            PointRangeQuery rangeQuery = (PointRangeQuery) query;
+            if (dateField.equals(rangeQuery.getField()) == false
+                || rangeQuery.getNumDims() != 1
+                || rangeQuery.getBytesPerDim() != Long.BYTES) {
+                return false;
+            }
+            bounds[0] = Math.max(bounds[0], LongPoint.decodeDimension(rangeQuery.getLowerPoint(), 0));
+            bounds[1] = Math.min(bounds[1], LongPoint.decodeDimension(rangeQuery.getUpperPoint(), 0));
+            return true;
+        }
+        if (query instanceof BooleanQuery) {
+            for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+                if (clause.isRequired() == false || clause.isProhibited()) {
+                    return false;
+                }
+                if (restrictBounds(dateField, clause.getQuery(), bounds) == false) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Restricts this rollup to the fields that {@code fieldInfos} exposes
+     * with doc values, or returns {@code null} if they don't expose the date
+     * field. Readers that wrap the segment, like the ones of field level
+     * security, may hide fields that the rollup was written from.
+     */
+    @Nullable
+    SegmentRollup visibleIn(FieldInfos fieldInfos) {
+        if (hasDocValues(fieldInfos, dateField) == false) {
+            return null;
+        }
+        Map<String, MetricValues> visibleMetrics = null;
+        for (String field : metrics.keySet()) {
+            if (hasDocValues(fieldInfos, field) == false) {
+                if (visibleMetrics == null) {
+                    visibleMetrics = new HashMap<>(metrics);
+                }
+                visibleMetrics.remove(field);
+            }
+        }
+        if (visibleMetrics == null) {
+            return this;
+        }
+        return new SegmentRollup(dateField, interval, bucketStarts, docCounts, minTimestamps, maxTimestamps,
+            Collections.unmodifiableMap(visibleMetrics), offset, length);
+    }
+
+    private static boolean hasDocValues(FieldInfos fieldInfos, String field) {
+        FieldInfo fieldInfo = fieldInfos.fieldInfo(field);
+        return fieldInfo != null && fieldInfo.getDocValuesType() != DocValuesType.NONE;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long ramBytesUsed = BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bucketStarts) + RamUsageEstimator.sizeOf(docCounts)
+            + RamUsageEstimator.sizeOf(minTimestamps) + RamUsageEstimator.sizeOf(maxTimestamps);
+        for (Map.Entry<String, MetricValues> metric : metrics.entrySet()) {
+            ramBytesUsed += RamUsageEstimator.sizeOf(metric.getKey()) + metric.getValue().ramBytesUsed();
+        }
+        return ramBytesUsed;
+    }
+
+    /**
+     * Returns the segment behind {@code reader}, or {@code null} if it
+     * isn't a {@link SegmentReader}.
+     */
+    @Nullable
+    static SegmentReader unwrap(LeafReader reader) {
+        while (reader instanceof FilterLeafReader) {
+            reader = ((FilterLeafReader) reader).getDelegate();
+        }
+        return reader instanceof SegmentReader ? (SegmentReader) reader : null;
+    }
+
+    /**
+     * Reads the rollup of a segment or returns {@code null} if the segment
+     * doesn't have one.
+     */
+    @Nullable
+    static SegmentRollup read(SegmentInfo info) throws IOException {
+        String fileName = IndexFileNames.segmentFileName(info.name, "", EXTENSION);
+        if (info.getUseCompoundFile()) {
+            try (Directory cfs = info.getCodec().compoundFormat().getCompoundReader(info.dir, info, IOContext.READONCE)) {
+                if (Arrays.asList(cfs.listAll()).contains(fileName) == false) {
+                    return null;
+                }
+                return read(cfs, fileName, info.getId());
+            }
+        }
+        if (info.files().contains(fileName) == false) {
+            return null;
+        }
+        return read(info.dir, fileName, info.getId());
+    }
+
+    static SegmentRollup read(Directory directory, String fileName, byte[] segmentId) throws IOException {
+        try (ChecksumIndexInput in = directory.openChecksumInput(fileName, IOContext.READONCE)) {
+            CodecUtil.checkIndexHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT, segmentId, "");
+            String dateField = in.readString();
+            long interval = in.readVLong();
+            int numBuckets = in.readVInt();
+            String[] metricFields = new String[in.readVInt()];
+            MetricValues[] metricValues = new MetricValues[metricFields.length];
+            Map<String, MetricValues> metrics = new HashMap<>();
+            for (int m = 0; m < metricFields.length; m++) {
+                metricFields[m] = in.readString();
+                metricValues[m] = new MetricValues(numBuckets);
+                metrics.put(metricFields[m], metricValues[m]);
+            }
+            long[] bucketStarts = new long[numBuckets];
+            long[] docCounts = new long[numBuckets];
+            long[] minTimestamps = new long[numBuckets];
+            long[] maxTimestamps = new long[numBuckets];
+            for (int b = 0; b < numBuckets; b++) {
+                bucketStarts[b] = b == 0 ? in.readZLong() : bucketStarts[b - 1] + in.readVLong();
+                docCounts[b] = in.readVLong();
+                minTimestamps[b] = bucketStarts[b] + in.readVLong();
+                maxTimestamps[b] = bucketStarts[b] + in.readVLong();
+                for (MetricValues values : metricValues) {
+                    values.valueCounts[b] = in.readVLong();
+                    if (values.valueCounts[b] > 0) {
+                        values.sums[b] = Double.longBitsToDouble(in.readLong());
+                        values.mins[b] = Double.longBitsToDouble(in.readLong());
+                        values.maxs[b] = Double.longBitsToDouble(in.readLong());
+                    }
+                }
+            }
+            CodecUtil.checkFooter(in);
+            return new SegmentRollup(dateField, interval, bucketStarts, docCounts, minTimestamps, maxTimestamps,
+                Collections.unmodifiableMap(metrics), 0, numBuckets);
+        }
+    }
+
+    /**
+     * Rolled up values of a numeric field.
+     */
+    public static final class Metric {
+        private final MetricValues values;
+        private final int offset;
+
+        private Metric(MetricValues values, int offset) {
+            this.values = values;
+            this.offset = offset;
+        }
+
+        public long valueCount(int bucket) {
+            return values.valueCounts[offset + bucket];
+        }
+
+        public double sum(int bucket) {
+            return values.sums[offset + bucket];
+        }
+
+        public double min(int bucket) {
+            return valueCount(bucket) == 0 ? Double.POSITIVE_INFINITY : values.mins[offset + bucket];
+        }
+
+        public double max(int bucket) {
+            return valueCount(bucket) == 0 ? Double.NEGATIVE_INFINITY : values.maxs[offset + bucket];
+        }
+    }
+
+    private static final class MetricValues {
+        final long[] valueCounts;
+        final double[] sums;
+        final double[] mins;
+        final double[] maxs;
+
+        MetricValues(int numBuckets) {
+            valueCounts = new long[numBuckets];
+            sums = new double[numBuckets];
+            mins = new double[numBuckets];
+            maxs = new double[numBuckets];
+        }
+
+        long ramBytesUsed() {
+            return RamUsageEstimator.sizeOf(valueCounts) + RamUsageEstimator.sizeOf(sums) + RamUsageEstimator.sizeOf(mins)
+                + RamUsageEstimator.sizeOf(maxs);
+        }
+    }
+
+    /**
+     * Accumulates the rollup of a segment while it is written.
+     */
+    static final class Builder {
+        private final String dateField;
+        private final long interval;
+        private final String[] metricFields;
+        private final TreeMap<Long, BucketBuilder> buckets = new TreeMap<>();
+
+        Builder(String dateField, long interval, String[] metricFields) {
+            this.dateField = dateField;
+            this.interval = interval;
+            this.metricFields = metricFields;
+        }
+
+        /**
+         * Adds a document with the given timestamp and returns the bucket
+         * to add its metric values to.
+         */
+        BucketBuilder addDoc(long timestamp) {
+            long start = Math.floorDiv(timestamp, interval) * interval;
+            BucketBuilder bucket = buckets.computeIfAbsent(start, s -> new BucketBuilder(metricFields.length));
+            bucket.docCount++;
+            bucket.minTimestamp = Math.min(bucket.minTimestamp, timestamp);
+            bucket.maxTimestamp = Math.max(bucket.maxTimestamp, timestamp);
+            return bucket;
+        }
+
+        int numBuckets() {
+            return buckets.size();
+        }
+
+        /**
+         * Writes the rollup, leaving out the metrics that aren't in {@code keepMetric}.
+         */
+        void write(IndexOutput out, byte[] segmentId, boolean[] keepMetric) throws IOException {
+            CodecUtil.writeIndexHeader(out, CODEC_NAME, VERSION_CURRENT, segmentId, "");
+            out.writeString(dateField);
+            out.writeVLong(interval);
+            out.writeVInt(buckets.size());
+            int numMetrics = 0;
+            for (boolean keep : keepMetric) {
+                numMetrics += keep ? 1 : 0;
+            }
+            out.writeVInt(numMetrics);
+            for (int m = 0; m < metricFields.length; m++) {
+                if (keepMetric[m]) {
+                    out.writeString(metricFields[m]);
+                }
+            }
+            long previousStart = 0;
+            boolean first = true;
+            for (Map.Entry<Long, BucketBuilder> entry : buckets.entrySet()) {
+                long start = entry.getKey();
+                if (first) {
+                    out.writeZLong(start);
+                    first = false;
+                } else {
+                    out.writeVLong(start - previousStart);
+                }
+                previousStart = start;
+                entry.getValue().write(out, start, keepMetric);
+            }
+            CodecUtil.writeFooter(out);
+        }
+    }
+
+    static final class BucketBuilder {
+        private long docCount;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private final long[] valueCounts;
+        private final double[] sums;
+        private final double[] compensations;
+        private final double[] mins;
+        private final double[] maxs;
+
+        private BucketBuilder(int numMetrics) {
+            valueCounts = new long[numMetrics];
+            sums = new double[numMetrics];
+            compensations = new double[numMetrics];
+            mins = new double[numMetrics];
+            maxs = new double[numMetrics];
+            Arrays.fill(mins, Double.POSITIVE_INFINITY);
+            Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        }
+
+        void addValue(int metric, double value) {
+            valueCounts[metric]++;
+            mins[metric] = Math.min(mins[metric], value);
+            maxs[metric] = Math.max(maxs[metric], value);
+            // Kahan summation, like the sum aggregation does
+            if (Double.isFinite(value) == false) {
+                sums[metric] += value;
+            } else if (Double.isFinite(sums[metric])) {
+                double corrected = value - compensations[metric];
+                double newSum = sums[metric] + corrected;
+                compensations[metric] = (newSum - sums[metric]) - corrected;
+                sums[metric] = newSum;
+            }
+        }
+
+        private void write(DataOutput out, long start, boolean[] keepMetric) throws IOException {
+            out.writeVLong(docCount);
+            out.writeVLong(minTimestamp - start);
+            out.writeVLong(maxTimestamp - start);
+            for (int m = 0; m < valueCounts.length; m++) {
+                if (keepMetric[m] == false) {
+                    continue;
+                }
+                out.writeVLong(valueCounts[m]);
+                if (valueCounts[m] > 0) {
+                    out.writeLong(Double.doubleToLongBits(sums[m]));
+                    out.writeLong(Double.doubleToLongBits(mins[m]));
+                    out.writeLong(Double.doubleToLongBits(maxs[m]));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.index.codec.rollup;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SegmentReader;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link SegmentRollup}s of the segments of a shard. A rollup is read
+ * once per segment core, when an aggregation first asks for it, and removed
+ * when the core is closed. The loaded rollups are charged to the given
+ * breaker, like the rest of the memory that segments hold on to. A rollup
+ * that doesn't fit under the breaker isn't kept, aggregations read the doc
+ * values of its segment instead.
+ */
+public final class SegmentRollupCache {
+
+    private final CircuitBreaker breaker;
+    private final Map<IndexReader.CacheKey, Optional<SegmentRollup>> loaded = ConcurrentCollections.newConcurrentMap();
+    private final AtomicLong ramBytesUsed = new AtomicLong();
+
+    public SegmentRollupCache(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    /**
+     * Loads the rollup of the segment behind {@code reader}, restricted to
+     * the fields that {@code reader} exposes with doc values. Returns
+     * {@code null} if the segment doesn't have a rollup, if {@code reader}
+     * hides its date field or if some of its documents are deleted, in which
+     * case the rollup counts documents that don't exist anymore.
+     */
+    @Nullable
+    public SegmentRollup load(LeafReader reader) throws IOException {
+        if (reader.numDeletedDocs() > 0) {
+            return null;
+        }
+        SegmentReader segmentReader = SegmentRollup.unwrap(reader);
+        if (segmentReader == null) {
+            return null;
+        }
+        IndexReader.CacheHelper cacheHelper = segmentReader.getCoreCacheHelper();
+        Optional<SegmentRollup> rollup = loaded.get(cacheHelper.getKey());
+        if (rollup == null) {
+            rollup = Optional.ofNullable(SegmentRollup.read(segmentReader.getSegmentInfo().info));
+            long bytes = rollup.map(SegmentRollup::ramBytesUsed).orElse(0L);
+            try {
+                breaker.addEstimateBytesAndMaybeBreak(bytes, "<segment_rollup>");
+            } catch (CircuitBreakingException e) {
+                return null;
+            }
+            Optional<SegmentRollup> existing = loaded.putIfAbsent(cacheHelper.getKey(), rollup);
+            if (existing == null) {
+                ramBytesUsed.addAndGet(bytes);
+                cacheHelper.addClosedListener(this::onClose);
+            } else {
+                breaker.addWithoutBreaking(-bytes);
+                rollup = existing;
+            }
+        }
+        return rollup.map(r -> r.visibleIn(reader.getFieldInfos())).orElse(null);
+    }
+
+    private void onClose(IndexReader.CacheKey coreKey) {
+        Optional<SegmentRollup> rollup = loaded.remove(coreKey);
+        if (rollup != null) {
+            long bytes = rollup.map(SegmentRollup::ramBytesUsed).orElse(0L);
+            ramBytesUsed.addAndGet(-bytes);
+            breaker.addWithoutBreaking(-bytes);
+        }
+    }
+
+    /**
+     * Returns the memory used by the loaded rollups, in bytes.
+     */
+    public long ramBytesUsed() {
+        return ramBytesUsed.get();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.index.codec.rollup;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Configures the {@link SegmentRollup}s that are written alongside each
+ * segment of an index: the number of documents per {@code interval} of
+ * {@code date_field} and the count, sum, min and max of each of the
+ * {@code metric_fields} in that interval.
+ */
+public final class SegmentRollupConfig {
+
+    public static final Setting<String> DATE_FIELD_SETTING =
+        Setting.simpleString("index.codec.rollup.date_field", Property.IndexScope, Property.Final);
+    public static final Setting<TimeValue> INTERVAL_SETTING =
+        Setting.timeSetting("index.codec.rollup.interval", TimeValue.timeValueMinutes(1), TimeValue.timeValueMillis(1),
+            Property.IndexScope, Property.Final);
+    public static final Setting<List<String>> METRIC_FIELDS_SETTING =
+        Setting.listSetting("index.codec.rollup.metric_fields", Collections.emptyList(), Function.identity(),
+            Property.IndexScope, Property.Final);
+
+    private final String dateField;
+    private final long interval;
+    private final Set<String> metricFields;
+
+    public SegmentRollupConfig(String dateField, long interval, Set<String> metricFields) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("[" + INTERVAL_SETTING.getKey() + "] must be positive but was [" + interval + "]");
+        }
+        this.dateField = dateField;
+        this.interval = interval;
+        this.metricFields = Collections.unmodifiableSet(new LinkedHashSet<>(metricFields));
+    }
+
+    /**
+     * Reads the configuration from the index settings or returns {@code null}
+     * if the index doesn't have rollups.
+     */
+    @Nullable
+    public static SegmentRollupConfig fromSettings(Settings settings) {
+        String dateField = DATE_FIELD_SETTING.get(settings);
+        if (dateField.isEmpty()) {
+            return null;
+        }
+        return new SegmentRollupConfig(dateField, INTERVAL_SETTING.get(settings).millis(),
+            new LinkedHashSet<>(METRIC_FIELDS_SETTING.get(settings)));
+    }
+
+    public String dateField() {
+        return dateField;
+    }
+
+    /**
+     * The width of each rollup bucket in milliseconds.
+     */
+    public long interval() {
+        return interval;
+    }
+
+    public Set<String> metricFields() {
+        return metricFields;
+    }
+
+    /**
+     * Whether the doc values of {@code field} are needed to build the rollups.
+     */
+    public boolean isRollupField(String field) {
+        return dateField.equals(field) || metricFields.contains(field);
+    }
+}
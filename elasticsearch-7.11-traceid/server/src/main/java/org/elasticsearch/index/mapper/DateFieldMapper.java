@@ -429,12 +429,12 @@ public final class DateFieldMapper extends FieldMapper {
             Resolution resolution,
             BiFunction<Long, Long, Query> builder
         ) {
-            return handleNow(context, nowSupplier -> {
+            Query query = handleNow(context, nowSupplier -> {
                 long l, u;
                 if (lowerTerm == null) {
                     l = Long.MIN_VALUE;
                 } else {
-                    l = parseToLong(lowerTerm, !includeLower, timeZone, parser, nowSupplier, resolution);
+                    l = parseBound(lowerTerm, !includeLower, timeZone, parser, nowSupplier, context, resolution);
                     if (includeLower == false) {
                         ++l;
                     }
@@ -442,13 +442,48 @@ public final class DateFieldMapper extends FieldMapper {
                 if (upperTerm == null) {
                     u = Long.MAX_VALUE;
                 } else {
-                    u = parseToLong(upperTerm, includeUpper, timeZone, parser, nowSupplier, resolution);
+                    u = parseBound(upperTerm, includeUpper, timeZone, parser, nowSupplier, context, resolution);
                     if (includeUpper == false) {
                         --u;
                     }
                 }
                 return builder.apply(l, u);
             });
+            if ((isRoundedNow(lowerTerm) || isRoundedNow(upperTerm)) && query instanceof DateRangeIncludingNowQuery == false) {
+                query = new DateRangeIncludingNowQuery(query);
+            }
+            return query;
+        }
+
+        /**
+         * Parses a bound of a range query. Bounds that only depend on {@code now} through rounding, like {@code now-15m/m},
+         * are resolved with {@link QueryShardContext#resolveRoundedNow} so that they don't prevent caching the request.
+         */
+        private static long parseBound(
+            Object value,
+            boolean roundUp,
+            @Nullable ZoneId zone,
+            DateMathParser dateParser,
+            LongSupplier now,
+            QueryShardContext context,
+            Resolution resolution
+        ) {
+            if (isRoundedNow(value)) {
+                return context.resolveRoundedNow(roundedNow -> parseToLong(value, roundUp, zone, dateParser, roundedNow, resolution));
+            }
+            return parseToLong(value, roundUp, zone, dateParser, now, resolution);
+        }
+
+        /**
+         * Whether the date math expression starts from {@code now} and rounds it, e.g. {@code now-15m/m}. Such expressions
+         * resolve to the same value for every {@code now} in the same rounding interval.
+         */
+        static boolean isRoundedNow(@Nullable Object value) {
+            if (value == null) {
+                return false;
+            }
+            String text = BytesRefs.toString(value);
+            return text.startsWith("now") && text.indexOf('/') >= 0;
         }
 
         /**
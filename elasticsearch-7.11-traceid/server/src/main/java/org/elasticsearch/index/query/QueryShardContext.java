@@ -76,6 +76,7 @@ import java.util.function.Function;
 import java.util.function.LongSupplier;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 import static java.util.Collections.unmodifiableMap;
 
@@ -98,6 +99,7 @@ public class QueryShardContext extends QueryRewriteContext {
     private final IndexSearcher searcher;
     private String[] types = Strings.EMPTY_ARRAY;
     private boolean cacheable = true;
+    private final List<Long> roundedNowValues = new ArrayList<>();
     private final SetOnce<Boolean> frozen = new SetOnce<>();
 
     private final Index fullyQualifiedIndex;
@@ -578,6 +580,27 @@ public class QueryShardContext extends QueryRewriteContext {
         return cacheable;
     }
 
+    /**
+     * Resolves a value that only depends on the current time through rounding, like the date math {@code now-15m/m}.
+     * Unlike {@link #nowInMillis()} this doesn't make the request uncacheable. Instead the resolved value is recorded
+     * and becomes part of the request cache key, so requests that resolve to the same value share cache entries.
+     */
+    public final long resolveRoundedNow(ToLongFunction<LongSupplier> resolver) {
+        if (frozen.get() == Boolean.TRUE) {
+            failIfFrozen();
+        }
+        long value = resolver.applyAsLong(super::nowInMillis);
+        roundedNowValues.add(value);
+        return value;
+    }
+
+    /**
+     * Returns the values resolved by {@link #resolveRoundedNow}, in the order they were resolved.
+     */
+    public final long[] getRoundedNowValues() {
+        return roundedNowValues.stream().mapToLong(Long::longValue).toArray();
+    }
+
     /**
      * Returns the shard ID this context was created for.
      */
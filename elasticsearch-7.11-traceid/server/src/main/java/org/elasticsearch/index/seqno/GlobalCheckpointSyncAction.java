@@ -65,6 +65,9 @@ public class GlobalCheckpointSyncAction extends TransportReplicationAction<
                 Request::new,
                 Request::new,
                 ThreadPool.Names.MANAGEMENT);
+        // every shard copy syncs in the background, so these small requests are worth batching per node
+        transportService.enableRequestBatching(transportPrimaryAction);
+        transportService.enableRequestBatching(transportReplicaAction);
     }
 
     public void updateGlobalCheckpointForShard(final ShardId shardId) {
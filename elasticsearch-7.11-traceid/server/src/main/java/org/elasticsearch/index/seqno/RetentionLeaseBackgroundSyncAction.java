@@ -83,6 +83,9 @@ public class RetentionLeaseBackgroundSyncAction extends TransportReplicationActi
                 Request::new,
                 Request::new,
                 ThreadPool.Names.MANAGEMENT);
+        // every shard copy syncs in the background, so these small requests are worth batching per node
+        transportService.enableRequestBatching(transportPrimaryAction);
+        transportService.enableRequestBatching(transportReplicaAction);
     }
 
     @Override
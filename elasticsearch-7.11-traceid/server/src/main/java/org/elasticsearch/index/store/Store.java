@@ -81,6 +81,7 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -499,12 +500,141 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
         return new VerifyingIndexInput(directory().openInput(filename, context));
     }
 
+    /**
+     * Opens an input over the part of the given file that starts at the given offset, which computes the checksum of that part as it
+     * is read. This lets the parts of a file be read independently: once they are all read, {@link #verifyParts} checks the whole file
+     * from the {@link PartChecksum} of each part, without reading the file again.
+     */
+    public IndexInput openVerifyingInput(String filename, IOContext context, StoreFileMetadata metadata, long offset) throws IOException {
+        assert metadata.writtenBy() != null;
+        final IndexInput input = directory().openInput(filename, context);
+        boolean success = false;
+        try {
+            if (input.length() != metadata.length()) {
+                throw new CorruptIndexException("expected length=" + metadata.length() + " != actual length: " + input.length() +
+                    " : file truncated?", input);
+            }
+            input.seek(offset);
+            final IndexInput verifyingInput = new VerifyingIndexInput(input, new BufferedChecksum(new CRC32()), offset);
+            success = true;
+            return verifyingInput;
+        } finally {
+            if (success == false) {
+                IOUtils.closeWhileHandlingException(input);
+            }
+        }
+    }
+
     public static void verify(IndexInput input) throws IOException {
         if (input instanceof VerifyingIndexInput) {
             ((VerifyingIndexInput) input).verify();
         }
     }
 
+    /**
+     * Returns the checksum of the bytes read so far from an input opened by {@link #openVerifyingInput(String, IOContext,
+     * StoreFileMetadata, long)}.
+     */
+    public static PartChecksum getPartChecksum(IndexInput input) {
+        if (input instanceof VerifyingIndexInput == false) {
+            throw new IllegalArgumentException("input [" + input + "] doesn't compute checksums");
+        }
+        return ((VerifyingIndexInput) input).getPartChecksum();
+    }
+
+    /**
+     * Verifies a file from the checksums of all its parts, as if it had been read through a single verifying input.
+     *
+     * @throws CorruptIndexException if the parts don't cover the whole file, or if the checksum of the file doesn't match the checksum
+     *                               stored in its footer or in its metadata
+     */
+    public static void verifyParts(StoreFileMetadata metadata, List<PartChecksum> parts) throws CorruptIndexException {
+        final long checksumPosition = metadata.length() - 8;
+        final List<PartChecksum> sortedParts = new ArrayList<>(parts);
+        sortedParts.sort(Comparator.comparingLong(part -> part.startPosition));
+        final byte[] storedChecksum = new byte[8];
+        long checksum = 0L;
+        long position = 0L;
+        for (PartChecksum part : sortedParts) {
+            if (part.startPosition != position) {
+                throw new CorruptIndexException("parts don't cover the file: expected a part at [" + position + "] but got ["
+                    + part.startPosition + "]", metadata.name());
+            }
+            checksum = combineChecksums(checksum, part.checksum, Math.max(0L, Math.min(part.endPosition, checksumPosition) - position));
+            for (long pos = Math.max(position, checksumPosition); pos < part.endPosition; pos++) {
+                storedChecksum[(int) (pos - checksumPosition)] = part.storedChecksum[(int) (pos - checksumPosition)];
+            }
+            position = part.endPosition;
+        }
+        if (position != metadata.length()) {
+            throw new CorruptIndexException("expected length=" + metadata.length() + " != length of the parts: " + position,
+                metadata.name());
+        }
+        final long stored = new ByteArrayDataInput(storedChecksum).readLong();
+        if (checksum != stored) {
+            throw new CorruptIndexException("verification failed : calculated=" + Store.digestToString(checksum) +
+                " stored=" + Store.digestToString(stored), metadata.name());
+        }
+        if (Store.digestToString(stored).equals(metadata.checksum()) == false) {
+            throw new CorruptIndexException("inconsistent metadata: lucene checksum=" + Store.digestToString(stored) +
+                ", metadata checksum=" + metadata.checksum(), metadata.name());
+        }
+    }
+
+    /**
+     * Returns the CRC32 of the concatenation of two sequences of bytes from their own CRC32s and the length of the second one, like
+     * zlib's {@code crc32_combine} does.
+     */
+    static long combineChecksums(long checksum1, long checksum2, long length2) {
+        if (length2 <= 0) {
+            return checksum1;
+        }
+        // operators that append one zero bit (odd) and then two, four, ... zero bits (even and odd alternately) to a CRC32
+        final long[] even = new long[32];
+        final long[] odd = new long[32];
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+        long checksum = checksum1;
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length2 & 1) != 0) {
+                checksum = gf2MatrixTimes(even, checksum);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((length2 & 1) != 0) {
+                checksum = gf2MatrixTimes(odd, checksum);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return checksum ^ checksum2;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+
     public boolean checkIntegrityNoException(StoreFileMetadata md) {
         return checkIntegrityNoException(md, directory());
     }
@@ -1227,16 +1357,27 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
         private final Checksum digest;
         private final long checksumPosition;
         private final byte[] checksum = new byte[8];
-        private long verifiedPosition = 0;
+        private final long startPosition;
+        private long verifiedPosition;
 
         VerifyingIndexInput(IndexInput input) {
             this(input, new BufferedChecksum(new CRC32()));
         }
 
         VerifyingIndexInput(IndexInput input, Checksum digest) {
+            this(input, digest, 0L);
+        }
+
+        /**
+         * Creates an input that only verifies the bytes from the given position on, which the given input must already be at.
+         */
+        VerifyingIndexInput(IndexInput input, Checksum digest, long startPosition) {
             super("VerifyingIndexInput(" + input + ")");
+            assert input.getFilePointer() == startPosition : input.getFilePointer() + " != " + startPosition;
             this.input = input;
             this.digest = digest;
+            this.startPosition = startPosition;
+            this.verifiedPosition = startPosition;
             checksumPosition = input.length() - 8;
         }
 
@@ -1336,6 +1477,10 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
             return new ByteArrayDataInput(checksum).readLong();
         }
 
+        PartChecksum getPartChecksum() {
+            return new PartChecksum(startPosition, verifiedPosition, digest.getValue(), checksum.clone());
+        }
+
         public long verify() throws CorruptIndexException {
             long storedChecksum = getStoredChecksum();
             if (getChecksum() == storedChecksum) {
@@ -1347,6 +1492,25 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
 
     }
 
+    /**
+     * The checksum of a part of a file, see {@link #openVerifyingInput(String, IOContext, StoreFileMetadata, long)}.
+     */
+    public static final class PartChecksum {
+        private final long startPosition;
+        private final long endPosition;
+        // the checksum of the bytes of the part that precede the checksum stored in the footer of the file
+        private final long checksum;
+        // the bytes of the stored checksum that are in this part, at their position within the stored checksum
+        private final byte[] storedChecksum;
+
+        PartChecksum(long startPosition, long endPosition, long checksum, byte[] storedChecksum) {
+            this.startPosition = startPosition;
+            this.endPosition = endPosition;
+            this.checksum = checksum;
+            this.storedChecksum = storedChecksum;
+        }
+    }
+
     public void deleteQuiet(String... files) {
         ensureOpen();
         StoreDirectory directory = this.directory;
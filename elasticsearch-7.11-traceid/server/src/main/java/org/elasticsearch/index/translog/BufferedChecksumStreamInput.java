@@ -9,6 +9,7 @@
 package org.elasticsearch.index.translog;
 
 import org.apache.lucene.store.BufferedChecksum;
+import org.elasticsearch.common.bytes.ReleasableBytesReference;
 import org.elasticsearch.common.io.stream.FilterStreamInput;
 import org.elasticsearch.common.io.stream.StreamInput;
 
@@ -61,6 +62,12 @@ public final class BufferedChecksumStreamInput extends FilterStreamInput {
 
     private static final ThreadLocal<byte[]> buffer = ThreadLocal.withInitial(() -> new byte[8]);
 
+    @Override
+    public ReleasableBytesReference readReleasableBytesReference() throws IOException {
+        // the bytes must go through the checksum, so they can't be sliced from the delegate
+        return ReleasableBytesReference.wrap(readBytesReference());
+    }
+
     @Override
     public short readShort() throws IOException {
         final byte[] buf = buffer.get();
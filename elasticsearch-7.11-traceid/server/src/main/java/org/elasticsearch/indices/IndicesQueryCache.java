@@ -26,6 +26,7 @@ import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.index.cache.query.QueryCacheStats;
 import org.elasticsearch.index.shard.ShardId;
 
@@ -37,6 +38,8 @@ import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 
 public class IndicesQueryCache implements QueryCache, Closeable {
@@ -52,11 +55,17 @@ public class IndicesQueryCache implements QueryCache, Closeable {
     // enables caching on all segments instead of only the larger ones, for testing only
     public static final Setting<Boolean> INDICES_QUERIES_CACHE_ALL_SEGMENTS_SETTING =
             Setting.boolSetting("indices.queries.cache.all_segments", false, Property.NodeScope);
+    // uses a cache whose lookups don't take a lock and that computes entries in the background,
+    // see StripedQueryCache
+    public static final Setting<Boolean> INDICES_QUERIES_CACHE_STRIPED_SETTING =
+            Setting.boolSetting("indices.queries.cache.striped", false, Property.NodeScope);
 
-    private final LRUQueryCache cache;
+    private static final int MAX_STRIPES = 16;
+
+    private final NodeQueryCache cache;
     private final ShardCoreKeyMap shardKeyMap = new ShardCoreKeyMap();
     private final Map<ShardId, Stats> shardStats = new ConcurrentHashMap<>();
-    private volatile long sharedRamBytesUsed;
+    private final LongAdder sharedRamBytesUsed = new LongAdder();
 
     // This is a hack for the fact that the close listener for the
     // ShardCoreKeyMap will be called before onDocIdSetEviction
@@ -64,16 +73,36 @@ public class IndicesQueryCache implements QueryCache, Closeable {
     private final Map<Object, StatsAndCount> stats2 = Collections.synchronizedMap(new IdentityHashMap<>());
 
     public IndicesQueryCache(Settings settings) {
+        this(settings, EsExecutors.newDirectExecutorService());
+    }
+
+    /**
+     * @param executor the executor that computes cache entries in the background if
+     *                 {@link #INDICES_QUERIES_CACHE_STRIPED_SETTING} is set
+     */
+    public IndicesQueryCache(Settings settings, Executor executor) {
         final ByteSizeValue size = INDICES_CACHE_QUERY_SIZE_SETTING.get(settings);
         final int count = INDICES_CACHE_QUERY_COUNT_SETTING.get(settings);
-        logger.debug("using [node] query cache with size [{}] max filter count [{}]",
-                size, count);
-        if (INDICES_QUERIES_CACHE_ALL_SEGMENTS_SETTING.get(settings)) {
-            cache = new ElasticsearchLRUQueryCache(count, size.getBytes(), context -> true, 1f);
+        final boolean allSegments = INDICES_QUERIES_CACHE_ALL_SEGMENTS_SETTING.get(settings);
+        if (INDICES_QUERIES_CACHE_STRIPED_SETTING.get(settings)) {
+            final int stripes = Math.min(MAX_STRIPES, Integer.highestOneBit(EsExecutors.allocatedProcessors(settings)));
+            logger.debug("using striped [node] query cache with size [{}] max filter count [{}] stripes [{}]",
+                    size, count, stripes);
+            if (allSegments) {
+                cache = new ElasticsearchStripedQueryCache(count, size.getBytes(), context -> true, 1f, stripes, executor);
+            } else {
+                cache = new ElasticsearchStripedQueryCache(count, size.getBytes(), StripedQueryCache.minSegmentSize(10000, .03f),
+                        250, stripes, executor);
+            }
         } else {
-            cache = new ElasticsearchLRUQueryCache(count, size.getBytes());
+            logger.debug("using [node] query cache with size [{}] max filter count [{}]",
+                    size, count);
+            if (allSegments) {
+                cache = new ElasticsearchLRUQueryCache(count, size.getBytes(), context -> true, 1f);
+            } else {
+                cache = new ElasticsearchLRUQueryCache(count, size.getBytes());
+            }
         }
-        sharedRamBytesUsed = 0;
     }
 
     /** Get usage statistics for the given shard. */
@@ -98,7 +127,7 @@ public class IndicesQueryCache implements QueryCache, Closeable {
         final double weight = totalSize == 0
                 ? 1d / stats.size()
                 : ((double) shardStats.getCacheSize()) / totalSize;
-        final long additionalRamBytesUsed = Math.round(weight * sharedRamBytesUsed);
+        final long additionalRamBytesUsed = Math.round(weight * sharedRamBytesUsed.sum());
         shardStats.add(new QueryCacheStats(additionalRamBytesUsed, 0, 0, 0, 0));
         return shardStats;
     }
@@ -189,18 +218,19 @@ public class IndicesQueryCache implements QueryCache, Closeable {
     private static class Stats implements Cloneable {
 
         final ShardId shardId;
-        volatile long ramBytesUsed;
-        volatile long hitCount;
-        volatile long missCount;
-        volatile long cacheCount;
-        volatile long cacheSize;
+        // adders because the striped cache calls the callbacks concurrently
+        final LongAdder ramBytesUsed = new LongAdder();
+        final LongAdder hitCount = new LongAdder();
+        final LongAdder missCount = new LongAdder();
+        final LongAdder cacheCount = new LongAdder();
+        final LongAdder cacheSize = new LongAdder();
 
         Stats(ShardId shardId) {
             this.shardId = shardId;
         }
 
         QueryCacheStats toQueryCacheStats() {
-            return new QueryCacheStats(ramBytesUsed, hitCount, missCount, cacheCount, cacheSize);
+            return new QueryCacheStats(ramBytesUsed.sum(), hitCount.sum(), missCount.sum(), cacheCount.sum(), cacheSize.sum());
         }
 
         @Override
@@ -229,7 +259,7 @@ public class IndicesQueryCache implements QueryCache, Closeable {
         if (stats == null) {
             return true;
         }
-        return stats.cacheSize == 0 && stats.ramBytesUsed == 0;
+        return stats.cacheSize.sum() == 0 && stats.ramBytesUsed.sum() == 0;
     }
 
     public void onClose(ShardId shardId) {
@@ -237,7 +267,97 @@ public class IndicesQueryCache implements QueryCache, Closeable {
         shardStats.remove(shardId);
     }
 
-    private class ElasticsearchLRUQueryCache extends LRUQueryCache {
+    private Stats getStats(Object coreKey) {
+        final ShardId shardId = shardKeyMap.getShardId(coreKey);
+        if (shardId == null) {
+            return null;
+        }
+        return shardStats.get(shardId);
+    }
+
+    private Stats getOrCreateStats(Object coreKey) {
+        final ShardId shardId = shardKeyMap.getShardId(coreKey);
+        return shardStats.computeIfAbsent(shardId, Stats::new);
+    }
+
+    private void onClear() {
+        for (Stats stats : shardStats.values()) {
+            // don't throw away hit/miss
+            stats.cacheSize.reset();
+            stats.ramBytesUsed.reset();
+        }
+        stats2.clear();
+        sharedRamBytesUsed.reset();
+    }
+
+    private void onQueryCache(long ramBytesUsed) {
+        sharedRamBytesUsed.add(ramBytesUsed);
+    }
+
+    private void onQueryEviction(long ramBytesUsed) {
+        sharedRamBytesUsed.add(-ramBytesUsed);
+    }
+
+    private void onDocIdSetCache(Object readerCoreKey, long ramBytesUsed) {
+        final Stats shardStats = getOrCreateStats(readerCoreKey);
+        shardStats.cacheSize.increment();
+        shardStats.cacheCount.increment();
+        shardStats.ramBytesUsed.add(ramBytesUsed);
+
+        synchronized (stats2) {
+            StatsAndCount statsAndCount = stats2.get(readerCoreKey);
+            if (statsAndCount == null) {
+                statsAndCount = new StatsAndCount(shardStats);
+                stats2.put(readerCoreKey, statsAndCount);
+            }
+            statsAndCount.count += 1;
+        }
+    }
+
+    private void onDocIdSetEviction(Object readerCoreKey, int numEntries, long sumRamBytesUsed) {
+        // onDocIdSetEviction might sometimes be called with a number
+        // of entries equal to zero if the cache for the given segment
+        // was already empty when the close listener was called
+        if (numEntries > 0) {
+            // We can't use ShardCoreKeyMap here because its core closed
+            // listener is called before the listener of the cache which
+            // triggers this eviction. So instead we use use stats2 that
+            // we only evict when nothing is cached anymore on the segment
+            // instead of relying on close listeners
+            synchronized (stats2) {
+                final StatsAndCount statsAndCount = stats2.get(readerCoreKey);
+                final Stats shardStats = statsAndCount.stats;
+                shardStats.cacheSize.add(-numEntries);
+                shardStats.ramBytesUsed.add(-sumRamBytesUsed);
+                statsAndCount.count -= numEntries;
+                if (statsAndCount.count == 0) {
+                    stats2.remove(readerCoreKey);
+                }
+            }
+        }
+    }
+
+    private void onHit(Object readerCoreKey) {
+        final Stats shardStats = getStats(readerCoreKey);
+        shardStats.hitCount.increment();
+    }
+
+    private void onMiss(Object readerCoreKey) {
+        final Stats shardStats = getOrCreateStats(readerCoreKey);
+        shardStats.missCount.increment();
+    }
+
+    /** The operations that we need from the cache implementation on top of {@link QueryCache}. */
+    private interface NodeQueryCache extends QueryCache {
+
+        void clearCoreCacheKey(Object coreKey);
+
+        long getCacheSize();
+
+        void clear();
+    }
+
+    private class ElasticsearchLRUQueryCache extends LRUQueryCache implements NodeQueryCache {
 
         ElasticsearchLRUQueryCache(int maxSize, long maxRamBytesUsed, Predicate<LeafReaderContext> leavesToCache, float skipFactor) {
             super(maxSize, maxRamBytesUsed, leavesToCache, skipFactor);
@@ -247,101 +367,96 @@ public class IndicesQueryCache implements QueryCache, Closeable {
             super(maxSize, maxRamBytesUsed);
         }
 
-        private Stats getStats(Object coreKey) {
-            final ShardId shardId = shardKeyMap.getShardId(coreKey);
-            if (shardId == null) {
-                return null;
-            }
-            return shardStats.get(shardId);
+        @Override
+        protected void onClear() {
+            super.onClear();
+            IndicesQueryCache.this.onClear();
         }
 
-        private Stats getOrCreateStats(Object coreKey) {
-            final ShardId shardId = shardKeyMap.getShardId(coreKey);
-            Stats stats = shardStats.get(shardId);
-            if (stats == null) {
-                stats = new Stats(shardId);
-                shardStats.put(shardId, stats);
-            }
-            return stats;
+        @Override
+        protected void onQueryCache(Query filter, long ramBytesUsed) {
+            super.onQueryCache(filter, ramBytesUsed);
+            IndicesQueryCache.this.onQueryCache(ramBytesUsed);
+        }
+
+        @Override
+        protected void onQueryEviction(Query filter, long ramBytesUsed) {
+            super.onQueryEviction(filter, ramBytesUsed);
+            IndicesQueryCache.this.onQueryEviction(ramBytesUsed);
+        }
+
+        @Override
+        protected void onDocIdSetCache(Object readerCoreKey, long ramBytesUsed) {
+            super.onDocIdSetCache(readerCoreKey, ramBytesUsed);
+            IndicesQueryCache.this.onDocIdSetCache(readerCoreKey, ramBytesUsed);
+        }
+
+        @Override
+        protected void onDocIdSetEviction(Object readerCoreKey, int numEntries, long sumRamBytesUsed) {
+            super.onDocIdSetEviction(readerCoreKey, numEntries, sumRamBytesUsed);
+            IndicesQueryCache.this.onDocIdSetEviction(readerCoreKey, numEntries, sumRamBytesUsed);
+        }
+
+        @Override
+        protected void onHit(Object readerCoreKey, Query filter) {
+            super.onHit(readerCoreKey, filter);
+            IndicesQueryCache.this.onHit(readerCoreKey);
+        }
+
+        @Override
+        protected void onMiss(Object readerCoreKey, Query filter) {
+            super.onMiss(readerCoreKey, filter);
+            IndicesQueryCache.this.onMiss(readerCoreKey);
+        }
+    }
+
+    private class ElasticsearchStripedQueryCache extends StripedQueryCache implements NodeQueryCache {
+
+        ElasticsearchStripedQueryCache(int maxSize, long maxRamBytesUsed, Predicate<LeafReaderContext> leavesToCache,
+                                       float skipCacheFactor, int numStripes, Executor executor) {
+            super(maxSize, maxRamBytesUsed, leavesToCache, skipCacheFactor, numStripes, executor);
         }
 
-        // It's ok to not protect these callbacks by a lock since it is
-        // done in LRUQueryCache
         @Override
         protected void onClear() {
             super.onClear();
-            for (Stats stats : shardStats.values()) {
-                // don't throw away hit/miss
-                stats.cacheSize = 0;
-                stats.ramBytesUsed = 0;
-            }
-            stats2.clear();
-            sharedRamBytesUsed = 0;
+            IndicesQueryCache.this.onClear();
         }
 
         @Override
         protected void onQueryCache(Query filter, long ramBytesUsed) {
             super.onQueryCache(filter, ramBytesUsed);
-            sharedRamBytesUsed += ramBytesUsed;
+            IndicesQueryCache.this.onQueryCache(ramBytesUsed);
         }
 
         @Override
         protected void onQueryEviction(Query filter, long ramBytesUsed) {
             super.onQueryEviction(filter, ramBytesUsed);
-            sharedRamBytesUsed -= ramBytesUsed;
+            IndicesQueryCache.this.onQueryEviction(ramBytesUsed);
         }
 
         @Override
         protected void onDocIdSetCache(Object readerCoreKey, long ramBytesUsed) {
             super.onDocIdSetCache(readerCoreKey, ramBytesUsed);
-            final Stats shardStats = getOrCreateStats(readerCoreKey);
-            shardStats.cacheSize += 1;
-            shardStats.cacheCount += 1;
-            shardStats.ramBytesUsed += ramBytesUsed;
-
-            StatsAndCount statsAndCount = stats2.get(readerCoreKey);
-            if (statsAndCount == null) {
-                statsAndCount = new StatsAndCount(shardStats);
-                stats2.put(readerCoreKey, statsAndCount);
-            }
-            statsAndCount.count += 1;
+            IndicesQueryCache.this.onDocIdSetCache(readerCoreKey, ramBytesUsed);
         }
 
         @Override
         protected void onDocIdSetEviction(Object readerCoreKey, int numEntries, long sumRamBytesUsed) {
             super.onDocIdSetEviction(readerCoreKey, numEntries, sumRamBytesUsed);
-            // onDocIdSetEviction might sometimes be called with a number
-            // of entries equal to zero if the cache for the given segment
-            // was already empty when the close listener was called
-            if (numEntries > 0) {
-                // We can't use ShardCoreKeyMap here because its core closed
-                // listener is called before the listener of the cache which
-                // triggers this eviction. So instead we use use stats2 that
-                // we only evict when nothing is cached anymore on the segment
-                // instead of relying on close listeners
-                final StatsAndCount statsAndCount = stats2.get(readerCoreKey);
-                final Stats shardStats = statsAndCount.stats;
-                shardStats.cacheSize -= numEntries;
-                shardStats.ramBytesUsed -= sumRamBytesUsed;
-                statsAndCount.count -= numEntries;
-                if (statsAndCount.count == 0) {
-                    stats2.remove(readerCoreKey);
-                }
-            }
+            IndicesQueryCache.this.onDocIdSetEviction(readerCoreKey, numEntries, sumRamBytesUsed);
         }
 
         @Override
         protected void onHit(Object readerCoreKey, Query filter) {
             super.onHit(readerCoreKey, filter);
-            final Stats shardStats = getStats(readerCoreKey);
-            shardStats.hitCount += 1;
+            IndicesQueryCache.this.onHit(readerCoreKey);
         }
 
         @Override
         protected void onMiss(Object readerCoreKey, Query filter) {
             super.onMiss(readerCoreKey, filter);
-            final Stats shardStats = getOrCreateStats(readerCoreKey);
-            shardStats.missCount += 1;
+            IndicesQueryCache.this.onMiss(readerCoreKey);
         }
     }
 }
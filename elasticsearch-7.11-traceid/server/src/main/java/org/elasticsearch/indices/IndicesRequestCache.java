@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
@@ -68,6 +69,9 @@ public final class IndicesRequestCache implements RemovalListener<IndicesRequest
         Setting.memorySizeSetting("indices.requests.cache.size", "1%", Property.NodeScope);
     public static final Setting<TimeValue> INDICES_CACHE_QUERY_EXPIRE =
         Setting.positiveTimeSetting("indices.requests.cache.expire", new TimeValue(0), Property.NodeScope);
+    public static final Setting<Cache.EvictionPolicy> INDICES_CACHE_QUERY_EVICTION_POLICY =
+        new Setting<>("indices.requests.cache.eviction_policy", Cache.EvictionPolicy.LRU.name().toLowerCase(Locale.ROOT),
+            s -> Cache.EvictionPolicy.valueOf(s.toUpperCase(Locale.ROOT)), Property.NodeScope);
 
     private final ConcurrentMap<CleanupKey, Boolean> registeredClosedListeners = ConcurrentCollections.newConcurrentMap();
     private final Set<CleanupKey> keysToClean = ConcurrentCollections.newConcurrentSet();
@@ -80,7 +84,8 @@ public final class IndicesRequestCache implements RemovalListener<IndicesRequest
         this.expire = INDICES_CACHE_QUERY_EXPIRE.exists(settings) ? INDICES_CACHE_QUERY_EXPIRE.get(settings) : null;
         long sizeInBytes = size.getBytes();
         CacheBuilder<Key, BytesReference> cacheBuilder = CacheBuilder.<Key, BytesReference>builder()
-            .setMaximumWeight(sizeInBytes).weigher((k, v) -> k.ramBytesUsed() + v.ramBytesUsed()).removalListener(this);
+            .setMaximumWeight(sizeInBytes).weigher((k, v) -> k.ramBytesUsed() + v.ramBytesUsed()).removalListener(this)
+            .setEvictionPolicy(INDICES_CACHE_QUERY_EVICTION_POLICY.get(settings));
         if (expire != null) {
             cacheBuilder.setExpireAfterAccess(expire);
         }
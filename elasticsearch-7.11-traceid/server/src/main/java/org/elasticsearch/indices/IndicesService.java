@@ -213,6 +213,7 @@ public class IndicesService extends AbstractLifecycleComponent
     private final TimeValue cleanInterval;
     final IndicesRequestCache indicesRequestCache; // pkg-private for testing
     private final IndicesQueryCache indicesQueryCache;
+    private final IndicesStoredFieldsCache indicesStoredFieldsCache;
     private final MetaStateService metaStateService;
     private final Collection<Function<IndexSettings, Optional<EngineFactory>>> engineFactoryProviders;
     private final Map<String, IndexStorePlugin.DirectoryFactory> directoryFactories;
@@ -259,7 +260,8 @@ public class IndicesService extends AbstractLifecycleComponent
         this.analysisRegistry = analysisRegistry;
         this.indexNameExpressionResolver = indexNameExpressionResolver;
         this.indicesRequestCache = new IndicesRequestCache(settings);
-        this.indicesQueryCache = new IndicesQueryCache(settings);
+        this.indicesQueryCache = new IndicesQueryCache(settings, threadPool.executor(ThreadPool.Names.GENERIC));
+        this.indicesStoredFieldsCache = new IndicesStoredFieldsCache(settings);
         this.mapperRegistry = mapperRegistry;
         this.namedWriteableRegistry = namedWriteableRegistry;
         indexingMemoryController = new IndexingMemoryController(settings, threadPool,
@@ -312,7 +314,8 @@ public class IndicesService extends AbstractLifecycleComponent
                             indicesFieldDataCache,
                             cacheCleaner,
                             indicesRequestCache,
-                            indicesQueryCache);
+                            indicesQueryCache,
+                            indicesStoredFieldsCache);
                 } catch (IOException e) {
                     throw new UncheckedIOException(e);
                 } finally {
@@ -421,7 +424,8 @@ public class IndicesService extends AbstractLifecycleComponent
             }
         }
 
-        return new NodeIndicesStats(commonStats, statsByShard(this, flags));
+        return new NodeIndicesStats(commonStats, statsByShard(this, flags),
+            indicesStoredFieldsCache.isEnabled() ? indicesStoredFieldsCache.stats() : null);
     }
 
     Map<Index, List<IndexShardStats>> statsByShard(final IndicesService indicesService, final CommonStatsFlags flags) {
@@ -834,6 +838,10 @@ public class IndicesService extends AbstractLifecycleComponent
         return indicesQueryCache;
     }
 
+    public IndicesStoredFieldsCache getIndicesStoredFieldsCache() {
+        return indicesStoredFieldsCache;
+    }
+
     static class OldShardsStats implements IndexEventListener {
 
         final SearchStats searchStats = new SearchStats();
@@ -1401,7 +1409,7 @@ public class IndicesService extends AbstractLifecycleComponent
         final DirectoryReader directoryReader = context.searcher().getDirectoryReader();
 
         boolean[] loadedFromCache = new boolean[] { true };
-        BytesReference cacheKey = request.cacheKey();
+        BytesReference cacheKey = request.cacheKey(context.getQueryShardContext().getRoundedNowValues());
         BytesReference bytesReference = cacheShardLevelResult(
             context.indexShard(),
             context.getQueryShardContext().mappingCacheKey(),
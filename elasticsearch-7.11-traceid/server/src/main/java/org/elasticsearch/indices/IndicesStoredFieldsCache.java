@@ -0,0 +1,404 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.indices;
+
+import org.apache.lucene.codecs.StoredFieldsReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FilterDirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.lucene.index.SequentialStoredFieldsLeafReader;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A node level cache of the stored fields of documents, so that documents that are fetched over and over again, like the
+ * top hits of popular searches, don't need to be decompressed from their stored fields block for every request.
+ * <p>
+ * Documents are keyed by the core cache key of their segment and their doc id. The stored fields of a document never
+ * change once its segment is written, so entries stay valid until the segment is closed, at which point they are removed.
+ * Searches use the cache through the reader returned by {@link #wrap(DirectoryReader)}, which serves
+ * {@link LeafReader#document(int, StoredFieldVisitor)} from the cache. The cache is disabled unless
+ * {@code indices.stored_fields.cache.size} is set.
+ */
+public final class IndicesStoredFieldsCache implements Closeable {
+
+    public static final Setting<ByteSizeValue> INDICES_STORED_FIELDS_CACHE_SIZE_SETTING =
+        Setting.memorySizeSetting("indices.stored_fields.cache.size", new ByteSizeValue(0), Property.NodeScope);
+
+    private final Cache<Key, StoredDocument> cache;
+    /**
+     * The keys of the cached documents of each segment core, so that closing a core only visits its own entries.
+     */
+    private final Map<IndexReader.CacheKey, Set<Key>> keysByCore = ConcurrentCollections.newConcurrentMap();
+
+    public IndicesStoredFieldsCache(Settings settings) {
+        final long sizeInBytes = INDICES_STORED_FIELDS_CACHE_SIZE_SETTING.get(settings).getBytes();
+        if (sizeInBytes > 0) {
+            cache = CacheBuilder.<Key, StoredDocument>builder()
+                .setMaximumWeight(sizeInBytes)
+                .weigher((key, document) -> document.ramBytesUsed())
+                .removalListener(notification -> {
+                    final Set<Key> keys = keysByCore.get(notification.getKey().coreKey);
+                    if (keys != null) {
+                        keys.remove(notification.getKey());
+                    }
+                })
+                .build();
+        } else {
+            cache = null;
+        }
+    }
+
+    /**
+     * Returns whether this cache is enabled, that is whether {@code indices.stored_fields.cache.size} is positive.
+     */
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Wraps the given reader so that its leaves load stored fields through this cache. Returns the reader as is if the
+     * cache is disabled, or if the reader is an {@link ElasticsearchDirectoryReader} that was wrapped by the shard's reader
+     * wrapper. Such wrappers, like field level security, may hide fields and filter {@code _source} but keep the core cache
+     * keys of the segments, so a document cached through one view would be served to every other view of the same segment.
+     */
+    public DirectoryReader wrap(DirectoryReader reader) throws IOException {
+        if (cache == null) {
+            return reader;
+        }
+        if (reader instanceof ElasticsearchDirectoryReader == false
+            && ElasticsearchDirectoryReader.getElasticsearchDirectoryReader(reader) != null) {
+            return reader;
+        }
+        return new CachingDirectoryReader(reader, this);
+    }
+
+    void document(LeafReader reader, int docId, StoredFieldVisitor visitor) throws IOException {
+        final IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+        if (cacheHelper == null) {
+            reader.document(docId, visitor);
+            return;
+        }
+        final StoredDocument document;
+        try {
+            document = cache.computeIfAbsent(new Key(cacheHelper.getKey(), docId), key -> {
+                RecordingVisitor recorder = new RecordingVisitor();
+                reader.document(docId, recorder);
+                // only registered once the document is loaded, a failed load doesn't add an entry to the cache
+                keysByCore.computeIfAbsent(key.coreKey, coreKey -> {
+                    cacheHelper.addClosedListener(this::onClose);
+                    return ConcurrentCollections.newConcurrentSet();
+                }).add(key);
+                return recorder.build();
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw ExceptionsHelper.convertToRuntime(e);
+        }
+        document.visit(visitor);
+    }
+
+    private void onClose(IndexReader.CacheKey coreKey) {
+        final Set<Key> keys = keysByCore.remove(coreKey);
+        if (keys != null) {
+            for (Key key : keys) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of documents that were loaded from the cache.
+     */
+    public long getHitCount() {
+        return cache == null ? 0 : cache.stats().getHits();
+    }
+
+    /**
+     * Returns the number of documents that were not in the cache and had to be loaded from their segment.
+     */
+    public long getMissCount() {
+        return cache == null ? 0 : cache.stats().getMisses();
+    }
+
+    /**
+     * Returns the number of documents that were evicted from the cache to make room for others.
+     */
+    public long getEvictions() {
+        return cache == null ? 0 : cache.stats().getEvictions();
+    }
+
+    /**
+     * Returns the number of documents in the cache.
+     */
+    public int count() {
+        return cache == null ? 0 : cache.count();
+    }
+
+    /**
+     * Returns the estimated memory used by the cached documents, in bytes.
+     */
+    public long getMemorySizeInBytes() {
+        return cache == null ? 0 : cache.weight();
+    }
+
+    /**
+     * Returns the number of keys registered for the closing of their segment core, which should match {@link #count()}.
+     */
+    int registeredKeyCount() {
+        int count = 0;
+        for (Set<Key> keys : keysByCore.values()) {
+            count += keys.size();
+        }
+        return count;
+    }
+
+    public StoredFieldsCacheStats stats() {
+        return new StoredFieldsCacheStats(getMemorySizeInBytes(), count(), getEvictions(), getHitCount(), getMissCount());
+    }
+
+    @Override
+    public void close() {
+        if (cache != null) {
+            cache.invalidateAll();
+            keysByCore.clear();
+        }
+    }
+
+    private static final class Key {
+        final IndexReader.CacheKey coreKey;
+        final int docId;
+
+        Key(IndexReader.CacheKey coreKey, int docId) {
+            this.coreKey = coreKey;
+            this.docId = docId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return docId == key.docId && coreKey == key.coreKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * coreKey.hashCode() + docId;
+        }
+    }
+
+    private enum ValueType {
+        BINARY,
+        STRING,
+        INT,
+        LONG,
+        FLOAT,
+        DOUBLE
+    }
+
+    /**
+     * The stored fields of a document, in the order they were stored, that can be replayed to any {@link StoredFieldVisitor}.
+     */
+    private static final class StoredDocument implements Accountable {
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(StoredDocument.class);
+        // the reference to the field, its type and its value
+        private static final long FIELD_RAM_BYTES_USED = 3L * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+        private final FieldInfo[] fields;
+        private final ValueType[] types;
+        private final Object[] values;
+        private final long ramBytesUsed;
+
+        StoredDocument(FieldInfo[] fields, ValueType[] types, Object[] values) {
+            this.fields = fields;
+            this.types = types;
+            this.values = values;
+            long ramBytesUsed = BASE_RAM_BYTES_USED + 3 * RamUsageEstimator.NUM_BYTES_ARRAY_HEADER;
+            for (Object value : values) {
+                ramBytesUsed += FIELD_RAM_BYTES_USED;
+                if (value instanceof byte[]) {
+                    ramBytesUsed += RamUsageEstimator.sizeOf((byte[]) value);
+                } else {
+                    ramBytesUsed += Long.BYTES + RamUsageEstimator.NUM_BYTES_OBJECT_HEADER;
+                }
+            }
+            this.ramBytesUsed = ramBytesUsed;
+        }
+
+        void visit(StoredFieldVisitor visitor) throws IOException {
+            for (int i = 0; i < fields.length; i++) {
+                switch (visitor.needsField(fields[i])) {
+                    case YES:
+                        break;
+                    case NO:
+                        continue;
+                    case STOP:
+                        return;
+                }
+                switch (types[i]) {
+                    case BINARY:
+                        // visitors may keep the array, so they get their own copy
+                        visitor.binaryField(fields[i], ((byte[]) values[i]).clone());
+                        break;
+                    case STRING:
+                        visitor.stringField(fields[i], ((byte[]) values[i]).clone());
+                        break;
+                    case INT:
+                        visitor.intField(fields[i], (Integer) values[i]);
+                        break;
+                    case LONG:
+                        visitor.longField(fields[i], (Long) values[i]);
+                        break;
+                    case FLOAT:
+                        visitor.floatField(fields[i], (Float) values[i]);
+                        break;
+                    case DOUBLE:
+                        visitor.doubleField(fields[i], (Double) values[i]);
+                        break;
+                    default:
+                        throw new AssertionError("unknown value type [" + types[i] + "]");
+                }
+            }
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return ramBytesUsed;
+        }
+    }
+
+    /**
+     * Records all the stored fields of a document.
+     */
+    private static final class RecordingVisitor extends StoredFieldVisitor {
+        private final List<FieldInfo> fields = new ArrayList<>();
+        private final List<ValueType> types = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+
+        @Override
+        public Status needsField(FieldInfo fieldInfo) {
+            return Status.YES;
+        }
+
+        private void add(FieldInfo fieldInfo, ValueType type, Object value) {
+            fields.add(fieldInfo);
+            types.add(type);
+            values.add(value);
+        }
+
+        @Override
+        public void binaryField(FieldInfo fieldInfo, byte[] value) {
+            add(fieldInfo, ValueType.BINARY, value);
+        }
+
+        @Override
+        public void stringField(FieldInfo fieldInfo, byte[] value) {
+            add(fieldInfo, ValueType.STRING, value);
+        }
+
+        @Override
+        public void intField(FieldInfo fieldInfo, int value) {
+            add(fieldInfo, ValueType.INT, value);
+        }
+
+        @Override
+        public void longField(FieldInfo fieldInfo, long value) {
+            add(fieldInfo, ValueType.LONG, value);
+        }
+
+        @Override
+        public void floatField(FieldInfo fieldInfo, float value) {
+            add(fieldInfo, ValueType.FLOAT, value);
+        }
+
+        @Override
+        public void doubleField(FieldInfo fieldInfo, double value) {
+            add(fieldInfo, ValueType.DOUBLE, value);
+        }
+
+        StoredDocument build() {
+            return new StoredDocument(fields.toArray(new FieldInfo[0]), types.toArray(new ValueType[0]), values.toArray());
+        }
+    }
+
+    private static final class CachingDirectoryReader extends FilterDirectoryReader {
+
+        CachingDirectoryReader(DirectoryReader in, IndicesStoredFieldsCache cache) throws IOException {
+            super(in, new SubReaderWrapper() {
+                @Override
+                public LeafReader wrap(LeafReader reader) {
+                    return new CachingLeafReader(reader, cache);
+                }
+            });
+        }
+
+        @Override
+        protected DirectoryReader doWrapDirectoryReader(DirectoryReader in) {
+            throw new UnsupportedOperationException("doWrapDirectoryReader() should never be invoked");
+        }
+
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return in.getReaderCacheHelper();
+        }
+    }
+
+    private static final class CachingLeafReader extends SequentialStoredFieldsLeafReader {
+        private final IndicesStoredFieldsCache cache;
+
+        CachingLeafReader(LeafReader in, IndicesStoredFieldsCache cache) {
+            super(in);
+            this.cache = cache;
+        }
+
+        @Override
+        public void document(int docID, StoredFieldVisitor visitor) throws IOException {
+            cache.document(in, docID, visitor);
+        }
+
+        @Override
+        public CacheHelper getCoreCacheHelper() {
+            return in.getCoreCacheHelper();
+        }
+
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return in.getReaderCacheHelper();
+        }
+
+        @Override
+        protected StoredFieldsReader doGetSequentialStoredFieldsReader(StoredFieldsReader reader) {
+            // adjacent documents share their stored fields block, so they are cheap to load without the cache
+            return reader;
+        }
+    }
+}
@@ -8,6 +8,7 @@
 
 package org.elasticsearch.indices;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.admin.indices.stats.CommonStats;
 import org.elasticsearch.action.admin.indices.stats.IndexShardStats;
 import org.elasticsearch.action.admin.indices.stats.ShardStats;
@@ -46,8 +47,15 @@ import java.util.Map;
  */
 public class NodeIndicesStats implements Writeable, ToXContentFragment {
 
+    /**
+     * The first version that sends the stats of the {@link IndicesStoredFieldsCache}.
+     */
+    static final Version STORED_FIELDS_CACHE_STATS_VERSION = Version.V_7_11_3;
+
     private CommonStats stats;
     private Map<Index, List<IndexShardStats>> statsByShard;
+    @Nullable
+    private StoredFieldsCacheStats storedFieldsCache;
 
     public NodeIndicesStats(StreamInput in) throws IOException {
         stats = new CommonStats(in);
@@ -64,9 +72,17 @@ public class NodeIndicesStats implements Writeable, ToXContentFragment {
                 statsByShard.put(index, indexShardStats);
             }
         }
+        if (in.getVersion().onOrAfter(STORED_FIELDS_CACHE_STATS_VERSION)) {
+            storedFieldsCache = in.readOptionalWriteable(StoredFieldsCacheStats::new);
+        }
     }
 
     public NodeIndicesStats(CommonStats oldStats, Map<Index, List<IndexShardStats>> statsByShard) {
+        this(oldStats, statsByShard, null);
+    }
+
+    public NodeIndicesStats(CommonStats oldStats, Map<Index, List<IndexShardStats>> statsByShard,
+                            @Nullable StoredFieldsCacheStats storedFieldsCache) {
         //this.stats = stats;
         this.statsByShard = statsByShard;
 
@@ -79,6 +95,7 @@ public class NodeIndicesStats implements Writeable, ToXContentFragment {
                 }
             }
         }
+        this.storedFieldsCache = storedFieldsCache;
     }
 
     @Nullable
@@ -161,6 +178,14 @@ public class NodeIndicesStats implements Writeable, ToXContentFragment {
         return stats.getRecoveryStats();
     }
 
+    /**
+     * The stats of the node level stored fields cache or {@code null} if it is disabled.
+     */
+    @Nullable
+    public StoredFieldsCacheStats getStoredFieldsCache() {
+        return storedFieldsCache;
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         stats.writeTo(out);
@@ -175,6 +200,9 @@ public class NodeIndicesStats implements Writeable, ToXContentFragment {
                 }
             }
         }
+        if (out.getVersion().onOrAfter(STORED_FIELDS_CACHE_STATS_VERSION)) {
+            out.writeOptionalWriteable(storedFieldsCache);
+        }
     }
 
     @Override
@@ -189,6 +217,9 @@ public class NodeIndicesStats implements Writeable, ToXContentFragment {
         // "node" level
         builder.startObject(Fields.INDICES);
         stats.toXContent(builder, params);
+        if (storedFieldsCache != null) {
+            storedFieldsCache.toXContent(builder, params);
+        }
 
         if ("indices".equals(level)) {
             Map<Index, CommonStats> indexStats = createStatsByIndex();
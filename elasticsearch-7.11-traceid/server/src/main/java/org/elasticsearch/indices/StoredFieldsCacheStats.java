@@ -0,0 +1,104 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.indices;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+
+/**
+ * Statistics of the node level {@link IndicesStoredFieldsCache}.
+ */
+public class StoredFieldsCacheStats implements Writeable, ToXContentFragment {
+
+    private final long memorySize;
+    private final long count;
+    private final long evictions;
+    private final long hitCount;
+    private final long missCount;
+
+    public StoredFieldsCacheStats(StreamInput in) throws IOException {
+        memorySize = in.readVLong();
+        count = in.readVLong();
+        evictions = in.readVLong();
+        hitCount = in.readVLong();
+        missCount = in.readVLong();
+    }
+
+    public StoredFieldsCacheStats(long memorySize, long count, long evictions, long hitCount, long missCount) {
+        this.memorySize = memorySize;
+        this.count = count;
+        this.evictions = evictions;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+    }
+
+    public long getMemorySizeInBytes() {
+        return this.memorySize;
+    }
+
+    public ByteSizeValue getMemorySize() {
+        return new ByteSizeValue(memorySize);
+    }
+
+    /**
+     * The number of documents in the cache.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    public long getMissCount() {
+        return this.missCount;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(memorySize);
+        out.writeVLong(count);
+        out.writeVLong(evictions);
+        out.writeVLong(hitCount);
+        out.writeVLong(missCount);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(Fields.STORED_FIELDS_CACHE_STATS);
+        builder.humanReadableField(Fields.MEMORY_SIZE_IN_BYTES, Fields.MEMORY_SIZE, getMemorySize());
+        builder.field(Fields.COUNT, getCount());
+        builder.field(Fields.EVICTIONS, getEvictions());
+        builder.field(Fields.HIT_COUNT, getHitCount());
+        builder.field(Fields.MISS_COUNT, getMissCount());
+        builder.endObject();
+        return builder;
+    }
+
+    static final class Fields {
+        static final String STORED_FIELDS_CACHE_STATS = "stored_fields_cache";
+        static final String MEMORY_SIZE = "memory_size";
+        static final String MEMORY_SIZE_IN_BYTES = "memory_size_in_bytes";
+        static final String COUNT = "count";
+        static final String EVICTIONS = "evictions";
+        static final String HIT_COUNT = "hit_count";
+        static final String MISS_COUNT = "miss_count";
+    }
+}
@@ -0,0 +1,758 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.indices;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Matches;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCache;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.ScorerSupplier;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.RoaringDocIdSet;
+import org.elasticsearch.common.cache.FrequencySketch;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A {@link QueryCache} that makes the same caching decisions as {@link LRUQueryCache} but doesn't serialize lookups
+ * behind a single lock, for nodes where many search threads hit the query cache concurrently.
+ * <p>
+ * Entries are cached per query and segment. Lookups only read concurrent maps and flag the entry they find as
+ * recently used, so cache hits never take a lock. Insertions and evictions lock one of several stripes, each of which
+ * owns an equal share of the memory budget and evicts its entries in second-chance FIFO order, an approximation of
+ * LRU that doesn't need to reorder entries on reads. When an insertion requires evictions, the new entry is only
+ * admitted if its query was used more often recently than the query of the entry that it would evict, as estimated
+ * by a {@link FrequencySketch} that records every use of a query (TinyLFU).
+ * <p>
+ * On a cache miss the query runs without the cache and the entry is computed on the given executor, so populating
+ * the cache doesn't slow down the search that triggered it. The segment is kept open until the entry is computed.
+ * <p>
+ * Unlike {@link LRUQueryCache}, the callbacks of this cache are called concurrently and must be thread-safe.
+ */
+class StripedQueryCache implements QueryCache, Accountable {
+
+    private static final Logger logger = LogManager.getLogger(StripedQueryCache.class);
+
+    static final long ENTRY_RAM_BYTES_USED =
+        RamUsageEstimator.shallowSizeOfInstance(Entry.class) + RamUsageEstimator.HASHTABLE_RAM_BYTES_PER_ENTRY;
+    private static final long QUERY_RAM_BYTES_USED =
+        RamUsageEstimator.HASHTABLE_RAM_BYTES_PER_ENTRY + RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED;
+
+    private final int maxSize;
+    private final Predicate<LeafReaderContext> leavesToCache;
+    private final float skipCacheFactor;
+    private final Executor executor;
+    private final Stripe[] stripes;
+    private final FrequencySketch sketch;
+    // the segments that have cached entries or entries being computed
+    private final Map<IndexReader.CacheKey, LeafCache> cache = new ConcurrentHashMap<>();
+    // maps the queries that have cached entries to a singleton so that this cache
+    // doesn't store several copies of the same query
+    private final Map<Query, CachedQuery> cachedQueries = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingLoads = new AtomicInteger();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder cacheCount = new LongAdder();
+
+    /**
+     * Creates a cache that holds entries for at most {@code maxSize} queries in at most {@code maxRamBytesUsed} bytes,
+     * split into {@code numStripes} stripes, and that only caches segments that match {@code leavesToCache}. Entries
+     * are computed on {@code executor}.
+     */
+    StripedQueryCache(int maxSize, long maxRamBytesUsed, Predicate<LeafReaderContext> leavesToCache, float skipCacheFactor,
+                      int numStripes, Executor executor) {
+        if (skipCacheFactor >= 1 == false) { // NaN >= 1 evaluates false
+            throw new IllegalArgumentException("skipCacheFactor must be no less than 1, got " + skipCacheFactor);
+        }
+        if (numStripes < 1) {
+            throw new IllegalArgumentException("numStripes must be at least 1, got " + numStripes);
+        }
+        this.maxSize = maxSize;
+        this.leavesToCache = leavesToCache;
+        this.skipCacheFactor = skipCacheFactor;
+        this.executor = executor;
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe(maxRamBytesUsed / numStripes);
+        }
+        this.sketch = new FrequencySketch(maxSize);
+    }
+
+    /**
+     * Same as the default segment filter of {@link LRUQueryCache}: only caches segments that have at least
+     * {@code minSize} documents and at least {@code minSizeRatio} of the documents of the whole index.
+     */
+    static Predicate<LeafReaderContext> minSegmentSize(int minSize, float minSizeRatio) {
+        return context -> {
+            final int maxDoc = context.reader().maxDoc();
+            if (maxDoc < minSize) {
+                return false;
+            }
+            final float sizeRatio = (float) maxDoc / ReaderUtil.getTopLevelContext(context).reader().maxDoc();
+            return sizeRatio >= minSizeRatio;
+        };
+    }
+
+    /**
+     * Callback when there is a cache hit on a given query.
+     */
+    protected void onHit(Object readerCoreKey, Query query) {
+        hitCount.increment();
+    }
+
+    /**
+     * Callback when there is a cache miss on a given query.
+     */
+    protected void onMiss(Object readerCoreKey, Query query) {
+        missCount.increment();
+    }
+
+    /**
+     * Callback when a query gets its first cached entry.
+     */
+    protected void onQueryCache(Query query, long ramBytesUsed) {
+    }
+
+    /**
+     * Callback when the last cached entry of a query is removed.
+     */
+    protected void onQueryEviction(Query query, long ramBytesUsed) {
+    }
+
+    /**
+     * Callback when a {@link DocIdSet} is added to this cache.
+     */
+    protected void onDocIdSetCache(Object readerCoreKey, long ramBytesUsed) {
+        cacheCount.increment();
+    }
+
+    /**
+     * Callback when one or more {@link DocIdSet}s of the same segment are removed from this cache.
+     */
+    protected void onDocIdSetEviction(Object readerCoreKey, int numEntries, long sumRamBytesUsed) {
+    }
+
+    /**
+     * Callback when the cache is completely cleared.
+     */
+    protected void onClear() {
+    }
+
+    /**
+     * Returns the number of entries that are currently cached.
+     */
+    public long getCacheSize() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of entries that have ever been added to this cache.
+     */
+    public long getCacheCount() {
+        return cacheCount.sum();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long ramBytesUsed = cachedQueries.size() * QUERY_RAM_BYTES_USED
+            + cache.size() * RamUsageEstimator.HASHTABLE_RAM_BYTES_PER_ENTRY;
+        for (Stripe stripe : stripes) {
+            ramBytesUsed += stripe.ramBytesUsed;
+        }
+        return ramBytesUsed;
+    }
+
+    @Override
+    public Weight doCache(Weight weight, QueryCachingPolicy policy) {
+        while (weight instanceof CachingWrapperWeight) {
+            weight = ((CachingWrapperWeight) weight).in;
+        }
+        return new CachingWrapperWeight(weight, policy);
+    }
+
+    /**
+     * Remove all cache entries for the given core cache key.
+     */
+    public void clearCoreCacheKey(Object coreKey) {
+        final LeafCache leafCache = cache.remove(coreKey);
+        if (leafCache == null) {
+            return;
+        }
+        leafCache.closed = true;
+        // wait for insertions that didn't see the closed flag so that we see their entries below
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            stripe.lock.unlock();
+        }
+        int numEntries = 0;
+        long sumRamBytesUsed = 0;
+        for (Entry entry : leafCache.entries.values()) {
+            final Stripe stripe = stripe(entry.query, leafCache.key);
+            stripe.lock.lock();
+            try {
+                if (entry.removed == false) {
+                    stripe.remove(entry);
+                    releaseQuery(entry.query);
+                    numEntries++;
+                    sumRamBytesUsed += entry.ramBytesUsed;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        leafCache.entries.clear();
+        if (numEntries > 0) {
+            onDocIdSetEviction(coreKey, numEntries, sumRamBytesUsed);
+        }
+    }
+
+    /**
+     * Clear the content of this cache.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+        try {
+            for (LeafCache leafCache : cache.values()) {
+                leafCache.closed = true;
+                for (Entry entry : leafCache.entries.values()) {
+                    entry.removed = true;
+                }
+                leafCache.entries.clear();
+            }
+            cache.clear();
+            cachedQueries.clear();
+            for (Stripe stripe : stripes) {
+                stripe.clear();
+            }
+            onClear();
+        } finally {
+            for (Stripe stripe : stripes) {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    DocIdSet get(Query query, IndexReader.CacheKey readerKey) {
+        final LeafCache leafCache = cache.get(readerKey);
+        final Entry entry = leafCache == null ? null : leafCache.entries.get(query);
+        if (entry == null) {
+            onMiss(readerKey, query);
+            return null;
+        }
+        if (entry.accessed == false) {
+            // only write when needed to not invalidate the cache line on every hit
+            entry.accessed = true;
+        }
+        onHit(readerKey, entry.query);
+        return entry.set;
+    }
+
+    /**
+     * Adds an entry unless the segment has been closed, the entry already exists, or it wasn't admitted.
+     */
+    boolean putIfAbsent(Query query, DocIdSet set, LeafCache leafCache) {
+        final long ramBytesUsed = ENTRY_RAM_BYTES_USED + set.ramBytesUsed();
+        final Stripe stripe = stripe(query, leafCache.key);
+        if (ramBytesUsed > stripe.maxRamBytesUsed) {
+            return false;
+        }
+        final int frequency = sketch.frequency(query.hashCode());
+        stripe.lock.lock();
+        try {
+            if (leafCache.closed || leafCache.entries.containsKey(query)) {
+                return false;
+            }
+            if (makeRoom(stripe, query, ramBytesUsed, frequency) == false) {
+                return false;
+            }
+            final Entry entry = new Entry(leafCache, acquireQuery(query), set, ramBytesUsed);
+            leafCache.entries.put(entry.query, entry);
+            stripe.add(entry);
+        } finally {
+            stripe.lock.unlock();
+        }
+        onDocIdSetCache(leafCache.key, ramBytesUsed);
+        return true;
+    }
+
+    /**
+     * Evicts entries from the stripe until an entry of the given size fits and its query doesn't exceed the maximum
+     * number of cached queries, or returns {@code false} if the entry shouldn't be admitted because it is less popular
+     * than the entry it would evict.
+     */
+    private boolean makeRoom(Stripe stripe, Query query, long ramBytesUsed, int frequency) {
+        assert stripe.lock.isHeldByCurrentThread();
+        // entries that are moved to the tail have their accessed flag cleared so this bounds the number of iterations
+        int secondChances = stripe.size;
+        while (stripe.ramBytesUsed + ramBytesUsed > stripe.maxRamBytesUsed) {
+            final Entry victim = stripe.head;
+            if (victim == null) {
+                return false;
+            }
+            if (victim.accessed && secondChances-- > 0) {
+                victim.accessed = false;
+                stripe.remove(victim);
+                stripe.add(victim);
+                continue;
+            }
+            if (sketch.frequency(victim.query.hashCode()) >= frequency) {
+                return false;
+            }
+            evict(stripe, victim);
+        }
+        if (cachedQueries.size() >= maxSize && cachedQueries.containsKey(query) == false) {
+            // evicting an entry whose query is still cached on other segments doesn't reduce the number of cached
+            // queries, so only the first entry in eviction order that holds the last reference to its query is evicted,
+            // and the new entry isn't admitted if there is none rather than emptying the stripe
+            Entry victim = stripe.head;
+            while (victim != null && isLastEntryOfQuery(victim) == false) {
+                victim = victim.next;
+            }
+            if (victim == null || sketch.frequency(victim.query.hashCode()) >= frequency) {
+                return false;
+            }
+            evict(stripe, victim);
+        }
+        return true;
+    }
+
+    private boolean isLastEntryOfQuery(Entry entry) {
+        final CachedQuery cachedQuery = cachedQueries.get(entry.query);
+        return cachedQuery != null && cachedQuery.numEntries == 1;
+    }
+
+    private void evict(Stripe stripe, Entry victim) {
+        stripe.remove(victim);
+        victim.leafCache.entries.remove(victim.query, victim);
+        releaseQuery(victim.query);
+        onDocIdSetEviction(victim.leafCache.key, 1, victim.ramBytesUsed);
+    }
+
+    private Query acquireQuery(Query query) {
+        final AtomicBoolean added = new AtomicBoolean();
+        final CachedQuery cachedQuery = cachedQueries.compute(query, (q, existing) -> {
+            if (existing == null) {
+                added.set(true);
+                existing = new CachedQuery(q);
+            }
+            existing.numEntries++;
+            return existing;
+        });
+        if (added.get()) {
+            onQueryCache(cachedQuery.query, QUERY_RAM_BYTES_USED);
+        }
+        return cachedQuery.query;
+    }
+
+    private void releaseQuery(Query query) {
+        final CachedQuery cachedQuery =
+            cachedQueries.computeIfPresent(query, (q, existing) -> --existing.numEntries == 0 ? null : existing);
+        if (cachedQuery == null) {
+            onQueryEviction(query, QUERY_RAM_BYTES_USED);
+        }
+    }
+
+    private Stripe stripe(Query query, Object readerKey) {
+        int hash = 31 * query.hashCode() + System.identityHashCode(readerKey);
+        hash ^= hash >>> 16;
+        return stripes[Math.floorMod(hash, stripes.length)];
+    }
+
+    private LeafCache getOrCreateLeafCache(IndexReader.CacheHelper cacheHelper) {
+        final IndexReader.CacheKey key = cacheHelper.getKey();
+        LeafCache leafCache = cache.get(key);
+        if (leafCache == null) {
+            final LeafCache newLeafCache = new LeafCache(key);
+            leafCache = cache.putIfAbsent(key, newLeafCache);
+            if (leafCache == null) {
+                leafCache = newLeafCache;
+                // we just created a new leaf cache, need to register a close listener
+                cacheHelper.addClosedListener(this::clearCoreCacheKey);
+            }
+        }
+        return leafCache;
+    }
+
+    /**
+     * Same as {@link LRUQueryCache}: a {@link RoaringDocIdSet} for sets that have a density &lt; 1% and a
+     * {@link BitDocIdSet} over a {@link FixedBitSet} otherwise.
+     */
+    static DocIdSet cacheImpl(BulkScorer scorer, int maxDoc) throws IOException {
+        if (scorer.cost() * 100 >= maxDoc) {
+            final FixedBitSet bitSet = new FixedBitSet(maxDoc);
+            final long[] cost = new long[1];
+            scorer.score(new LeafCollector() {
+                @Override
+                public void setScorer(Scorable scorer) {}
+
+                @Override
+                public void collect(int doc) {
+                    cost[0]++;
+                    bitSet.set(doc);
+                }
+            }, null);
+            return new BitDocIdSet(bitSet, cost[0]);
+        } else {
+            final RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(maxDoc);
+            scorer.score(new LeafCollector() {
+                @Override
+                public void setScorer(Scorable scorer) {}
+
+                @Override
+                public void collect(int doc) {
+                    builder.add(doc);
+                }
+            }, null);
+            return builder.build();
+        }
+    }
+
+    private static final class CachedQuery {
+        final Query query;
+        // only modified under the lock of the map entry, volatile so that evictions can read it without that lock
+        volatile int numEntries;
+
+        CachedQuery(Query query) {
+            this.query = query;
+        }
+    }
+
+    private static final class LeafCache {
+        final IndexReader.CacheKey key;
+        final Map<Query, Entry> entries = new ConcurrentHashMap<>();
+        // the queries whose entries are being computed
+        final Set<Query> loading = ConcurrentHashMap.newKeySet();
+        // set when the segment is closed, after which entries may no longer be added
+        volatile boolean closed;
+
+        LeafCache(IndexReader.CacheKey key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Entry {
+        final LeafCache leafCache;
+        final Query query;
+        final DocIdSet set;
+        final long ramBytesUsed;
+        volatile boolean accessed;
+        // guarded by the stripe lock
+        boolean removed;
+        Entry prev;
+        Entry next;
+
+        Entry(LeafCache leafCache, Query query, DocIdSet set, long ramBytesUsed) {
+            this.leafCache = leafCache;
+            this.query = query;
+            this.set = set;
+            this.ramBytesUsed = ramBytesUsed;
+        }
+    }
+
+    /**
+     * A share of the cache that holds its entries in a doubly-linked list, from the next entry to evict to the most
+     * recently added one. Everything but reads of the size and memory usage must happen under the lock.
+     */
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final long maxRamBytesUsed;
+        Entry head;
+        Entry tail;
+        volatile int size;
+        volatile long ramBytesUsed;
+
+        Stripe(long maxRamBytesUsed) {
+            this.maxRamBytesUsed = maxRamBytesUsed;
+        }
+
+        void add(Entry entry) {
+            assert lock.isHeldByCurrentThread();
+            entry.removed = false;
+            entry.prev = tail;
+            entry.next = null;
+            if (tail == null) {
+                head = entry;
+            } else {
+                tail.next = entry;
+            }
+            tail = entry;
+            size++;
+            ramBytesUsed += entry.ramBytesUsed;
+        }
+
+        void remove(Entry entry) {
+            assert lock.isHeldByCurrentThread();
+            assert entry.removed == false;
+            if (entry.prev == null) {
+                head = entry.next;
+            } else {
+                entry.prev.next = entry.next;
+            }
+            if (entry.next == null) {
+                tail = entry.prev;
+            } else {
+                entry.next.prev = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+            entry.removed = true;
+            size--;
+            ramBytesUsed -= entry.ramBytesUsed;
+        }
+
+        void clear() {
+            assert lock.isHeldByCurrentThread();
+            head = null;
+            tail = null;
+            size = 0;
+            ramBytesUsed = 0;
+        }
+    }
+
+    private class CachingWrapperWeight extends ConstantScoreWeight {
+
+        private final Weight in;
+        private final QueryCachingPolicy policy;
+        // we use an AtomicBoolean because Weight.scorer may be called from multiple
+        // threads when IndexSearcher is created with threads
+        private final AtomicBoolean used;
+
+        CachingWrapperWeight(Weight in, QueryCachingPolicy policy) {
+            super(in.getQuery(), 1f);
+            this.in = in;
+            this.policy = policy;
+            this.used = new AtomicBoolean(false);
+        }
+
+        @Override
+        public void extractTerms(Set<Term> terms) {
+            in.extractTerms(terms);
+        }
+
+        @Override
+        public Matches matches(LeafReaderContext context, int doc) throws IOException {
+            return in.matches(context, doc);
+        }
+
+        private void onUse() {
+            if (used.compareAndSet(false, true)) {
+                policy.onUse(getQuery());
+                sketch.increment(in.getQuery().hashCode());
+            }
+        }
+
+        /** Check whether this segment is eligible for caching, regardless of the query. */
+        private boolean shouldCache(LeafReaderContext context) {
+            // The worst-case (dense) is a bit set which needs one bit per document. Like LRUQueryCache, we
+            // only cache on a reader if there is room for 5 different filters on it to avoid trashing, but
+            // entries need to fit in a single stripe.
+            final long worstCaseRamUsage = ReaderUtil.getTopLevelContext(context).reader().maxDoc() / 8;
+            return worstCaseRamUsage * 5 < stripes[0].maxRamBytesUsed && leavesToCache.test(context);
+        }
+
+        /**
+         * Computes the entry for the given segment in the background, unless it is already being computed or too
+         * many entries are being computed.
+         */
+        private void cacheAsync(LeafReaderContext context, IndexReader.CacheHelper cacheHelper) {
+            final Query query = in.getQuery();
+            final LeafCache leafCache = getOrCreateLeafCache(cacheHelper);
+            if (leafCache.loading.add(query) == false) {
+                return;
+            }
+            // unwrap so that we keep the segment itself open, not just the wrapper
+            final LeafReader reader = FilterLeafReader.unwrap(context.reader());
+            if (pendingLoads.incrementAndGet() > stripes.length || reader.tryIncRef() == false) {
+                pendingLoads.decrementAndGet();
+                leafCache.loading.remove(query);
+                return;
+            }
+            executor.execute(new AbstractRunnable() {
+                @Override
+                protected void doRun() throws Exception {
+                    final BulkScorer scorer = in.bulkScorer(context);
+                    final DocIdSet docIdSet = scorer == null ? DocIdSet.EMPTY : cacheImpl(scorer, context.reader().maxDoc());
+                    putIfAbsent(query, docIdSet, leafCache);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    // the entry will be computed again on a later search
+                    logger.debug(new ParameterizedMessage("failed to cache query [{}]", query), e);
+                }
+
+                @Override
+                public void onAfter() {
+                    try {
+                        reader.decRef();
+                    } catch (IOException e) {
+                        logger.warn("failed to release segment after caching a query", e);
+                    } finally {
+                        leafCache.loading.remove(query);
+                        pendingLoads.decrementAndGet();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public ScorerSupplier scorerSupplier(LeafReaderContext context) throws IOException {
+            onUse();
+
+            if (in.isCacheable(context) == false || shouldCache(context) == false) {
+                return in.scorerSupplier(context);
+            }
+
+            final IndexReader.CacheHelper cacheHelper = context.reader().getCoreCacheHelper();
+            if (cacheHelper == null) {
+                // this reader has no cache helper
+                return in.scorerSupplier(context);
+            }
+
+            final DocIdSet docIdSet = get(in.getQuery(), cacheHelper.getKey());
+            if (docIdSet == null) {
+                if (policy.shouldCache(in.getQuery()) == false) {
+                    return in.scorerSupplier(context);
+                }
+                final ScorerSupplier supplier = in.scorerSupplier(context);
+                if (supplier == null) {
+                    putIfAbsent(in.getQuery(), DocIdSet.EMPTY, getOrCreateLeafCache(cacheHelper));
+                    return null;
+                }
+                final long cost = supplier.cost();
+                return new ScorerSupplier() {
+                    @Override
+                    public Scorer get(long leadCost) throws IOException {
+                        // don't cache clauses that are much more costly than the query they are used in
+                        if (cost / skipCacheFactor <= leadCost) {
+                            cacheAsync(context, cacheHelper);
+                        }
+                        return supplier.get(leadCost);
+                    }
+
+                    @Override
+                    public long cost() {
+                        return cost;
+                    }
+                };
+            }
+
+            if (docIdSet == DocIdSet.EMPTY) {
+                return null;
+            }
+            final DocIdSetIterator disi = docIdSet.iterator();
+            if (disi == null) {
+                return null;
+            }
+            return new ScorerSupplier() {
+                @Override
+                public Scorer get(long leadCost) {
+                    return new ConstantScoreScorer(CachingWrapperWeight.this, 0f, ScoreMode.COMPLETE_NO_SCORES, disi);
+                }
+
+                @Override
+                public long cost() {
+                    return disi.cost();
+                }
+            };
+        }
+
+        @Override
+        public Scorer scorer(LeafReaderContext context) throws IOException {
+            final ScorerSupplier scorerSupplier = scorerSupplier(context);
+            if (scorerSupplier == null) {
+                return null;
+            }
+            return scorerSupplier.get(Long.MAX_VALUE);
+        }
+
+        @Override
+        public boolean isCacheable(LeafReaderContext ctx) {
+            return in.isCacheable(ctx);
+        }
+
+        @Override
+        public BulkScorer bulkScorer(LeafReaderContext context) throws IOException {
+            onUse();
+
+            if (in.isCacheable(context) == false || shouldCache(context) == false) {
+                return in.bulkScorer(context);
+            }
+
+            final IndexReader.CacheHelper cacheHelper = context.reader().getCoreCacheHelper();
+            if (cacheHelper == null) {
+                // this reader has no cache helper
+                return in.bulkScorer(context);
+            }
+
+            final DocIdSet docIdSet = get(in.getQuery(), cacheHelper.getKey());
+            if (docIdSet == null) {
+                if (policy.shouldCache(in.getQuery())) {
+                    cacheAsync(context, cacheHelper);
+                }
+                return in.bulkScorer(context);
+            }
+
+            if (docIdSet == DocIdSet.EMPTY) {
+                return null;
+            }
+            final DocIdSetIterator disi = docIdSet.iterator();
+            if (disi == null) {
+                return null;
+            }
+            return new DefaultBulkScorer(new ConstantScoreScorer(this, 0f, ScoreMode.COMPLETE_NO_SCORES, disi));
+        }
+    }
+}
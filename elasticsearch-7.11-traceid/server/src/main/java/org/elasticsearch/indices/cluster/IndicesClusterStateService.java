@@ -30,10 +30,12 @@ import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.env.ShardLockObtainFailedException;
 import org.elasticsearch.gateway.GatewayService;
 import org.elasticsearch.index.Index;
@@ -74,7 +76,10 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -94,6 +99,13 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
     private final ShardStateAction shardStateAction;
     private final NodeMappingRefreshAction nodeMappingRefreshAction;
 
+    /**
+     * The number of threads, the cluster applier thread included, that update the metadata and merge the mappings of
+     * different indices concurrently when applying a cluster state.
+     */
+    public static final Setting<Integer> INDICES_CLUSTER_UPDATE_CONCURRENCY_SETTING =
+        Setting.intSetting("indices.cluster.update_concurrency", 1, 1, Setting.Property.NodeScope);
+
     private static final ActionListener<Void> SHARD_STATE_ACTION_LISTENER = ActionListener.wrap(() -> {});
 
     private final Settings settings;
@@ -105,6 +117,7 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
     private final FailedShardHandler failedShardHandler = new FailedShardHandler();
 
     private final boolean sendRefreshMapping;
+    private final int updateConcurrency;
     private final List<IndexEventListener> buildInIndexListener;
     private final PrimaryReplicaSyncer primaryReplicaSyncer;
     private final Consumer<ShardId> globalCheckpointSyncer;
@@ -181,6 +194,7 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
         this.globalCheckpointSyncer = globalCheckpointSyncer;
         this.retentionLeaseSyncer = Objects.requireNonNull(retentionLeaseSyncer);
         this.sendRefreshMapping = settings.getAsBoolean("indices.cluster.send_refresh_mapping", true);
+        this.updateConcurrency = INDICES_CLUSTER_UPDATE_CONCURRENCY_SETTING.get(settings);
     }
 
     @Override
@@ -466,30 +480,34 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
             }
         }
 
+        final List<IndexMetadataUpdate> mappingUpdates = new ArrayList<>();
         for (Map.Entry<Index, List<ShardRouting>> entry : indicesToCreate.entrySet()) {
             final Index index = entry.getKey();
             final IndexMetadata indexMetadata = state.metadata().index(index);
             logger.debug("[{}] creating index", index);
 
-            AllocatedIndex<? extends Shard> indexService = null;
             try {
-                indexService = indicesService.createIndex(indexMetadata, buildInIndexListener, true);
-                if (indexService.updateMapping(null, indexMetadata) && sendRefreshMapping) {
-                    nodeMappingRefreshAction.nodeMappingRefresh(state.nodes().getMasterNode(),
-                        new NodeMappingRefreshAction.NodeMappingRefreshRequest(indexMetadata.getIndex().getName(),
-                            indexMetadata.getIndexUUID(), state.nodes().getLocalNodeId())
-                    );
-                }
+                final AllocatedIndex<? extends Shard> indexService = indicesService.createIndex(indexMetadata, buildInIndexListener, true);
+                mappingUpdates.add(new IndexMetadataUpdate(indexService, null, indexMetadata));
             } catch (Exception e) {
-                final String failShardReason;
-                if (indexService == null) {
-                    failShardReason = "failed to create index";
-                } else {
-                    failShardReason = "failed to update mapping for index";
-                    indicesService.removeIndex(index, FAILURE, "removing index (mapping update failed)");
-                }
                 for (ShardRouting shardRouting : entry.getValue()) {
-                    sendFailShard(shardRouting, failShardReason, e, state);
+                    sendFailShard(shardRouting, "failed to create index", e, state);
+                }
+            }
+        }
+
+        // merging the mappings is the expensive part of creating an index, and is independent for each index
+        runConcurrently(mappingUpdates, updateConcurrency, threadPool.generic());
+        for (IndexMetadataUpdate mappingUpdate : mappingUpdates) {
+            final Index index = mappingUpdate.newIndexMetadata.getIndex();
+            if (mappingUpdate.failure == null) {
+                if (mappingUpdate.mappingUpdated) {
+                    sendRefreshMapping(state, mappingUpdate.newIndexMetadata);
+                }
+            } else {
+                indicesService.removeIndex(index, FAILURE, "removing index (mapping update failed)");
+                for (ShardRouting shardRouting : indicesToCreate.get(index)) {
+                    sendFailShard(shardRouting, "failed to update mapping for index", mappingUpdate.failure, state);
                 }
             }
         }
@@ -500,39 +518,34 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
             return;
         }
         final ClusterState state = event.state();
+        final List<IndexMetadataUpdate> updates = new ArrayList<>();
         for (AllocatedIndex<? extends Shard> indexService : indicesService) {
             final Index index = indexService.index();
             final IndexMetadata currentIndexMetadata = indexService.getIndexSettings().getIndexMetadata();
             final IndexMetadata newIndexMetadata = state.metadata().index(index);
             assert newIndexMetadata != null : "index " + index + " should have been removed by deleteIndices";
             if (ClusterChangedEvent.indexMetadataChanged(currentIndexMetadata, newIndexMetadata)) {
-                String reason = null;
-                try {
-                    reason = "metadata update failed";
-                    try {
-                        indexService.updateMetadata(currentIndexMetadata, newIndexMetadata);
-                    } catch (Exception e) {
-                        assert false : e;
-                        throw e;
-                    }
+                updates.add(new IndexMetadataUpdate(indexService, currentIndexMetadata, newIndexMetadata));
+            }
+        }
 
-                    reason = "mapping update failed";
-                    if (indexService.updateMapping(currentIndexMetadata, newIndexMetadata) && sendRefreshMapping) {
-                        nodeMappingRefreshAction.nodeMappingRefresh(state.nodes().getMasterNode(),
-                            new NodeMappingRefreshAction.NodeMappingRefreshRequest(newIndexMetadata.getIndex().getName(),
-                                newIndexMetadata.getIndexUUID(), state.nodes().getLocalNodeId())
-                        );
-                    }
-                } catch (Exception e) {
-                    indicesService.removeIndex(indexService.index(), FAILURE, "removing index (" + reason + ")");
-
-                    // fail shards that would be created or updated by createOrUpdateShards
-                    RoutingNode localRoutingNode = state.getRoutingNodes().node(state.nodes().getLocalNodeId());
-                    if (localRoutingNode != null) {
-                        for (final ShardRouting shardRouting : localRoutingNode) {
-                            if (shardRouting.index().equals(index) && failedShardsCache.containsKey(shardRouting.shardId()) == false) {
-                                sendFailShard(shardRouting, "failed to update index (" + reason + ")", e, state);
-                            }
+        runConcurrently(updates, updateConcurrency, threadPool.generic());
+        for (IndexMetadataUpdate update : updates) {
+            final Index index = update.indexService.index();
+            if (update.failure == null) {
+                if (update.mappingUpdated) {
+                    sendRefreshMapping(state, update.newIndexMetadata);
+                }
+            } else {
+                assert update.failureReason.equals(IndexMetadataUpdate.METADATA_UPDATE_FAILED) == false : update.failure;
+                indicesService.removeIndex(index, FAILURE, "removing index (" + update.failureReason + ")");
+
+                // fail shards that would be created or updated by createOrUpdateShards
+                RoutingNode localRoutingNode = state.getRoutingNodes().node(state.nodes().getLocalNodeId());
+                if (localRoutingNode != null) {
+                    for (final ShardRouting shardRouting : localRoutingNode) {
+                        if (shardRouting.index().equals(index) && failedShardsCache.containsKey(shardRouting.shardId()) == false) {
+                            sendFailShard(shardRouting, "failed to update index (" + update.failureReason + ")", update.failure, state);
                         }
                     }
                 }
@@ -540,6 +553,103 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
         }
     }
 
+    private void sendRefreshMapping(ClusterState state, IndexMetadata indexMetadata) {
+        if (sendRefreshMapping) {
+            nodeMappingRefreshAction.nodeMappingRefresh(state.nodes().getMasterNode(),
+                new NodeMappingRefreshAction.NodeMappingRefreshRequest(indexMetadata.getIndex().getName(),
+                    indexMetadata.getIndexUUID(), state.nodes().getLocalNodeId())
+            );
+        }
+    }
+
+    /**
+     * Updates the metadata and merges the mappings of an index, recording the failure if any so that the shards of the
+     * index can be failed on the cluster applier thread.
+     */
+    private static final class IndexMetadataUpdate implements Runnable {
+        static final String METADATA_UPDATE_FAILED = "metadata update failed";
+        static final String MAPPING_UPDATE_FAILED = "mapping update failed";
+
+        final AllocatedIndex<? extends Shard> indexService;
+        @Nullable // if the index was just created
+        final IndexMetadata currentIndexMetadata;
+        final IndexMetadata newIndexMetadata;
+
+        boolean mappingUpdated;
+        String failureReason;
+        Exception failure;
+
+        IndexMetadataUpdate(AllocatedIndex<? extends Shard> indexService, @Nullable IndexMetadata currentIndexMetadata,
+                            IndexMetadata newIndexMetadata) {
+            this.indexService = indexService;
+            this.currentIndexMetadata = currentIndexMetadata;
+            this.newIndexMetadata = newIndexMetadata;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (currentIndexMetadata != null) {
+                    failureReason = METADATA_UPDATE_FAILED;
+                    indexService.updateMetadata(currentIndexMetadata, newIndexMetadata);
+                }
+                failureReason = MAPPING_UPDATE_FAILED;
+                mappingUpdated = indexService.updateMapping(currentIndexMetadata, newIndexMetadata);
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Runs the given tasks using up to {@code concurrency} threads, the calling thread included, and returns once they
+     * have all completed. The tasks must not throw.
+     */
+    static void runConcurrently(List<? extends Runnable> tasks, int concurrency, Executor executor) {
+        final int workers = Math.min(concurrency, tasks.size());
+        if (workers <= 1) {
+            tasks.forEach(Runnable::run);
+            return;
+        }
+        final AtomicInteger nextTask = new AtomicInteger();
+        // count completed tasks rather than forked workers: a worker that only gets a thread once all tasks have been
+        // claimed has nothing left to do, and the calling thread shouldn't wait for it when the executor is busy
+        final CountDownLatch completedTasks = new CountDownLatch(tasks.size());
+        final Runnable worker = () -> {
+            int task;
+            while ((task = nextTask.getAndIncrement()) < tasks.size()) {
+                try {
+                    tasks.get(task).run();
+                } finally {
+                    completedTasks.countDown();
+                }
+            }
+        };
+        for (int i = 1; i < workers; i++) {
+            try {
+                executor.execute(worker);
+            } catch (EsRejectedExecutionException e) {
+                // the tasks this worker would have run are picked up by the other ones
+            }
+        }
+        // the calling thread runs all the tasks that haven't been claimed by a forked worker yet
+        worker.run();
+        // can't wait for a future on the cluster applier thread, so use a CountDownLatch; the tasks that are still running
+        // use the index services, so we must wait for them even if interrupted
+        boolean interrupted = false;
+        while (true) {
+            try {
+                completedTasks.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void createOrUpdateShards(final ClusterState state) {
         RoutingNode localRoutingNode = state.getRoutingNodes().node(state.nodes().getLocalNodeId());
         if (localRoutingNode == null) {
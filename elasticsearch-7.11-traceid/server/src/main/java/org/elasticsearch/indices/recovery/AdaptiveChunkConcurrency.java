@@ -0,0 +1,106 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.indices.recovery;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Adapts the number of chunk requests that a {@link MultiChunkTransfer} keeps in flight to the throughput it measures, similarly to
+ * how BBR probes the bandwidth of a connection. The transfer is split in rounds of as many chunks as there are requests in flight,
+ * which take about one round trip each. After a round whose throughput clearly beats the best one seen so far, one more request is allowed
+ * in flight; if the round that follows such an increase isn't faster, the increase is reverted. The best throughput decays over time
+ * so that the transfer keeps probing, and follows the link when its latency or bandwidth change.
+ */
+final class AdaptiveChunkConcurrency {
+
+    /**
+     * The upper bound of the number of chunk requests in flight, which also bounds the number of chunks that the recovery target
+     * may have to buffer.
+     */
+    static final int MAX_CONCURRENCY = 16;
+
+    // going from c-1 to c requests in flight makes an unsaturated link c/(c-1) times faster, so a round with c requests in flight
+    // counts as an improvement if it beats the best throughput by at least this fraction of that gain
+    static final double PROBE_GAIN = 0.5;
+    // the best throughput decays by this factor after every round that doesn't improve it
+    static final double DECAY = 0.95;
+
+    private final int maxConcurrency;
+    private final LongSupplier relativeTimeInNanos;
+
+    private int concurrency;
+    private boolean probing;
+    private double bestThroughput;
+
+    private long roundStartNanos = -1;
+    private long roundBytes;
+    private int roundChunks;
+
+    AdaptiveChunkConcurrency(int initialConcurrency, int maxConcurrency, LongSupplier relativeTimeInNanos) {
+        if (initialConcurrency < 1 || initialConcurrency > maxConcurrency) {
+            throw new IllegalArgumentException("initial concurrency [" + initialConcurrency + "] must be between 1 and ["
+                + maxConcurrency + "]");
+        }
+        this.concurrency = initialConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.relativeTimeInNanos = relativeTimeInNanos;
+    }
+
+    /**
+     * The number of chunk requests that may currently be in flight.
+     */
+    int concurrency() {
+        return concurrency;
+    }
+
+    int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Called before a chunk request is sent, starts the first round.
+     */
+    void onChunkSent() {
+        if (roundStartNanos == -1) {
+            roundStartNanos = relativeTimeInNanos.getAsLong();
+        }
+    }
+
+    /**
+     * Called when a chunk request of the given size completed successfully.
+     */
+    void onChunkCompleted(long sizeInBytes) {
+        roundBytes += sizeInBytes;
+        if (++roundChunks < concurrency) {
+            return;
+        }
+        assert roundStartNanos != -1 : "a chunk completed before any was sent";
+        final long nowNanos = relativeTimeInNanos.getAsLong();
+        final long elapsedNanos = Math.max(1L, nowNanos - roundStartNanos);
+        final double throughput = (double) roundBytes / elapsedNanos;
+        if (throughput > bestThroughput * (1.0 + PROBE_GAIN / concurrency)) {
+            bestThroughput = throughput;
+            probing = concurrency < maxConcurrency;
+            if (probing) {
+                concurrency++;
+            }
+        } else {
+            if (probing) {
+                // more requests in flight didn't make the transfer faster, so the link is saturated
+                concurrency = Math.max(1, concurrency - 1);
+                probing = false;
+            }
+            bestThroughput *= DECAY;
+        }
+        roundStartNanos = nowNanos;
+        roundBytes = 0;
+        roundChunks = 0;
+    }
+}
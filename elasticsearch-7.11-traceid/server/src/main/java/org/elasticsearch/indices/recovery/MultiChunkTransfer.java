@@ -12,6 +12,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.elasticsearch.Assertions;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.util.concurrent.AsyncIOProcessor;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
@@ -44,6 +45,9 @@ import static org.elasticsearch.index.seqno.SequenceNumbers.UNASSIGNED_SEQ_NO;
  * greater than {@code maxConcurrentFileChunks}), the sending/requesting thread will abort its execution. That process will be resumed by
  * one of the networking threads which receive/handle the responses of the current pending file chunk requests. This process will continue
  * until all chunk requests are sent/responded.
+ * <p>
+ * If an {@link AdaptiveChunkConcurrency} is given, the limit of un-replied chunk requests isn't {@code maxConcurrentFileChunks} but
+ * adapts to the measured throughput, up to {@link AdaptiveChunkConcurrency#maxConcurrency()}.
  */
 public abstract class MultiChunkTransfer<Source, Request extends MultiChunkTransfer.ChunkRequest> implements Closeable {
     private Status status = Status.PROCESSING;
@@ -52,16 +56,25 @@ public abstract class MultiChunkTransfer<Source, Request extends MultiChunkTrans
     private final LocalCheckpointTracker requestSeqIdTracker = new LocalCheckpointTracker(NO_OPS_PERFORMED, NO_OPS_PERFORMED);
     private final AsyncIOProcessor<FileChunkResponseItem<Source>> processor;
     private final int maxConcurrentChunks;
+    @Nullable
+    private final AdaptiveChunkConcurrency adaptiveConcurrency;
     private Source currentSource = null;
     private final Iterator<Source> remainingSources;
     private Tuple<Source, Request> readAheadRequest = null;
 
     protected MultiChunkTransfer(Logger logger, ThreadContext threadContext, ActionListener<Void> listener,
                                  int maxConcurrentChunks, List<Source> sources) {
+        this(logger, threadContext, listener, maxConcurrentChunks, null, sources);
+    }
+
+    MultiChunkTransfer(Logger logger, ThreadContext threadContext, ActionListener<Void> listener,
+                       int maxConcurrentChunks, @Nullable AdaptiveChunkConcurrency adaptiveConcurrency, List<Source> sources) {
         this.logger = logger;
         this.maxConcurrentChunks = maxConcurrentChunks;
+        this.adaptiveConcurrency = adaptiveConcurrency;
         this.listener = listener;
-        this.processor = new AsyncIOProcessor<FileChunkResponseItem<Source>>(logger, maxConcurrentChunks, threadContext) {
+        final int queueSize = adaptiveConcurrency == null ? maxConcurrentChunks : adaptiveConcurrency.maxConcurrency();
+        this.processor = new AsyncIOProcessor<FileChunkResponseItem<Source>>(logger, queueSize, threadContext) {
             @Override
             protected void write(List<Tuple<FileChunkResponseItem<Source>, Consumer<Exception>>> items) throws IOException {
                 handleItems(items);
@@ -71,11 +84,15 @@ public abstract class MultiChunkTransfer<Source, Request extends MultiChunkTrans
     }
 
     public final void start() {
-        addItem(UNASSIGNED_SEQ_NO, null, null); // put a dummy item to start the processor
+        addItem(UNASSIGNED_SEQ_NO, null, 0L, null); // put a dummy item to start the processor
     }
 
-    private void addItem(long requestSeqId, Source resource, Exception failure) {
-        processor.put(new FileChunkResponseItem<>(requestSeqId, resource, failure), e -> { assert e == null : e; });
+    private void addItem(long requestSeqId, Source resource, long sizeInBytes, Exception failure) {
+        processor.put(new FileChunkResponseItem<>(requestSeqId, resource, sizeInBytes, failure), e -> { assert e == null : e; });
+    }
+
+    private int concurrentChunks() {
+        return adaptiveConcurrency == null ? maxConcurrentChunks : adaptiveConcurrency.concurrency();
     }
 
     private void handleItems(List<Tuple<FileChunkResponseItem<Source>, Consumer<Exception>>> items) {
@@ -97,8 +114,11 @@ public abstract class MultiChunkTransfer<Source, Request extends MultiChunkTrans
                     handleError(resp.source, resp.failure);
                     throw resp.failure;
                 }
+                if (adaptiveConcurrency != null) {
+                    adaptiveConcurrency.onChunkCompleted(resp.sizeInBytes);
+                }
             }
-            while (requestSeqIdTracker.getMaxSeqNo() - requestSeqIdTracker.getProcessedCheckpoint() < maxConcurrentChunks) {
+            while (requestSeqIdTracker.getMaxSeqNo() - requestSeqIdTracker.getProcessedCheckpoint() < concurrentChunks()) {
                 final Tuple<Source, Request> request = readAheadRequest != null ? readAheadRequest : getNextRequest();
                 readAheadRequest = null;
                 if (request == null) {
@@ -109,9 +129,13 @@ public abstract class MultiChunkTransfer<Source, Request extends MultiChunkTrans
                     return;
                 }
                 final long requestSeqId = requestSeqIdTracker.generateSeqNo();
+                final long sizeInBytes = request.v2().sizeInBytes();
+                if (adaptiveConcurrency != null) {
+                    adaptiveConcurrency.onChunkSent();
+                }
                 executeChunkRequest(request.v2(), ActionListener.wrap(
-                    r -> addItem(requestSeqId, request.v1(), null),
-                    e -> addItem(requestSeqId, request.v1(), e)));
+                    r -> addItem(requestSeqId, request.v1(), sizeInBytes, null),
+                    e -> addItem(requestSeqId, request.v1(), sizeInBytes, e)));
             }
             // While we are waiting for the responses, we can prepare the next request in advance
             // so we can send it immediately when the responses arrive to reduce the transfer time.
@@ -176,11 +200,13 @@ public abstract class MultiChunkTransfer<Source, Request extends MultiChunkTrans
     private static class FileChunkResponseItem<Source> {
         final long requestSeqId;
         final Source source;
+        final long sizeInBytes;
         final Exception failure;
 
-        FileChunkResponseItem(long requestSeqId, Source source, Exception failure) {
+        FileChunkResponseItem(long requestSeqId, Source source, long sizeInBytes, Exception failure) {
             this.requestSeqId = requestSeqId;
             this.source = source;
+            this.sizeInBytes = sizeInBytes;
             this.failure = failure;
         }
     }
@@ -190,6 +216,13 @@ public abstract class MultiChunkTransfer<Source, Request extends MultiChunkTrans
          * @return {@code true} if this chunk request is the last chunk of the current file
          */
         boolean lastChunk();
+
+        /**
+         * @return the number of bytes that this chunk request transfers, used to measure the throughput of the transfer
+         */
+        default long sizeInBytes() {
+            return 0L;
+        }
     }
 
     private enum Status {
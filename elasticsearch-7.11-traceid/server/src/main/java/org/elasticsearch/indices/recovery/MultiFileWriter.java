@@ -18,6 +18,7 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.util.concurrent.AbstractRefCounted;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.core.internal.io.IOUtils;
 import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.store.StoreFileMetadata;
 import org.elasticsearch.transport.Transports;
@@ -63,6 +64,19 @@ public class MultiFileWriter extends AbstractRefCounted implements Releasable {
         writer.writeChunk(new FileChunk(fileMetadata, content, position, lastChunk));
     }
 
+    /**
+     * Discards the partially written copy of the given file, so that it can be written again from the start.
+     */
+    public void discardFile(String fileName) {
+        fileChunkWriters.remove(fileName);
+        IOUtils.closeWhileHandlingException(openIndexOutputs.remove(fileName));
+        final String tempFileName = getTempNameForFile(fileName);
+        if (tempFileNames.remove(tempFileName) != null) {
+            store.deleteQuiet(tempFileName);
+        }
+        indexState.resetRecoveredBytesOfFile(fileName);
+    }
+
     /** Get a temporary name for the provided file name. */
     String getTempNameForFile(String origFile) {
         return tempFilePrefix + origFile;
@@ -61,14 +61,22 @@ public class PeerRecoverySourceService extends AbstractLifecycleComponent implem
     private final TransportService transportService;
     private final IndicesService indicesService;
     private final RecoverySettings recoverySettings;
+    @Nullable
+    private final SnapshotFilesProvider snapshotFilesProvider;
 
     final OngoingRecoveries ongoingRecoveries = new OngoingRecoveries();
 
     @Inject
     public PeerRecoverySourceService(TransportService transportService, IndicesService indicesService, RecoverySettings recoverySettings) {
+        this(transportService, indicesService, recoverySettings, null);
+    }
+
+    public PeerRecoverySourceService(TransportService transportService, IndicesService indicesService, RecoverySettings recoverySettings,
+                                     @Nullable SnapshotFilesProvider snapshotFilesProvider) {
         this.transportService = transportService;
         this.indicesService = indicesService;
         this.recoverySettings = recoverySettings;
+        this.snapshotFilesProvider = snapshotFilesProvider;
         // When the target node wants to start a peer recovery it sends a START_RECOVERY request to the source
         // node. Upon receiving START_RECOVERY, the source node will initiate the peer recovery.
         transportService.registerRequestHandler(Actions.START_RECOVERY, ThreadPool.Names.GENERIC, StartRecoveryRequest::new,
@@ -318,7 +326,9 @@ public class PeerRecoverySourceService extends AbstractLifecycleComponent implem
                 handler = new RecoverySourceHandler(shard, recoveryTarget, shard.getThreadPool(), request,
                     Math.toIntExact(recoverySettings.getChunkSize().getBytes()),
                     recoverySettings.getMaxConcurrentFileChunks(),
-                    recoverySettings.getMaxConcurrentOperations());
+                    recoverySettings.isAdaptiveFileChunks(),
+                    recoverySettings.getMaxConcurrentOperations(),
+                    snapshotFilesProvider);
                 return Tuple.tuple(handler, recoveryTarget);
             }
         }
@@ -44,10 +44,14 @@ import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardLongFieldRange;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.shard.ShardNotFoundException;
+import org.elasticsearch.index.snapshots.blobstore.BlobStoreIndexShardSnapshot;
 import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.index.translog.TranslogCorruptedException;
 import org.elasticsearch.indices.recovery.RecoveriesCollection.RecoveryRef;
+import org.elasticsearch.repositories.RepositoriesService;
+import org.elasticsearch.repositories.Repository;
+import org.elasticsearch.repositories.blobstore.BlobStoreRepository;
 import org.elasticsearch.tasks.Task;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.ConnectTransportException;
@@ -84,6 +88,7 @@ public class PeerRecoveryTargetService implements IndexEventListener {
         public static final String PREPARE_TRANSLOG = "internal:index/shard/recovery/prepare_translog";
         public static final String FINALIZE = "internal:index/shard/recovery/finalize";
         public static final String HANDOFF_PRIMARY_CONTEXT = "internal:index/shard/recovery/handoff_primary_context";
+        public static final String RESTORE_FILE_FROM_SNAPSHOT = "internal:index/shard/recovery/restore_file_from_snapshot";
     }
 
     private final ThreadPool threadPool;
@@ -95,12 +100,21 @@ public class PeerRecoveryTargetService implements IndexEventListener {
 
     private final RecoveriesCollection onGoingRecoveries;
 
+    @Nullable
+    private final RepositoriesService repositoriesService;
+
     public PeerRecoveryTargetService(ThreadPool threadPool, TransportService transportService,
             RecoverySettings recoverySettings, ClusterService clusterService) {
+        this(threadPool, transportService, recoverySettings, clusterService, null);
+    }
+
+    public PeerRecoveryTargetService(ThreadPool threadPool, TransportService transportService,
+            RecoverySettings recoverySettings, ClusterService clusterService, @Nullable RepositoriesService repositoriesService) {
         this.threadPool = threadPool;
         this.transportService = transportService;
         this.recoverySettings = recoverySettings;
         this.clusterService = clusterService;
+        this.repositoriesService = repositoriesService;
         this.onGoingRecoveries = new RecoveriesCollection(logger, threadPool);
 
         transportService.registerRequestHandler(Actions.FILES_INFO, ThreadPool.Names.GENERIC, RecoveryFilesInfoRequest::new,
@@ -120,6 +134,8 @@ public class PeerRecoveryTargetService implements IndexEventListener {
                 ThreadPool.Names.GENERIC,
                 RecoveryHandoffPrimaryContextRequest::new,
                 new HandoffPrimaryContextRequestHandler());
+        transportService.registerRequestHandler(Actions.RESTORE_FILE_FROM_SNAPSHOT, ThreadPool.Names.GENERIC,
+            RecoveryRestoreFileFromSnapshotRequest::new, new RestoreFileFromSnapshotRequestHandler());
     }
 
     @Override
@@ -434,6 +450,34 @@ public class PeerRecoveryTargetService implements IndexEventListener {
         }
     }
 
+    class RestoreFileFromSnapshotRequestHandler implements TransportRequestHandler<RecoveryRestoreFileFromSnapshotRequest> {
+
+        @Override
+        public void messageReceived(RecoveryRestoreFileFromSnapshotRequest request, TransportChannel channel, Task task) throws Exception {
+            try (RecoveryRef recoveryRef = onGoingRecoveries.getRecoverySafe(request.recoveryId(), request.shardId())) {
+                final ActionListener<Void> listener =
+                    createOrFinishListener(recoveryRef, channel, Actions.RESTORE_FILE_FROM_SNAPSHOT, request);
+                if (listener == null) {
+                    return;
+                }
+
+                ActionListener.completeWith(listener, () -> {
+                    if (repositoriesService == null) {
+                        throw new UnsupportedOperationException("restoring files from snapshots isn't supported on this node");
+                    }
+                    final Repository repository = repositoriesService.repository(request.repository());
+                    if (repository instanceof BlobStoreRepository == false) {
+                        throw new IllegalArgumentException("repository [" + request.repository() + "] is not a blob store repository");
+                    }
+                    final BlobStoreIndexShardSnapshot.FileInfo snapshotFile = request.snapshotFile();
+                    recoveryRef.target().writeFileFromSnapshot(snapshotFile.metadata(),
+                        ((BlobStoreRepository) repository).readSnapshotFile(request.indexId(), request.shardId().id(), snapshotFile));
+                    return null;
+                });
+            }
+        }
+    }
+
     class FileChunkTransportRequestHandler implements TransportRequestHandler<RecoveryFileChunkRequest> {
 
         // How many bytes we've copied since we last called RateLimiter.pause
@@ -0,0 +1,86 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.indices.recovery;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.snapshots.blobstore.BlobStoreIndexShardSnapshot;
+import org.elasticsearch.index.store.StoreFileMetadata;
+import org.elasticsearch.repositories.IndexId;
+
+import java.io.IOException;
+
+/**
+ * Asks the recovery target to download a file from a snapshot repository rather than receiving it from the recovery source.
+ */
+public class RecoveryRestoreFileFromSnapshotRequest extends RecoveryTransportRequest {
+
+    private final long recoveryId;
+    private final ShardId shardId;
+    private final String repository;
+    private final IndexId indexId;
+    private final BlobStoreIndexShardSnapshot.FileInfo snapshotFile;
+
+    public RecoveryRestoreFileFromSnapshotRequest(long recoveryId, long requestSeqNo, ShardId shardId, String repository,
+                                                  IndexId indexId, BlobStoreIndexShardSnapshot.FileInfo snapshotFile) {
+        super(requestSeqNo);
+        this.recoveryId = recoveryId;
+        this.shardId = shardId;
+        this.repository = repository;
+        this.indexId = indexId;
+        this.snapshotFile = snapshotFile;
+    }
+
+    RecoveryRestoreFileFromSnapshotRequest(StreamInput in) throws IOException {
+        super(in);
+        recoveryId = in.readLong();
+        shardId = new ShardId(in);
+        repository = in.readString();
+        indexId = new IndexId(in);
+        final String name = in.readString();
+        final StoreFileMetadata metadata = new StoreFileMetadata(in);
+        final ByteSizeValue partSize = in.readOptionalWriteable(ByteSizeValue::new);
+        snapshotFile = new BlobStoreIndexShardSnapshot.FileInfo(name, metadata, partSize);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeLong(recoveryId);
+        shardId.writeTo(out);
+        out.writeString(repository);
+        indexId.writeTo(out);
+        out.writeString(snapshotFile.name());
+        snapshotFile.metadata().writeTo(out);
+        out.writeOptionalWriteable(snapshotFile.partSize());
+    }
+
+    public long recoveryId() {
+        return recoveryId;
+    }
+
+    public ShardId shardId() {
+        return shardId;
+    }
+
+    public String repository() {
+        return repository;
+    }
+
+    public IndexId indexId() {
+        return indexId;
+    }
+
+    public BlobStoreIndexShardSnapshot.FileInfo snapshotFile() {
+        return snapshotFile;
+    }
+}
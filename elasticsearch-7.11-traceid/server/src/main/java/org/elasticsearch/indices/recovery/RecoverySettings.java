@@ -82,6 +82,14 @@ public class RecoverySettings {
     public static final Setting<Integer> INDICES_RECOVERY_MAX_CONCURRENT_FILE_CHUNKS_SETTING =
         Setting.intSetting("indices.recovery.max_concurrent_file_chunks", 2, 1, 5, Property.Dynamic, Property.NodeScope);
 
+    /**
+     * Whether the number of file chunk requests that are sent concurrently adapts to the measured throughput of the recovery,
+     * starting from {@link #INDICES_RECOVERY_MAX_CONCURRENT_FILE_CHUNKS_SETTING}, so that high latency links get enough requests in
+     * flight to be saturated.
+     */
+    public static final Setting<Boolean> INDICES_RECOVERY_ADAPTIVE_FILE_CHUNKS_SETTING =
+        Setting.boolSetting("indices.recovery.adaptive_file_chunks", false, Property.Dynamic, Property.NodeScope);
+
     /**
      * Controls the maximum number of operation chunk requests that can be sent concurrently from the source node to the target node.
      */
@@ -134,6 +142,7 @@ public class RecoverySettings {
 
     private volatile ByteSizeValue maxBytesPerSec;
     private volatile int maxConcurrentFileChunks;
+    private volatile boolean adaptiveFileChunks;
     private volatile int maxConcurrentOperations;
     private volatile SimpleRateLimiter rateLimiter;
     private volatile TimeValue retryDelayStateSync;
@@ -148,6 +157,7 @@ public class RecoverySettings {
     public RecoverySettings(Settings settings, ClusterSettings clusterSettings) {
         this.retryDelayStateSync = INDICES_RECOVERY_RETRY_DELAY_STATE_SYNC_SETTING.get(settings);
         this.maxConcurrentFileChunks = INDICES_RECOVERY_MAX_CONCURRENT_FILE_CHUNKS_SETTING.get(settings);
+        this.adaptiveFileChunks = INDICES_RECOVERY_ADAPTIVE_FILE_CHUNKS_SETTING.get(settings);
         this.maxConcurrentOperations = INDICES_RECOVERY_MAX_CONCURRENT_OPERATIONS_SETTING.get(settings);
         // doesn't have to be fast as nodes are reconnected every 10s by default (see InternalClusterService.ReconnectToNodes)
         // and we want to give the master time to remove a faulty node
@@ -170,6 +180,7 @@ public class RecoverySettings {
 
         clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_MAX_BYTES_PER_SEC_SETTING, this::setMaxBytesPerSec);
         clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_MAX_CONCURRENT_FILE_CHUNKS_SETTING, this::setMaxConcurrentFileChunks);
+        clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_ADAPTIVE_FILE_CHUNKS_SETTING, this::setAdaptiveFileChunks);
         clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_MAX_CONCURRENT_OPERATIONS_SETTING,
             this::setMaxConcurrentOperations);
         clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_RETRY_DELAY_STATE_SYNC_SETTING, this::setRetryDelayStateSync);
@@ -257,6 +268,14 @@ public class RecoverySettings {
         this.maxConcurrentFileChunks = maxConcurrentFileChunks;
     }
 
+    public boolean isAdaptiveFileChunks() {
+        return adaptiveFileChunks;
+    }
+
+    private void setAdaptiveFileChunks(boolean adaptiveFileChunks) {
+        this.adaptiveFileChunks = adaptiveFileChunks;
+    }
+
     public int getMaxConcurrentOperations() {
         return maxConcurrentOperations;
     }
@@ -30,6 +30,7 @@ import org.elasticsearch.action.support.replication.ReplicationResponse;
 import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.CheckedRunnable;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.StopWatch;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -55,11 +56,13 @@ import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardClosedException;
 import org.elasticsearch.index.shard.IndexShardRelocatedException;
 import org.elasticsearch.index.shard.IndexShardState;
+import org.elasticsearch.index.snapshots.blobstore.BlobStoreIndexShardSnapshot;
 import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.store.StoreFileMetadata;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.RemoteTransportException;
+import org.elasticsearch.transport.TransportException;
 import org.elasticsearch.transport.Transports;
 
 import java.io.Closeable;
@@ -69,8 +72,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -79,6 +85,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 /**
@@ -103,7 +110,10 @@ public class RecoverySourceHandler {
     private final int chunkSizeInBytes;
     private final RecoveryTargetHandler recoveryTarget;
     private final int maxConcurrentFileChunks;
+    private final boolean adaptiveFileChunks;
     private final int maxConcurrentOperations;
+    @Nullable
+    private final SnapshotFilesProvider snapshotFilesProvider;
     private final ThreadPool threadPool;
     private final CancellableThreads cancellableThreads = new CancellableThreads();
     private final List<Closeable> resources = new CopyOnWriteArrayList<>();
@@ -112,6 +122,20 @@ public class RecoverySourceHandler {
     public RecoverySourceHandler(IndexShard shard, RecoveryTargetHandler recoveryTarget, ThreadPool threadPool,
                                  StartRecoveryRequest request, int fileChunkSizeInBytes, int maxConcurrentFileChunks,
                                  int maxConcurrentOperations) {
+        this(shard, recoveryTarget, threadPool, request, fileChunkSizeInBytes, maxConcurrentFileChunks, false, maxConcurrentOperations);
+    }
+
+    public RecoverySourceHandler(IndexShard shard, RecoveryTargetHandler recoveryTarget, ThreadPool threadPool,
+                                 StartRecoveryRequest request, int fileChunkSizeInBytes, int maxConcurrentFileChunks,
+                                 boolean adaptiveFileChunks, int maxConcurrentOperations) {
+        this(shard, recoveryTarget, threadPool, request, fileChunkSizeInBytes, maxConcurrentFileChunks, adaptiveFileChunks,
+            maxConcurrentOperations, null);
+    }
+
+    public RecoverySourceHandler(IndexShard shard, RecoveryTargetHandler recoveryTarget, ThreadPool threadPool,
+                                 StartRecoveryRequest request, int fileChunkSizeInBytes, int maxConcurrentFileChunks,
+                                 boolean adaptiveFileChunks, int maxConcurrentOperations,
+                                 @Nullable SnapshotFilesProvider snapshotFilesProvider) {
         this.shard = shard;
         this.recoveryTarget = recoveryTarget;
         this.threadPool = threadPool;
@@ -121,7 +145,9 @@ public class RecoverySourceHandler {
         this.chunkSizeInBytes = fileChunkSizeInBytes;
         // if the target is on an old version, it won't be able to handle out-of-order file chunks.
         this.maxConcurrentFileChunks = request.targetNode().getVersion().onOrAfter(Version.V_6_7_0) ? maxConcurrentFileChunks : 1;
+        this.adaptiveFileChunks = adaptiveFileChunks && request.targetNode().getVersion().onOrAfter(Version.V_6_7_0);
         this.maxConcurrentOperations = maxConcurrentOperations;
+        this.snapshotFilesProvider = snapshotFilesProvider;
     }
 
     public StartRecoveryRequest getRequest() {
@@ -519,6 +545,7 @@ public class RecoverySourceHandler {
                     phase1FileNames.size(), new ByteSizeValue(totalSizeInBytes),
                     phase1ExistingFileNames.size(), new ByteSizeValue(existingTotalSizeInBytes));
                 final StepListener<Void> sendFileInfoStep = new StepListener<>();
+                final StepListener<List<StoreFileMetadata>> recoverFilesFromSnapshotStep = new StepListener<>();
                 final StepListener<Void> sendFilesStep = new StepListener<>();
                 final StepListener<RetentionLease> createRetentionLeaseStep = new StepListener<>();
                 final StepListener<Void> cleanFilesStep = new StepListener<>();
@@ -527,7 +554,10 @@ public class RecoverySourceHandler {
                         phase1ExistingFileSizes, translogOps.getAsInt(), sendFileInfoStep);
 
                 sendFileInfoStep.whenComplete(r ->
-                    sendFiles(store, phase1Files.toArray(new StoreFileMetadata[0]), translogOps, sendFilesStep), listener::onFailure);
+                    recoverFilesFromSnapshot(phase1Files, recoverFilesFromSnapshotStep), listener::onFailure);
+
+                recoverFilesFromSnapshotStep.whenComplete(filesToSend ->
+                    sendFiles(store, filesToSend.toArray(new StoreFileMetadata[0]), translogOps, sendFilesStep), listener::onFailure);
 
                 sendFilesStep.whenComplete(r -> createRetentionLease(startingSeqNo, createRetentionLeaseStep), listener::onFailure);
 
@@ -571,6 +601,68 @@ public class RecoverySourceHandler {
         }
     }
 
+    /**
+     * Has the target download the given files from a snapshot repository if they are in one, one file at a time, and completes the
+     * listener with the files that the target couldn't download and that must be sent from here.
+     */
+    void recoverFilesFromSnapshot(List<StoreFileMetadata> files, ActionListener<List<StoreFileMetadata>> listener) {
+        if (snapshotFilesProvider == null) {
+            listener.onResponse(files);
+            return;
+        }
+        snapshotFilesProvider.findSnapshotFiles(request.shardId(), files, ActionListener.wrap(repositoryFiles -> {
+            if (repositoryFiles.isPresent() == false) {
+                listener.onResponse(files);
+                return;
+            }
+            logger.trace("recovery [phase1]: recovering [{}] files from repository [{}]",
+                repositoryFiles.get().files().size(), repositoryFiles.get().repository());
+            final Set<String> recoveredFiles = new HashSet<>();
+            restoreNextFileFromSnapshot(repositoryFiles.get(), repositoryFiles.get().files().iterator(), recoveredFiles,
+                listener.map(r -> files.stream().filter(md -> recoveredFiles.contains(md.name()) == false).collect(Collectors.toList())));
+        }, listener::onFailure));
+    }
+
+    private void restoreNextFileFromSnapshot(SnapshotFilesProvider.RepositoryFiles repositoryFiles,
+                                             Iterator<BlobStoreIndexShardSnapshot.FileInfo> snapshotFiles, Set<String> recoveredFiles,
+                                             ActionListener<Void> listener) {
+        if (snapshotFiles.hasNext() == false) {
+            listener.onResponse(null);
+            return;
+        }
+        cancellableThreads.checkForCancel();
+        final BlobStoreIndexShardSnapshot.FileInfo snapshotFile = snapshotFiles.next();
+        // fork to continue with the next file, so that a long run of files that fail right away doesn't grow the stack
+        final Runnable restoreNextFile = () -> threadPool.generic().execute(ActionRunnable.wrap(listener,
+            l -> restoreNextFileFromSnapshot(repositoryFiles, snapshotFiles, recoveredFiles, l)));
+        recoveryTarget.restoreFileFromSnapshot(repositoryFiles.repository(), repositoryFiles.indexId(), snapshotFile,
+            ActionListener.wrap(r -> {
+                recoveredFiles.add(snapshotFile.physicalName());
+                restoreNextFile.run();
+            }, e -> {
+                if (isRestoreFromSnapshotAbandoned(e) == false) {
+                    // the target may still be writing the file, so sending it from here could interleave two copies of it
+                    listener.onFailure(e);
+                    return;
+                }
+                logger.debug(new ParameterizedMessage("failed to recover [{}] from repository [{}], sending it instead",
+                    snapshotFile.physicalName(), repositoryFiles.repository()), e);
+                restoreNextFile.run();
+            }));
+    }
+
+    /**
+     * Whether the given failure of {@link RecoveryTargetHandler#restoreFileFromSnapshot} means that the target gave up on the
+     * download and discarded its partial copy. A remote failure is only sent back once the download has stopped, but a failure to
+     * reach the target or to hear back from it says nothing about whether the download is still running.
+     */
+    static boolean isRestoreFromSnapshotAbandoned(Exception e) {
+        if (e instanceof RemoteTransportException) {
+            return true;
+        }
+        return e instanceof TransportException == false && e instanceof CancellableThreads.ExecutionCancelledException == false;
+    }
+
     void createRetentionLease(final long startingSeqNo, ActionListener<RetentionLease> listener) {
         runUnderPrimaryPermit(() -> {
                 // Clone the peer recovery retention lease belonging to the source shard. We are retaining history between the the local
@@ -887,6 +979,11 @@ public class RecoverySourceHandler {
             return lastChunk;
         }
 
+        @Override
+        public long sizeInBytes() {
+            return content.length();
+        }
+
         @Override
         public void close() {
             onClose.close();
@@ -896,8 +993,10 @@ public class RecoverySourceHandler {
     void sendFiles(Store store, StoreFileMetadata[] files, IntSupplier translogOps, ActionListener<Void> listener) {
         ArrayUtil.timSort(files, Comparator.comparingLong(StoreFileMetadata::length)); // send smallest first
 
+        final AdaptiveChunkConcurrency adaptiveConcurrency = adaptiveFileChunks ? new AdaptiveChunkConcurrency(
+            maxConcurrentFileChunks, AdaptiveChunkConcurrency.MAX_CONCURRENCY, System::nanoTime) : null;
         final MultiChunkTransfer<StoreFileMetadata, FileChunk>multiFileSender = new MultiChunkTransfer<StoreFileMetadata, FileChunk>(
-            logger, threadPool.getThreadContext(), listener, maxConcurrentFileChunks, Arrays.asList(files)) {
+            logger, threadPool.getThreadContext(), listener, maxConcurrentFileChunks, adaptiveConcurrency, Arrays.asList(files)) {
 
                 final Deque<byte[]> buffers = new ConcurrentLinkedDeque<>();
                 InputStreamIndexInput currentInput = null;
@@ -632,6 +632,11 @@ public class RecoveryState implements ToXContentFragment, Writeable {
             recovered += bytes;
         }
 
+        void resetRecoveredBytes() {
+            assert reused == false : "file is marked as reused, can't reset recovered bytes";
+            recovered = 0;
+        }
+
         /**
          * file name *
          */
@@ -760,6 +765,12 @@ public class RecoveryState implements ToXContentFragment, Writeable {
             file.addRecoveredBytes(bytes);
         }
 
+        public void resetRecoveredBytesOfFile(String name) {
+            FileDetail file = fileDetails.get(name);
+            assert file != null : "file [" + name + "] hasn't been reported";
+            file.resetRecoveredBytes();
+        }
+
         public FileDetail get(String name) {
             return fileDetails.get(name);
         }
@@ -844,6 +855,10 @@ public class RecoveryState implements ToXContentFragment, Writeable {
             fileDetails.addRecoveredBytesToFile(name, bytes);
         }
 
+        public synchronized void resetRecoveredBytesOfFile(String name) {
+            fileDetails.resetRecoveredBytesOfFile(name);
+        }
+
         public synchronized void addSourceThrottling(long timeInNanos) {
             if (sourceThrottlingInNanos == UNKNOWN) {
                 sourceThrottlingInNanos = timeInNanos;
@@ -21,6 +21,7 @@ import org.elasticsearch.action.admin.indices.flush.FlushRequest;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.UUIDs;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.logging.Loggers;
@@ -41,6 +42,7 @@ import org.elasticsearch.index.store.StoreFileMetadata;
 import org.elasticsearch.index.translog.Translog;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -59,6 +61,8 @@ public class RecoveryTarget extends AbstractRefCounted implements RecoveryTarget
 
     private static final String RECOVERY_PREFIX = "recovery.";
 
+    private static final long SNAPSHOT_FILE_BUFFER_SIZE = 128 * 1024;
+
     private final ShardId shardId;
     private final long recoveryId;
     private final IndexShard indexShard;
@@ -498,6 +502,33 @@ public class RecoveryTarget extends AbstractRefCounted implements RecoveryTarget
         }
     }
 
+    /**
+     * Writes a file that the recovery source found in a snapshot repository to the store, reading its content from the given stream,
+     * which is closed once the file is written. If the file can't be written, its partial copy is discarded before this method
+     * returns so that the source can send it instead.
+     */
+    public void writeFileFromSnapshot(StoreFileMetadata fileMetadata, InputStream stream) throws IOException {
+        final byte[] buffer = new byte[Math.toIntExact(Math.max(1L, Math.min(SNAPSHOT_FILE_BUFFER_SIZE, fileMetadata.length())))];
+        try (InputStream in = stream) {
+            long position = 0L;
+            do {
+                ensureRefCount();
+                final int length = in.read(buffer, 0, Math.toIntExact(Math.min(buffer.length, fileMetadata.length() - position)));
+                if (length == -1 || (length == 0 && position < fileMetadata.length())) {
+                    throw new CorruptIndexException("file truncated in the repository; length=" + fileMetadata.length()
+                        + " position=" + position, fileMetadata.name());
+                }
+                // chunks are written synchronously when they come in order, so the buffer can be reused
+                multiFileWriter.writeFileChunk(fileMetadata, position, new BytesArray(buffer, 0, length),
+                    position + length == fileMetadata.length());
+                position += length;
+            } while (position < fileMetadata.length());
+        } catch (Exception e) {
+            multiFileWriter.discardFile(fileMetadata.name());
+            throw e;
+        }
+    }
+
     /** Get a temporary name for the provided file name. */
     public String getTempNameForFile(String origFile) {
         return multiFileWriter.getTempNameForFile(origFile);
@@ -11,9 +11,11 @@ import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.index.seqno.ReplicationTracker;
 import org.elasticsearch.index.seqno.RetentionLeases;
+import org.elasticsearch.index.snapshots.blobstore.BlobStoreIndexShardSnapshot;
 import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.store.StoreFileMetadata;
 import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.repositories.IndexId;
 
 import java.util.List;
 
@@ -96,5 +98,15 @@ public interface RecoveryTargetHandler {
     void writeFileChunk(StoreFileMetadata fileMetadata, long position, BytesReference content,
                         boolean lastChunk, int totalTranslogOps, ActionListener<Void> listener);
 
+    /**
+     * Asks the target to download a file from the given snapshot repository rather than receiving it from the source. The listener
+     * is failed if the target can't do so, once it has discarded any partial copy of the file, in which case the source should send
+     * the file itself.
+     */
+    default void restoreFileFromSnapshot(String repository, IndexId indexId, BlobStoreIndexShardSnapshot.FileInfo snapshotFile,
+                                         ActionListener<Void> listener) {
+        listener.onFailure(new UnsupportedOperationException("restoring files from snapshots isn't supported by this target"));
+    }
+
     default void cancel() {}
 }
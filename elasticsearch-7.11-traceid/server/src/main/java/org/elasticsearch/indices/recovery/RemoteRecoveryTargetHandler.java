@@ -28,9 +28,11 @@ import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.seqno.ReplicationTracker;
 import org.elasticsearch.index.seqno.RetentionLeases;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.snapshots.blobstore.BlobStoreIndexShardSnapshot;
 import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.store.StoreFileMetadata;
 import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.repositories.IndexId;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.ConnectTransportException;
 import org.elasticsearch.transport.RemoteTransportException;
@@ -60,6 +62,7 @@ public class RemoteRecoveryTargetHandler implements RecoveryTargetHandler {
     private final TransportRequestOptions translogOpsRequestOptions;
     private final TransportRequestOptions fileChunkRequestOptions;
     private final TransportRequestOptions standardTimeoutRequestOptions;
+    private final TransportRequestOptions restoreFileFromSnapshotRequestOptions;
 
     private final AtomicLong bytesSinceLastPause = new AtomicLong();
     private final AtomicLong requestSeqNoGenerator = new AtomicLong(0);
@@ -82,6 +85,7 @@ public class RemoteRecoveryTargetHandler implements RecoveryTargetHandler {
         this.fileChunkRequestOptions =
                 TransportRequestOptions.of(recoverySettings.internalActionTimeout(), TransportRequestOptions.Type.RECOVERY);
         this.standardTimeoutRequestOptions = TransportRequestOptions.timeout(recoverySettings.internalActionTimeout());
+        this.restoreFileFromSnapshotRequestOptions = TransportRequestOptions.of(null, TransportRequestOptions.Type.RECOVERY);
         this.retriesSupported = targetNode.getVersion().onOrAfter(Version.V_7_9_0);
     }
 
@@ -205,6 +209,19 @@ public class RemoteRecoveryTargetHandler implements RecoveryTargetHandler {
         executeRetryableAction(action, request, fileChunkRequestOptions, listener.map(r -> null), reader);
     }
 
+    @Override
+    public void restoreFileFromSnapshot(String repository, IndexId indexId, BlobStoreIndexShardSnapshot.FileInfo snapshotFile,
+                                        ActionListener<Void> listener) {
+        final String action = PeerRecoveryTargetService.Actions.RESTORE_FILE_FROM_SNAPSHOT;
+        final long requestSeqNo = requestSeqNoGenerator.getAndIncrement();
+        final RecoveryRestoreFileFromSnapshotRequest request =
+            new RecoveryRestoreFileFromSnapshotRequest(recoveryId, requestSeqNo, shardId, repository, indexId, snapshotFile);
+        final Writeable.Reader<TransportResponse.Empty> reader = in -> TransportResponse.Empty.INSTANCE;
+        // the whole file is downloaded before the target responds, which takes as long as the repository needs, so there is no timeout:
+        // the source must not send the file itself while the target may still be writing it
+        executeRetryableAction(action, request, restoreFileFromSnapshotRequestOptions, listener.map(r -> null), reader);
+    }
+
     @Override
     public void cancel() {
         isCancelled = true;
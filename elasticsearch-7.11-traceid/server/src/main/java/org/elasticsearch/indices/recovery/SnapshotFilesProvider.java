@@ -0,0 +1,148 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.indices.recovery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRunnable;
+import org.elasticsearch.cluster.metadata.RepositoriesMetadata;
+import org.elasticsearch.cluster.metadata.RepositoryMetadata;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.snapshots.blobstore.BlobStoreIndexShardSnapshot;
+import org.elasticsearch.index.snapshots.blobstore.BlobStoreIndexShardSnapshots;
+import org.elasticsearch.index.store.StoreFileMetadata;
+import org.elasticsearch.repositories.IndexId;
+import org.elasticsearch.repositories.RepositoriesService;
+import org.elasticsearch.repositories.Repository;
+import org.elasticsearch.repositories.blobstore.BlobStoreRepository;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Finds the files of a peer recovery that the snapshots of its shard have in common with the recovery source, so that the recovery
+ * target can download them from the repository rather than copying them from the source node. Only the repositories that have
+ * {@link BlobStoreRepository#USE_FOR_PEER_RECOVERY_SETTING} enabled are used.
+ */
+public class SnapshotFilesProvider {
+
+    private static final Logger logger = LogManager.getLogger(SnapshotFilesProvider.class);
+
+    private final ClusterService clusterService;
+    private final RepositoriesService repositoriesService;
+    private final ThreadPool threadPool;
+
+    public SnapshotFilesProvider(ClusterService clusterService, RepositoriesService repositoriesService, ThreadPool threadPool) {
+        this.clusterService = clusterService;
+        this.repositoriesService = repositoriesService;
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Finds which of the given files of the given shard are in a snapshot repository. The listener is never failed: if no repository
+     * can be used, or if the repository can't be read, it is completed with an empty result and the files are copied from the source.
+     */
+    public void findSnapshotFiles(ShardId shardId, List<StoreFileMetadata> files, ActionListener<Optional<RepositoryFiles>> listener) {
+        final BlobStoreRepository repository = findRepository();
+        if (repository == null || files.isEmpty()) {
+            listener.onResponse(Optional.empty());
+            return;
+        }
+        final ActionListener<Optional<RepositoryFiles>> emptyOnFailure = ActionListener.wrap(listener::onResponse, e -> {
+            logger.debug(new ParameterizedMessage("{} failed to find files to recover from repository [{}]",
+                shardId, repository.getMetadata().name()), e);
+            listener.onResponse(Optional.empty());
+        });
+        repository.getRepositoryData(ActionListener.wrap(repositoryData -> {
+            final IndexId indexId = repositoryData.getIndices().get(shardId.getIndexName());
+            if (indexId == null) {
+                emptyOnFailure.onResponse(Optional.empty());
+                return;
+            }
+            final String shardGeneration = repositoryData.shardGenerations().getShardGen(indexId, shardId.id());
+            // reading the shard snapshots is blocking IO, which doesn't belong on the thread that loaded the repository data
+            threadPool.generic().execute(ActionRunnable.supply(emptyOnFailure, () -> {
+                final BlobStoreIndexShardSnapshots snapshots =
+                    repository.getBlobStoreIndexShardSnapshots(indexId, shardId.id(), shardGeneration);
+                final List<BlobStoreIndexShardSnapshot.FileInfo> snapshotFiles = new ArrayList<>();
+                for (StoreFileMetadata md : files) {
+                    final List<BlobStoreIndexShardSnapshot.FileInfo> candidates = snapshots.findPhysicalIndexFiles(md.name());
+                    if (candidates != null) {
+                        candidates.stream().filter(fileInfo -> fileInfo.isSame(md)).findFirst().ifPresent(snapshotFiles::add);
+                    }
+                }
+                if (snapshotFiles.isEmpty()) {
+                    return Optional.empty();
+                }
+                return Optional.of(new RepositoryFiles(repository.getMetadata().name(), indexId, snapshotFiles));
+            }));
+        }, emptyOnFailure::onFailure));
+    }
+
+    @Nullable
+    private BlobStoreRepository findRepository() {
+        final RepositoriesMetadata repositoriesMetadata = clusterService.state().metadata().custom(RepositoriesMetadata.TYPE);
+        if (repositoriesMetadata == null) {
+            return null;
+        }
+        final List<RepositoryMetadata> candidates = new ArrayList<>(repositoriesMetadata.repositories());
+        // pick the same repository on every recovery if several of them can be used
+        candidates.sort(Comparator.comparing(RepositoryMetadata::name));
+        for (RepositoryMetadata repositoryMetadata : candidates) {
+            if (BlobStoreRepository.USE_FOR_PEER_RECOVERY_SETTING.get(repositoryMetadata.settings()) == false) {
+                continue;
+            }
+            try {
+                final Repository repository = repositoriesService.repository(repositoryMetadata.name());
+                if (repository instanceof BlobStoreRepository) {
+                    return (BlobStoreRepository) repository;
+                }
+            } catch (Exception e) {
+                logger.debug(new ParameterizedMessage("repository [{}] can't be used for peer recoveries", repositoryMetadata.name()), e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The files of a shard that can be recovered from a snapshot repository.
+     */
+    public static final class RepositoryFiles {
+        private final String repository;
+        private final IndexId indexId;
+        private final List<BlobStoreIndexShardSnapshot.FileInfo> files;
+
+        public RepositoryFiles(String repository, IndexId indexId, List<BlobStoreIndexShardSnapshot.FileInfo> files) {
+            this.repository = repository;
+            this.indexId = indexId;
+            this.files = Collections.unmodifiableList(files);
+        }
+
+        public String repository() {
+            return repository;
+        }
+
+        public IndexId indexId() {
+            return indexId;
+        }
+
+        public List<BlobStoreIndexShardSnapshot.FileInfo> files() {
+            return files;
+        }
+    }
+}
@@ -110,6 +110,7 @@ import org.elasticsearch.snapshots.SnapshotMissingException;
 import org.elasticsearch.snapshots.SnapshotsService;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.io.ByteArrayInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -117,6 +118,7 @@ import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -126,8 +128,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -215,6 +220,19 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
     public static final Setting<Integer> MAX_SNAPSHOTS_SETTING =
             Setting.intSetting("max_number_of_snapshots", Integer.MAX_VALUE, 1, Setting.Property.NodeScope);
 
+    /**
+     * Setting that allows peer recoveries to download the files that the snapshots in this repository have in common with the
+     * recovery source from the repository, rather than copying them from the source node.
+     */
+    public static final Setting<Boolean> USE_FOR_PEER_RECOVERY_SETTING =
+        Setting.boolSetting("use_for_peer_recovery", false, Setting.Property.NodeScope);
+
+    /**
+     * The number of blobs that are deleted at once when a snapshot delete removes the unreferenced shard level blobs, which is also
+     * the largest bulk delete that most cloud object stores accept.
+     */
+    static final int MAX_BLOBS_PER_DELETE_BATCH = 1000;
+
     protected final boolean supportURLRepo;
 
     private final boolean compress;
@@ -769,8 +787,43 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
     private void asyncCleanupUnlinkedShardLevelBlobs(RepositoryData oldRepositoryData, Collection<SnapshotId> snapshotIds,
                                                      Collection<ShardSnapshotMetaDeleteResult> deleteResults,
                                                      ActionListener<Void> listener) {
-        final List<String> filesToDelete = resolveFilesToDelete(oldRepositoryData, snapshotIds, deleteResults);
-        if (filesToDelete.isEmpty()) {
+        deleteBlobsInBatches(snapshotIds, resolveFilesToDelete(oldRepositoryData, snapshotIds, deleteResults), listener);
+    }
+
+    /**
+     * Deletes the given blobs of the root container in batches, as many batches at once as fit into the snapshot pool. The batches are
+     * taken from the lazy iterator as the workers need them so that the paths of all the blobs to delete are never held in memory at
+     * the same time. A batch that fails to be deleted doesn't stop the other batches, and fails the listener once they are all done.
+     */
+    void deleteBlobsInBatches(Collection<SnapshotId> snapshotIds, Iterator<String> filesToDelete, ActionListener<Void> listener) {
+        if (filesToDelete.hasNext() == false) {
+            listener.onResponse(null);
+            return;
+        }
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final int workers = threadPool.info(ThreadPool.Names.SNAPSHOT).getMax();
+        final ActionListener<Void> allBatchesListener = new GroupedActionListener<>(ActionListener.wrap(v -> {
+            final Exception e = failure.get();
+            if (e == null) {
+                listener.onResponse(null);
+            } else {
+                listener.onFailure(e);
+            }
+        }, listener::onFailure), workers);
+        for (int i = 0; i < workers; i++) {
+            executeOneDeleteBatch(snapshotIds, filesToDelete, failure, allBatchesListener);
+        }
+    }
+
+    private void executeOneDeleteBatch(Collection<SnapshotId> snapshotIds, Iterator<String> filesToDelete,
+                                       AtomicReference<Exception> failure, ActionListener<Void> listener) {
+        final List<String> batch = new ArrayList<>();
+        synchronized (filesToDelete) {
+            while (batch.size() < MAX_BLOBS_PER_DELETE_BATCH && filesToDelete.hasNext()) {
+                batch.add(filesToDelete.next());
+            }
+        }
+        if (batch.isEmpty()) {
             listener.onResponse(null);
             return;
         }
@@ -778,14 +831,14 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
             listener,
             l -> {
                 try {
-                    deleteFromContainer(blobContainer(), filesToDelete);
-                    l.onResponse(null);
+                    deleteFromContainer(blobContainer(), batch);
                 } catch (Exception e) {
                     logger.warn(
                         () -> new ParameterizedMessage("{} Failed to delete some blobs during snapshot delete", snapshotIds),
                         e);
-                    throw e;
+                    failure.accumulateAndGet(e, ExceptionsHelper::useOrSuppress);
                 }
+                executeOneDeleteBatch(snapshotIds, filesToDelete, failure, l);
             }));
     }
 
@@ -876,8 +929,8 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
         }
     }
 
-    private List<String> resolveFilesToDelete(RepositoryData oldRepositoryData, Collection<SnapshotId> snapshotIds,
-                                              Collection<ShardSnapshotMetaDeleteResult> deleteResults) {
+    private Iterator<String> resolveFilesToDelete(RepositoryData oldRepositoryData, Collection<SnapshotId> snapshotIds,
+                                                  Collection<ShardSnapshotMetaDeleteResult> deleteResults) {
         final String basePath = basePath().buildAsString();
         final int basePathLen = basePath.length();
         final Map<IndexId, Collection<String>> indexMetaGenerations =
@@ -895,7 +948,7 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
         ).map(absolutePath -> {
             assert absolutePath.startsWith(basePath);
             return absolutePath.substring(basePathLen);
-        }).collect(Collectors.toList());
+        }).iterator();
     }
 
     /**
@@ -937,7 +990,7 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
         if (foundIndices.keySet().equals(survivingIndexIds)) {
             groupedListener.onResponse(DeleteResult.ZERO);
         } else {
-            executor.execute(ActionRunnable.supply(groupedListener, () -> cleanupStaleIndices(foundIndices, survivingIndexIds)));
+            cleanupStaleIndices(foundIndices, survivingIndexIds, groupedListener);
         }
     }
 
@@ -1045,23 +1098,56 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
         return Collections.emptyList();
     }
 
-    private DeleteResult cleanupStaleIndices(Map<String, BlobContainer> foundIndices, Set<String> survivingIndexIds) {
-        DeleteResult deleteResult = DeleteResult.ZERO;
-        try {
-            for (Map.Entry<String, BlobContainer> indexEntry : foundIndices.entrySet()) {
-                final String indexSnId = indexEntry.getKey();
-                try {
-                    if (survivingIndexIds.contains(indexSnId) == false) {
-                        logger.debug("[{}] Found stale index [{}]. Cleaning it up", metadata.name(), indexSnId);
-                        deleteResult = deleteResult.add(indexEntry.getValue().delete());
-                        logger.debug("[{}] Cleaned up stale index [{}]", metadata.name(), indexSnId);
-                    }
-                } catch (IOException e) {
-                    logger.warn(() -> new ParameterizedMessage(
-                        "[{}] index {} is no longer part of any snapshots in the repository, " +
-                            "but failed to clean up their index folders", metadata.name(), indexSnId), e);
-                }
+    /**
+     * Deletes the folders of the stale indices, as many at once as fit into the snapshot pool, so that deleting many indices doesn't
+     * take as long as deleting them one after the other. The indices are queued up so that they don't flood the snapshot pool's queue.
+     */
+    private void cleanupStaleIndices(Map<String, BlobContainer> foundIndices, Set<String> survivingIndexIds,
+                                     ActionListener<DeleteResult> listener) {
+        final BlockingQueue<Map.Entry<String, BlobContainer>> staleIndices = new LinkedBlockingQueue<>();
+        for (Map.Entry<String, BlobContainer> indexEntry : foundIndices.entrySet()) {
+            if (survivingIndexIds.contains(indexEntry.getKey()) == false) {
+                staleIndices.add(indexEntry);
             }
+        }
+        if (staleIndices.isEmpty()) {
+            listener.onResponse(DeleteResult.ZERO);
+            return;
+        }
+        final int workers = Math.min(threadPool.info(ThreadPool.Names.SNAPSHOT).getMax(), staleIndices.size());
+        final GroupedActionListener<DeleteResult> groupedListener = new GroupedActionListener<>(listener.map(deleteResults -> {
+            DeleteResult deleteResult = DeleteResult.ZERO;
+            for (DeleteResult result : deleteResults) {
+                deleteResult = deleteResult.add(result);
+            }
+            return deleteResult;
+        }), workers);
+        for (int i = 0; i < workers; i++) {
+            executeOneStaleIndexDelete(staleIndices, DeleteResult.ZERO, groupedListener);
+        }
+    }
+
+    private void executeOneStaleIndexDelete(BlockingQueue<Map.Entry<String, BlobContainer>> staleIndices, DeleteResult deleteResult,
+                                            ActionListener<DeleteResult> listener) {
+        final Map.Entry<String, BlobContainer> indexEntry = staleIndices.poll();
+        if (indexEntry == null) {
+            listener.onResponse(deleteResult);
+            return;
+        }
+        threadPool.executor(ThreadPool.Names.SNAPSHOT).execute(ActionRunnable.wrap(listener, l -> executeOneStaleIndexDelete(
+            staleIndices, deleteResult.add(cleanupStaleIndex(indexEntry.getKey(), indexEntry.getValue())), l)));
+    }
+
+    private DeleteResult cleanupStaleIndex(String indexSnId, BlobContainer indexContainer) {
+        try {
+            logger.debug("[{}] Found stale index [{}]. Cleaning it up", metadata.name(), indexSnId);
+            final DeleteResult deleteResult = indexContainer.delete();
+            logger.debug("[{}] Cleaned up stale index [{}]", metadata.name(), indexSnId);
+            return deleteResult;
+        } catch (IOException e) {
+            logger.warn(() -> new ParameterizedMessage(
+                "[{}] index {} is no longer part of any snapshots in the repository, " +
+                    "but failed to clean up their index folders", metadata.name(), indexSnId), e);
         } catch (Exception e) {
             // TODO: We shouldn't be blanket catching and suppressing all exceptions here and instead handle them safely upstream.
             //       Currently this catch exists as a stop gap solution to tackle unexpected runtime exceptions from implementations
@@ -1069,7 +1155,7 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
             assert false : e;
             logger.warn(new ParameterizedMessage("[{}] Exception during cleanup of stale indices", metadata.name()), e);
         }
-        return deleteResult;
+        return DeleteResult.ZERO;
     }
 
     @Override
@@ -2031,7 +2117,7 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
             int indexTotalNumberOfFiles = 0;
             long indexIncrementalSize = 0;
             long indexTotalFileSize = 0;
-            final BlockingQueue<BlobStoreIndexShardSnapshot.FileInfo> filesToSnapshot = new LinkedBlockingQueue<>();
+            final List<BlobStoreIndexShardSnapshot.FileInfo> filesToSnapshot = new ArrayList<>();
             // If we did not find a set of files that is equal to the current commit we determine the files to upload by comparing files
             // in the commit with files already in the repository
             if (filesFromSegmentInfos == null) {
@@ -2114,19 +2200,25 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
             }
             final BlobStoreIndexShardSnapshots updatedBlobStoreIndexShardSnapshots = new BlobStoreIndexShardSnapshots(newSnapshotsList);
             final Runnable afterWriteSnapBlob;
+            final Executor executor = threadPool.executor(ThreadPool.Names.SNAPSHOT);
+            final StepListener<Void> shardGenerationWrittenListener = new StepListener<>();
             if (writeShardGens) {
                 // When using shard generations we can safely write the index-${uuid} blob before writing out any of the actual data
                 // for this shard since the uuid named blob will simply not be referenced in case of error and thus we will never
-                // reference a generation that has not had all its files fully upload.
-                indexGeneration = UUIDs.randomBase64UUID();
-                try {
-                    INDEX_SHARD_SNAPSHOTS_FORMAT.write(updatedBlobStoreIndexShardSnapshots, shardContainer, indexGeneration, compress,
+                // reference a generation that has not had all its files fully upload. We write it while the files upload, rather than
+                // before, so that its latency doesn't add up to the time it takes to snapshot the shard.
+                final String newGeneration = UUIDs.randomBase64UUID();
+                indexGeneration = newGeneration;
+                executor.execute(ActionRunnable.run(shardGenerationWrittenListener, () -> {
+                    try {
+                        INDEX_SHARD_SNAPSHOTS_FORMAT.write(updatedBlobStoreIndexShardSnapshots, shardContainer, newGeneration, compress,
                             bigArrays);
-                } catch (IOException e) {
-                    throw new IndexShardSnapshotFailedException(shardId,
+                    } catch (IOException e) {
+                        throw new IndexShardSnapshotFailedException(shardId,
                             "Failed to write shard level snapshot metadata for [" + snapshotId + "] to ["
-                                    + INDEX_SHARD_SNAPSHOTS_FORMAT.blobName(indexGeneration) + "]", e);
-                }
+                                + INDEX_SHARD_SNAPSHOTS_FORMAT.blobName(newGeneration) + "]", e);
+                    }
+                }));
                 afterWriteSnapBlob = () -> {};
             } else {
                 // When not using shard generations we can only write the index-${N} blob after all other work for this shard has
@@ -2141,6 +2233,7 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
                         .max().orElse(-1L) < Long.parseLong(indexGeneration)
                         : "Tried to delete an index-N blob newer than the current generation [" + indexGeneration
                         + "] when deleting index-N blobs " + blobsToDelete;
+                shardGenerationWrittenListener.onResponse(null);
                 afterWriteSnapBlob = () -> {
                     try {
                         writeShardIndexBlobAtomic(shardContainer, newGen, updatedBlobStoreIndexShardSnapshots);
@@ -2159,7 +2252,10 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
             }
 
             final StepListener<Collection<Void>> allFilesUploadedListener = new StepListener<>();
-            allFilesUploadedListener.whenComplete(v -> {
+            final StepListener<Void> readyToFinalizeListener = new StepListener<>();
+            allFilesUploadedListener.whenComplete(v -> shardGenerationWrittenListener.whenComplete(readyToFinalizeListener::onResponse,
+                readyToFinalizeListener::onFailure), listener::onFailure);
+            readyToFinalizeListener.whenComplete(v -> {
                 final IndexShardSnapshotStatus.Copy lastSnapshotStatus =
                     snapshotStatus.moveToFinalize(snapshotIndexCommit.getGeneration());
 
@@ -2185,12 +2281,17 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
                 allFilesUploadedListener.onResponse(Collections.emptyList());
                 return;
             }
-            final Executor executor = threadPool.executor(ThreadPool.Names.SNAPSHOT);
+            // Files that are made of several parts are uploaded one part per worker, so that large files upload in parallel too
+            final BlockingQueue<FileUpload> uploads = new LinkedBlockingQueue<>();
+            for (BlobStoreIndexShardSnapshot.FileInfo fileInfo : filesToSnapshot) {
+                FileUpload.addUploads(fileInfo, uploads);
+            }
             // Start as many workers as fit into the snapshot pool at once at the most
-            final int workers = Math.min(threadPool.info(ThreadPool.Names.SNAPSHOT).getMax(), indexIncrementalFileCount);
-            final ActionListener<Void> filesListener = fileQueueListener(filesToSnapshot, workers, allFilesUploadedListener);
+            final int workers = Math.min(threadPool.info(ThreadPool.Names.SNAPSHOT).getMax(),
+                Math.max(indexIncrementalFileCount, uploads.size()));
+            final ActionListener<Void> filesListener = fileQueueListener(uploads, workers, allFilesUploadedListener);
             for (int i = 0; i < workers; ++i) {
-                executeOneFileSnapshot(store, snapshotId, indexId, snapshotStatus, filesToSnapshot, executor, filesListener);
+                executeOneFileSnapshot(store, snapshotId, indexId, snapshotStatus, uploads, executor, filesListener);
             }
         } catch (Exception e) {
             listener.onFailure(e);
@@ -2198,16 +2299,20 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
     }
 
     private void executeOneFileSnapshot(Store store, SnapshotId snapshotId, IndexId indexId, IndexShardSnapshotStatus snapshotStatus,
-                                        BlockingQueue<BlobStoreIndexShardSnapshot.FileInfo> filesToSnapshot, Executor executor,
+                                        BlockingQueue<FileUpload> filesToSnapshot, Executor executor,
                                         ActionListener<Void> listener) throws InterruptedException {
         final ShardId shardId = store.shardId();
-        final BlobStoreIndexShardSnapshot.FileInfo snapshotFileInfo = filesToSnapshot.poll(0L, TimeUnit.MILLISECONDS);
-        if (snapshotFileInfo == null) {
+        final FileUpload upload = filesToSnapshot.poll(0L, TimeUnit.MILLISECONDS);
+        if (upload == null) {
             listener.onResponse(null);
         } else {
             executor.execute(ActionRunnable.wrap(listener, l -> {
                 try (Releasable ignored = incrementStoreRef(store, snapshotStatus, shardId)) {
-                    snapshotFile(snapshotFileInfo, indexId, shardId, snapshotId, snapshotStatus, store);
+                    if (upload.fileInfo.numberOfParts() == 1) {
+                        snapshotFile(upload.fileInfo, indexId, shardId, snapshotId, snapshotStatus, store);
+                    } else {
+                        snapshotFilePart(upload, indexId, shardId, snapshotId, snapshotStatus, store);
+                    }
                     executeOneFileSnapshot(store, snapshotId, indexId, snapshotStatus, filesToSnapshot, executor, l);
                 }
             }));
@@ -2345,8 +2450,8 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
         }));
     }
 
-    private static ActionListener<Void> fileQueueListener(BlockingQueue<BlobStoreIndexShardSnapshot.FileInfo> files, int workers,
-                                                          ActionListener<Collection<Void>> listener) {
+    private static <T> ActionListener<Void> fileQueueListener(BlockingQueue<T> files, int workers,
+                                                              ActionListener<Collection<Void>> listener) {
         return ActionListener.delegateResponse(new GroupedActionListener<>(listener, workers), (l, e) -> {
             files.clear(); // Stop uploading the remaining files if we run into any exception
             l.onFailure(e);
@@ -2503,6 +2608,38 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
         }
     }
 
+    /**
+     * Loads the files of all the snapshots of the given shard.
+     *
+     * @param shardGeneration the shard generation tracked in the {@link RepositoryData}, or {@code null} if it isn't tracked, in which
+     *                        case the latest generation is found by listing the blobs of the shard
+     */
+    public BlobStoreIndexShardSnapshots getBlobStoreIndexShardSnapshots(IndexId indexId, int shardId,
+                                                                        @Nullable String shardGeneration) throws IOException {
+        final BlobContainer shardContainer = shardContainer(indexId, shardId);
+        final Set<String> blobs = shardGeneration == null ? shardContainer.listBlobs().keySet() : Collections.emptySet();
+        return buildBlobStoreIndexShardSnapshots(blobs, shardContainer, shardGeneration).v1();
+    }
+
+    /**
+     * Opens a stream over the content of a file of a snapshot of the given shard, for instance to recover this file without
+     * restoring the snapshot. The stream is rate limited like restores are.
+     */
+    public InputStream readSnapshotFile(IndexId indexId, int shardId, BlobStoreIndexShardSnapshot.FileInfo fileInfo) {
+        if (fileInfo.name().startsWith(VIRTUAL_DATA_BLOB_PREFIX)) {
+            // the content of small files is stored in their metadata
+            final BytesRef hash = fileInfo.metadata().hash();
+            return new ByteArrayInputStream(hash.bytes, hash.offset, hash.length);
+        }
+        final BlobContainer container = shardContainer(indexId, shardId);
+        return maybeRateLimitRestores(new SlicedInputStream(fileInfo.numberOfParts()) {
+            @Override
+            protected InputStream openSlice(int slice) throws IOException {
+                return container.readBlob(fileInfo.partName(slice));
+            }
+        });
+    }
+
     /**
      * Loads all available snapshots in the repository using the given {@code generation} or falling back to trying to determine it from
      * the given list of blobs in the shard container.
@@ -2556,35 +2693,7 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
         final String file = fileInfo.physicalName();
         try (IndexInput indexInput = store.openVerifyingInput(file, IOContext.READONCE, fileInfo.metadata())) {
             for (int i = 0; i < fileInfo.numberOfParts(); i++) {
-                final long partBytes = fileInfo.partBytes(i);
-
-                // Make reads abortable by mutating the snapshotStatus object
-                final InputStream inputStream = new FilterInputStream(maybeRateLimitSnapshots(
-                    new InputStreamIndexInput(indexInput, partBytes))) {
-                    @Override
-                    public int read() throws IOException {
-                        checkAborted();
-                        return super.read();
-                    }
-
-                    @Override
-                    public int read(byte[] b, int off, int len) throws IOException {
-                        checkAborted();
-                        return super.read(b, off, len);
-                    }
-
-                    private void checkAborted() {
-                        if (snapshotStatus.isAborted()) {
-                            logger.debug("[{}] [{}] Aborted on the file [{}], exiting", shardId,
-                                snapshotId, fileInfo.physicalName());
-                            throw new AbortedSnapshotException();
-                        }
-                    }
-                };
-                final String partName = fileInfo.partName(i);
-                logger.trace(() ->
-                        new ParameterizedMessage("[{}] Writing [{}] to [{}]", metadata.name(), partName, shardContainer.path()));
-                shardContainer.writeBlob(partName, inputStream, partBytes, false);
+                writeFilePart(shardContainer, fileInfo, i, indexInput, shardId, snapshotId, snapshotStatus);
             }
             Store.verify(indexInput);
             snapshotStatus.addProcessedFile(fileInfo.length());
@@ -2595,6 +2704,103 @@ public abstract class BlobStoreRepository extends AbstractLifecycleComponent imp
         }
     }
 
+    /**
+     * Snapshot a single part of a file that is made of several parts. The file is verified from the checksums of the bytes uploaded
+     * for each of its parts once all its parts are uploaded.
+     */
+    private void snapshotFilePart(FileUpload upload, IndexId indexId, ShardId shardId, SnapshotId snapshotId,
+                                  IndexShardSnapshotStatus snapshotStatus, Store store) throws IOException {
+        final BlobContainer shardContainer = shardContainer(indexId, shardId);
+        final BlobStoreIndexShardSnapshot.FileInfo fileInfo = upload.fileInfo;
+        try {
+            // all the parts but the last one are full, so this part starts after as many full parts as its index
+            try (IndexInput indexInput = store.openVerifyingInput(fileInfo.physicalName(), IOContext.READONCE, fileInfo.metadata(),
+                    upload.part * fileInfo.partBytes(0))) {
+                writeFilePart(shardContainer, fileInfo, upload.part, indexInput, shardId, snapshotId, snapshotStatus);
+                upload.partChecksums.set(upload.part, Store.getPartChecksum(indexInput));
+            }
+            if (upload.remainingParts.decrementAndGet() == 0) {
+                final List<Store.PartChecksum> partChecksums = new ArrayList<>(fileInfo.numberOfParts());
+                for (int i = 0; i < fileInfo.numberOfParts(); i++) {
+                    partChecksums.add(upload.partChecksums.get(i));
+                }
+                Store.verifyParts(fileInfo.metadata(), partChecksums);
+                snapshotStatus.addProcessedFile(fileInfo.length());
+            }
+        } catch (Exception t) {
+            failStoreIfCorrupted(store, t);
+            if (upload.failed.compareAndSet(false, true)) {
+                snapshotStatus.addProcessedFile(0);
+            }
+            throw t;
+        }
+    }
+
+    private void writeFilePart(BlobContainer shardContainer, BlobStoreIndexShardSnapshot.FileInfo fileInfo, int part,
+                               IndexInput indexInput, ShardId shardId, SnapshotId snapshotId,
+                               IndexShardSnapshotStatus snapshotStatus) throws IOException {
+        final long partBytes = fileInfo.partBytes(part);
+
+        // Make reads abortable by mutating the snapshotStatus object
+        final InputStream inputStream = new FilterInputStream(maybeRateLimitSnapshots(
+            new InputStreamIndexInput(indexInput, partBytes))) {
+            @Override
+            public int read() throws IOException {
+                checkAborted();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                checkAborted();
+                return super.read(b, off, len);
+            }
+
+            private void checkAborted() {
+                if (snapshotStatus.isAborted()) {
+                    logger.debug("[{}] [{}] Aborted on the file [{}], exiting", shardId,
+                        snapshotId, fileInfo.physicalName());
+                    throw new AbortedSnapshotException();
+                }
+            }
+        };
+        final String partName = fileInfo.partName(part);
+        logger.trace(() ->
+                new ParameterizedMessage("[{}] Writing [{}] to [{}]", metadata.name(), partName, shardContainer.path()));
+        shardContainer.writeBlob(partName, inputStream, partBytes, false);
+    }
+
+    /**
+     * A unit of work of a shard snapshot: either a whole file that is made of a single part, or one part of a file that is made of
+     * several parts. The parts of the same file share their count of remaining parts and the checksums of the uploaded parts, so that
+     * the file is verified exactly once.
+     */
+    private static final class FileUpload {
+        private final BlobStoreIndexShardSnapshot.FileInfo fileInfo;
+        private final int part;
+        private final AtomicInteger remainingParts;
+        private final AtomicReferenceArray<Store.PartChecksum> partChecksums;
+        private final AtomicBoolean failed;
+
+        private FileUpload(BlobStoreIndexShardSnapshot.FileInfo fileInfo, int part, AtomicInteger remainingParts,
+                           AtomicReferenceArray<Store.PartChecksum> partChecksums, AtomicBoolean failed) {
+            this.fileInfo = fileInfo;
+            this.part = part;
+            this.remainingParts = remainingParts;
+            this.partChecksums = partChecksums;
+            this.failed = failed;
+        }
+
+        static void addUploads(BlobStoreIndexShardSnapshot.FileInfo fileInfo, Collection<FileUpload> uploads) {
+            final AtomicInteger remainingParts = new AtomicInteger(fileInfo.numberOfParts());
+            final AtomicReferenceArray<Store.PartChecksum> partChecksums = new AtomicReferenceArray<>(fileInfo.numberOfParts());
+            final AtomicBoolean failed = new AtomicBoolean();
+            for (int i = 0; i < fileInfo.numberOfParts(); i++) {
+                uploads.add(new FileUpload(fileInfo, i, remainingParts, partChecksums, failed));
+            }
+        }
+    }
+
     private static void failStoreIfCorrupted(Store store, Exception e) {
         if (Lucene.isCorruptionException(e)) {
             try {
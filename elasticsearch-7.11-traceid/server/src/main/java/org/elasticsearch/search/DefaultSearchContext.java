@@ -8,6 +8,7 @@
 
 package org.elasticsearch.search;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
@@ -32,6 +33,7 @@ import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryShardContext;
 import org.elasticsearch.index.search.NestedHelper;
 import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.indices.IndicesStoredFieldsCache;
 import org.elasticsearch.search.aggregations.SearchContextAggregations;
 import org.elasticsearch.search.collapse.CollapseContext;
 import org.elasticsearch.search.dfs.DfsSearchResult;
@@ -140,6 +142,18 @@ final class DefaultSearchContext extends SearchContext {
                          FetchPhase fetchPhase,
                          boolean lowLevelCancellation,
                          Version minNodeVersion) throws IOException {
+        this(readerContext, request, shardTarget, relativeTimeSupplier, timeout, fetchPhase, lowLevelCancellation, minNodeVersion, null);
+    }
+
+    DefaultSearchContext(ReaderContext readerContext,
+                         ShardSearchRequest request,
+                         SearchShardTarget shardTarget,
+                         LongSupplier relativeTimeSupplier,
+                         TimeValue timeout,
+                         FetchPhase fetchPhase,
+                         boolean lowLevelCancellation,
+                         Version minNodeVersion,
+                         @Nullable IndicesStoredFieldsCache storedFieldsCache) throws IOException {
         this.readerContext = readerContext;
         this.request = request;
         this.fetchPhase = fetchPhase;
@@ -152,7 +166,11 @@ final class DefaultSearchContext extends SearchContext {
         this.indexShard = readerContext.indexShard();
 
         Engine.Searcher engineSearcher = readerContext.acquireSearcher("search");
-        this.searcher = new ContextIndexSearcher(engineSearcher.getIndexReader(), engineSearcher.getSimilarity(),
+        // the cache leaves searchers that were wrapped by the shard's reader wrapper, like field level security, uncached
+        final IndexReader reader = storedFieldsCache == null
+            ? engineSearcher.getIndexReader()
+            : storedFieldsCache.wrap(engineSearcher.getDirectoryReader());
+        this.searcher = new ContextIndexSearcher(reader, engineSearcher.getSimilarity(),
             engineSearcher.getQueryCache(), engineSearcher.getQueryCachingPolicy(), lowLevelCancellation);
         releasables.addAll(org.elasticsearch.common.collect.List.of(engineSearcher, searcher));
 
@@ -19,6 +19,7 @@ import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRunnable;
 import org.elasticsearch.action.OriginalIndices;
+import org.elasticsearch.action.search.CanMatchNodeResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchShardTask;
 import org.elasticsearch.action.search.SearchType;
@@ -26,6 +27,7 @@ import org.elasticsearch.action.support.TransportActions;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.CheckedSupplier;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.UUIDs;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
@@ -40,22 +42,31 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.CollectionUtils;
+import org.elasticsearch.common.util.concurrent.AtomicArray;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.ConcurrentMapLong;
+import org.elasticsearch.common.util.concurrent.CountDown;
+import org.elasticsearch.common.util.concurrent.ShapedRunnable;
 import org.elasticsearch.core.internal.io.IOUtils;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexNotFoundException;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.BoostingQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
 import org.elasticsearch.index.query.CoordinatorRewriteContextProvider;
+import org.elasticsearch.index.query.DisMaxQueryBuilder;
 import org.elasticsearch.index.query.InnerHitContextBuilder;
 import org.elasticsearch.index.query.MatchAllQueryBuilder;
 import org.elasticsearch.index.query.MatchNoneQueryBuilder;
+import org.elasticsearch.index.query.NestedQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryRewriteContext;
 import org.elasticsearch.index.query.QueryShardContext;
 import org.elasticsearch.index.query.Rewriteable;
+import org.elasticsearch.index.query.functionscore.FunctionScoreQueryBuilder;
 import org.elasticsearch.index.shard.IndexEventListener;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.SearchOperationListener;
@@ -66,11 +77,13 @@ import org.elasticsearch.indices.cluster.IndicesClusterStateService.AllocatedInd
 import org.elasticsearch.node.ResponseCollectorService;
 import org.elasticsearch.script.FieldScript;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregationInitializationException;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
 import org.elasticsearch.search.aggregations.MultiBucketConsumerService;
+import org.elasticsearch.search.aggregations.PipelineAggregationBuilder;
 import org.elasticsearch.search.aggregations.SearchContextAggregations;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
@@ -110,12 +123,15 @@ import org.elasticsearch.search.sort.SortAndFormats;
 import org.elasticsearch.search.sort.SortBuilder;
 import org.elasticsearch.search.suggest.Suggest;
 import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
+import org.elasticsearch.tasks.CancellableTask;
+import org.elasticsearch.tasks.TaskCancelledException;
 import org.elasticsearch.threadpool.Scheduler.Cancellable;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.threadpool.ThreadPool.Names;
 import org.elasticsearch.transport.TransportRequest;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -126,6 +142,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.LongSupplier;
 
 import static org.elasticsearch.common.unit.TimeValue.timeValueHours;
@@ -162,6 +179,13 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
     public static final Setting<Integer> MAX_OPEN_SCROLL_CONTEXT =
         Setting.intSetting("search.max_open_scroll_context", 500, 0, Property.Dynamic, Property.NodeScope);
 
+    /**
+     * The maximum number of threads that fetch the hits of a single shard request concurrently. Fetching is only split
+     * across threads for requests that fetch many hits, see {@link FetchPhase#execute(SearchContext, Executor, int)}.
+     */
+    public static final Setting<Integer> FETCH_MAX_CONCURRENCY_SETTING =
+        Setting.intSetting("search.fetch.max_concurrency", 1, 1, Property.Dynamic, Property.NodeScope);
+
     public static final int DEFAULT_SIZE = 10;
     public static final int DEFAULT_FROM = 0;
 
@@ -195,6 +219,8 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
     private volatile int maxOpenScrollContext;
 
+    private volatile int fetchMaxConcurrency;
+
     private final Cancellable keepAliveReaper;
 
     private final AtomicLong idGenerator = new AtomicLong();
@@ -241,6 +267,9 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
         lowLevelCancellation = LOW_LEVEL_CANCELLATION_SETTING.get(settings);
         clusterService.getClusterSettings().addSettingsUpdateConsumer(LOW_LEVEL_CANCELLATION_SETTING, this::setLowLevelCancellation);
+
+        fetchMaxConcurrency = FETCH_MAX_CONCURRENCY_SETTING.get(settings);
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(FETCH_MAX_CONCURRENCY_SETTING, this::setFetchMaxConcurrency);
     }
 
     private void validateKeepAlives(TimeValue defaultKeepAlive, TimeValue maxKeepAlive) {
@@ -277,6 +306,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         this.lowLevelCancellation = lowLevelCancellation;
     }
 
+    private void setFetchMaxConcurrency(int fetchMaxConcurrency) {
+        this.fetchMaxConcurrency = fetchMaxConcurrency;
+    }
+
     @Override
     public void afterIndexRemoved(Index index, IndexSettings indexSettings, IndexRemovalReason reason) {
         // once an index is removed due to deletion or closing, we can just clean up all the pending search context information
@@ -329,7 +362,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             @Override
             public void onResponse(ShardSearchRequest rewritten) {
                 // fork the execution in the search thread pool
-                runAsync(getExecutor(shard), () -> executeDfsPhase(request, task, keepStatesInContext), listener);
+                runAsync(getExecutor(shard), "dfs", request, () -> executeDfsPhase(request, task, keepStatesInContext), listener);
             }
 
             @Override
@@ -392,7 +425,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
                     }
                 }
                 // fork the execution in the search thread pool
-                runAsync(getExecutor(shard), () -> executeQueryPhase(orig, task, keepStatesInContext), listener);
+                runAsync(getExecutor(shard), "query", orig, () -> executeQueryPhase(orig, task, keepStatesInContext), listener);
             }
 
             @Override
@@ -414,6 +447,156 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         executor.execute(ActionRunnable.supply(listener, executable::get));
     }
 
+    /**
+     * Like {@link #runAsync(Executor, CheckedSupplier, ActionListener)} but tells executors with a fair queue the shape of the
+     * request, so that they can estimate its cost from the previous executions of requests of the same shape.
+     */
+    private <T> void runAsync(Executor executor, String phase, ShardSearchRequest request,
+                              CheckedSupplier<T, Exception> executable, ActionListener<T> listener) {
+        executor.execute(new ShapedSearchRunnable<>(listener, phase, request, executable));
+    }
+
+    /**
+     * Returns the shape of a shard level search request: its phase, the structure of its query, the types of its
+     * aggregations and whether it sorts, returns hits or scrolls. Requests of the same shape usually cost about the same.
+     * The index is left out so that the costs learned on an index carry over to the next one of a rollover series.
+     */
+    static String searchShape(String phase, ShardSearchRequest request) {
+        final StringBuilder shape = new StringBuilder(phase);
+        final SearchSourceBuilder source = request.source();
+        if (source != null) {
+            shape.append(" query [");
+            appendQueryShape(shape, source.query(), 0);
+            shape.append(']');
+            if (source.aggregations() != null) {
+                shape.append(" aggs [");
+                appendAggregationsShape(shape, source.aggregations().getAggregatorFactories(),
+                    source.aggregations().getPipelineAggregatorFactories());
+                shape.append(']');
+            }
+            if (source.sorts() != null && source.sorts().isEmpty() == false) {
+                shape.append(" sorted");
+            }
+            if (source.size() == 0) {
+                shape.append(" no_hits");
+            }
+        }
+        if (request.scroll() != null) {
+            shape.append(" scroll");
+        }
+        return shape.toString();
+    }
+
+    /**
+     * Maximum depth of compound queries and number of clauses per compound query that are part of the shape of a
+     * request, to bound the size of shapes for large generated queries.
+     */
+    private static final int MAX_QUERY_SHAPE_DEPTH = 4;
+    private static final int MAX_QUERY_SHAPE_CLAUSES = 8;
+
+    private static void appendQueryShape(StringBuilder shape, QueryBuilder query, int depth) {
+        if (query == null) {
+            shape.append(MatchAllQueryBuilder.NAME);
+            return;
+        }
+        shape.append(query.getName());
+        if (depth >= MAX_QUERY_SHAPE_DEPTH) {
+            return;
+        }
+        if (query instanceof BoolQueryBuilder) {
+            final BoolQueryBuilder bool = (BoolQueryBuilder) query;
+            shape.append('(');
+            appendClausesShape(shape, "must", bool.must(), depth);
+            appendClausesShape(shape, "filter", bool.filter(), depth);
+            appendClausesShape(shape, "should", bool.should(), depth);
+            appendClausesShape(shape, "must_not", bool.mustNot(), depth);
+            shape.append(')');
+        } else if (query instanceof ConstantScoreQueryBuilder) {
+            appendClausesShape(shape, null, Collections.singletonList(((ConstantScoreQueryBuilder) query).innerQuery()), depth);
+        } else if (query instanceof FunctionScoreQueryBuilder) {
+            appendClausesShape(shape, null, Collections.singletonList(((FunctionScoreQueryBuilder) query).query()), depth);
+        } else if (query instanceof NestedQueryBuilder) {
+            appendClausesShape(shape, null, Collections.singletonList(((NestedQueryBuilder) query).query()), depth);
+        } else if (query instanceof DisMaxQueryBuilder) {
+            appendClausesShape(shape, null, ((DisMaxQueryBuilder) query).innerQueries(), depth);
+        } else if (query instanceof BoostingQueryBuilder) {
+            final BoostingQueryBuilder boosting = (BoostingQueryBuilder) query;
+            shape.append('(');
+            appendClausesShape(shape, "positive", Collections.singletonList(boosting.positiveQuery()), depth);
+            appendClausesShape(shape, "negative", Collections.singletonList(boosting.negativeQuery()), depth);
+            shape.append(')');
+        }
+    }
+
+    /**
+     * Appends the shapes of the given clauses in parentheses, prefixed with {@code occur} if it isn't null. Appends nothing
+     * for an occurrence without clauses.
+     */
+    private static void appendClausesShape(StringBuilder shape, @Nullable String occur, List<QueryBuilder> clauses, int depth) {
+        if (occur != null) {
+            if (clauses.isEmpty()) {
+                return;
+            }
+            shape.append(occur).append(':');
+        }
+        shape.append('(');
+        for (int i = 0; i < clauses.size(); i++) {
+            if (i == MAX_QUERY_SHAPE_CLAUSES) {
+                shape.append("...,");
+                break;
+            }
+            appendQueryShape(shape, clauses.get(i), depth + 1);
+            shape.append(',');
+        }
+        shape.append(')');
+    }
+
+    private static void appendAggregationsShape(StringBuilder shape, Collection<AggregationBuilder> aggregations,
+                                                Collection<PipelineAggregationBuilder> pipelineAggregations) {
+        for (AggregationBuilder aggregation : aggregations) {
+            shape.append(aggregation.getType());
+            if (aggregation.getSubAggregations().isEmpty() == false || aggregation.getPipelineAggregations().isEmpty() == false) {
+                shape.append('(');
+                appendAggregationsShape(shape, aggregation.getSubAggregations(), aggregation.getPipelineAggregations());
+                shape.append(')');
+            }
+            shape.append(',');
+        }
+        for (PipelineAggregationBuilder pipelineAggregation : pipelineAggregations) {
+            shape.append(pipelineAggregation.getType()).append(',');
+        }
+    }
+
+    private static final class ShapedSearchRunnable<T> extends ActionRunnable<T> implements ShapedRunnable {
+        private final String phase;
+        private final ShardSearchRequest request;
+        private final CheckedSupplier<T, Exception> executable;
+        // computed on first use since only fair queues need it
+        private volatile String shape;
+
+        ShapedSearchRunnable(ActionListener<T> listener, String phase, ShardSearchRequest request,
+                             CheckedSupplier<T, Exception> executable) {
+            super(listener);
+            this.phase = phase;
+            this.request = request;
+            this.executable = executable;
+        }
+
+        @Override
+        protected void doRun() throws Exception {
+            listener.onResponse(executable.get());
+        }
+
+        @Override
+        public String shape() {
+            String shape = this.shape;
+            if (shape == null) {
+                shape = this.shape = searchShape(phase, request);
+            }
+            return shape;
+        }
+    }
+
     private SearchPhaseResult executeQueryPhase(ShardSearchRequest request,
                                                 SearchShardTask task,
                                                 boolean keepStatesInContext) throws Exception {
@@ -453,7 +636,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
     private QueryFetchSearchResult executeFetchPhase(ReaderContext reader, SearchContext context, long afterQueryTime) {
         try (SearchOperationListenerExecutor executor = new SearchOperationListenerExecutor(context, true, afterQueryTime)){
             shortcutDocIdsToLoad(context);
-            fetchPhase.execute(context);
+            fetchPhase.execute(context, getExecutor(context.indexShard()), fetchMaxConcurrency);
             if (reader.singleSession()) {
                 freeReaderContext(reader.id());
             }
@@ -582,7 +765,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
                 searchContext.docIdsToLoad(request.docIds(), request.docIdsSize());
                 try (SearchOperationListenerExecutor executor =
                          new SearchOperationListenerExecutor(searchContext, true, System.nanoTime())) {
-                    fetchPhase.execute(searchContext);
+                    fetchPhase.execute(searchContext, getExecutor(searchContext.indexShard()), fetchMaxConcurrency);
                     if (readerContext.singleSession()) {
                         freeReaderContext(request.contextId());
                     }
@@ -762,7 +945,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
                 reader.indexShard().shardId(), request.getClusterAlias(), OriginalIndices.NONE);
             searchContext = new DefaultSearchContext(reader, request, shardTarget,
                 threadPool::relativeTimeInMillis, timeout, fetchPhase, lowLevelCancellation,
-                clusterService.state().nodes().getMinNodeVersion());
+                clusterService.state().nodes().getMinNodeVersion(), indicesService.getIndicesStoredFieldsCache());
             // we clone the query shard context here just for rewriting otherwise we
             // might end up with incorrect state since we are using now() or script services
             // during rewrite and normalized / evaluate templates etc.
@@ -929,6 +1112,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         context.setDistributedTraceId(source.getDistributedTraceId());
         context.terminateAfter(source.terminateAfter());
         if (source.aggregations() != null && includeAggregations) {
+            // rollups count every document that the query matches, these options may leave some of them out of the aggregations
+            final boolean canUseSegmentRollups = context.minimumScore() == null
+                && context.terminateAfter() == SearchContext.DEFAULT_TERMINATE_AFTER
+                && (context.timeout() == null || NO_TIMEOUT.equals(context.timeout()));
             AggregationContext aggContext = new ProductionAggregationContext(
                 context.getQueryShardContext(),
                 /*
@@ -942,6 +1129,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
                 () -> new SubSearchContext(context).parsedQuery(context.parsedQuery()).fetchFieldsContext(context.fetchFieldsContext()),
                 context::addReleasable,
                 context.bitsetFilterCache(),
+                canUseSegmentRollups ? context.indexShard().segmentRollupCache() : null,
                 context.indexShard().shardId().hashCode(),
                 context::getRelativeTimeInMillis,
                 context::isCancelled
@@ -1155,6 +1343,43 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         }
     }
 
+    /**
+     * Runs the can_match phase on shards of the same search that are allocated on this node. Each shard runs on the executor
+     * that the other phases of the search use for it, and shards that haven't started yet fail once the task is cancelled.
+     * The responses are in the order of the requests.
+     */
+    public void canMatch(List<ShardSearchRequest> requests, CancellableTask task,
+                         ActionListener<List<CanMatchNodeResponse.ResponseOrFailure>> listener) {
+        final AtomicArray<CanMatchNodeResponse.ResponseOrFailure> responses = new AtomicArray<>(requests.size());
+        final CountDown pendingShards = new CountDown(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            final int shardIndex = i;
+            final ShardSearchRequest request = requests.get(i);
+            final Consumer<CanMatchNodeResponse.ResponseOrFailure> onShardDone = response -> {
+                responses.set(shardIndex, response);
+                if (pendingShards.countDown()) {
+                    listener.onResponse(responses.asList());
+                }
+            };
+            final ActionListener<CanMatchResponse> shardListener = ActionListener.wrap(
+                response -> onShardDone.accept(new CanMatchNodeResponse.ResponseOrFailure(response)),
+                e -> onShardDone.accept(new CanMatchNodeResponse.ResponseOrFailure(e)));
+            final IndexShard shard;
+            try {
+                shard = getShard(request);
+            } catch (Exception e) {
+                shardListener.onFailure(e);
+                continue;
+            }
+            runAsync(getExecutor(shard), () -> {
+                if (task.isCancelled()) {
+                    throw new TaskCancelledException("cancelled");
+                }
+                return canMatch(request);
+            }, shardListener);
+        }
+    }
+
     /**
      * This method uses a lightweight searcher without wrapping (i.e., not open a full reader on frozen indices) to rewrite the query
      * to check if the query can match any documents. This method can have false positives while if it returns {@code false} the query
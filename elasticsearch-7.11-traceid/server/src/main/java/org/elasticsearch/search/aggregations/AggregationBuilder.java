@@ -147,6 +147,16 @@ public abstract class AggregationBuilder
      */
     public abstract BucketCardinality bucketCardinality();
 
+    /**
+     * Whether the results of this aggregation can be extrapolated from a random sample of the documents, which allows it to be
+     * used under a {@link org.elasticsearch.search.aggregations.bucket.sampler.RandomSamplerAggregationBuilder random_sampler}.
+     * Aggregations that return {@code true} and whose results grow with the number of documents must override
+     * {@link InternalAggregation#finalizeSampling}.
+     */
+    public boolean supportsSampling() {
+        return false;
+    }
+
     /** Common xcontent fields shared among aggregator builders */
     public static final class CommonFields extends ParseField.CommonFields {
         public static final ParseField VALUE_TYPE = new ParseField("value_type");
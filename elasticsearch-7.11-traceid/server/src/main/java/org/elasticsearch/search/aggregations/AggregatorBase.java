@@ -14,6 +14,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreMode;
 import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.index.codec.rollup.SegmentRollup;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
 
@@ -113,6 +114,40 @@ public abstract class AggregatorBase extends Aggregator {
         return config.getPointReaderOrNull();
     }
 
+    /**
+     * Returns the name of the field if this aggregator may read the values of
+     * {@code config} from {@link SegmentRollup}s instead of doc values.
+     * Generally, this means that the aggregation is top level and that it
+     * reads a field without a script or a missing value.
+     *
+     * If those conditions aren't met, return <code>null</code>.
+     *
+     * @param config The config for the values source.
+     */
+    public final String rollupFieldIfAvailable(ValuesSourceConfig config) {
+        if (parent != null || config.fieldContext() == null || config.script() != null || config.missing() != null) {
+            return null;
+        }
+        return config.fieldContext().field();
+    }
+
+    /**
+     * Returns the {@link SegmentRollup} of a segment restricted to the documents
+     * that match the top level query, or <code>null</code> if the segment
+     * doesn't have a rollup or if the rollup can't tell which documents match
+     * the query. Only top level aggregators can use rollups since they don't
+     * depend on which documents their parent collects, and only if the
+     * request aggregates all the documents that its query matches, see
+     * {@link AggregationContext#segmentRollupCache()}.
+     */
+    protected final SegmentRollup rollupIfAvailable(LeafReaderContext ctx) throws IOException {
+        if (parent != null || context.segmentRollupCache() == null) {
+            return null;
+        }
+        SegmentRollup rollup = context.segmentRollupCache().load(ctx.reader());
+        return rollup == null ? null : rollup.select(topLevelQuery());
+    }
+
     /**
      * Increment or decrement the number of bytes that have been allocated to service
      * this request and potentially trigger a {@link CircuitBreakingException}. The
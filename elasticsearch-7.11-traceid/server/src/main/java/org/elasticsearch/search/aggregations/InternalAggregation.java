@@ -19,6 +19,7 @@ import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
 import org.elasticsearch.search.aggregations.support.AggregationPath;
+import org.elasticsearch.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
 import java.util.Iterator;
@@ -249,6 +250,16 @@ public abstract class InternalAggregation implements Aggregation, NamedWriteable
      */
     public abstract InternalAggregation reduce(List<InternalAggregation> aggregations, ReduceContext reduceContext);
 
+    /**
+     * Extrapolates this fully reduced aggregation, which was computed on a random sample of the documents, to an estimate
+     * on all documents. Only called on aggregations whose builder {@link AggregationBuilder#supportsSampling() supports sampling}.
+     * Defaults to returning this aggregation as is, aggregations whose results grow with the number of documents must scale
+     * them up.
+     */
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        return this;
+    }
+
     /**
      * Signal the framework if the {@linkplain InternalAggregation#reduce(List, ReduceContext)} phase needs to be called
      * when there is only one {@linkplain InternalAggregation}.
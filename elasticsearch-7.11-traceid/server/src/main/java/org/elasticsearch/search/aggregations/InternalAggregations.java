@@ -16,6 +16,7 @@ import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
 import org.elasticsearch.search.aggregations.pipeline.SiblingPipelineAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationPath;
+import org.elasticsearch.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -129,6 +130,15 @@ public final class InternalAggregations extends Aggregations implements Writeabl
         });
     }
 
+    /**
+     * Extrapolate all aggregations computed on a random sample to estimates on all documents.
+     *
+     * @see InternalAggregation#finalizeSampling(SamplingContext)
+     */
+    public InternalAggregations finalizeSampling(SamplingContext samplingContext) {
+        return from(getInternalAggregations().stream().map(agg -> agg.finalizeSampling(samplingContext)).collect(toList()));
+    }
+
     /**
      * Make a mutable copy of the aggregation results.
      * <p>
@@ -415,6 +415,11 @@ public class DateHistogramAggregationBuilder extends ValuesSourceAggregationBuil
         return builder;
     }
 
+    @Override
+    public boolean supportsSampling() {
+        return true;
+    }
+
     @Override
     public String getType() {
         return NAME;
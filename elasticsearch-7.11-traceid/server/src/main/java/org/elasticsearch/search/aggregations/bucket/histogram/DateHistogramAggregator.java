@@ -9,6 +9,7 @@ package org.elasticsearch.search.aggregations.bucket.histogram;
 
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.CollectionTerminatedException;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.util.CollectionUtil;
 import org.elasticsearch.common.CheckedFunction;
@@ -16,6 +17,8 @@ import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Rounding;
 import org.elasticsearch.common.Rounding.DateTimeUnit;
 import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.index.codec.rollup.SegmentRollup;
+import org.elasticsearch.index.codec.rollup.SegmentRollupConfig;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.AdaptingAggregator;
 import org.elasticsearch.search.aggregations.Aggregator;
@@ -84,24 +87,26 @@ class DateHistogramAggregator extends BucketsAggregator implements SizedBucketAg
         Map<String, Object> metadata
     ) throws IOException {
         Rounding.Prepared preparedRounding = valuesSourceConfig.roundingPreparer().apply(rounding);
-        Aggregator asRange = adaptIntoRangeOrNull(
-            name,
-            factories,
-            rounding,
-            preparedRounding,
-            order,
-            keyed,
-            minDocCount,
-            extendedBounds,
-            hardBounds,
-            valuesSourceConfig,
-            context,
-            parent,
-            cardinality,
-            metadata
-        );
-        if (asRange != null) {
-            return asRange;
+        if (willUseSegmentRollups(factories, preparedRounding, valuesSourceConfig, context, parent) == false) {
+            Aggregator asRange = adaptIntoRangeOrNull(
+                name,
+                factories,
+                rounding,
+                preparedRounding,
+                order,
+                keyed,
+                minDocCount,
+                extendedBounds,
+                hardBounds,
+                valuesSourceConfig,
+                context,
+                parent,
+                cardinality,
+                metadata
+            );
+            if (asRange != null) {
+                return asRange;
+            }
         }
         return new DateHistogramAggregator(
             name,
@@ -121,6 +126,45 @@ class DateHistogramAggregator extends BucketsAggregator implements SizedBucketAg
         );
     }
 
+    /**
+     * Whether the index has {@link SegmentRollup}s of the field that we
+     * aggregate and we expect to read the buckets from them rather than
+     * from the doc values. The rollups only have document counts so this
+     * only works for top level aggregations without sub-aggregations. On
+     * top of that the query must select whole rollup buckets and each
+     * rollup bucket must fall into a single bucket of the rounding,
+     * otherwise every segment would fall back to the doc values and we'd
+     * be better off adapting into a range aggregation.
+     */
+    private static boolean willUseSegmentRollups(
+        AggregatorFactories factories,
+        Rounding.Prepared preparedRounding,
+        ValuesSourceConfig valuesSourceConfig,
+        AggregationContext context,
+        Aggregator parent
+    ) {
+        if (parent != null || factories.countAggregators() > 0 || valuesSourceConfig.fieldContext() == null
+            || valuesSourceConfig.script() != null || valuesSourceConfig.missing() != null || context.segmentRollupCache() == null) {
+            return false;
+        }
+        SegmentRollupConfig rollupConfig = SegmentRollupConfig.fromSettings(context.getIndexSettings().getSettings());
+        if (rollupConfig == null || rollupConfig.dateField().equals(valuesSourceConfig.fieldContext().field()) == false) {
+            return false;
+        }
+        if (SegmentRollup.selectsWholeBuckets(rollupConfig.dateField(), rollupConfig.interval(), context.query()) == false) {
+            return false;
+        }
+        long[] fixedRoundingPoints = preparedRounding.fixedRoundingPoints();
+        if (fixedRoundingPoints != null) {
+            for (long point : fixedRoundingPoints) {
+                if (Math.floorMod(point, rollupConfig.interval()) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private static FromDateRange adaptIntoRangeOrNull(
         String name,
         AggregatorFactories factories,
@@ -218,6 +262,7 @@ class DateHistogramAggregator extends BucketsAggregator implements SizedBucketAg
     private final LongBounds hardBounds;
 
     private final LongKeyedBucketOrds bucketOrds;
+    private final String rollupField;
 
     DateHistogramAggregator(
         String name,
@@ -249,6 +294,7 @@ class DateHistogramAggregator extends BucketsAggregator implements SizedBucketAg
         this.formatter = valuesSourceConfig.format();
 
         bucketOrds = LongKeyedBucketOrds.build(bigArrays(), cardinality);
+        this.rollupField = valuesSource != null && factories.countAggregators() == 0 ? rollupFieldIfAvailable(valuesSourceConfig) : null;
     }
 
     @Override
@@ -264,6 +310,10 @@ class DateHistogramAggregator extends BucketsAggregator implements SizedBucketAg
         if (valuesSource == null) {
             return LeafBucketCollector.NO_OP_COLLECTOR;
         }
+        if (rollupField != null && collectFromRollup(ctx)) {
+            // the buckets have been read from the rollup, we don't need to collect hits on this segment.
+            throw new CollectionTerminatedException();
+        }
         SortedNumericDocValues values = valuesSource.longValues(ctx);
         return new LeafBucketCollectorBase(sub, values) {
             @Override
@@ -295,6 +345,39 @@ class DateHistogramAggregator extends BucketsAggregator implements SizedBucketAg
         };
     }
 
+    /**
+     * Counts the documents of the segment from its {@link SegmentRollup} if
+     * all of the documents in each rollup bucket fall into the same bucket
+     * of this aggregation.
+     */
+    private boolean collectFromRollup(LeafReaderContext ctx) throws IOException {
+        if (docCountProvider.alwaysOne() == false) {
+            // the rollup counts documents with a _doc_count as one document
+            return false;
+        }
+        SegmentRollup rollup = rollupIfAvailable(ctx);
+        if (rollup == null || rollup.dateField().equals(rollupField) == false) {
+            return false;
+        }
+        for (int i = 0; i < rollup.numBuckets(); i++) {
+            if (preparedRounding.round(rollup.minTimestamp(i)) != preparedRounding.round(rollup.maxTimestamp(i))) {
+                return false;
+            }
+        }
+        for (int i = 0; i < rollup.numBuckets(); i++) {
+            long rounded = preparedRounding.round(rollup.minTimestamp(i));
+            if (hardBounds == null || hardBounds.contain(rounded)) {
+                // There is no parent aggregator so the owning bucket ordinal is always 0.
+                long bucketOrd = bucketOrds.add(0, rounded);
+                if (bucketOrd < 0) { // already seen
+                    bucketOrd = -1 - bucketOrd;
+                }
+                incrementBucketDocCount(bucketOrd, rollup.docCount(i));
+            }
+        }
+        return true;
+    }
+
     @Override
     public InternalAggregation[] buildAggregations(long[] owningBucketOrds) throws IOException {
         return buildAggregationsForVariableBuckets(owningBucketOrds, bucketOrds,
@@ -23,6 +23,7 @@ import org.elasticsearch.search.aggregations.InternalOrder;
 import org.elasticsearch.search.aggregations.KeyComparable;
 import org.elasticsearch.search.aggregations.bucket.IteratorAndCurrent;
 import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
+import org.elasticsearch.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
 import java.time.Instant;
@@ -333,6 +334,16 @@ public final class InternalDateHistogram extends InternalMultiBucketAggregation<
         return reducedBuckets;
     }
 
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        final List<Bucket> scaled = new ArrayList<>(buckets.size());
+        for (Bucket bucket : buckets) {
+            scaled.add(createBucket(bucket.key, samplingContext.scaleUp(bucket.docCount),
+                bucket.aggregations.finalizeSampling(samplingContext)));
+        }
+        return create(scaled);
+    }
+
     /**
      * Reduce a list of same-keyed buckets (from multiple shards) to a single bucket. This
      * requires all buckets to have the same key.
@@ -22,6 +22,7 @@ import org.elasticsearch.search.aggregations.InternalOrder;
 import org.elasticsearch.search.aggregations.KeyComparable;
 import org.elasticsearch.search.aggregations.bucket.IteratorAndCurrent;
 import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
+import org.elasticsearch.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -325,6 +326,16 @@ public final class InternalHistogram extends InternalMultiBucketAggregation<Inte
         return reducedBuckets;
     }
 
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        final List<Bucket> scaled = new ArrayList<>(buckets.size());
+        for (Bucket bucket : buckets) {
+            scaled.add(createBucket(bucket.key, samplingContext.scaleUp(bucket.docCount),
+                bucket.aggregations.finalizeSampling(samplingContext)));
+        }
+        return create(scaled);
+    }
+
     @Override
     protected Bucket reduceBucket(List<Bucket> buckets, ReduceContext context) {
         assert buckets.size() > 0;
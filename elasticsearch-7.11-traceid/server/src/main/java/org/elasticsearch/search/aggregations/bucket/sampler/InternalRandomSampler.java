@@ -0,0 +1,138 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.sampler;
+
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.InternalSingleBucketAggregation;
+import org.elasticsearch.search.aggregations.support.SamplingContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public class InternalRandomSampler extends InternalSingleBucketAggregation implements RandomSampler {
+
+    static final ParseField SAMPLED_DOC_COUNT_FIELD = new ParseField("sampled_doc_count");
+    static final ParseField DOC_COUNT_CONFIDENCE_INTERVAL_FIELD = new ParseField("doc_count_confidence_interval");
+    static final ParseField LOWER_FIELD = new ParseField("lower");
+    static final ParseField UPPER_FIELD = new ParseField("upper");
+
+    /**
+     * Quantile of the standard normal distribution for the 95% confidence interval of the document count.
+     */
+    private static final double Z_95 = 1.959964;
+
+    private final double probability;
+    private final long sampledDocCount;
+
+    InternalRandomSampler(String name, long sampledDocCount, InternalAggregations subAggregations, double probability,
+                          Map<String, Object> metadata) {
+        this(name, sampledDocCount, sampledDocCount, subAggregations, probability, metadata);
+    }
+
+    private InternalRandomSampler(String name, long docCount, long sampledDocCount, InternalAggregations subAggregations,
+                                  double probability, Map<String, Object> metadata) {
+        super(name, docCount, subAggregations, metadata);
+        this.probability = probability;
+        this.sampledDocCount = sampledDocCount;
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public InternalRandomSampler(StreamInput in) throws IOException {
+        super(in);
+        probability = in.readDouble();
+        sampledDocCount = in.readVLong();
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        RandomSamplerAggregationBuilder.checkWireVersion(out.getVersion());
+        super.doWriteTo(out);
+        out.writeDouble(probability);
+        out.writeVLong(sampledDocCount);
+    }
+
+    @Override
+    public String getWriteableName() {
+        return RandomSamplerAggregationBuilder.NAME;
+    }
+
+    @Override
+    public double getProbability() {
+        return probability;
+    }
+
+    @Override
+    public long getSampledDocCount() {
+        return sampledDocCount;
+    }
+
+    @Override
+    protected InternalSingleBucketAggregation newAggregation(String name, long docCount, InternalAggregations subAggregations) {
+        return new InternalRandomSampler(name, docCount, sampledDocCount, subAggregations, probability, metadata);
+    }
+
+    /**
+     * Reduces the samples of all shards, and extrapolates them to all documents on the final reduction.
+     */
+    @Override
+    public InternalAggregation reduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
+        long sampledDocCount = 0;
+        List<InternalAggregations> subAggregationsList = new ArrayList<>(aggregations.size());
+        for (InternalAggregation aggregation : aggregations) {
+            final InternalRandomSampler sampler = (InternalRandomSampler) aggregation;
+            sampledDocCount += sampler.sampledDocCount;
+            subAggregationsList.add(sampler.getAggregations());
+        }
+        final InternalAggregations aggs = InternalAggregations.reduce(subAggregationsList, reduceContext);
+        if (reduceContext.isFinalReduce() == false) {
+            return new InternalRandomSampler(name, sampledDocCount, aggs, probability, getMetadata());
+        }
+        final SamplingContext samplingContext = new SamplingContext(probability);
+        return new InternalRandomSampler(name, samplingContext.scaleUp(sampledDocCount), sampledDocCount,
+            aggs.finalizeSampling(samplingContext), probability, getMetadata());
+    }
+
+    @Override
+    public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        final double errorBound = new SamplingContext(probability).countErrorBound(sampledDocCount, Z_95);
+        builder.field(CommonFields.DOC_COUNT.getPreferredName(), getDocCount());
+        builder.field(SAMPLED_DOC_COUNT_FIELD.getPreferredName(), sampledDocCount);
+        builder.field(RandomSamplerAggregationBuilder.PROBABILITY_FIELD.getPreferredName(), probability);
+        builder.startObject(DOC_COUNT_CONFIDENCE_INTERVAL_FIELD.getPreferredName());
+        builder.field(LOWER_FIELD.getPreferredName(), Math.max(0, Math.round(getDocCount() - errorBound)));
+        builder.field(UPPER_FIELD.getPreferredName(), Math.round(getDocCount() + errorBound));
+        builder.endObject();
+        getAggregations().toXContentInternal(builder, params);
+        return builder;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        if (super.equals(obj) == false) return false;
+        InternalRandomSampler other = (InternalRandomSampler) obj;
+        return probability == other.probability && sampledDocCount == other.sampledDocCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), probability, sampledDocCount);
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.sampler;
+
+import org.elasticsearch.search.aggregations.bucket.SingleBucketAggregation;
+
+/**
+ * A single bucket aggregation that holds a uniform random sample of the matching documents. The document count and the
+ * results of the sub-aggregations are extrapolated from the sample to estimates on all matching documents.
+ */
+public interface RandomSampler extends SingleBucketAggregation {
+
+    /**
+     * The probability with which each document was sampled.
+     */
+    double getProbability();
+
+    /**
+     * The number of documents that were actually sampled.
+     */
+    long getSampledDocCount();
+}
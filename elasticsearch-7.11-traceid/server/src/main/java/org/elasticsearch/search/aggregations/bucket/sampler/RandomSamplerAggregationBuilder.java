@@ -0,0 +1,167 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.sampler;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.Randomness;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ConstructingObjectParser;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregatorFactories.Builder;
+import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.elasticsearch.common.xcontent.ConstructingObjectParser.constructorArg;
+
+/**
+ * Builds a {@code random_sampler} aggregation which collects a uniform random sample of the matching documents, each
+ * document being sampled independently with the configured {@code probability}.
+ */
+public class RandomSamplerAggregationBuilder extends AbstractAggregationBuilder<RandomSamplerAggregationBuilder> {
+    public static final String NAME = "random_sampler";
+    static final Version VERSION_INTRODUCED = Version.V_7_11_3;
+
+    public static final ParseField PROBABILITY_FIELD = new ParseField("probability");
+    public static final ParseField SEED_FIELD = new ParseField("seed");
+
+    public static final ConstructingObjectParser<RandomSamplerAggregationBuilder, String> PARSER = new ConstructingObjectParser<>(
+        NAME, false, (args, name) -> new RandomSamplerAggregationBuilder(name, (double) args[0]));
+    static {
+        PARSER.declareDouble(constructorArg(), PROBABILITY_FIELD);
+        PARSER.declareInt(RandomSamplerAggregationBuilder::seed, SEED_FIELD);
+    }
+
+    private final double probability;
+    private int seed = Randomness.get().nextInt();
+
+    public RandomSamplerAggregationBuilder(String name, double probability) {
+        super(name);
+        if (probability <= 0 || probability > 1) {
+            throw new IllegalArgumentException("[" + PROBABILITY_FIELD.getPreferredName() + "] must be in the range (0, 1] but was ["
+                + probability + "] in [" + name + "]");
+        }
+        this.probability = probability;
+    }
+
+    protected RandomSamplerAggregationBuilder(RandomSamplerAggregationBuilder clone, Builder factoriesBuilder,
+                                              Map<String, Object> metadata) {
+        super(clone, factoriesBuilder, metadata);
+        this.probability = clone.probability;
+        this.seed = clone.seed;
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public RandomSamplerAggregationBuilder(StreamInput in) throws IOException {
+        super(in);
+        probability = in.readDouble();
+        seed = in.readInt();
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        checkWireVersion(out.getVersion());
+        out.writeDouble(probability);
+        out.writeInt(seed);
+    }
+
+    static void checkWireVersion(Version version) {
+        if (version.before(VERSION_INTRODUCED)) {
+            throw new IllegalArgumentException("Versions before " + VERSION_INTRODUCED + " don't support [" + NAME
+                + "] aggregations and search was sent to [" + version + "]");
+        }
+    }
+
+    @Override
+    protected AggregationBuilder shallowCopy(Builder factoriesBuilder, Map<String, Object> metadata) {
+        return new RandomSamplerAggregationBuilder(this, factoriesBuilder, metadata);
+    }
+
+    /**
+     * The probability with which each document is sampled.
+     */
+    public double probability() {
+        return probability;
+    }
+
+    /**
+     * Set the seed of the sampling. Requests using the same seed sample the same documents as long as the index does not change.
+     */
+    public RandomSamplerAggregationBuilder seed(int seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Get the seed of the sampling.
+     */
+    public int seed() {
+        return seed;
+    }
+
+    @Override
+    public BucketCardinality bucketCardinality() {
+        return BucketCardinality.ONE;
+    }
+
+    @Override
+    protected RandomSamplerAggregatorFactory doBuild(AggregationContext context, AggregatorFactory parent, Builder subFactoriesBuilder)
+            throws IOException {
+        validateSubAggregations(subFactoriesBuilder.getAggregatorFactories());
+        return new RandomSamplerAggregatorFactory(name, probability, seed, context, parent, subFactoriesBuilder, metadata);
+    }
+
+    private void validateSubAggregations(Collection<AggregationBuilder> subAggregations) {
+        for (AggregationBuilder subAggregation : subAggregations) {
+            if (subAggregation.supportsSampling() == false) {
+                throw new IllegalArgumentException("[" + NAME + "] aggregation [" + name + "] cannot extrapolate the results of ["
+                    + subAggregation.getType() + "] aggregation [" + subAggregation.getName() + "] from a sample");
+            }
+            validateSubAggregations(subAggregation.getSubAggregations());
+        }
+    }
+
+    @Override
+    protected XContentBuilder internalXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field(PROBABILITY_FIELD.getPreferredName(), probability);
+        builder.field(SEED_FIELD.getPreferredName(), seed);
+        builder.endObject();
+        return builder;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), probability, seed);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        if (super.equals(obj) == false) return false;
+        RandomSamplerAggregationBuilder other = (RandomSamplerAggregationBuilder) obj;
+        return probability == other.probability && seed == other.seed;
+    }
+
+    @Override
+    public String getType() {
+        return NAME;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.sampler;
+
+import com.carrotsearch.hppc.BitMixer;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.ConjunctionDISI;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.CardinalityUpperBound;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.LeafBucketCollector;
+import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
+import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
+import org.elasticsearch.search.aggregations.bucket.SingleBucketAggregator;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Aggregates a uniform random sample of the matching documents. Every document id of a segment is sampled independently
+ * with the configured probability, so the matching documents that are sampled are a uniform sample of the matching documents.
+ * The gaps between sampled document ids are drawn from a geometric distribution, so non-sampled documents cost a single
+ * comparison and random numbers are only drawn for sampled ones.
+ * <p>
+ * When the sampler is the top level aggregation and its sub-aggregations don't need scores it doesn't wait for the
+ * query to hand it every matching document: it runs the top level query itself, leap-frogging the query's iterator with
+ * the sampled document ids, so documents that aren't sampled are skipped rather than matched and collected.
+ */
+public class RandomSamplerAggregator extends BucketsAggregator implements SingleBucketAggregator {
+
+    private final double probability;
+    private final int seed;
+    private Weight weight;
+
+    RandomSamplerAggregator(String name, double probability, int seed, AggregatorFactories factories, AggregationContext context,
+                            Aggregator parent, CardinalityUpperBound cardinality, Map<String, Object> metadata) throws IOException {
+        super(name, factories, context, parent, cardinality, metadata);
+        this.probability = probability;
+        this.seed = seed;
+    }
+
+    @Override
+    public LeafBucketCollector getLeafCollector(LeafReaderContext ctx, final LeafBucketCollector sub) throws IOException {
+        if (probability >= 1) {
+            return new LeafBucketCollectorBase(sub, null) {
+                @Override
+                public void collect(int doc, long bucket) throws IOException {
+                    collectBucket(sub, doc, bucket);
+                }
+            };
+        }
+        // mix the shard so that shards holding the same documents don't sample them the same way
+        final long segmentSeed = BitMixer.mix64(((long) seed << 32) ^ context.shardRandomSeed() ^ ((long) ctx.ord << 16));
+        final int maxDoc = ctx.reader().maxDoc();
+        if (canSkipUnsampledDocs()) {
+            collectSampledMatches(ctx, sub, new SampledDocs(probability, segmentSeed, maxDoc));
+            // Throwing this exception is how we communicate to the collection mechanism that we don't need the segment.
+            throw new CollectionTerminatedException();
+        }
+        return new LeafBucketCollectorBase(sub, null) {
+            private SampledDocs sampled = new SampledDocs(probability, segmentSeed, maxDoc);
+            private int lastDoc = -1;
+
+            @Override
+            public void collect(int doc, long bucket) throws IOException {
+                if (doc < lastDoc) {
+                    // documents are replayed, the sampled documents only depend on the seed so we can start over
+                    sampled = new SampledDocs(probability, segmentSeed, maxDoc);
+                }
+                lastDoc = doc;
+                if (sampled.docID() < doc) {
+                    sampled.advance(doc);
+                }
+                if (sampled.docID() == doc) {
+                    collectBucket(sub, doc, bucket);
+                }
+            }
+        };
+    }
+
+    /**
+     * Can we run the top level query ourselves and only visit its sampled matches? That is only safe without a
+     * {@code parent}, which would decide which documents and buckets we collect, and when nothing below us needs scores.
+     */
+    private boolean canSkipUnsampledDocs() {
+        return parent == null && scoreMode().needsScores() == false;
+    }
+
+    private void collectSampledMatches(LeafReaderContext ctx, LeafBucketCollector sub, SampledDocs sampled) throws IOException {
+        if (weight == null) {
+            weight = searcher().createWeight(searcher().rewrite(topLevelQuery()), ScoreMode.COMPLETE_NO_SCORES, 1);
+        }
+        Scorer scorer = weight.scorer(ctx);
+        if (scorer == null) {
+            // the query doesn't match any docs
+            return;
+        }
+        Bits live = ctx.reader().getLiveDocs();
+        DocIdSetIterator matches = ConjunctionDISI.intersectIterators(Arrays.asList(sampled, scorer.iterator()));
+        for (int doc = matches.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = matches.nextDoc()) {
+            if (live == null || live.get(doc)) {
+                collectBucket(sub, doc, 0);
+            }
+        }
+    }
+
+    @Override
+    public InternalAggregation[] buildAggregations(long[] owningBucketOrds) throws IOException {
+        return buildAggregationsForSingleBucket(owningBucketOrds, (owningBucketOrd, subAggregationResults) ->
+            new InternalRandomSampler(name, bucketDocCount(owningBucketOrd), subAggregationResults, probability, metadata()));
+    }
+
+    @Override
+    public InternalAggregation buildEmptyAggregation() {
+        return new InternalRandomSampler(name, 0, buildEmptySubAggregations(), probability, metadata());
+    }
+
+    /**
+     * Iterates over the document ids of a segment that are sampled, each id being sampled with probability {@code p}.
+     * The distance between two sampled ids follows a geometric distribution of parameter {@code p}.
+     */
+    static final class SampledDocs extends DocIdSetIterator {
+        private final SplittableRandom random;
+        private final double probability;
+        private final double logOneMinusProbability;
+        private final int maxDoc;
+        private int doc = -1;
+
+        SampledDocs(double probability, long seed, int maxDoc) {
+            assert probability > 0 && probability < 1;
+            this.random = new SplittableRandom(seed);
+            this.probability = probability;
+            this.logOneMinusProbability = Math.log1p(-probability);
+            this.maxDoc = maxDoc;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            // 1 - nextDouble() is in (0, 1] so its log is finite
+            final double gap = Math.floor(Math.log(1 - random.nextDouble()) / logOneMinusProbability);
+            if (gap >= maxDoc - doc - 1) {
+                doc = NO_MORE_DOCS;
+            } else {
+                doc += 1 + (int) gap;
+            }
+            return doc;
+        }
+
+        @Override
+        public int advance(int target) {
+            while (doc < target) {
+                nextDoc();
+            }
+            return doc;
+        }
+
+        @Override
+        public long cost() {
+            // the expected number of sampled ids, so a conjunction leads with us when we're sparser than the query
+            return (long) Math.ceil(maxDoc * probability);
+        }
+    }
+}
@@ -11,10 +11,14 @@ package org.elasticsearch.search.aggregations.bucket.terms;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.PriorityQueue;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasable;
@@ -353,6 +357,134 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
         }
     }
 
+    /**
+     * Variant of {@link LowCardinality} that records the documents of a
+     * segment that matched the query in a bitset and then counts each term
+     * by walking its postings against that bitset, instead of looking up the
+     * ordinals of every matching document. This pays off for fields with a
+     * handful of distinct values like statuses or log levels, where the
+     * postings of all terms together are about one entry per document and
+     * checking a bit is much cheaper than a doc values lookup.
+     * <p>
+     * The bitset only lives while its segment is collected and is accounted
+     * against the request circuit breaker. Segments with more than
+     * {@link #MAX_BITSET_TERMS} terms, without postings for the field, or
+     * that contain documents with a {@code _doc_count}, are collected like
+     * {@link LowCardinality} does.
+     */
+    static class BitsetLowCardinality extends LowCardinality {
+        /**
+         * The maximum number of terms in a segment that we count from their
+         * postings. Larger term dictionaries are cheaper to collect with
+         * ordinals.
+         */
+        static final int MAX_BITSET_TERMS = 256;
+
+        private final String field;
+        private LeafReaderContext pendingCtx;
+        private SortedSetDocValues pendingOrds;
+        private FixedBitSet matchingDocs;
+        private int segmentsCountedWithBitsets = 0;
+
+        BitsetLowCardinality(
+            String name,
+            String field,
+            ValuesSource.Bytes.WithOrdinals valuesSource,
+            BucketOrder order,
+            DocValueFormat format,
+            BucketCountThresholds bucketCountThresholds,
+            AggregationContext context,
+            Aggregator parent,
+            SubAggCollectionMode collectionMode,
+            boolean showTermDocCountError,
+            Map<String, Object> metadata
+        ) throws IOException {
+            super(name, AggregatorFactories.EMPTY, a -> a.new StandardTermsResults(), valuesSource, order, format,
+                bucketCountThresholds, context, parent, false, collectionMode, showTermDocCountError, metadata);
+            this.field = field;
+        }
+
+        @Override
+        public LeafBucketCollector getLeafCollector(LeafReaderContext ctx, LeafBucketCollector sub) throws IOException {
+            countPendingSegment();
+            final SortedSetDocValues segmentOrds = valuesSource.ordinalsValues(ctx);
+            if (segmentOrds.getValueCount() > MAX_BITSET_TERMS
+                    || docCountProvider.alwaysOne() == false
+                    || ctx.reader().terms(field) == null) {
+                return super.getLeafCollector(ctx, sub);
+            }
+            assert sub == LeafBucketCollector.NO_OP_COLLECTOR;
+            final FixedBitSet bits = new FixedBitSet(ctx.reader().maxDoc());
+            addRequestCircuitBreakerBytes(bits.ramBytesUsed());
+            pendingCtx = ctx;
+            pendingOrds = segmentOrds;
+            matchingDocs = bits;
+            return resultStrategy.wrapCollector(new LeafBucketCollectorBase(sub, segmentOrds) {
+                @Override
+                public void collect(int doc, long owningBucketOrd) throws IOException {
+                    assert owningBucketOrd == 0;
+                    bits.set(doc);
+                }
+            });
+        }
+
+        @Override
+        protected void doPostCollection() throws IOException {
+            countPendingSegment();
+            super.doPostCollection();
+        }
+
+        @Override
+        public void collectDebugInfo(BiConsumer<String, Object> add) {
+            super.collectDebugInfo(add);
+            add.accept("segments_counted_with_bitsets", segmentsCountedWithBitsets);
+        }
+
+        /**
+         * Counts the documents collected from the last segment by walking
+         * the postings of each term in that segment and then releases the
+         * segment's bitset.
+         */
+        private void countPendingSegment() throws IOException {
+            if (pendingCtx == null) {
+                return;
+            }
+            try {
+                segmentsCountedWithBitsets++;
+                if (matchingDocs.nextSetBit(0) != DocIdSetIterator.NO_MORE_DOCS) {
+                    final LongUnaryOperator mapping = valuesSource.globalOrdinalsMapping(pendingCtx);
+                    final TermsEnum termsEnum = pendingCtx.reader().terms(field).iterator();
+                    PostingsEnum postings = null;
+                    for (long ord = 0; ord < pendingOrds.getValueCount(); ord++) {
+                        if (termsEnum.seekExact(pendingOrds.lookupOrd(ord)) == false) {
+                            continue;
+                        }
+                        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+                        long docCount = countMatching(matchingDocs, postings);
+                        if (docCount > 0) {
+                            incrementBucketDocCount(collectionStrategy.globalOrdToBucketOrd(0, mapping.applyAsLong(ord)), docCount);
+                        }
+                    }
+                }
+            } finally {
+                addRequestCircuitBreakerBytes(-matchingDocs.ramBytesUsed());
+                pendingCtx = null;
+                pendingOrds = null;
+                matchingDocs = null;
+            }
+        }
+
+        static long countMatching(FixedBitSet matchingDocs, DocIdSetIterator termDocs) throws IOException {
+            long count = 0;
+            for (int doc = termDocs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = termDocs.nextDoc()) {
+                if (matchingDocs.get(doc)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
     /**
      * Strategy for collecting global ordinals.
      * <p>
@@ -24,6 +24,7 @@ import org.elasticsearch.search.aggregations.InternalOrder;
 import org.elasticsearch.search.aggregations.KeyComparable;
 import org.elasticsearch.search.aggregations.bucket.IteratorAndCurrent;
 import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
+import org.elasticsearch.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -451,6 +452,23 @@ public abstract class InternalTerms<A extends InternalTerms<A, B>, B extends Int
         return createBucket(docCount, aggs, docCountError, buckets.get(0));
     }
 
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        final List<B> buckets = getBuckets();
+        final List<B> scaled = new ArrayList<>(buckets.size());
+        for (B bucket : buckets) {
+            scaled.add(createBucket(samplingContext.scaleUp(bucket.docCount), bucket.aggregations.finalizeSampling(samplingContext),
+                scaleUpDocCountError(bucket.docCountError, samplingContext), bucket));
+        }
+        return create(name, scaled, reduceOrder, scaleUpDocCountError(getDocCountError(), samplingContext),
+            samplingContext.scaleUp(getSumOfOtherDocCounts()));
+    }
+
+    private static long scaleUpDocCountError(long docCountError, SamplingContext samplingContext) {
+        // -1 means that the error is unbounded
+        return docCountError > 0 ? samplingContext.scaleUp(docCountError) : docCountError;
+    }
+
     protected abstract void setDocCountError(long docCountError);
 
     protected abstract int getShardSize();
@@ -10,6 +10,8 @@ package org.elasticsearch.search.aggregations.bucket.terms;
 
 import org.apache.lucene.search.IndexSearcher;
 import org.elasticsearch.common.ParseField;
+import org.elasticsearch.index.mapper.KeywordFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.AggregationExecutionException;
 import org.elasticsearch.search.aggregations.Aggregator;
@@ -82,7 +84,7 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory {
                 if (execution == null) {
                     execution = ExecutionMode.GLOBAL_ORDINALS;
                 }
-                final long maxOrd = execution == ExecutionMode.GLOBAL_ORDINALS ? getMaxOrd(valuesSource, context.searcher()) : -1;
+                final long maxOrd = execution != ExecutionMode.MAP ? getMaxOrd(valuesSource, context.searcher()) : -1;
                 if (subAggCollectMode == null) {
                     subAggCollectMode = pickSubAggColectMode(factories, bucketCountThresholds.getShardSize(), maxOrd);
                 }
@@ -409,6 +411,60 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory {
                     metadata
                 );
             }
+        },
+        BITSET(new ParseField("bitset")) {
+
+            @Override
+            Aggregator create(String name,
+                              AggregatorFactories factories,
+                              ValuesSource valuesSource,
+                              BucketOrder order,
+                              DocValueFormat format,
+                              TermsAggregator.BucketCountThresholds bucketCountThresholds,
+                              IncludeExclude includeExclude,
+                              AggregationContext context, Aggregator parent,
+                              SubAggCollectionMode subAggCollectMode,
+                              boolean showTermDocCountError,
+                              CardinalityUpperBound cardinality,
+                              Map<String, Object> metadata) throws IOException {
+
+                assert valuesSource instanceof ValuesSource.Bytes.WithOrdinals;
+                ValuesSource.Bytes.WithOrdinals ordinalsValuesSource = (ValuesSource.Bytes.WithOrdinals) valuesSource;
+                String field = bitsetField(ordinalsValuesSource, context);
+                if (field == null ||
+                        factories != AggregatorFactories.EMPTY ||
+                        includeExclude != null ||
+                        cardinality != CardinalityUpperBound.ONE ||
+                        ordinalsValuesSource.supportsGlobalOrdinalsMapping() == false) {
+                    /*
+                     * Counting from bitsets only works for indexed keyword
+                     * fields and has the same restrictions as the low
+                     * cardinality mode of global ordinals. Like the other
+                     * execution hints this is only a hint, so we fall back
+                     * to global ordinals if we can't use it.
+                     */
+                    return GLOBAL_ORDINALS.create(name, factories, valuesSource, order, format, bucketCountThresholds,
+                        includeExclude, context, parent, subAggCollectMode, showTermDocCountError, cardinality, metadata);
+                }
+                return new GlobalOrdinalsStringTermsAggregator.BitsetLowCardinality(name, field, ordinalsValuesSource, order, format,
+                    bucketCountThresholds, context, parent, subAggCollectMode, showTermDocCountError, metadata);
+            }
+
+            /**
+             * The name of the field whose postings hold the same terms as the
+             * ordinals of the values source or {@code null} if there isn't one.
+             */
+            private String bitsetField(ValuesSource.Bytes.WithOrdinals valuesSource, AggregationContext context) {
+                if (valuesSource instanceof ValuesSource.Bytes.WithOrdinals.FieldData == false) {
+                    return null;
+                }
+                String field = ((ValuesSource.Bytes.WithOrdinals.FieldData) valuesSource).getFieldName();
+                MappedFieldType fieldType = context.getFieldType(field);
+                if (fieldType instanceof KeywordFieldMapper.KeywordFieldType == false || fieldType.isSearchable() == false) {
+                    return null;
+                }
+                return field;
+            }
         };
 
         public static ExecutionMode fromString(String value) {
@@ -417,8 +473,11 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory {
                     return GLOBAL_ORDINALS;
                 case "map":
                     return MAP;
+                case "bitset":
+                    return BITSET;
                 default:
-                    throw new IllegalArgumentException("Unknown `execution_hint`: [" + value + "], expected any of [map, global_ordinals]");
+                    throw new IllegalArgumentException("Unknown `execution_hint`: [" + value + "], expected any of "
+                        + "[map, global_ordinals, bitset]");
             }
         }
 
@@ -8,6 +8,7 @@
 
 package org.elasticsearch.search.aggregations.metrics;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasable;
@@ -30,6 +31,20 @@ public abstract class AbstractHyperLogLogPlusPlus extends AbstractCardinalityAlg
     public static final boolean LINEAR_COUNTING = false;
     public static final boolean HYPERLOGLOG = true;
 
+    /**
+     * The version from which the HyperLogLog registers are written packed or sparse rather than one byte per register.
+     */
+    public static final Version COMPACT_REGISTERS_VERSION = Version.V_7_11_3;
+
+    // encodings of the HyperLogLog registers on the wire
+    private static final byte PACKED_REGISTERS = 0;
+    private static final byte SPARSE_REGISTERS = 1;
+    // run lengths are at most 64 - precision + 1, which always fits on 6 bits
+    private static final int PACKED_BITS_PER_REGISTER = 6;
+    private static final int REGISTER_MASK = (1 << PACKED_BITS_PER_REGISTER) - 1;
+    // a sparse register is a vint delta of up to 3 bytes (precision <= 18) followed by its run length
+    private static final int MAX_SPARSE_BYTES_PER_REGISTER = 4;
+
     public AbstractHyperLogLogPlusPlus(int precision) {
         super(precision);
     }
@@ -104,13 +119,122 @@ public abstract class AbstractHyperLogLogPlusPlus extends AbstractCardinalityAlg
             }
         } else {
             out.writeBoolean(HYPERLOGLOG);
-            AbstractHyperLogLog.RunLenIterator iterator = getHyperLogLog(bucket);
-            while (iterator.next()){
-                out.writeByte(iterator.value());
+            if (out.getVersion().onOrAfter(COMPACT_REGISTERS_VERSION)) {
+                writeRunLens(bucket, out);
+            } else {
+                AbstractHyperLogLog.RunLenIterator iterator = getHyperLogLog(bucket);
+                while (iterator.next()) {
+                    out.writeByte(iterator.value());
+                }
             }
         }
     }
 
+    /**
+     * Registers are written either packed on {@link #PACKED_BITS_PER_REGISTER} bits, or as a sorted list of the non-empty
+     * registers, whichever is smaller. Most buckets of a terms-of-cardinality tree only just crossed the linear counting
+     * threshold and have few non-empty registers.
+     */
+    private void writeRunLens(long bucket, StreamOutput out) throws IOException {
+        final int registers = 1 << precision();
+        int nonEmpty = 0;
+        AbstractHyperLogLog.RunLenIterator iterator = getHyperLogLog(bucket);
+        while (iterator.next()) {
+            if (iterator.value() != 0) {
+                ++nonEmpty;
+            }
+        }
+        iterator = getHyperLogLog(bucket);
+        if ((long) nonEmpty * MAX_SPARSE_BYTES_PER_REGISTER < packedSizeInBytes(registers)) {
+            out.writeByte(SPARSE_REGISTERS);
+            out.writeVInt(nonEmpty);
+            int previous = 0;
+            for (int i = 0; i < registers; ++i) {
+                iterator.next();
+                final byte runLen = iterator.value();
+                if (runLen != 0) {
+                    out.writeVInt(i - previous);
+                    out.writeByte(runLen);
+                    previous = i;
+                }
+            }
+        } else {
+            out.writeByte(PACKED_REGISTERS);
+            long pending = 0;
+            int pendingBits = 0;
+            for (int i = 0; i < registers; ++i) {
+                iterator.next();
+                final byte runLen = iterator.value();
+                assert runLen >= 0 && runLen <= REGISTER_MASK : "run length " + runLen + " does not fit in 6 bits";
+                pending |= ((long) runLen) << pendingBits;
+                pendingBits += PACKED_BITS_PER_REGISTER;
+                while (pendingBits >= Byte.SIZE) {
+                    out.writeByte((byte) pending);
+                    pending >>>= Byte.SIZE;
+                    pendingBits -= Byte.SIZE;
+                }
+            }
+            if (pendingBits > 0) {
+                out.writeByte((byte) pending);
+            }
+        }
+    }
+
+    /**
+     * Reads the registers written by {@link #writeTo(long, StreamOutput)} and passes every non-empty one to the consumer,
+     * in increasing register order.
+     */
+    static void readRunLens(StreamInput in, int precision, RunLenConsumer consumer) throws IOException {
+        final int registers = 1 << precision;
+        if (in.getVersion().before(COMPACT_REGISTERS_VERSION)) {
+            for (int i = 0; i < registers; ++i) {
+                final byte runLen = in.readByte();
+                if (runLen != 0) {
+                    consumer.accept(i, runLen);
+                }
+            }
+            return;
+        }
+        final byte encoding = in.readByte();
+        switch (encoding) {
+            case SPARSE_REGISTERS: {
+                final int nonEmpty = in.readVInt();
+                int register = 0;
+                for (int i = 0; i < nonEmpty; ++i) {
+                    register += in.readVInt();
+                    if (register >= registers) {
+                        throw new IllegalStateException("register [" + register + "] is out of bounds for precision [" + precision + "]");
+                    }
+                    consumer.accept(register, in.readByte());
+                }
+                break;
+            }
+            case PACKED_REGISTERS: {
+                long pending = 0;
+                int pendingBits = 0;
+                for (int i = 0; i < registers; ++i) {
+                    while (pendingBits < PACKED_BITS_PER_REGISTER) {
+                        pending |= (in.readByte() & 0xFFL) << pendingBits;
+                        pendingBits += Byte.SIZE;
+                    }
+                    final int runLen = (int) (pending & REGISTER_MASK);
+                    pending >>>= PACKED_BITS_PER_REGISTER;
+                    pendingBits -= PACKED_BITS_PER_REGISTER;
+                    if (runLen != 0) {
+                        consumer.accept(i, runLen);
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("unknown register encoding [" + encoding + "]");
+        }
+    }
+
+    static int packedSizeInBytes(int registers) {
+        return (registers * PACKED_BITS_PER_REGISTER + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
     public static AbstractHyperLogLogPlusPlus readFrom(StreamInput in, BigArrays bigArrays) throws IOException {
         final int precision = in.readVInt();
         final boolean algorithm = in.readBoolean();
@@ -125,14 +249,18 @@ public abstract class AbstractHyperLogLogPlusPlus extends AbstractCardinalityAlg
             return counts;
         } else {
             HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(precision, bigArrays, 1);
-            final int registers = 1 << precision;
-            for (int i = 0; i < registers; ++i) {
-                counts.addRunLen(0, i, in.readByte());
-            }
+            counts.upgradeToHll(0);
+            readRunLens(in, precision, (register, runLen) -> counts.addRunLen(0, register, runLen));
             return counts;
         }
     }
 
+    /** Consumes the non-empty registers of a serialized HyperLogLog */
+    @FunctionalInterface
+    interface RunLenConsumer {
+        void accept(int register, int runLen);
+    }
+
     public boolean equals(long thisBucket, AbstractHyperLogLogPlusPlus other, long otherBucket) {
         return Objects.equals(precision(), other.precision())
             && Objects.equals(getAlgorithm(thisBucket), other.getAlgorithm(otherBucket))
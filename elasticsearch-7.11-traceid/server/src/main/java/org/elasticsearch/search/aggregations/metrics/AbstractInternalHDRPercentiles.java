@@ -9,6 +9,7 @@
 package org.elasticsearch.search.aggregations.metrics;
 
 import org.HdrHistogram.DoubleHistogram;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -27,7 +28,13 @@ import java.util.zip.DataFormatException;
 abstract class AbstractInternalHDRPercentiles extends InternalNumericMetricsAggregation.MultiValue {
 
     protected final double[] keys;
-    protected final DoubleHistogram state;
+    private DoubleHistogram state;
+    /**
+     * The compressed histogram as received from the wire along with its {@code minBarForHighestToLowestValueRatio}. It is
+     * only decoded when needed so that a reduce holds at most one decoded shard histogram at a time.
+     */
+    private long serializedHighestToLowestValueRatio;
+    private BytesReference serializedState;
     protected final boolean keyed;
 
     AbstractInternalHDRPercentiles(String name, double[] keys, DoubleHistogram state, boolean keyed, DocValueFormat format,
@@ -46,16 +53,8 @@ abstract class AbstractInternalHDRPercentiles extends InternalNumericMetricsAggr
         super(in);
         format = in.readNamedWriteable(DocValueFormat.class);
         keys = in.readDoubleArray();
-        long minBarForHighestToLowestValueRatio = in.readLong();
-        final int serializedLen = in.readVInt();
-        byte[] bytes = new byte[serializedLen];
-        in.readBytes(bytes, 0, serializedLen);
-        ByteBuffer stateBuffer = ByteBuffer.wrap(bytes);
-        try {
-            state = DoubleHistogram.decodeFromCompressedByteBuffer(stateBuffer, minBarForHighestToLowestValueRatio);
-        } catch (DataFormatException e) {
-            throw new IOException("Failed to decode DoubleHistogram for aggregation [" + name + "]", e);
-        }
+        serializedHighestToLowestValueRatio = in.readLong();
+        serializedState = in.readBytesReference();
         keyed = in.readBoolean();
     }
 
@@ -63,14 +62,28 @@ abstract class AbstractInternalHDRPercentiles extends InternalNumericMetricsAggr
     protected void doWriteTo(StreamOutput out) throws IOException {
         out.writeNamedWriteable(format);
         out.writeDoubleArray(keys);
-        out.writeLong(state.getHighestToLowestValueRatio());
-        ByteBuffer stateBuffer = ByteBuffer.allocate(state.getNeededByteBufferCapacity());
-        final int serializedLen = state.encodeIntoCompressedByteBuffer(stateBuffer);
-        out.writeVInt(serializedLen);
-        out.writeBytes(stateBuffer.array(), 0, serializedLen);
+        if (serializedState != null) {
+            out.writeLong(serializedHighestToLowestValueRatio);
+            out.writeBytesReference(serializedState);
+        } else {
+            out.writeLong(state.getHighestToLowestValueRatio());
+            ByteBuffer stateBuffer = ByteBuffer.allocate(state.getNeededByteBufferCapacity());
+            final int serializedLen = state.encodeIntoCompressedByteBuffer(stateBuffer);
+            out.writeVInt(serializedLen);
+            out.writeBytes(stateBuffer.array(), 0, serializedLen);
+        }
         out.writeBoolean(keyed);
     }
 
+    private DoubleHistogram decodeSerializedState() {
+        final ByteBuffer stateBuffer = ByteBuffer.wrap(BytesReference.toBytes(serializedState));
+        try {
+            return DoubleHistogram.decodeFromCompressedByteBuffer(stateBuffer, serializedHighestToLowestValueRatio);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Failed to decode DoubleHistogram for aggregation [" + name + "]", e);
+        }
+    }
+
     @Override
     public double value(String name) {
         return value(Double.parseDouble(name));
@@ -88,13 +101,17 @@ abstract class AbstractInternalHDRPercentiles extends InternalNumericMetricsAggr
     public abstract double value(double key);
 
     public long getEstimatedMemoryFootprint() {
-        return state.getEstimatedFootprintInBytes();
+        return getState().getEstimatedFootprintInBytes();
     }
 
     /**
      * Return the internal {@link DoubleHistogram} sketch for this metric.
      */
     public DoubleHistogram getState() {
+        if (state == null) {
+            state = decodeSerializedState();
+            serializedState = null;
+        }
         return state;
     }
 
@@ -117,11 +134,13 @@ abstract class AbstractInternalHDRPercentiles extends InternalNumericMetricsAggr
         DoubleHistogram merged = null;
         for (InternalAggregation aggregation : aggregations) {
             final AbstractInternalHDRPercentiles percentiles = (AbstractInternalHDRPercentiles) aggregation;
+            // decode histograms that came over the wire one at a time instead of caching them on every shard result
+            final DoubleHistogram state = percentiles.state != null ? percentiles.state : percentiles.decodeSerializedState();
             if (merged == null) {
-                merged = new DoubleHistogram(percentiles.state);
+                merged = new DoubleHistogram(state);
                 merged.setAutoResize(true);
             }
-            merged.add(percentiles.state);
+            merged.add(state);
         }
         return createReduced(getName(), keys, merged, keyed, getMetadata());
     }
@@ -131,6 +150,7 @@ abstract class AbstractInternalHDRPercentiles extends InternalNumericMetricsAggr
 
     @Override
     public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        final DoubleHistogram state = getState();
         if (keyed) {
             builder.startObject(CommonFields.VALUES.getPreferredName());
             for(int i = 0; i < keys.length; ++i) {
@@ -168,7 +188,7 @@ abstract class AbstractInternalHDRPercentiles extends InternalNumericMetricsAggr
         AbstractInternalHDRPercentiles that = (AbstractInternalHDRPercentiles) obj;
         return keyed == that.keyed
                 && Arrays.equals(keys, that.keys)
-                && Objects.equals(state, that.state);
+                && Objects.equals(getState(), that.getState());
     }
 
     @Override
@@ -179,7 +199,7 @@ abstract class AbstractInternalHDRPercentiles extends InternalNumericMetricsAggr
         return Objects.hash(super.hashCode(),
             keyed,
             Arrays.hashCode(keys),
-            state.getIntegerToDoubleValueConversionRatio(),
-            state.getTotalCount());
+            getState().getIntegerToDoubleValueConversionRatio(),
+            getState().getTotalCount());
     }
 }
@@ -8,6 +8,9 @@
 
 package org.elasticsearch.search.aggregations.metrics;
 
+import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -15,6 +18,7 @@ import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -23,8 +27,18 @@ import java.util.stream.Collectors;
 
 abstract class AbstractInternalTDigestPercentiles extends InternalNumericMetricsAggregation.MultiValue {
 
+    /**
+     * The version from which the digest is length-prefixed on the wire, so that it can be kept as bytes until the reduce.
+     */
+    static final Version SERIALIZED_STATE_VERSION = Version.V_7_11_3;
+
     protected final double[] keys;
-    protected final TDigestState state;
+    private TDigestState state;
+    /**
+     * The digest as received from the wire. It is only decoded if the digest is needed outside of a reduce,
+     * which merges the centroids directly from this compact form instead.
+     */
+    private BytesReference serializedState;
     final boolean keyed;
 
     AbstractInternalTDigestPercentiles(String name, double[] keys, TDigestState state, boolean keyed, DocValueFormat formatter,
@@ -43,7 +57,11 @@ abstract class AbstractInternalTDigestPercentiles extends InternalNumericMetrics
         super(in);
         format = in.readNamedWriteable(DocValueFormat.class);
         keys = in.readDoubleArray();
-        state = TDigestState.read(in);
+        if (in.getVersion().onOrAfter(SERIALIZED_STATE_VERSION)) {
+            serializedState = in.readBytesReference();
+        } else {
+            state = TDigestState.read(in);
+        }
         keyed = in.readBoolean();
     }
 
@@ -51,7 +69,16 @@ abstract class AbstractInternalTDigestPercentiles extends InternalNumericMetrics
     protected void doWriteTo(StreamOutput out) throws IOException {
         out.writeNamedWriteable(format);
         out.writeDoubleArray(keys);
-        TDigestState.write(state, out);
+        if (out.getVersion().before(SERIALIZED_STATE_VERSION)) {
+            TDigestState.write(getState(), out);
+        } else if (serializedState != null) {
+            out.writeBytesReference(serializedState);
+        } else {
+            try (BytesStreamOutput bytes = new BytesStreamOutput()) {
+                TDigestState.write(state, bytes);
+                out.writeBytesReference(bytes.bytes());
+            }
+        }
         out.writeBoolean(keyed);
     }
 
@@ -72,13 +99,21 @@ abstract class AbstractInternalTDigestPercentiles extends InternalNumericMetrics
     }
 
     public long getEstimatedMemoryFootprint() {
-        return state.byteSize();
+        return getState().byteSize();
     }
 
     /**
      * Return the internal {@link TDigestState} sketch for this metric.
      */
     public TDigestState getState() {
+        if (state == null) {
+            try (StreamInput in = serializedState.streamInput()) {
+                state = TDigestState.read(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            serializedState = null;
+        }
         return state;
     }
 
@@ -101,10 +136,26 @@ abstract class AbstractInternalTDigestPercentiles extends InternalNumericMetrics
         TDigestState merged = null;
         for (InternalAggregation aggregation : aggregations) {
             final AbstractInternalTDigestPercentiles percentiles = (AbstractInternalTDigestPercentiles) aggregation;
-            if (merged == null) {
-                merged = new TDigestState(percentiles.state.compression());
+            if (percentiles.serializedState != null) {
+                // merge straight from the wire so that only the merged digest is ever materialized
+                try {
+                    if (merged == null) {
+                        try (StreamInput in = percentiles.serializedState.streamInput()) {
+                            merged = new TDigestState(TDigestState.readCompression(in));
+                        }
+                    }
+                    try (StreamInput in = percentiles.serializedState.streamInput()) {
+                        TDigestState.merge(merged, in);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                if (merged == null) {
+                    merged = new TDigestState(percentiles.state.compression());
+                }
+                merged.add(percentiles.state);
             }
-            merged.add(percentiles.state);
         }
         return createReduced(getName(), keys, merged, keyed, getMetadata());
     }
@@ -114,6 +165,7 @@ abstract class AbstractInternalTDigestPercentiles extends InternalNumericMetrics
 
     @Override
     public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        final TDigestState state = getState();
         if (keyed) {
             builder.startObject(CommonFields.VALUES.getPreferredName());
             for(int i = 0; i < keys.length; ++i) {
@@ -151,11 +203,11 @@ abstract class AbstractInternalTDigestPercentiles extends InternalNumericMetrics
         AbstractInternalTDigestPercentiles that = (AbstractInternalTDigestPercentiles) obj;
         return keyed == that.keyed
                 && Arrays.equals(keys, that.keys)
-                && Objects.equals(state, that.state);
+                && Objects.equals(getState(), that.getState());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), keyed, Arrays.hashCode(keys), state);
+        return Objects.hash(super.hashCode(), keyed, Arrays.hashCode(keys), getState());
     }
 }
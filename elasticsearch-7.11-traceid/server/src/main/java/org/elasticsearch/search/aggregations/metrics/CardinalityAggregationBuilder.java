@@ -153,6 +153,11 @@ public final class CardinalityAggregationBuilder
         return Objects.equals(precisionThreshold, other.precisionThreshold);
     }
 
+    @Override
+    public boolean supportsSampling() {
+        return true;
+    }
+
     @Override
     public String getType() {
         return NAME;
@@ -10,6 +10,8 @@ package org.elasticsearch.search.aggregations.metrics;
 
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.BigArrays;
@@ -18,6 +20,7 @@ import org.elasticsearch.common.util.ByteArray;
 import org.elasticsearch.common.util.ByteUtils;
 import org.elasticsearch.common.util.IntArray;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
@@ -175,17 +178,44 @@ public final class HyperLogLogPlusPlus extends AbstractHyperLogLogPlusPlus {
         }
     }
 
+    /**
+     * Merge the serialized form written by {@link AbstractHyperLogLogPlusPlus#writeTo(long, StreamOutput)} into the given
+     * bucket without materializing an intermediate {@link AbstractHyperLogLogPlusPlus}.
+     */
+    public void merge(long thisBucket, StreamInput in) throws IOException {
+        final int otherPrecision = in.readVInt();
+        if (precision() != otherPrecision) {
+            throw new IllegalArgumentException("Cannot merge a HyperLogLog++ of precision [" + otherPrecision
+                + "] into one of precision [" + precision() + "]");
+        }
+        hll.ensureCapacity(thisBucket + 1);
+        if (in.readBoolean() == LINEAR_COUNTING) {
+            final long size = in.readVLong();
+            for (long i = 0; i < size; ++i) {
+                mergeEncoded(thisBucket, in.readInt());
+            }
+        } else {
+            if (algorithm.get(thisBucket) != HYPERLOGLOG) {
+                upgradeToHll(thisBucket);
+            }
+            readRunLens(in, otherPrecision, (register, runLen) -> hll.addRunLen(thisBucket, register, runLen));
+        }
+    }
+
     private void merge(long thisBucket, AbstractLinearCounting.HashesIterator values) {
         while (values.next()) {
-            final int encoded = values.value();
-            if (algorithm.get(thisBucket) == LINEAR_COUNTING) {
-                final int newSize = lc.addEncoded(thisBucket, encoded);
-                if (newSize > lc.threshold) {
-                    upgradeToHll(thisBucket);
-                }
-            } else {
-                hll.collectEncoded(thisBucket, encoded);
+            mergeEncoded(thisBucket, values.value());
+        }
+    }
+
+    private void mergeEncoded(long thisBucket, int encoded) {
+        if (algorithm.get(thisBucket) == LINEAR_COUNTING) {
+            final int newSize = lc.addEncoded(thisBucket, encoded);
+            if (newSize > lc.threshold) {
+                upgradeToHll(thisBucket);
             }
+        } else {
+            hll.collectEncoded(thisBucket, encoded);
         }
     }
 
@@ -8,20 +8,29 @@
 
 package org.elasticsearch.search.aggregations.metrics;
 
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
 public final class InternalCardinality extends InternalNumericMetricsAggregation.SingleValue implements Cardinality {
-    private final AbstractHyperLogLogPlusPlus counts;
+    private AbstractHyperLogLogPlusPlus counts;
+    /**
+     * The counts as received from the wire. They are only decoded if the counts are needed outside of a reduce,
+     * which merges them directly from this compact form instead.
+     */
+    private BytesReference serializedCounts;
 
     InternalCardinality(String name, AbstractHyperLogLogPlusPlus counts, Map<String, Object> metadata) {
         super(name, metadata);
@@ -35,18 +44,35 @@ public final class InternalCardinality extends InternalNumericMetricsAggregation
         super(in);
         format = in.readNamedWriteable(DocValueFormat.class);
         if (in.readBoolean()) {
-            counts = AbstractHyperLogLogPlusPlus.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
-        } else {
-            counts = null;
+            if (in.getVersion().onOrAfter(AbstractHyperLogLogPlusPlus.COMPACT_REGISTERS_VERSION)) {
+                serializedCounts = in.readBytesReference();
+            } else {
+                counts = AbstractHyperLogLogPlusPlus.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
+            }
         }
     }
 
     @Override
     protected void doWriteTo(StreamOutput out) throws IOException {
         out.writeNamedWriteable(format);
-        if (counts != null) {
+        if (out.getVersion().before(AbstractHyperLogLogPlusPlus.COMPACT_REGISTERS_VERSION)) {
+            // older nodes read the counts inline, with one byte per register
+            final AbstractHyperLogLogPlusPlus counts = getCounts();
+            if (counts != null) {
+                out.writeBoolean(true);
+                counts.writeTo(0, out);
+            } else {
+                out.writeBoolean(false);
+            }
+        } else if (serializedCounts != null) {
+            out.writeBoolean(true);
+            out.writeBytesReference(serializedCounts);
+        } else if (counts != null) {
             out.writeBoolean(true);
-            counts.writeTo(0, out);
+            try (BytesStreamOutput bytes = new BytesStreamOutput()) {
+                counts.writeTo(0, bytes);
+                out.writeBytesReference(bytes.bytes());
+            }
         } else {
             out.writeBoolean(false);
         }
@@ -64,10 +90,19 @@ public final class InternalCardinality extends InternalNumericMetricsAggregation
 
     @Override
     public long getValue() {
+        final AbstractHyperLogLogPlusPlus counts = getCounts();
         return counts == null ? 0 : counts.cardinality(0);
     }
 
     public AbstractHyperLogLogPlusPlus getCounts() {
+        if (counts == null && serializedCounts != null) {
+            try (StreamInput in = serializedCounts.streamInput()) {
+                counts = AbstractHyperLogLogPlusPlus.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            serializedCounts = null;
+        }
         return counts;
     }
 
@@ -76,7 +111,21 @@ public final class InternalCardinality extends InternalNumericMetricsAggregation
         HyperLogLogPlusPlus reduced = null;
         for (InternalAggregation aggregation : aggregations) {
             final InternalCardinality cardinality = (InternalCardinality) aggregation;
-            if (cardinality.counts != null) {
+            if (cardinality.serializedCounts != null) {
+                try {
+                    if (reduced == null) {
+                        try (StreamInput in = cardinality.serializedCounts.streamInput()) {
+                            // the serialized form starts with the precision
+                            reduced = new HyperLogLogPlusPlus(in.readVInt(), BigArrays.NON_RECYCLING_INSTANCE, 1);
+                        }
+                    }
+                    try (StreamInput in = cardinality.serializedCounts.streamInput()) {
+                        reduced.merge(0, in);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else if (cardinality.counts != null) {
                 if (reduced == null) {
                     reduced = new HyperLogLogPlusPlus(cardinality.counts.precision(),
                         BigArrays.NON_RECYCLING_INSTANCE, 1);
@@ -93,6 +142,16 @@ public final class InternalCardinality extends InternalNumericMetricsAggregation
         }
     }
 
+    /**
+     * The number of distinct values does not grow linearly with the number of sampled documents, values that are
+     * repeated across documents are likely to be sampled anyway, so there is no unbiased way to extrapolate it from
+     * the sketch. The cardinality of the sample is returned as is: it is a lower bound of the cardinality of all documents.
+     */
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        return this;
+    }
+
     @Override
     public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
         final long cardinality = getValue();
@@ -102,7 +161,7 @@ public final class InternalCardinality extends InternalNumericMetricsAggregation
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), counts.hashCode(0));
+        return Objects.hash(super.hashCode(), getCounts().hashCode(0));
     }
 
     @Override
@@ -112,11 +171,11 @@ public final class InternalCardinality extends InternalNumericMetricsAggregation
         if (super.equals(obj) == false) return false;
 
         InternalCardinality other = (InternalCardinality) obj;
-        return counts.equals(0, other.counts, 0);
+        return getCounts().equals(0, other.getCounts(), 0);
     }
 
     AbstractHyperLogLogPlusPlus getState() {
-        return counts;
+        return getCounts();
     }
 }
 
@@ -37,12 +37,12 @@ public class InternalHDRPercentileRanks extends AbstractInternalHDRPercentiles i
 
     @Override
     public Iterator<Percentile> iterator() {
-        return new Iter(keys, state);
+        return new Iter(keys, getState());
     }
 
     @Override
     public double percent(double value) {
-        return percentileRank(state, value);
+        return percentileRank(getState(), value);
     }
 
     @Override
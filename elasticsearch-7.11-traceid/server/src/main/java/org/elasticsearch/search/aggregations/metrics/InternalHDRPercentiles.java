@@ -37,11 +37,12 @@ public class InternalHDRPercentiles extends AbstractInternalHDRPercentiles imple
 
     @Override
     public Iterator<Percentile> iterator() {
-        return new Iter(keys, state);
+        return new Iter(keys, getState());
     }
 
     @Override
     public double percentile(double percent) {
+        final DoubleHistogram state = getState();
         if (state.getTotalCount() == 0) {
             return Double.NaN;
         }
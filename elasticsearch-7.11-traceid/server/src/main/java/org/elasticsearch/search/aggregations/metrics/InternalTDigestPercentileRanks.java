@@ -36,12 +36,12 @@ public class InternalTDigestPercentileRanks extends AbstractInternalTDigestPerce
 
     @Override
     public Iterator<Percentile> iterator() {
-        return new Iter(keys, state);
+        return new Iter(keys, getState());
     }
 
     @Override
     public double percent(double value) {
-        return percentileRank(state, value);
+        return percentileRank(getState(), value);
     }
 
     @Override
@@ -36,12 +36,12 @@ public class InternalTDigestPercentiles extends AbstractInternalTDigestPercentil
 
     @Override
     public Iterator<Percentile> iterator() {
-        return new Iter(keys, state);
+        return new Iter(keys, getState());
     }
 
     @Override
     public double percentile(double percent) {
-        return state.quantile(percent / 100);
+        return getState().quantile(percent / 100);
     }
 
     @Override
@@ -16,6 +16,7 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.FutureArrays;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.index.codec.rollup.SegmentRollup;
 import org.elasticsearch.index.fielddata.NumericDoubleValues;
 import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
 import org.elasticsearch.search.DocValueFormat;
@@ -39,6 +40,7 @@ class MaxAggregator extends NumericMetricsAggregator.SingleValue {
 
     final String pointField;
     final Function<byte[], Number> pointConverter;
+    final String rollupField;
 
     DoubleArray maxes;
 
@@ -60,6 +62,7 @@ class MaxAggregator extends NumericMetricsAggregator.SingleValue {
         } else {
             pointField = null;
         }
+        this.rollupField = valuesSource == null ? null : rollupFieldIfAvailable(config);
     }
 
     @Override
@@ -93,6 +96,20 @@ class MaxAggregator extends NumericMetricsAggregator.SingleValue {
                 throw new CollectionTerminatedException();
             }
         }
+        if (rollupField != null) {
+            SegmentRollup rollup = rollupIfAvailable(ctx);
+            SegmentRollup.Metric metric = rollup == null ? null : rollup.metric(rollupField);
+            if (metric != null) {
+                // There is no parent aggregator so the ordinal for the bucket is always 0.
+                double max = maxes.get(0);
+                for (int i = 0; i < rollup.numBuckets(); i++) {
+                    max = Math.max(max, metric.max(i));
+                }
+                maxes.set(0, max);
+                // the maximum value has been read from the rollup, we don't need to collect hits on this segment.
+                throw new CollectionTerminatedException();
+            }
+        }
         final SortedNumericDoubleValues allValues = valuesSource.doubleValues(ctx);
         final NumericDoubleValues values = MultiValueMode.MAX.select(allValues);
         return new LeafBucketCollectorBase(sub, allValues) {
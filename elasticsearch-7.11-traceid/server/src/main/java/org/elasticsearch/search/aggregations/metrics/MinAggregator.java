@@ -15,6 +15,7 @@ import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.util.Bits;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.index.codec.rollup.SegmentRollup;
 import org.elasticsearch.index.fielddata.NumericDoubleValues;
 import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
 import org.elasticsearch.search.DocValueFormat;
@@ -39,6 +40,7 @@ public class MinAggregator extends NumericMetricsAggregator.SingleValue {
 
     final String pointField;
     final Function<byte[], Number> pointConverter;
+    final String rollupField;
 
     DoubleArray mins;
 
@@ -61,6 +63,7 @@ public class MinAggregator extends NumericMetricsAggregator.SingleValue {
         } else {
             pointField = null;
         }
+        this.rollupField = valuesSource == null ? null : rollupFieldIfAvailable(config);
     }
 
     @Override
@@ -93,6 +96,20 @@ public class MinAggregator extends NumericMetricsAggregator.SingleValue {
                 throw new CollectionTerminatedException();
             }
         }
+        if (rollupField != null) {
+            SegmentRollup rollup = rollupIfAvailable(ctx);
+            SegmentRollup.Metric metric = rollup == null ? null : rollup.metric(rollupField);
+            if (metric != null) {
+                // There is no parent aggregator so the ordinal for the bucket is always 0.
+                double min = mins.get(0);
+                for (int i = 0; i < rollup.numBuckets(); i++) {
+                    min = Math.min(min, metric.min(i));
+                }
+                mins.set(0, min);
+                // the minimum value has been read from the rollup, we don't need to collect hits on this segment.
+                throw new CollectionTerminatedException();
+            }
+        }
         final SortedNumericDoubleValues allValues = valuesSource.doubleValues(ctx);
         final NumericDoubleValues values = MultiValueMode.MIN.select(allValues);
         return new LeafBucketCollectorBase(sub, allValues) {
@@ -8,9 +8,11 @@
 package org.elasticsearch.search.aggregations.metrics;
 
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
 import org.apache.lucene.search.ScoreMode;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.index.codec.rollup.SegmentRollup;
 import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.Aggregator;
@@ -28,6 +30,7 @@ public class SumAggregator extends NumericMetricsAggregator.SingleValue {
 
     private final ValuesSource.Numeric valuesSource;
     private final DocValueFormat format;
+    private final String rollupField;
 
     private DoubleArray sums;
     private DoubleArray compensations;
@@ -47,6 +50,7 @@ public class SumAggregator extends NumericMetricsAggregator.SingleValue {
             sums = bigArrays().newDoubleArray(1, true);
             compensations = bigArrays().newDoubleArray(1, true);
         }
+        this.rollupField = valuesSource == null ? null : rollupFieldIfAvailable(valuesSourceConfig);
     }
 
     @Override
@@ -60,6 +64,21 @@ public class SumAggregator extends NumericMetricsAggregator.SingleValue {
         if (valuesSource == null) {
             return LeafBucketCollector.NO_OP_COLLECTOR;
         }
+        if (rollupField != null) {
+            SegmentRollup rollup = rollupIfAvailable(ctx);
+            SegmentRollup.Metric metric = rollup == null ? null : rollup.metric(rollupField);
+            if (metric != null) {
+                // There is no parent aggregator so the ordinal for the bucket is always 0.
+                CompensatedSum kahanSummation = new CompensatedSum(sums.get(0), compensations.get(0));
+                for (int i = 0; i < rollup.numBuckets(); i++) {
+                    kahanSummation.add(metric.sum(i));
+                }
+                compensations.set(0, kahanSummation.delta());
+                sums.set(0, kahanSummation.value());
+                // the sum has been read from the rollup, we don't need to collect hits on this segment.
+                throw new CollectionTerminatedException();
+            }
+        }
         final SortedNumericDoubleValues values = valuesSource.doubleValues(ctx);
         final CompensatedSum kahanSummation = new CompensatedSum(0, 0);
         return new LeafBucketCollectorBase(sub, values) {
@@ -9,11 +9,13 @@ package org.elasticsearch.search.aggregations.metrics;
 
 import com.tdunning.math.stats.AVLTreeDigest;
 import com.tdunning.math.stats.Centroid;
+import org.elasticsearch.common.Randomness;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.Random;
 
 /**
  * Extension of {@link com.tdunning.math.stats.TDigest} with custom serialization.
@@ -51,6 +53,36 @@ public class TDigestState extends AVLTreeDigest {
         return state;
     }
 
+    /**
+     * Reads the compression of a digest written by {@link #write(TDigestState, StreamOutput)}.
+     */
+    public static double readCompression(StreamInput in) throws IOException {
+        return in.readDouble();
+    }
+
+    /**
+     * Merges the centroids of a digest written by {@link #write(TDigestState, StreamOutput)} into {@code state} without
+     * building an intermediate digest for them. Like {@link #add(com.tdunning.math.stats.TDigest)}, centroids are added
+     * in random order since adding them sorted degrades the accuracy of the merged digest.
+     */
+    public static void merge(TDigestState state, StreamInput in) throws IOException {
+        readCompression(in);
+        final int n = in.readVInt();
+        final double[] means = new double[n];
+        final int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            means[i] = in.readDouble();
+            counts[i] = in.readVInt();
+        }
+        final Random random = Randomness.get();
+        for (int i = n - 1; i >= 0; i--) {
+            final int j = random.nextInt(i + 1);
+            state.add(means[j], counts[j]);
+            means[j] = means[i];
+            counts[j] = counts[i];
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null || obj instanceof TDigestState == false) {
@@ -95,6 +95,11 @@ public class ValueCountAggregationBuilder extends ValuesSourceAggregationBuilder
         return builder;
     }
 
+    @Override
+    public boolean supportsSampling() {
+        return true;
+    }
+
     @Override
     public String getType() {
         return NAME;
@@ -9,9 +9,11 @@ package org.elasticsearch.search.aggregations.metrics;
 
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.CollectionTerminatedException;
 import org.apache.lucene.search.ScoreMode;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.index.codec.rollup.SegmentRollup;
 import org.elasticsearch.index.fielddata.MultiGeoPointValues;
 import org.elasticsearch.index.fielddata.SortedBinaryDocValues;
 import org.elasticsearch.search.aggregations.Aggregator;
@@ -34,6 +36,7 @@ import java.util.Map;
 public class ValueCountAggregator extends NumericMetricsAggregator.SingleValue {
 
     final ValuesSource valuesSource;
+    private final String rollupField;
 
     // a count per bucket
     LongArray counts;
@@ -50,6 +53,7 @@ public class ValueCountAggregator extends NumericMetricsAggregator.SingleValue {
         if (valuesSource != null) {
             counts = bigArrays().newLongArray(1, true);
         }
+        this.rollupField = valuesSource instanceof ValuesSource.Numeric ? rollupFieldIfAvailable(valuesSourceConfig) : null;
     }
 
     @Override
@@ -59,6 +63,19 @@ public class ValueCountAggregator extends NumericMetricsAggregator.SingleValue {
             return LeafBucketCollector.NO_OP_COLLECTOR;
         }
 
+        if (rollupField != null) {
+            SegmentRollup rollup = rollupIfAvailable(ctx);
+            SegmentRollup.Metric metric = rollup == null ? null : rollup.metric(rollupField);
+            if (metric != null) {
+                // There is no parent aggregator so the ordinal for the bucket is always 0.
+                for (int i = 0; i < rollup.numBuckets(); i++) {
+                    counts.increment(0, metric.valueCount(i));
+                }
+                // the count has been read from the rollup, we don't need to collect hits on this segment.
+                throw new CollectionTerminatedException();
+            }
+        }
+
         if (valuesSource instanceof ValuesSource.Numeric) {
             final SortedNumericDocValues values = ((ValuesSource.Numeric)valuesSource).longValues(ctx);
             return new LeafBucketCollectorBase(sub, values) {
@@ -18,6 +18,8 @@ import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.NamedAnalyzer;
 import org.elasticsearch.index.cache.bitset.BitsetFilterCache;
+import org.elasticsearch.index.codec.rollup.SegmentRollup;
+import org.elasticsearch.index.codec.rollup.SegmentRollupCache;
 import org.elasticsearch.index.fielddata.IndexFieldData;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.ObjectMapper;
@@ -191,6 +193,15 @@ public abstract class AggregationContext {
     public abstract BitsetFilterCache bitsetFilterCache();
     // TODO it is unclear why we can't just use the IndexSearcher which already caches
 
+    /**
+     * Get the {@link SegmentRollup}s of the shard, or {@code null} if the
+     * request can't use them because it may aggregate fewer documents than
+     * its query matches, for instance with {@code min_score},
+     * {@code terminate_after} or a timeout.
+     */
+    @Nullable
+    public abstract SegmentRollupCache segmentRollupCache();
+
     /**
      * Build a collector for sorted values specialized for aggregations.
      */
@@ -248,6 +259,7 @@ public abstract class AggregationContext {
         private final Supplier<SubSearchContext> subSearchContextBuilder;
         private final Consumer<Aggregator> addReleasable;
         private final BitsetFilterCache bitsetFilterCache;
+        private final SegmentRollupCache segmentRollupCache;
         private final int randomSeed;
         private final LongSupplier relativeTimeInMillis;
         private final Supplier<Boolean> isCancelled;
@@ -260,6 +272,7 @@ public abstract class AggregationContext {
             Supplier<SubSearchContext> subSearchContextBuilder,
             Consumer<Aggregator> addReleasable,
             BitsetFilterCache bitsetFilterCache,
+            @Nullable SegmentRollupCache segmentRollupCache,
             int randomSeed,
             LongSupplier relativeTimeInMillis,
             Supplier<Boolean> isCancelled
@@ -272,6 +285,7 @@ public abstract class AggregationContext {
             this.subSearchContextBuilder = subSearchContextBuilder;
             this.addReleasable = addReleasable;
             this.bitsetFilterCache = bitsetFilterCache;
+            this.segmentRollupCache = segmentRollupCache;
             this.randomSeed = randomSeed;
             this.relativeTimeInMillis = relativeTimeInMillis;
             this.isCancelled = isCancelled;
@@ -390,6 +404,11 @@ public abstract class AggregationContext {
             return bitsetFilterCache;
         }
 
+        @Override
+        public SegmentRollupCache segmentRollupCache() {
+            return segmentRollupCache;
+        }
+
         @Override
         public BucketedSort buildBucketedSort(SortBuilder<?> sort, int bucketSize, BucketedSort.ExtraData extra) throws IOException {
             return sort.buildBucketedSort(context, bucketSize, extra);
@@ -0,0 +1,58 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.search.aggregations.support;
+
+/**
+ * The probability with which documents were sampled by a
+ * {@link org.elasticsearch.search.aggregations.bucket.sampler.RandomSamplerAggregationBuilder random_sampler}, used to
+ * extrapolate the results of the aggregations under it to the whole set of matching documents.
+ */
+public final class SamplingContext {
+
+    private final double probability;
+
+    public SamplingContext(double probability) {
+        if (probability <= 0 || probability > 1) {
+            throw new IllegalArgumentException("[probability] must be in the range (0, 1] but was [" + probability + "]");
+        }
+        this.probability = probability;
+    }
+
+    /**
+     * The probability with which each document was sampled.
+     */
+    public double probability() {
+        return probability;
+    }
+
+    /**
+     * Scale a count observed on the sample up to an estimate of the count on all documents.
+     */
+    public long scaleUp(long value) {
+        return Math.round(value / probability);
+    }
+
+    /**
+     * Scale a sum observed on the sample up to an estimate of the sum on all documents.
+     */
+    public double scaleUp(double value) {
+        return value / probability;
+    }
+
+    /**
+     * Half width of the confidence interval of {@link #scaleUp(long)} for a count observed on the sample. Each document is
+     * sampled independently so the observed count follows a binomial distribution, which we approximate with a normal one.
+     *
+     * @param sampledCount the count observed on the sample
+     * @param z the quantile of the standard normal distribution for the desired confidence, e.g. {@code 1.96} for 95%
+     */
+    public double countErrorBound(long sampledCount, double z) {
+        return z * Math.sqrt(sampledCount * (1 - probability)) / probability;
+    }
+}
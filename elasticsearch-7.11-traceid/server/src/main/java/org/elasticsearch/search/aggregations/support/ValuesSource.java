@@ -225,6 +225,13 @@ public abstract class ValuesSource {
                     final org.apache.lucene.util.LongValues segmentToGlobalOrd = map.getGlobalOrds(context.ord);
                     return segmentToGlobalOrd::get;
                 }
+
+                /**
+                 * The name of the field that the ordinals are loaded from.
+                 */
+                public String getFieldName() {
+                    return indexFieldData.getFieldName();
+                }
             }
         }
 
@@ -35,14 +35,24 @@ import java.util.List;
 public class FetchContext {
 
     private final SearchContext searchContext;
+    private final QueryShardContext queryShardContext;
     private final SearchLookup searchLookup;
 
     /**
      * Create a FetchContext based on a SearchContext
      */
     public FetchContext(SearchContext searchContext) {
+        this(searchContext, searchContext.getQueryShardContext());
+    }
+
+    /**
+     * Create a FetchContext based on a SearchContext that uses its own {@link QueryShardContext}, and thus its own
+     * {@link SearchLookup}, so that hits can be fetched concurrently with other FetchContexts of the same search
+     */
+    FetchContext(SearchContext searchContext, QueryShardContext queryShardContext) {
         this.searchContext = searchContext;
-        this.searchLookup = searchContext.getQueryShardContext().lookup();
+        this.queryShardContext = queryShardContext;
+        this.searchLookup = queryShardContext.lookup();
     }
 
     /**
@@ -125,7 +135,7 @@ public class FetchContext {
             String name = searchContext.collapse().getFieldName();
             if (dvContext == null) {
                 return new FetchDocValuesContext(
-                    searchContext.getQueryShardContext(),
+                    queryShardContext,
                     Collections.singletonList(new FieldAndFormat(name, null))
                 );
             } else if (searchContext.docValuesContext().fields().stream().map(ff -> ff.field).anyMatch(name::equals) == false) {
@@ -147,7 +157,7 @@ public class FetchContext {
      * backwards offsets in term vectors
      */
     public boolean containsBrokenAnalysis(String field) {
-        return searchContext.getQueryShardContext().containsBrokenAnalysis(field);
+        return queryShardContext.containsBrokenAnalysis(field);
     }
 
     /**
@@ -193,7 +203,7 @@ public class FetchContext {
     }
 
     public QueryShardContext getQueryShardContext() {
-        return searchContext.getQueryShardContext();
+        return queryShardContext;
     }
 
     /**
@@ -19,6 +19,8 @@ import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.document.DocumentField;
 import org.elasticsearch.common.lucene.index.SequentialStoredFieldsLeafReader;
 import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
@@ -52,6 +54,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -64,6 +70,11 @@ import static java.util.Collections.emptyMap;
 public class FetchPhase {
     private static final Logger LOGGER = LogManager.getLogger(FetchPhase.class);
 
+    /**
+     * The minimum number of hits per chunk when fetching hits concurrently, below which forking isn't worth it.
+     */
+    static final int MIN_DOCS_PER_CHUNK = 32;
+
     private final FetchSubPhase[] fetchSubPhases;
 
     public FetchPhase(List<FetchSubPhase> fetchSubPhases) {
@@ -72,6 +83,16 @@ public class FetchPhase {
     }
 
     public void execute(SearchContext context) {
+        execute(context, EsExecutors.newDirectExecutorService(), 1);
+    }
+
+    /**
+     * Executes the fetch phase, splitting the hits into up to {@code maxConcurrency} chunks of adjacent doc ids that are
+     * fetched concurrently on the given executor, with the calling thread fetching chunks too. Each chunk has its own
+     * sub-phase processors and {@link QueryShardContext}. Hits with inner hits or script fields are always fetched
+     * sequentially since these share state across all hits of the search.
+     */
+    public void execute(SearchContext context, Executor executor, int maxConcurrency) {
         String currThreadName = Thread.currentThread().getName();
         if (context.getDistributedTraceId() != null) {
             Thread.currentThread().setName(currThreadName + "_traceid:" + context.getDistributedTraceId());
@@ -100,72 +121,175 @@ public class FetchPhase {
             Arrays.sort(docs);
 
             Map<String, Set<String>> storedToRequestedFields = new HashMap<>();
-            FieldsVisitor fieldsVisitor = createStoredFieldsVisitor(context, storedToRequestedFields);
+            SearchHit[] hits = new SearchHit[context.docIdsToLoadSize()];
 
-            FetchContext fetchContext = new FetchContext(context);
+            int numChunks = numChunks(context, docs.length, maxConcurrency);
+            if (numChunks <= 1) {
+                FieldsVisitor fieldsVisitor = createStoredFieldsVisitor(context, storedToRequestedFields);
+                FetchContext fetchContext = new FetchContext(context);
+                List<FetchSubPhaseProcessor> processors = getProcessors(context.shardTarget(), fetchContext);
+                fetchHits(context, context.getQueryShardContext(), processors, fieldsVisitor, storedToRequestedFields,
+                    docs, 0, docs.length, hits);
+            } else {
+                fetchHitsConcurrently(context, executor, numChunks, storedToRequestedFields, docs, hits);
+            }
+            if (context.isCancelled()) {
+                throw new TaskCancelledException("cancelled");
+            }
 
-            SearchHit[] hits = new SearchHit[context.docIdsToLoadSize()];
+            TotalHits totalHits = context.queryResult().getTotalHits();
+            context.fetchResult().hits(new SearchHits(hits, totalHits, context.queryResult().getMaxScore()));
+        } finally {
+            Thread.currentThread().setName(currThreadName);
+        }
+    }
 
-            List<FetchSubPhaseProcessor> processors = getProcessors(context.shardTarget(), fetchContext);
-            NestedDocuments nestedDocuments = context.getNestedDocuments();
+    /**
+     * Returns the number of chunks to split the hits into, so that each chunk has at least {@link #MIN_DOCS_PER_CHUNK} hits.
+     */
+    static int numChunks(SearchContext context, int numDocs, int maxConcurrency) {
+        if (maxConcurrency <= 1) {
+            return 1;
+        }
+        if (context.innerHits() != null && context.innerHits().getInnerHits().isEmpty() == false) {
+            return 1;
+        }
+        if (context.scriptFields() != null && context.scriptFields().fields().isEmpty() == false) {
+            return 1;
+        }
+        return Math.max(1, Math.min(maxConcurrency, numDocs / MIN_DOCS_PER_CHUNK));
+    }
 
-            int currentReaderIndex = -1;
-            LeafReaderContext currentReaderContext = null;
-            LeafNestedDocuments leafNestedDocuments = null;
-            CheckedBiConsumer<Integer, FieldsVisitor, IOException> fieldReader = null;
-            boolean hasSequentialDocs = hasSequentialDocs(docs);
-            for (int index = 0; index < context.docIdsToLoadSize(); index++) {
-                if (context.isCancelled()) {
-                    throw new TaskCancelledException("cancelled");
-                }
-                int docId = docs[index].docId;
+    private void fetchHitsConcurrently(SearchContext context,
+                                       Executor executor,
+                                       int numChunks,
+                                       Map<String, Set<String>> storedToRequestedFields,
+                                       DocIdToIndex[] docs,
+                                       SearchHit[] hits) {
+        // creating the visitors and processors may update the search context, so this is done upfront on the calling thread
+        QueryShardContext[] queryShardContexts = new QueryShardContext[numChunks];
+        FieldsVisitor[] fieldsVisitors = new FieldsVisitor[numChunks];
+        List<List<FetchSubPhaseProcessor>> processors = new ArrayList<>(numChunks);
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            fieldsVisitors[chunk] = createStoredFieldsVisitor(context, storedToRequestedFields);
+            queryShardContexts[chunk] = new QueryShardContext(context.getQueryShardContext());
+            queryShardContexts[chunk].setTypes(context.getQueryShardContext().getTypes());
+            processors.add(getProcessors(context.shardTarget(), new FetchContext(context, queryShardContexts[chunk])));
+        }
+
+        int chunkSize = (docs.length + numChunks - 1) / numChunks;
+        AtomicInteger nextChunk = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(numChunks);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // every thread fetches chunks until there are none left, so the calling thread only waits for chunks that are
+        // already being fetched by other threads, and tasks that the executor runs late find nothing to do
+        Runnable fetchChunks = () -> {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < numChunks) {
                 try {
-                    int readerIndex = ReaderUtil.subIndex(docId, context.searcher().getIndexReader().leaves());
-                    if (currentReaderIndex != readerIndex) {
-                        currentReaderContext = context.searcher().getIndexReader().leaves().get(readerIndex);
-                        currentReaderIndex = readerIndex;
-                        if (currentReaderContext.reader() instanceof SequentialStoredFieldsLeafReader
-                            && hasSequentialDocs && docs.length >= 10) {
-                            // All the docs to fetch are adjacent but Lucene stored fields are optimized
-                            // for random access and don't optimize for sequential access - except for merging.
-                            // So we do a little hack here and pretend we're going to do merges in order to
-                            // get better sequential access.
-                            SequentialStoredFieldsLeafReader lf = (SequentialStoredFieldsLeafReader) currentReaderContext.reader();
-                            fieldReader = lf.getSequentialStoredFieldsReader()::visitDocument;
-                        } else {
-                            fieldReader = currentReaderContext.reader()::document;
-                        }
-                        for (FetchSubPhaseProcessor processor : processors) {
-                            processor.setNextReader(currentReaderContext);
-                        }
-                        leafNestedDocuments = nestedDocuments.getLeafNestedDocuments(currentReaderContext);
+                    if (failure.get() == null) {
+                        int from = chunk * chunkSize;
+                        int to = Math.min(docs.length, from + chunkSize);
+                        fetchHits(context, queryShardContexts[chunk], processors.get(chunk), fieldsVisitors[chunk],
+                            storedToRequestedFields, docs, from, to, hits);
                     }
-                    assert currentReaderContext != null;
-                    HitContext hit = prepareHitContext(
-                        context,
-                        leafNestedDocuments,
-                        nestedDocuments::hasNonNestedParent,
-                        fieldsVisitor,
-                        docId,
-                        storedToRequestedFields,
-                        currentReaderContext,
-                        fieldReader);
-                    for (FetchSubPhaseProcessor processor : processors) {
-                        processor.process(hit);
+                } catch (Throwable t) {
+                    // errors are recorded too, otherwise their chunk would leave null hits behind, and rethrown by the calling thread
+                    if (failure.compareAndSet(null, t) == false) {
+                        failure.get().addSuppressed(t);
                     }
-                    hits[docs[index].index] = hit.hit();
-                } catch (Exception e) {
-                    throw new FetchPhaseExecutionException(context.shardTarget(), "Error running fetch phase for doc [" + docId + "]", e);
+                } finally {
+                    latch.countDown();
                 }
             }
+        };
+        for (int i = 1; i < numChunks; i++) {
+            try {
+                executor.execute(fetchChunks);
+            } catch (EsRejectedExecutionException e) {
+                // the calling thread fetches the remaining chunks
+                break;
+            }
+        }
+        fetchChunks.run();
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FetchPhaseExecutionException(context.shardTarget(), "Interrupted while fetching hits", e);
+        }
+        Throwable t = failure.get();
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t != null) {
+            throw new FetchPhaseExecutionException(context.shardTarget(), "Error while fetching hits", t);
+        }
+    }
+
+    private void fetchHits(SearchContext context,
+                           QueryShardContext queryShardContext,
+                           List<FetchSubPhaseProcessor> processors,
+                           FieldsVisitor fieldsVisitor,
+                           Map<String, Set<String>> storedToRequestedFields,
+                           DocIdToIndex[] docs,
+                           int from,
+                           int to,
+                           SearchHit[] hits) {
+        NestedDocuments nestedDocuments = context.getNestedDocuments();
+
+        int currentReaderIndex = -1;
+        LeafReaderContext currentReaderContext = null;
+        LeafNestedDocuments leafNestedDocuments = null;
+        CheckedBiConsumer<Integer, FieldsVisitor, IOException> fieldReader = null;
+        boolean hasSequentialDocs = hasSequentialDocs(docs, from, to);
+        for (int index = from; index < to; index++) {
             if (context.isCancelled()) {
                 throw new TaskCancelledException("cancelled");
             }
-
-            TotalHits totalHits = context.queryResult().getTotalHits();
-            context.fetchResult().hits(new SearchHits(hits, totalHits, context.queryResult().getMaxScore()));
-        } finally {
-            Thread.currentThread().setName(currThreadName);
+            int docId = docs[index].docId;
+            try {
+                int readerIndex = ReaderUtil.subIndex(docId, context.searcher().getIndexReader().leaves());
+                if (currentReaderIndex != readerIndex) {
+                    currentReaderContext = context.searcher().getIndexReader().leaves().get(readerIndex);
+                    currentReaderIndex = readerIndex;
+                    if (currentReaderContext.reader() instanceof SequentialStoredFieldsLeafReader
+                        && hasSequentialDocs && to - from >= 10) {
+                        // All the docs to fetch are adjacent but Lucene stored fields are optimized
+                        // for random access and don't optimize for sequential access - except for merging.
+                        // So we do a little hack here and pretend we're going to do merges in order to
+                        // get better sequential access.
+                        SequentialStoredFieldsLeafReader lf = (SequentialStoredFieldsLeafReader) currentReaderContext.reader();
+                        fieldReader = lf.getSequentialStoredFieldsReader()::visitDocument;
+                    } else {
+                        fieldReader = currentReaderContext.reader()::document;
+                    }
+                    for (FetchSubPhaseProcessor processor : processors) {
+                        processor.setNextReader(currentReaderContext);
+                    }
+                    leafNestedDocuments = nestedDocuments.getLeafNestedDocuments(currentReaderContext);
+                }
+                assert currentReaderContext != null;
+                HitContext hit = prepareHitContext(
+                    context,
+                    queryShardContext,
+                    leafNestedDocuments,
+                    nestedDocuments::hasNonNestedParent,
+                    fieldsVisitor,
+                    docId,
+                    storedToRequestedFields,
+                    currentReaderContext,
+                    fieldReader);
+                for (FetchSubPhaseProcessor processor : processors) {
+                    processor.process(hit);
+                }
+                hits[docs[index].index] = hit.hit();
+            } catch (Exception e) {
+                throw new FetchPhaseExecutionException(context.shardTarget(), "Error running fetch phase for doc [" + docId + "]", e);
+            }
         }
     }
 
@@ -252,6 +376,7 @@ public class FetchPhase {
     }
 
     private HitContext prepareHitContext(SearchContext context,
+                                         QueryShardContext queryShardContext,
                                          LeafNestedDocuments nestedDocuments,
                                          Predicate<String> hasNonNestedParent,
                                          FieldsVisitor fieldsVisitor,
@@ -261,7 +386,7 @@ public class FetchPhase {
                                          CheckedBiConsumer<Integer, FieldsVisitor, IOException> storedFieldReader) throws IOException {
         if (nestedDocuments.advance(docId - subReaderContext.docBase) == null) {
             return prepareNonNestedHitContext(
-                context, fieldsVisitor, docId, storedToRequestedFields, subReaderContext, storedFieldReader);
+                context, queryShardContext, fieldsVisitor, docId, storedToRequestedFields, subReaderContext, storedFieldReader);
         } else {
             return prepareNestedHitContext(context, docId, nestedDocuments, hasNonNestedParent, storedToRequestedFields,
                 subReaderContext, storedFieldReader);
@@ -276,19 +401,19 @@ public class FetchPhase {
      *     allows fetch subphases that use the hit context to access the preloaded source.
      */
     private HitContext prepareNonNestedHitContext(SearchContext context,
+                                                  QueryShardContext queryShardContext,
                                                   FieldsVisitor fieldsVisitor,
                                                   int docId,
                                                   Map<String, Set<String>> storedToRequestedFields,
                                                   LeafReaderContext subReaderContext,
                                                   CheckedBiConsumer<Integer, FieldsVisitor, IOException> fieldReader) throws IOException {
         int subDocId = docId - subReaderContext.docBase;
-        QueryShardContext queryShardContext = context.getQueryShardContext();
         if (fieldsVisitor == null) {
             SearchHit hit = new SearchHit(docId, null, new Text(queryShardContext.getType()), null, null);
             return new HitContext(hit, subReaderContext, subDocId);
         } else {
             SearchHit hit;
-            loadStoredFields(context.getQueryShardContext()::getFieldType, queryShardContext.getType(), fieldReader,
+            loadStoredFields(queryShardContext::getFieldType, queryShardContext.getType(), fieldReader,
                 fieldsVisitor, subDocId);
             Uid uid = fieldsVisitor.uid();
             if (fieldsVisitor.fields().isEmpty() == false) {
@@ -306,7 +431,7 @@ public class FetchPhase {
                 // Also make it available to scripts by storing it on the shared SearchLookup instance.
                 hitContext.sourceLookup().setSource(fieldsVisitor.source());
 
-                SourceLookup scriptSourceLookup = context.getQueryShardContext().lookup().source();
+                SourceLookup scriptSourceLookup = queryShardContext.lookup().source();
                 scriptSourceLookup.setSegmentAndDocument(subReaderContext, subDocId);
                 scriptSourceLookup.setSource(fieldsVisitor.source());
             }
@@ -472,6 +597,10 @@ public class FetchPhase {
      * stored sequentially (Dn = Dn-1 + 1).
      */
     static boolean hasSequentialDocs(DocIdToIndex[] docs) {
-        return docs.length > 0 && docs[docs.length-1].docId - docs[0].docId == docs.length - 1;
+        return hasSequentialDocs(docs, 0, docs.length);
+    }
+
+    static boolean hasSequentialDocs(DocIdToIndex[] docs, int from, int to) {
+        return to > from && docs[to - 1].docId - docs[from].docId == to - from - 1;
     }
 }
@@ -9,6 +9,7 @@
 package org.elasticsearch.search.fetch.subphase;
 
 import org.elasticsearch.common.Booleans;
+import org.elasticsearch.common.CheckedBiConsumer;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.ParsingException;
 import org.elasticsearch.common.Strings;
@@ -42,6 +43,7 @@ public class FetchSourceContext implements Writeable, ToXContentObject {
     private final String[] includes;
     private final String[] excludes;
     private Function<Map<String, ?>, Map<String, Object>> filter;
+    private CheckedBiConsumer<XContentParser, XContentBuilder, IOException> streamingFilter;
 
     public FetchSourceContext(boolean fetchSource, String[] includes, String[] excludes) {
         this.fetchSource = fetchSource;
@@ -223,4 +225,15 @@ public class FetchSourceContext implements Writeable, ToXContentObject {
         }
         return filter;
     }
+
+    /**
+     * Returns a filter function that copies the source read from a parser to a builder,
+     * skipping the parts of the source that are filtered out without parsing them.
+     */
+    public CheckedBiConsumer<XContentParser, XContentBuilder, IOException> getStreamingFilter() {
+        if (streamingFilter == null) {
+            streamingFilter = XContentMapValues.filterStreaming(includes, excludes);
+        }
+        return streamingFilter;
+    }
 }
@@ -66,6 +66,17 @@ public final class FetchSourcePhase implements FetchSubPhase {
             return;
         }
 
+        // If the source hasn't been parsed into a map by another sub phase, filter it straight from its bytes
+        // so that the filtered out parts of the source are skipped instead of being parsed.
+        if (nestedHit == false && source.source() == null) {
+            try {
+                hitContext.hit().sourceRef(source.filterSourceRef(fetchSourceContext));
+            } catch (IOException e) {
+                throw new ElasticsearchException("Error filtering source", e);
+            }
+            return;
+        }
+
         // Otherwise, filter the source and add it to the hit.
         Object value = source.filter(fetchSourceContext);
         if (nestedHit) {
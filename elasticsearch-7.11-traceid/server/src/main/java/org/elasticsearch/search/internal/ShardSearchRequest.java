@@ -251,7 +251,12 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
         out.writeOptionalWriteable(scroll);
         out.writeOptionalWriteable(source);
         out.writeStringArray(types);
-        aliasFilter.writeTo(out);
+        if (asKey) {
+            // only the filter matters for the results, so that searches through different aliases with the same filter share entries
+            out.writeOptionalNamedWriteable(aliasFilter.getQueryBuilder());
+        } else {
+            aliasFilter.writeTo(out);
+        }
         out.writeFloat(indexBoost);
         if (asKey == false) {
             out.writeVLong(nowInMillis);
@@ -404,9 +409,18 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
      * Returns the cache key for this shard search request, based on its content
      */
     public BytesReference cacheKey() throws IOException {
+        return cacheKey(new long[0]);
+    }
+
+    /**
+     * Returns the cache key for this shard search request, based on its content and on the values that parsing it resolved
+     * from rounded {@code now} date math, see {@link QueryShardContext#resolveRoundedNow}.
+     */
+    public BytesReference cacheKey(long[] roundedNowValues) throws IOException {
         BytesStreamOutput out = scratch.get();
         try {
             this.innerWriteTo(out, true);
+            out.writeLongArray(roundedNowValues);
             // copy it over since we don't want to share the thread-local bytes in #scratch
             return out.copyBytes();
         } finally {
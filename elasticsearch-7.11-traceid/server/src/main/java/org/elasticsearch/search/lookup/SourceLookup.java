@@ -14,8 +14,13 @@ import org.elasticsearch.common.CheckedBiConsumer;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.lucene.index.SequentialStoredFieldsLeafReader;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
@@ -200,6 +205,22 @@ public class SourceLookup implements Map {
         return context.getFilter().apply(loadSourceIfNeeded());
     }
 
+    /**
+     * Filters the source bytes with the given context and returns the filtered source as bytes of the same content type.
+     * Unlike {@link #filter(FetchSourceContext)}, this reads the source in a single pass without parsing it into a map,
+     * so it is cheaper when only a few properties of a large source are selected and the map isn't needed otherwise.
+     */
+    public BytesReference filterSourceRef(FetchSourceContext context) throws IOException {
+        assert sourceAsBytes != null : "source bytes must be set to be filtered";
+        try (XContentParser parser = XContentHelper.createParser(NamedXContentRegistry.EMPTY,
+                DeprecationHandler.THROW_UNSUPPORTED_OPERATION, sourceAsBytes)) {
+            BytesStreamOutput streamOutput = new BytesStreamOutput(Math.min(1024, sourceAsBytes.length()));
+            XContentBuilder builder = new XContentBuilder(parser.contentType().xContent(), streamOutput);
+            context.getStreamingFilter().accept(parser, builder);
+            return BytesReference.bytes(builder);
+        }
+    }
+
     @Override
     public Object get(Object key) {
         return loadSourceIfNeeded().get(key);
@@ -190,6 +190,7 @@ public final class QuerySearchResult extends SearchPhaseResult {
 
     /**
      * Returns and nulls out the aggregation for this search results. This allows to free up memory once the aggregation is consumed.
+     * The returned aggregations must be closed once they have been expanded.
      * @throws IllegalStateException if the aggregations have already been consumed.
      */
     public DelayableWriteable<InternalAggregations> consumeAggs() {
@@ -236,7 +237,18 @@ public final class QuerySearchResult extends SearchPhaseResult {
             consumeTopDocs();
         }
         if (hasAggs()) {
-            consumeAggs();
+            consumeAggs().close();
+        }
+    }
+
+    /**
+     * Releases the aggregations of this result if they have not been consumed. Aggregations that were received from another
+     * node may hold on to the buffer of the transport message until they are consumed and closed, or released.
+     */
+    public void releaseAggs() {
+        if (aggregations != null) {
+            aggregations.close();
+            aggregations = null;
         }
     }
 
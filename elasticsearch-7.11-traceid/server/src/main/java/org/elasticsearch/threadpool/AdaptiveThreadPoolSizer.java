@@ -0,0 +1,265 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.threadpool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Periodically moves threads between fixed size thread pools, by default {@code search} and {@code write}, within a total budget of
+ * threads. The queue wait of each pool is estimated with Little's law from the number of queued tasks and the rate at which the pool
+ * completed tasks since the last adjustment. A pool whose estimated queue wait is above the target gets one more thread, taken from
+ * the budget if some is left and otherwise from the pool that waits the least as long as that pool is below the target.
+ * <p>
+ * Adjustments are small and happen on every interval, so that the sizes follow a shift in the traffic without oscillating. The search
+ * pool keeps adjusting its queue size on its own, see {@link org.elasticsearch.common.util.concurrent.QueueResizingEsThreadPoolExecutor}.
+ */
+public final class AdaptiveThreadPoolSizer implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger(AdaptiveThreadPoolSizer.class);
+
+    public static final Setting<Boolean> ENABLED_SETTING =
+        Setting.boolSetting("thread_pool.adaptive_sizing.enabled", false, Property.NodeScope);
+    public static final Setting<List<String>> POOLS_SETTING =
+        Setting.listSetting("thread_pool.adaptive_sizing.pools", Arrays.asList(ThreadPool.Names.SEARCH, ThreadPool.Names.WRITE),
+            Function.identity(), Property.NodeScope);
+    /**
+     * The total number of threads of the managed pools. Defaults to the sum of their configured sizes.
+     */
+    public static final Setting<Integer> TOTAL_THREADS_SETTING =
+        Setting.intSetting("thread_pool.adaptive_sizing.total_threads", -1, -1, Property.NodeScope);
+    public static final Setting<Integer> MIN_THREADS_SETTING =
+        Setting.intSetting("thread_pool.adaptive_sizing.min_threads", 1, 1, Property.NodeScope);
+    public static final Setting<TimeValue> TARGET_QUEUE_WAIT_SETTING =
+        Setting.timeSetting("thread_pool.adaptive_sizing.target_queue_wait", TimeValue.timeValueMillis(100),
+            TimeValue.timeValueMillis(1), Property.NodeScope);
+    public static final Setting<TimeValue> INTERVAL_SETTING =
+        Setting.timeSetting("thread_pool.adaptive_sizing.interval", TimeValue.timeValueSeconds(1),
+            TimeValue.timeValueMillis(100), Property.NodeScope);
+
+    /**
+     * A thread pool whose number of threads can be changed.
+     */
+    interface ManagedPool {
+        String name();
+
+        int size();
+
+        void resize(int size);
+
+        long completedTaskCount();
+
+        int queueSize();
+    }
+
+    private final List<ManagedPool> pools;
+    private final int totalThreads;
+    private final int minThreads;
+    private final long targetQueueWaitNanos;
+    private final LongSupplier nanoClock;
+    private final long[] lastCompletedTaskCounts;
+    private long lastNanos;
+
+    AdaptiveThreadPoolSizer(List<ManagedPool> pools, int totalThreads, int minThreads, TimeValue targetQueueWait,
+                            LongSupplier nanoClock) {
+        if (totalThreads < pools.size() * minThreads) {
+            throw new IllegalArgumentException("[" + TOTAL_THREADS_SETTING.getKey() + "] must be at least [" + pools.size() * minThreads
+                + "] to give [" + minThreads + "] threads to each of the pools "
+                + pools.stream().map(ManagedPool::name).collect(Collectors.toList()));
+        }
+        this.pools = Collections.unmodifiableList(new ArrayList<>(pools));
+        this.totalThreads = totalThreads;
+        this.minThreads = minThreads;
+        this.targetQueueWaitNanos = targetQueueWait.nanos();
+        this.nanoClock = nanoClock;
+        this.lastCompletedTaskCounts = pools.stream().mapToLong(ManagedPool::completedTaskCount).toArray();
+        this.lastNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Creates the sizer of the pools configured in {@code thread_pool.adaptive_sizing.pools}, which must be fixed size pools.
+     */
+    static AdaptiveThreadPoolSizer create(Settings settings, Map<String, ThreadPool.ExecutorHolder> executors) {
+        final List<ManagedPool> pools = new ArrayList<>();
+        int configuredThreads = 0;
+        for (String name : POOLS_SETTING.get(settings)) {
+            final ThreadPool.ExecutorHolder holder = executors.get(name);
+            if (holder == null) {
+                throw new IllegalArgumentException("unknown thread pool [" + name + "] in [" + POOLS_SETTING.getKey() + "]");
+            }
+            final ThreadPool.ThreadPoolType type = holder.info.getThreadPoolType();
+            if (type != ThreadPool.ThreadPoolType.FIXED && type != ThreadPool.ThreadPoolType.FIXED_AUTO_QUEUE_SIZE) {
+                throw new IllegalArgumentException("thread pool [" + name + "] of type [" + type.getType() + "] can't be sized by ["
+                    + ENABLED_SETTING.getKey() + "], only fixed thread pools can");
+            }
+            pools.add(new ExecutorPool(name, (ThreadPoolExecutor) holder.executor()));
+            configuredThreads += holder.info.getMax();
+        }
+        final int totalThreads = TOTAL_THREADS_SETTING.get(settings);
+        return new AdaptiveThreadPoolSizer(pools, totalThreads == -1 ? configuredThreads : totalThreads,
+            MIN_THREADS_SETTING.get(settings), TARGET_QUEUE_WAIT_SETTING.get(settings), System::nanoTime);
+    }
+
+    @Override
+    public void run() {
+        adjust();
+    }
+
+    /**
+     * Estimates the time a task waits in a queue from the number of queued tasks and the rate at which tasks were completed.
+     */
+    static double estimateQueueWaitNanos(int queueSize, long completedTasks, long elapsedNanos) {
+        if (queueSize == 0) {
+            return 0;
+        }
+        if (completedTasks == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return queueSize * ((double) elapsedNanos / completedTasks);
+    }
+
+    synchronized void adjust() {
+        final long nowNanos = nanoClock.getAsLong();
+        final long elapsedNanos = nowNanos - lastNanos;
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        lastNanos = nowNanos;
+
+        final int[] sizes = new int[pools.size()];
+        // the estimated queue wait of each pool, relative to the target
+        final double[] pressures = new double[pools.size()];
+        int freeThreads = totalThreads;
+        for (int i = 0; i < pools.size(); i++) {
+            final ManagedPool pool = pools.get(i);
+            final long completedTaskCount = pool.completedTaskCount();
+            final long completedTasks = completedTaskCount - lastCompletedTaskCounts[i];
+            lastCompletedTaskCounts[i] = completedTaskCount;
+            sizes[i] = pool.size();
+            pressures[i] = estimateQueueWaitNanos(pool.queueSize(), completedTasks, elapsedNanos) / targetQueueWaitNanos;
+            freeThreads -= sizes[i];
+        }
+
+        final List<Integer> byPressure = new ArrayList<>(pools.size());
+        for (int i = 0; i < pools.size(); i++) {
+            byPressure.add(i);
+        }
+        byPressure.sort(Comparator.comparingDouble(i -> pressures[i]));
+        final boolean[] resized = new boolean[pools.size()];
+
+        // the budget may have been lowered below the current sizes, give the extra threads back from the least busy pools first
+        for (int i : byPressure) {
+            if (freeThreads >= 0) {
+                break;
+            }
+            if (sizes[i] > minThreads) {
+                resize(i, sizes[i] - 1, pressures);
+                resized[i] = true;
+                freeThreads++;
+            }
+        }
+
+        // then grow the pools that wait longer than the target, the busiest first
+        for (int k = byPressure.size() - 1; k >= 0; k--) {
+            final int i = byPressure.get(k);
+            if (pressures[i] <= 1.0d || resized[i]) {
+                continue;
+            }
+            if (freeThreads > 0) {
+                freeThreads--;
+            } else {
+                final int donor = findDonor(byPressure, pressures, sizes, resized);
+                if (donor == -1) {
+                    break;
+                }
+                resize(donor, sizes[donor] - 1, pressures);
+                resized[donor] = true;
+            }
+            resize(i, sizes[i] + 1, pressures);
+            resized[i] = true;
+        }
+    }
+
+    private int findDonor(List<Integer> byPressure, double[] pressures, int[] sizes, boolean[] resized) {
+        for (int i : byPressure) {
+            if (pressures[i] >= 1.0d) {
+                return -1;
+            }
+            if (resized[i] == false && sizes[i] > minThreads) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void resize(int index, int size, double[] pressures) {
+        final ManagedPool pool = pools.get(index);
+        logger.debug("resizing thread pool [{}] from [{}] to [{}] threads, estimated queue wait is [{}] times the target",
+            pool.name(), pool.size(), size, pressures[index]);
+        pool.resize(size);
+    }
+
+    private static final class ExecutorPool implements ManagedPool {
+        private final String name;
+        private final ThreadPoolExecutor executor;
+
+        ExecutorPool(String name, ThreadPoolExecutor executor) {
+            this.name = name;
+            this.executor = executor;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public int size() {
+            return executor.getMaximumPoolSize();
+        }
+
+        @Override
+        public void resize(int size) {
+            // the core size can't be above the maximum size, so the order of the updates depends on the direction
+            if (size > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(size);
+                executor.setCorePoolSize(size);
+            } else {
+                executor.setCorePoolSize(size);
+                executor.setMaximumPoolSize(size);
+            }
+        }
+
+        @Override
+        public long completedTaskCount() {
+            return executor.getCompletedTaskCount();
+        }
+
+        @Override
+        public int queueSize() {
+            return executor.getQueue().size();
+        }
+    }
+}
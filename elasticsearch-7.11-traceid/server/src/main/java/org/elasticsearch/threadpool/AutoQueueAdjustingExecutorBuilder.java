@@ -8,6 +8,7 @@
 
 package org.elasticsearch.threadpool;
 
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.SizeValue;
@@ -31,12 +32,19 @@ import java.util.concurrent.ThreadFactory;
  */
 public final class AutoQueueAdjustingExecutorBuilder extends ExecutorBuilder<AutoQueueAdjustingExecutorBuilder.AutoExecutorSettings> {
 
+    /**
+     * The header that holds the group of a request, which executors with a fair queue use to interleave the tasks of different groups.
+     */
+    public static final String FAIR_QUEUE_GROUP_HEADER = "X-Search-Group";
+
     private final Setting<Integer> sizeSetting;
     private final Setting<Integer> queueSizeSetting;
     private final Setting<Integer> minQueueSizeSetting;
     private final Setting<Integer> maxQueueSizeSetting;
     private final Setting<TimeValue> targetedResponseTimeSetting;
     private final Setting<Integer> frameSizeSetting;
+    private final Setting<Boolean> fairQueueSetting;
+    private final Setting.AffixSetting<Integer> groupWeightSetting;
 
     AutoQueueAdjustingExecutorBuilder(final Settings settings, final String name, final int size,
                                       final int initialQueueSize, final int minQueueSize,
@@ -120,12 +128,15 @@ public final class AutoQueueAdjustingExecutorBuilder extends ExecutorBuilder<Aut
                 Setting.Property.NodeScope, Setting.Property.Deprecated);
         this.frameSizeSetting = Setting.intSetting(frameSizeKey, frameSize, 100, Setting.Property.NodeScope, Setting.Property.Deprecated,
             Setting.Property.Deprecated);
+        this.fairQueueSetting = Setting.boolSetting(settingsKey(prefix, "fair_queue.enabled"), false, Setting.Property.NodeScope);
+        this.groupWeightSetting = Setting.prefixKeySetting(settingsKey(prefix, "fair_queue.group_weight."),
+            key -> Setting.intSetting(key, 1, 1, Setting.Property.NodeScope));
     }
 
     @Override
     public List<Setting<?>> getRegisteredSettings() {
         return Arrays.asList(sizeSetting, queueSizeSetting, minQueueSizeSetting,
-                maxQueueSizeSetting, frameSizeSetting, targetedResponseTimeSetting);
+                maxQueueSizeSetting, frameSizeSetting, targetedResponseTimeSetting, fairQueueSetting, groupWeightSetting);
     }
 
     @Override
@@ -137,7 +148,9 @@ public final class AutoQueueAdjustingExecutorBuilder extends ExecutorBuilder<Aut
         final int maxQueueSize = maxQueueSizeSetting.get(settings);
         final int frameSize = frameSizeSetting.get(settings);
         final TimeValue targetedResponseTime = targetedResponseTimeSetting.get(settings);
-        return new AutoExecutorSettings(nodeName, size, initialQueueSize, minQueueSize, maxQueueSize, frameSize, targetedResponseTime);
+        final Map<String, Integer> groupWeights = fairQueueSetting.get(settings) ? groupWeightSetting.getAsMap(settings) : null;
+        return new AutoExecutorSettings(nodeName, size, initialQueueSize, minQueueSize, maxQueueSize, frameSize, targetedResponseTime,
+            groupWeights);
     }
 
     @Override
@@ -150,8 +163,9 @@ public final class AutoQueueAdjustingExecutorBuilder extends ExecutorBuilder<Aut
         int frameSize = settings.frameSize;
         TimeValue targetedResponseTime = settings.targetedResponseTime;
         final ThreadFactory threadFactory = EsExecutors.daemonThreadFactory(EsExecutors.threadName(settings.nodeName, name()));
-        final ExecutorService executor =
-                EsExecutors.newAutoQueueFixed(
+        final ExecutorService executor;
+        if (settings.groupWeights == null) {
+            executor = EsExecutors.newAutoQueueFixed(
                         settings.nodeName + "/" + name(),
                         size,
                         initialQueueSize,
@@ -161,6 +175,20 @@ public final class AutoQueueAdjustingExecutorBuilder extends ExecutorBuilder<Aut
                         targetedResponseTime,
                         threadFactory,
                         threadContext);
+        } else {
+            executor = EsExecutors.newAutoQueueFixedFair(
+                        settings.nodeName + "/" + name(),
+                        size,
+                        initialQueueSize,
+                        minQueueSize,
+                        maxQueueSize,
+                        frameSize,
+                        targetedResponseTime,
+                        FAIR_QUEUE_GROUP_HEADER,
+                        settings.groupWeights,
+                        threadFactory,
+                        threadContext);
+        }
         // TODO: in a subsequent change we hope to extend ThreadPool.Info to be more specific for the thread pool type
         final ThreadPool.Info info =
             new ThreadPool.Info(name(), ThreadPool.ThreadPoolType.FIXED_AUTO_QUEUE_SIZE,
@@ -186,10 +214,13 @@ public final class AutoQueueAdjustingExecutorBuilder extends ExecutorBuilder<Aut
         final int maxQueueSize;
         final int frameSize;
         final TimeValue targetedResponseTime;
+        // the weight of each group if the queue is fair, null otherwise
+        @Nullable
+        final Map<String, Integer> groupWeights;
 
         AutoExecutorSettings(final String nodeName, final int size, final int initialQueueSize,
                              final int minQueueSize, final int maxQueueSize, final int frameSize,
-                             final TimeValue targetedResponseTime) {
+                             final TimeValue targetedResponseTime, @Nullable final Map<String, Integer> groupWeights) {
             super(nodeName);
             this.size = size;
             this.initialQueueSize = initialQueueSize;
@@ -197,6 +228,7 @@ public final class AutoQueueAdjustingExecutorBuilder extends ExecutorBuilder<Aut
             this.maxQueueSize = maxQueueSize;
             this.frameSize = frameSize;
             this.targetedResponseTime = targetedResponseTime;
+            this.groupWeights = groupWeights;
         }
 
     }
@@ -220,10 +220,16 @@ public class ThreadPool implements ReportingService<ThreadPoolInfo>, Scheduler {
                         .map(holder -> holder.info)
                         .collect(Collectors.toList());
         this.threadPoolInfo = new ThreadPoolInfo(infos);
+        // validate the adaptive sizing settings before any thread is started
+        final AdaptiveThreadPoolSizer adaptiveSizer =
+            AdaptiveThreadPoolSizer.ENABLED_SETTING.get(settings) ? AdaptiveThreadPoolSizer.create(settings, executors) : null;
         this.scheduler = Scheduler.initScheduler(settings);
         TimeValue estimatedTimeInterval = ESTIMATED_TIME_INTERVAL_SETTING.get(settings);
         this.cachedTimeThread = new CachedTimeThread(EsExecutors.threadName(settings, "[timer]"), estimatedTimeInterval.millis());
         this.cachedTimeThread.start();
+        if (adaptiveSizer != null) {
+            scheduleWithFixedDelay(adaptiveSizer, AdaptiveThreadPoolSizer.INTERVAL_SETTING.get(settings), Names.SAME);
+        }
     }
 
     /**
@@ -8,9 +8,9 @@
 
 package org.elasticsearch.transport;
 
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.core.internal.io.IOUtils;
 import org.elasticsearch.common.bytes.BytesReference;
-import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.Streams;
 import org.elasticsearch.common.io.stream.BytesStream;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -39,10 +39,19 @@ final class CompressibleBytesOutputStream extends StreamOutput {
     private final boolean shouldCompress;
 
     CompressibleBytesOutputStream(BytesStream bytesStreamOutput, boolean shouldCompress) throws IOException {
+        this(bytesStreamOutput, shouldCompress ? Compression.Scheme.DEFLATE : null, 0);
+    }
+
+    /**
+     * @param compressionScheme the scheme to compress the bytes with, or {@code null} to not compress them
+     * @param minCompressSize   the size under which blocks of bytes are not worth compressing, for schemes that support it
+     */
+    CompressibleBytesOutputStream(BytesStream bytesStreamOutput, @Nullable Compression.Scheme compressionScheme,
+                                  int minCompressSize) throws IOException {
         this.bytesStreamOutput = bytesStreamOutput;
-        this.shouldCompress = shouldCompress;
+        this.shouldCompress = compressionScheme != null;
         if (shouldCompress) {
-            this.stream = CompressorFactory.COMPRESSOR.threadLocalOutputStream(Streams.flushOnCloseStream(bytesStreamOutput));
+            this.stream = compressionScheme.outputStream(Streams.flushOnCloseStream(bytesStreamOutput), minCompressSize);
         } else {
             this.stream = bytesStreamOutput;
         }
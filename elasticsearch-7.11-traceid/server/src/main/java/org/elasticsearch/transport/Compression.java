@@ -0,0 +1,123 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.transport;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.CompositeBytesReference;
+import org.elasticsearch.common.compress.CompressorFactory;
+import org.elasticsearch.common.util.PageCacheRecycler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public final class Compression {
+
+    private Compression() {
+    }
+
+    /**
+     * The schemes that transport messages can be compressed with. Compressed messages start with a header that identifies
+     * their scheme, so nodes can decompress messages whatever scheme they use to compress their own messages.
+     */
+    public enum Scheme {
+        /**
+         * The DEFLATE algorithm, which has the best compression ratio and the highest CPU cost.
+         */
+        DEFLATE,
+        /**
+         * The LZ4 algorithm, which compresses less than {@link #DEFLATE} but is several times faster, both to compress and
+         * to decompress. Only nodes that know about this scheme can read messages that are compressed with it.
+         */
+        LZ4;
+
+        /**
+         * The first version that can decompress messages that are compressed with {@link #LZ4}. Older nodes get messages
+         * compressed with {@link #DEFLATE} instead.
+         */
+        public static final Version LZ4_VERSION = Version.V_7_11_3;
+
+        static final int HEADER_LENGTH = 4;
+        static final byte[] LZ4_HEADER = new byte[]{'L', 'Z', '4', '\0'};
+
+        public static Scheme parse(String value) {
+            switch (value) {
+                case "deflate":
+                    return DEFLATE;
+                case "lz4":
+                    return LZ4;
+                default:
+                    throw new IllegalArgumentException("unknown transport compression scheme [" + value
+                        + "], must be one of [deflate, lz4]");
+            }
+        }
+
+        static boolean isDeflate(BytesReference bytes) {
+            return CompressorFactory.COMPRESSOR.isCompressed(bytes);
+        }
+
+        public static boolean isLZ4(BytesReference bytes) {
+            if (bytes.length() < LZ4_HEADER.length) {
+                return false;
+            }
+            for (int i = 0; i < LZ4_HEADER.length; ++i) {
+                if (bytes.get(i) != LZ4_HEADER[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns a stream that compresses what is written to it with this scheme and writes it to the given stream. Closing
+         * the returned stream writes the end of the compressed stream and closes the given stream.
+         *
+         * @param minCompressSize the size under which {@link #LZ4} stores blocks of bytes as they are, since compressing
+         *                        small messages costs more CPU than it saves bytes. Ignored by {@link #DEFLATE}.
+         */
+        public OutputStream outputStream(OutputStream out, int minCompressSize) throws IOException {
+            switch (this) {
+                case DEFLATE:
+                    return CompressorFactory.COMPRESSOR.threadLocalOutputStream(out);
+                case LZ4:
+                    return new Lz4TransportOutputStream(out, minCompressSize);
+                default:
+                    throw new AssertionError("unknown compression scheme [" + this + "]");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Decompresses bytes that were compressed in full with the {@link Scheme#LZ4} scheme, like a serialized cluster state.
+     */
+    public static BytesReference uncompressLZ4(BytesReference bytes) throws IOException {
+        try (Lz4TransportDecompressor decompressor = new Lz4TransportDecompressor(PageCacheRecycler.NON_RECYCLING_INSTANCE)) {
+            final int consumed = decompressor.decompress(bytes);
+            if (decompressor.isEOS() == false || consumed != bytes.length()) {
+                throw new IOException("truncated or corrupted lz4 stream, consumed [" + consumed + "] bytes out of ["
+                    + bytes.length() + "]");
+            }
+            final List<BytesReference> pages = new ArrayList<>();
+            BytesReference page;
+            while ((page = decompressor.pollDecompressedPage()) != null) {
+                pages.add(page);
+            }
+            return CompositeBytesReference.of(pages.toArray(new BytesReference[0]));
+        }
+    }
+}
@@ -35,7 +35,8 @@ public final class ConnectionProfile {
         if (profile == null) {
             return fallbackProfile;
         } else if (profile.getConnectTimeout() != null && profile.getHandshakeTimeout() != null
-            && profile.getPingInterval() != null && profile.getCompressionEnabled() != null) {
+            && profile.getPingInterval() != null && profile.getCompressionEnabled() != null
+            && profile.getCompressionScheme() != null) {
             return profile;
         } else {
             ConnectionProfile.Builder builder = new ConnectionProfile.Builder(profile);
@@ -51,6 +52,9 @@ public final class ConnectionProfile {
             if (profile.getCompressionEnabled() == null) {
                 builder.setCompressionEnabled(fallbackProfile.getCompressionEnabled());
             }
+            if (profile.getCompressionScheme() == null && fallbackProfile.getCompressionScheme() != null) {
+                builder.setCompressionScheme(fallbackProfile.getCompressionScheme());
+            }
             return builder.build();
         }
     }
@@ -72,6 +76,7 @@ public final class ConnectionProfile {
         builder.setHandshakeTimeout(TransportSettings.CONNECT_TIMEOUT.get(settings));
         builder.setPingInterval(TransportSettings.PING_SCHEDULE.get(settings));
         builder.setCompressionEnabled(TransportSettings.TRANSPORT_COMPRESS.get(settings));
+        builder.setCompressionScheme(TransportSettings.TRANSPORT_COMPRESSION_SCHEME.get(settings));
         builder.addConnections(connectionsPerNodeBulk, TransportRequestOptions.Type.BULK);
         builder.addConnections(connectionsPerNodePing, TransportRequestOptions.Type.PING);
         // if we are not master eligible we don't need a dedicated channel to publish the state
@@ -123,15 +128,18 @@ public final class ConnectionProfile {
     private final TimeValue handshakeTimeout;
     private final TimeValue pingInterval;
     private final Boolean compressionEnabled;
+    private final Compression.Scheme compressionScheme;
 
     private ConnectionProfile(List<ConnectionTypeHandle> handles, int numConnections, TimeValue connectTimeout,
-                              TimeValue handshakeTimeout, TimeValue pingInterval, Boolean compressionEnabled) {
+                              TimeValue handshakeTimeout, TimeValue pingInterval, Boolean compressionEnabled,
+                              Compression.Scheme compressionScheme) {
         this.handles = handles;
         this.numConnections = numConnections;
         this.connectTimeout = connectTimeout;
         this.handshakeTimeout = handshakeTimeout;
         this.pingInterval = pingInterval;
         this.compressionEnabled = compressionEnabled;
+        this.compressionScheme = compressionScheme;
     }
 
     /**
@@ -144,6 +152,7 @@ public final class ConnectionProfile {
         private TimeValue connectTimeout;
         private TimeValue handshakeTimeout;
         private Boolean compressionEnabled;
+        private Compression.Scheme compressionScheme;
         private TimeValue pingInterval;
 
         /** create an empty builder */
@@ -158,6 +167,7 @@ public final class ConnectionProfile {
             connectTimeout = source.getConnectTimeout();
             handshakeTimeout = source.getHandshakeTimeout();
             compressionEnabled = source.getCompressionEnabled();
+            compressionScheme = source.getCompressionScheme();
             pingInterval = source.getPingInterval();
         }
         /**
@@ -198,6 +208,14 @@ public final class ConnectionProfile {
             return this;
         }
 
+        /**
+         * Sets the scheme to compress requests with for this connection profile, if compression is enabled
+         */
+        public Builder setCompressionScheme(Compression.Scheme compressionScheme) {
+            this.compressionScheme = Objects.requireNonNull(compressionScheme);
+            return this;
+        }
+
         /**
          * Adds a number of connections for one or more types. Each type can only be added once.
          * @param numConnections the number of connections to use in the pool for the given connection types
@@ -229,7 +247,7 @@ public final class ConnectionProfile {
                 throw new IllegalStateException("not all types are added for this connection profile - missing types: " + types);
             }
             return new ConnectionProfile(Collections.unmodifiableList(handles), numConnections, connectTimeout, handshakeTimeout,
-                pingInterval, compressionEnabled);
+                pingInterval, compressionEnabled, compressionScheme);
         }
 
     }
@@ -263,6 +281,14 @@ public final class ConnectionProfile {
         return compressionEnabled;
     }
 
+    /**
+     * Returns the scheme requests are compressed with if compression is enabled, or <code>null</code> if no explicit
+     * compression scheme is set on this profile.
+     */
+    public Compression.Scheme getCompressionScheme() {
+        return compressionScheme;
+    }
+
     /**
      * Returns the total number of connections for this profile
      */
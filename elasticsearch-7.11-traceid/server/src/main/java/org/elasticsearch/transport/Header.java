@@ -32,6 +32,7 @@ public class Header {
     String actionName;
     Tuple<Map<String, String>, Map<String, Set<String>>> headers;
     Set<String> features;
+    private Compression.Scheme compressionScheme;
 
     Header(int networkMessageSize, long requestId, byte status, Version version) {
         this.networkMessageSize = networkMessageSize;
@@ -76,6 +77,19 @@ public class Header {
         return TransportStatus.isCompress(status);
     }
 
+    /**
+     * Returns the scheme the content of this message is compressed with, or {@code null} if the message is not compressed
+     * or its content hasn't been received yet.
+     */
+    Compression.Scheme getCompressionScheme() {
+        return compressionScheme;
+    }
+
+    void setCompressionScheme(Compression.Scheme compressionScheme) {
+        assert isCompressed() : "only compressed messages have a compression scheme";
+        this.compressionScheme = compressionScheme;
+    }
+
     public String getActionName() {
         return actionName;
     }
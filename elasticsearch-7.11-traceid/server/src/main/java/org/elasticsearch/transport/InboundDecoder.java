@@ -27,6 +27,7 @@ public class InboundDecoder implements Releasable {
     private final Version version;
     private final PageCacheRecycler recycler;
     private TransportDecompressor decompressor;
+    private Header compressedHeader;
     private int totalNetworkSize = -1;
     private int bytesConsumed = 0;
     private boolean isClosed = false;
@@ -64,7 +65,8 @@ public class InboundDecoder implements Releasable {
                     Header header = readHeader(version, messageLength, reference);
                     bytesConsumed += headerBytesToRead;
                     if (header.isCompressed()) {
-                        decompressor = new TransportDecompressor(recycler);
+                        // the decompressor is created once the content is received, since its scheme depends on its first bytes
+                        compressedHeader = header;
                     }
                     fragmentConsumer.accept(header);
 
@@ -75,6 +77,15 @@ public class InboundDecoder implements Releasable {
                 }
             }
         } else {
+            if (compressedHeader != null && decompressor == null) {
+                decompressor = TransportDecompressor.getDecompressor(recycler, reference);
+                if (decompressor == null) {
+                    // There are a minimum number of bytes required to start decompression
+                    return 0;
+                }
+                compressedHeader.setCompressionScheme(
+                    Compression.Scheme.isLZ4(reference) ? Compression.Scheme.LZ4 : Compression.Scheme.DEFLATE);
+            }
             // There are a minimum number of bytes required to start decompression
             if (decompressor != null && decompressor.canDecompress(reference.length()) == false) {
                 return 0;
@@ -118,6 +129,7 @@ public class InboundDecoder implements Releasable {
     private void cleanDecodeState() {
         IOUtils.closeWhileHandlingException(decompressor);
         decompressor = null;
+        compressedHeader = null;
         totalNetworkSize = -1;
         bytesConsumed = 0;
     }
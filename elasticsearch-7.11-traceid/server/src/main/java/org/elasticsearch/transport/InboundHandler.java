@@ -170,8 +170,10 @@ public class InboundHandler {
                 }
             }
         } else {
+            // responses are compressed with the scheme of their request, which the sender of the request can decompress
             final TransportChannel transportChannel = new TcpTransportChannel(outboundHandler, channel, action, requestId, version,
-                header.getFeatures(), header.isCompressed(), header.isHandshake(), message.takeBreakerReleaseControl());
+                header.getFeatures(), header.isCompressed() ? header.getCompressionScheme() : null, header.isHandshake(),
+                message.takeBreakerReleaseControl());
             try {
                 messageListener.onRequestReceived(requestId, action);
                 if (message.isShortCircuit()) {
@@ -0,0 +1,174 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.transport;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefIterator;
+import org.apache.lucene.util.compress.LZ4;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.ReleasableBytesReference;
+import org.elasticsearch.common.recycler.Recycler;
+import org.elasticsearch.common.util.PageCacheRecycler;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Decompresses messages that were compressed with the {@link Compression.Scheme#LZ4} scheme, see
+ * {@link Lz4TransportOutputStream} for the format. Every block is decompressed into its own page. Blocks are decompressed
+ * straight from the received bytes when they are not split across several network reads, and copied to a buffer first
+ * otherwise.
+ */
+public class Lz4TransportDecompressor implements TransportDecompressor {
+
+    private final PageCacheRecycler recycler;
+    private final ArrayDeque<ReleasableBytesReference> pages;
+    private final byte[] blockHeader = new byte[Lz4TransportOutputStream.BLOCK_HEADER_SIZE];
+    private final ByteArrayDataInput blockInput = new ByteArrayDataInput();
+    private boolean hasReadHeader = false;
+    private boolean endOfStream = false;
+    private int blockHeaderOffset = 0;
+    // the uncompressed and stored lengths of the current block, or -1 while reading its header
+    private int blockLength = -1;
+    private int storedLength = -1;
+    // buffer for blocks whose stored bytes are split across several calls to decompress
+    private byte[] storedBytes;
+    private int storedBytesOffset = 0;
+
+    public Lz4TransportDecompressor(PageCacheRecycler recycler) {
+        this.recycler = recycler;
+        pages = new ArrayDeque<>(4);
+    }
+
+    @Override
+    public int decompress(BytesReference bytesReference) throws IOException {
+        int bytesConsumed = 0;
+        if (hasReadHeader == false) {
+            if (Compression.Scheme.isLZ4(bytesReference) == false) {
+                throw new IllegalStateException("stream marked as compressed with lz4, but is missing the lz4 header");
+            }
+            hasReadHeader = true;
+            int headerLength = Compression.Scheme.LZ4_HEADER.length;
+            bytesReference = bytesReference.slice(headerLength, bytesReference.length() - headerLength);
+            bytesConsumed += headerLength;
+        }
+
+        BytesRefIterator refIterator = bytesReference.iterator();
+        BytesRef ref;
+        while (endOfStream == false && (ref = refIterator.next()) != null) {
+            int offset = ref.offset;
+            final int end = ref.offset + ref.length;
+            while (endOfStream == false && offset < end) {
+                if (blockLength == -1) {
+                    final int toCopy = Math.min(blockHeader.length - blockHeaderOffset, end - offset);
+                    System.arraycopy(ref.bytes, offset, blockHeader, blockHeaderOffset, toCopy);
+                    blockHeaderOffset += toCopy;
+                    offset += toCopy;
+                    if (blockHeaderOffset == blockHeader.length) {
+                        readBlockHeader();
+                    }
+                } else if (storedBytesOffset == 0 && end - offset >= storedLength) {
+                    decompressBlock(ref.bytes, offset);
+                    offset += storedLength;
+                    blockLength = -1;
+                } else {
+                    if (storedBytes == null) {
+                        storedBytes = new byte[Lz4TransportOutputStream.MAX_COMPRESSED_BLOCK_SIZE];
+                    }
+                    final int toCopy = Math.min(storedLength - storedBytesOffset, end - offset);
+                    System.arraycopy(ref.bytes, offset, storedBytes, storedBytesOffset, toCopy);
+                    storedBytesOffset += toCopy;
+                    offset += toCopy;
+                    if (storedBytesOffset == storedLength) {
+                        decompressBlock(storedBytes, 0);
+                        storedBytesOffset = 0;
+                        blockLength = -1;
+                    }
+                }
+            }
+            bytesConsumed += offset - ref.offset;
+        }
+
+        return bytesConsumed;
+    }
+
+    private void readBlockHeader() throws IOException {
+        blockHeaderOffset = 0;
+        final int length = readInt(blockHeader, 0);
+        final int stored = readInt(blockHeader, Integer.BYTES);
+        if (length == 0 && stored == 0) {
+            endOfStream = true;
+            return;
+        }
+        if (length <= 0 || length > Lz4TransportOutputStream.BLOCK_SIZE || stored <= 0 || stored > length) {
+            throw new IOException("invalid lz4 block header with length [" + length + "] and stored length [" + stored + "]");
+        }
+        blockLength = length;
+        storedLength = stored;
+    }
+
+    private void decompressBlock(byte[] bytes, int offset) throws IOException {
+        final Recycler.V<byte[]> page = recycler.bytePage(false);
+        boolean success = false;
+        try {
+            if (storedLength == blockLength) {
+                System.arraycopy(bytes, offset, page.v(), 0, blockLength);
+            } else {
+                blockInput.reset(bytes, offset, storedLength);
+                final int decompressed;
+                try {
+                    decompressed = LZ4.decompress(blockInput, blockLength, page.v(), 0);
+                } catch (IndexOutOfBoundsException e) {
+                    throw new IOException("Exception while decompressing lz4 block", e);
+                }
+                if (decompressed != blockLength || blockInput.getPosition() != offset + storedLength) {
+                    throw new IOException("corrupted lz4 block: decompressed [" + decompressed + "] bytes out of ["
+                        + blockLength + "] from [" + (blockInput.getPosition() - offset) + "] bytes out of [" + storedLength + "]");
+                }
+            }
+            pages.add(new ReleasableBytesReference(new BytesArray(page.v(), 0, blockLength), page));
+            success = true;
+        } finally {
+            if (success == false) {
+                page.close();
+            }
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+            | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    @Override
+    public boolean canDecompress(int bytesAvailable) {
+        return hasReadHeader || bytesAvailable >= Compression.Scheme.LZ4_HEADER.length;
+    }
+
+    @Override
+    public boolean isEOS() {
+        return endOfStream;
+    }
+
+    @Override
+    public ReleasableBytesReference pollDecompressedPage() {
+        return pages.pollFirst();
+    }
+
+    @Override
+    public void close() {
+        for (ReleasableBytesReference page : pages) {
+            page.close();
+        }
+        pages.clear();
+    }
+}
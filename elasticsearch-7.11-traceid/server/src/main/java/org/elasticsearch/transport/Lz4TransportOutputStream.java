@@ -0,0 +1,150 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.transport;
+
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.util.compress.LZ4;
+import org.elasticsearch.common.util.PageCacheRecycler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A stream that compresses transport messages with the {@link Compression.Scheme#LZ4} scheme. After the scheme header, the
+ * bytes are written in independent blocks of at most {@link #BLOCK_SIZE} bytes, so that each block decompresses into a
+ * single page on the receiving side. Each block starts with its uncompressed length and its stored length, as big endian
+ * ints, followed by the stored bytes. Blocks that are smaller than the minimum size to compress, or that don't get smaller
+ * when compressed, are stored as they are, which readers recognize by a stored length that is equal to the uncompressed
+ * length. An empty block marks the end of the stream.
+ */
+final class Lz4TransportOutputStream extends OutputStream {
+
+    static final int BLOCK_SIZE = PageCacheRecycler.BYTE_PAGE_SIZE;
+    static final int BLOCK_HEADER_SIZE = 2 * Integer.BYTES;
+    // incompressible bytes are written as literals, which need one extra byte for every 255 bytes plus a token
+    static final int MAX_COMPRESSED_BLOCK_SIZE = BLOCK_SIZE + BLOCK_SIZE / 255 + 16;
+
+    // buffers are reused across messages that are serialized on the same thread
+    private static final ThreadLocal<Buffers> THREAD_LOCAL_BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private final OutputStream out;
+    private final int minCompressSize;
+    private final Buffers buffers;
+    private int count;
+    private boolean closed;
+
+    Lz4TransportOutputStream(OutputStream out, int minCompressSize) throws IOException {
+        this.out = out;
+        this.minCompressSize = minCompressSize;
+        final Buffers threadLocalBuffers = THREAD_LOCAL_BUFFERS.get();
+        if (threadLocalBuffers.inUse) {
+            // another message is being compressed by this thread
+            buffers = new Buffers();
+        } else {
+            buffers = threadLocalBuffers;
+        }
+        buffers.inUse = true;
+        out.write(Compression.Scheme.LZ4_HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == BLOCK_SIZE) {
+            writeBlock();
+        }
+        buffers.block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == BLOCK_SIZE) {
+                writeBlock();
+            }
+            final int toCopy = Math.min(len, BLOCK_SIZE - count);
+            System.arraycopy(b, off, buffers.block, count, toCopy);
+            count += toCopy;
+            off += toCopy;
+            len -= toCopy;
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (count >= minCompressSize) {
+            buffers.compressedOutput.reset(buffers.compressed);
+            LZ4.compress(buffers.block, 0, count, buffers.compressedOutput, buffers.hashTable);
+            final int compressedLength = buffers.compressedOutput.getPosition();
+            if (compressedLength < count) {
+                writeBlockHeader(count, compressedLength);
+                out.write(buffers.compressed, 0, compressedLength);
+                count = 0;
+                return;
+            }
+        }
+        writeBlockHeader(count, count);
+        out.write(buffers.block, 0, count);
+        count = 0;
+    }
+
+    private void writeBlockHeader(int length, int storedLength) throws IOException {
+        final byte[] header = buffers.blockHeader;
+        writeInt(header, 0, length);
+        writeInt(header, Integer.BYTES, storedLength);
+        out.write(header, 0, BLOCK_HEADER_SIZE);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >> 24);
+        bytes[offset + 1] = (byte) (value >> 16);
+        bytes[offset + 2] = (byte) (value >> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("stream is already closed");
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // blocks are only written once they are full, since flushing partial blocks would hurt the compression ratio
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (count > 0) {
+                writeBlock();
+            }
+            // an empty block marks the end of the stream
+            writeBlockHeader(0, 0);
+        } finally {
+            closed = true;
+            buffers.inUse = false;
+            out.close();
+        }
+    }
+
+    private static final class Buffers {
+        final byte[] block = new byte[BLOCK_SIZE];
+        final byte[] compressed = new byte[MAX_COMPRESSED_BLOCK_SIZE];
+        final byte[] blockHeader = new byte[BLOCK_HEADER_SIZE];
+        final ByteArrayDataOutput compressedOutput = new ByteArrayDataOutput();
+        final LZ4.FastCompressionHashTable hashTable = new LZ4.FastCompressionHashTable();
+        boolean inUse;
+    }
+}
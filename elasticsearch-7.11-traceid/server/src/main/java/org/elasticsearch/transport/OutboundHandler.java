@@ -16,6 +16,7 @@ import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.NotifyOnceListener;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.CheckedSupplier;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.ReleasableBytesStreamOutput;
 import org.elasticsearch.common.lease.Releasable;
@@ -41,16 +42,23 @@ final class OutboundHandler {
     private final StatsTracker statsTracker;
     private final ThreadPool threadPool;
     private final BigArrays bigArrays;
+    private final int compressionMinSize;
     private volatile TransportMessageListener messageListener = TransportMessageListener.NOOP_LISTENER;
 
     OutboundHandler(String nodeName, Version version, String[] features, StatsTracker statsTracker, ThreadPool threadPool,
                     BigArrays bigArrays) {
+        this(nodeName, version, features, statsTracker, threadPool, bigArrays, 0);
+    }
+
+    OutboundHandler(String nodeName, Version version, String[] features, StatsTracker statsTracker, ThreadPool threadPool,
+                    BigArrays bigArrays, int compressionMinSize) {
         this.nodeName = nodeName;
         this.version = version;
         this.features = features;
         this.statsTracker = statsTracker;
         this.threadPool = threadPool;
         this.bigArrays = bigArrays;
+        this.compressionMinSize = compressionMinSize;
     }
 
     void sendBytes(TcpChannel channel, BytesReference bytes, ActionListener<Void> listener) {
@@ -70,9 +78,20 @@ final class OutboundHandler {
     void sendRequest(final DiscoveryNode node, final TcpChannel channel, final long requestId, final String action,
                      final TransportRequest request, final TransportRequestOptions options, final Version channelVersion,
                      final boolean compressRequest, final boolean isHandshake) throws IOException, TransportException {
+        sendRequest(node, channel, requestId, action, request, options, channelVersion,
+            compressRequest ? Compression.Scheme.DEFLATE : null, isHandshake);
+    }
+
+    /**
+     * Sends the request to the given channel, compressed with the given scheme or uncompressed if the scheme is {@code null}.
+     */
+    void sendRequest(final DiscoveryNode node, final TcpChannel channel, final long requestId, final String action,
+                     final TransportRequest request, final TransportRequestOptions options, final Version channelVersion,
+                     @Nullable final Compression.Scheme compressionScheme, final boolean isHandshake)
+        throws IOException, TransportException {
         Version version = Version.min(this.version, channelVersion);
         OutboundMessage.Request message = new OutboundMessage.Request(threadPool.getThreadContext(), features, request, version, action,
-            requestId, isHandshake, compressRequest);
+            requestId, isHandshake, compressionScheme);
         ActionListener<Void> listener = ActionListener.wrap(() ->
             messageListener.onRequestSent(node, requestId, action, request, options));
         sendMessage(channel, message, listener);
@@ -87,9 +106,19 @@ final class OutboundHandler {
     void sendResponse(final Version nodeVersion, final Set<String> features, final TcpChannel channel,
                       final long requestId, final String action, final TransportResponse response,
                       final boolean compress, final boolean isHandshake) throws IOException {
+        sendResponse(nodeVersion, features, channel, requestId, action, response, compress ? Compression.Scheme.DEFLATE : null,
+            isHandshake);
+    }
+
+    /**
+     * Sends the response to the given channel, compressed with the given scheme or uncompressed if the scheme is {@code null}.
+     */
+    void sendResponse(final Version nodeVersion, final Set<String> features, final TcpChannel channel,
+                      final long requestId, final String action, final TransportResponse response,
+                      @Nullable final Compression.Scheme compressionScheme, final boolean isHandshake) throws IOException {
         Version version = Version.min(this.version, nodeVersion);
         OutboundMessage.Response message = new OutboundMessage.Response(threadPool.getThreadContext(), features, response, version,
-            requestId, isHandshake, compress);
+            requestId, isHandshake, compressionScheme);
         ActionListener<Void> listener = ActionListener.wrap(() -> messageListener.onResponseSent(requestId, action, response));
         sendMessage(channel, message, listener);
     }
@@ -109,7 +138,7 @@ final class OutboundHandler {
     }
 
     private void sendMessage(TcpChannel channel, OutboundMessage networkMessage, ActionListener<Void> listener) throws IOException {
-        MessageSerializer serializer = new MessageSerializer(networkMessage, bigArrays);
+        MessageSerializer serializer = new MessageSerializer(networkMessage, bigArrays, compressionMinSize);
         SendContext sendContext = new SendContext(channel, serializer, listener, serializer);
         internalSend(channel, sendContext);
     }
@@ -139,17 +168,19 @@ final class OutboundHandler {
 
         private final OutboundMessage message;
         private final BigArrays bigArrays;
+        private final int compressionMinSize;
         private volatile ReleasableBytesStreamOutput bytesStreamOutput;
 
-        private MessageSerializer(OutboundMessage message, BigArrays bigArrays) {
+        private MessageSerializer(OutboundMessage message, BigArrays bigArrays, int compressionMinSize) {
             this.message = message;
             this.bigArrays = bigArrays;
+            this.compressionMinSize = compressionMinSize;
         }
 
         @Override
         public BytesReference get() throws IOException {
             bytesStreamOutput = new ReleasableBytesStreamOutput(bigArrays);
-            return message.serialize(bytesStreamOutput);
+            return message.serialize(bytesStreamOutput, compressionMinSize);
         }
 
         @Override
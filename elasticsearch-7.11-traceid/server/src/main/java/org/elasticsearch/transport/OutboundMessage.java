@@ -8,6 +8,7 @@
 package org.elasticsearch.transport;
 
 import org.elasticsearch.Version;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.bytes.CompositeBytesReference;
@@ -22,13 +23,31 @@ import java.util.Set;
 abstract class OutboundMessage extends NetworkMessage {
 
     private final Writeable message;
+    private final Compression.Scheme compressionScheme;
 
-    OutboundMessage(ThreadContext threadContext, Version version, byte status, long requestId, Writeable message) {
+    OutboundMessage(ThreadContext threadContext, Version version, byte status, long requestId, Writeable message,
+                    @Nullable Compression.Scheme compressionScheme) {
         super(threadContext, version, status, requestId);
         this.message = message;
+        if (compressionScheme == Compression.Scheme.LZ4 && version.before(Compression.Scheme.LZ4_VERSION)) {
+            // older nodes can only decompress deflate
+            this.compressionScheme = Compression.Scheme.DEFLATE;
+        } else {
+            this.compressionScheme = compressionScheme;
+        }
     }
 
     BytesReference serialize(BytesStreamOutput bytesStream) throws IOException {
+        return serialize(bytesStream, 0);
+    }
+
+    /**
+     * Serializes this message to the given stream.
+     *
+     * @param minCompressSize the size under which blocks of the message are not worth compressing, for compression schemes
+     *                        that support it
+     */
+    BytesReference serialize(BytesStreamOutput bytesStream, int minCompressSize) throws IOException {
         bytesStream.setVersion(version);
         bytesStream.skip(TcpHeader.headerSize(version));
 
@@ -42,8 +61,8 @@ abstract class OutboundMessage extends NetworkMessage {
             variableHeaderLength = Math.toIntExact(bytesStream.position() - preHeaderPosition);
         }
 
-        try (CompressibleBytesOutputStream stream =
-                 new CompressibleBytesOutputStream(bytesStream, TransportStatus.isCompress(status))) {
+        final Compression.Scheme scheme = TransportStatus.isCompress(status) ? compressionScheme : null;
+        try (CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bytesStream, scheme, minCompressSize)) {
             stream.setVersion(version);
             stream.setFeatures(bytesStream.getFeatures());
 
@@ -96,7 +115,13 @@ abstract class OutboundMessage extends NetworkMessage {
 
         Request(ThreadContext threadContext, String[] features, Writeable message, Version version, String action, long requestId,
                 boolean isHandshake, boolean compress) {
-            super(threadContext, version, setStatus(compress, isHandshake, message), requestId, message);
+            this(threadContext, features, message, version, action, requestId, isHandshake, compress ? Compression.Scheme.DEFLATE : null);
+        }
+
+        Request(ThreadContext threadContext, String[] features, Writeable message, Version version, String action, long requestId,
+                boolean isHandshake, @Nullable Compression.Scheme compressionScheme) {
+            super(threadContext, version, setStatus(compressionScheme != null, isHandshake, message), requestId, message,
+                compressionScheme);
             this.features = features;
             this.action = action;
         }
@@ -130,7 +155,13 @@ abstract class OutboundMessage extends NetworkMessage {
 
         Response(ThreadContext threadContext, Set<String> features, Writeable message, Version version, long requestId,
                  boolean isHandshake, boolean compress) {
-            super(threadContext, version, setStatus(compress, isHandshake, message), requestId, message);
+            this(threadContext, features, message, version, requestId, isHandshake, compress ? Compression.Scheme.DEFLATE : null);
+        }
+
+        Response(ThreadContext threadContext, Set<String> features, Writeable message, Version version, long requestId,
+                 boolean isHandshake, @Nullable Compression.Scheme compressionScheme) {
+            super(threadContext, version, setStatus(compressionScheme != null, isHandshake, message), requestId, message,
+                compressionScheme);
             this.features = features;
         }
 
@@ -6,132 +6,69 @@
  * Side Public License, v 1.
  */
 
+
 package org.elasticsearch.transport;
 
-import org.apache.lucene.util.BytesRef;
-import org.apache.lucene.util.BytesRefIterator;
-import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.bytes.ReleasableBytesReference;
-import org.elasticsearch.common.compress.CompressorFactory;
-import org.elasticsearch.common.recycler.Recycler;
 import org.elasticsearch.common.util.PageCacheRecycler;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
-
-public class TransportDecompressor implements Closeable {
-
-    private final Inflater inflater;
-    private final PageCacheRecycler recycler;
-    private final ArrayDeque<Recycler.V<byte[]>> pages;
-    private int pageOffset = PageCacheRecycler.BYTE_PAGE_SIZE;
-    private boolean hasReadHeader = false;
 
-    public TransportDecompressor(PageCacheRecycler recycler) {
-        this.recycler = recycler;
-        inflater = new Inflater(true);
-        pages = new ArrayDeque<>(4);
-    }
+/**
+ * Decompresses the content of a compressed transport message as it is received, in pages that can be released once the
+ * message has been handled.
+ */
+public interface TransportDecompressor extends Closeable {
 
-    public int decompress(BytesReference bytesReference) throws IOException {
-        int bytesConsumed = 0;
-        if (hasReadHeader == false) {
-            if (CompressorFactory.COMPRESSOR.isCompressed(bytesReference) == false) {
-                int maxToRead = Math.min(bytesReference.length(), 10);
-                StringBuilder sb = new StringBuilder("stream marked as compressed, but no compressor found, first [")
-                    .append(maxToRead).append("] content bytes out of [").append(bytesReference.length())
-                    .append("] readable bytes with message size [").append(bytesReference.length()).append("] ").append("] are [");
-                for (int i = 0; i < maxToRead; i++) {
-                    sb.append(bytesReference.get(i)).append(",");
-                }
-                sb.append("]");
-                throw new IllegalStateException(sb.toString());
-            }
-            hasReadHeader = true;
-            int headerLength = CompressorFactory.COMPRESSOR.headerLength();
-            bytesReference = bytesReference.slice(headerLength, bytesReference.length() - headerLength);
-            bytesConsumed += headerLength;
-        }
+    /**
+     * Decompresses the given bytes, which follow the bytes that were passed to previous calls, and returns the number of
+     * bytes that were consumed.
+     */
+    int decompress(BytesReference bytesReference) throws IOException;
 
-        BytesRefIterator refIterator = bytesReference.iterator();
-        BytesRef ref;
-        while ((ref = refIterator.next()) != null) {
-            inflater.setInput(ref.bytes, ref.offset, ref.length);
-            bytesConsumed += ref.length;
-            boolean continueInflating = true;
-            while (continueInflating) {
-                final Recycler.V<byte[]> page;
-                final boolean isNewPage = pageOffset == PageCacheRecycler.BYTE_PAGE_SIZE;
-                if (isNewPage) {
-                    pageOffset = 0;
-                    page = recycler.bytePage(false);
-                } else {
-                    page = pages.getLast();
-                }
-                byte[] output = page.v();
-                try {
-                    int bytesInflated = inflater.inflate(output, pageOffset, PageCacheRecycler.BYTE_PAGE_SIZE - pageOffset);
-                    pageOffset += bytesInflated;
-                    if (isNewPage) {
-                        if (bytesInflated == 0) {
-                            page.close();
-                            pageOffset = PageCacheRecycler.BYTE_PAGE_SIZE;
-                        } else {
-                            pages.add(page);
-                        }
-                    }
-                } catch (DataFormatException e) {
-                    throw new IOException("Exception while inflating bytes", e);
-                }
-                if (inflater.needsInput()) {
-                    continueInflating = false;
-                }
-                if (inflater.finished()) {
-                    bytesConsumed -= inflater.getRemaining();
-                    continueInflating = false;
-                }
-                assert inflater.needsDictionary() == false;
-            }
-        }
+    /**
+     * Returns whether enough bytes are available to start decompressing.
+     */
+    boolean canDecompress(int bytesAvailable);
 
-        return bytesConsumed;
-    }
+    /**
+     * Returns whether the end of the compressed stream has been reached.
+     */
+    boolean isEOS();
 
-    public boolean canDecompress(int bytesAvailable) {
-        return hasReadHeader || bytesAvailable >= CompressorFactory.COMPRESSOR.headerLength();
-    }
+    /**
+     * Returns the next page of decompressed bytes, or {@code null} if there is no complete page yet.
+     */
+    ReleasableBytesReference pollDecompressedPage();
 
-    public boolean isEOS() {
-        return inflater.finished();
-    }
+    @Override
+    void close();
 
-    public ReleasableBytesReference pollDecompressedPage() {
-        if (pages.isEmpty()) {
+    /**
+     * Returns a decompressor for the compression scheme of the given content, or {@code null} if the content is too short to
+     * tell which scheme it was compressed with.
+     *
+     * @throws IllegalStateException if the content doesn't start with the header of any known compression scheme
+     */
+    static TransportDecompressor getDecompressor(PageCacheRecycler recycler, BytesReference bytes) {
+        if (bytes.length() < Compression.Scheme.HEADER_LENGTH) {
             return null;
-        } else if (pages.size() == 1) {
-            if (isEOS()) {
-                Recycler.V<byte[]> page = pages.pollFirst();
-                ReleasableBytesReference reference = new ReleasableBytesReference(new BytesArray(page.v(), 0, pageOffset), page);
-                pageOffset = 0;
-                return reference;
-            } else {
-                return null;
-            }
-        } else {
-            Recycler.V<byte[]> page = pages.pollFirst();
-            return new ReleasableBytesReference(new BytesArray(page.v()), page);
         }
-    }
-
-    @Override
-    public void close() {
-        inflater.end();
-        for (Recycler.V<byte[]> page : pages) {
-            page.close();
+        if (Compression.Scheme.isDeflate(bytes)) {
+            return new DeflateTransportDecompressor(recycler);
+        } else if (Compression.Scheme.isLZ4(bytes)) {
+            return new Lz4TransportDecompressor(recycler);
+        } else {
+            int maxToRead = Math.min(bytes.length(), 10);
+            StringBuilder sb = new StringBuilder("stream marked as compressed, but no compressor found, first [")
+                .append(maxToRead).append("] content bytes out of [").append(bytes.length()).append("] readable bytes are [");
+            for (int i = 0; i < maxToRead; i++) {
+                sb.append(bytes.get(i)).append(",");
+            }
+            sb.append("]");
+            throw new IllegalStateException(sb.toString());
         }
     }
 }
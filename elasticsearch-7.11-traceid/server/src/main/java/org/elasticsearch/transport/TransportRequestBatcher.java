@@ -0,0 +1,516 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.transport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.CountDown;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces the requests of the actions that opted in with {@link TransportService#enableRequestBatching(String)} that are sent to
+ * the same node within {@link TransportSettings#REQUEST_BATCHING_WINDOW} into a single {@link #BATCH_ACTION_NAME} message. The
+ * receiving node splits the batch again, processes each request with the handler that is registered for its action and sends back
+ * all the responses in a single message once every request of the batch completed.
+ * <p>
+ * A batch is sent with the thread context of its first request, so only requests with the same request headers are batched together.
+ * Requests with a timeout are never batched. Batching is disabled unless the window is set, and must only be enabled once all the
+ * nodes of the cluster support it, although requests are resent one by one to nodes that don't know the batch action.
+ */
+final class TransportRequestBatcher {
+
+    private static final Logger logger = LogManager.getLogger(TransportRequestBatcher.class);
+
+    static final String BATCH_ACTION_NAME = "internal:transport/batch";
+
+    private final TransportService transportService;
+    private final ThreadPool threadPool;
+    private final Set<String> batchedActions = ConcurrentCollections.newConcurrentSet();
+    // the ephemeral ids of the nodes that don't support batches
+    private final Set<String> nodesWithoutBatching = ConcurrentCollections.newConcurrentSet();
+    private final Map<BatchKey, PendingBatch> pendingBatches = new HashMap<>();
+
+    private volatile TimeValue window;
+    private volatile int maxSize;
+
+    TransportRequestBatcher(Settings settings, TransportService transportService, ThreadPool threadPool,
+                            ClusterSettings clusterSettings) {
+        this.transportService = transportService;
+        this.threadPool = threadPool;
+        this.window = TransportSettings.REQUEST_BATCHING_WINDOW.get(settings);
+        this.maxSize = TransportSettings.REQUEST_BATCHING_MAX_SIZE.get(settings);
+        if (clusterSettings != null) {
+            clusterSettings.addSettingsUpdateConsumer(TransportSettings.REQUEST_BATCHING_WINDOW, window -> this.window = window);
+            clusterSettings.addSettingsUpdateConsumer(TransportSettings.REQUEST_BATCHING_MAX_SIZE, maxSize -> this.maxSize = maxSize);
+        }
+        transportService.registerRequestHandler(BATCH_ACTION_NAME, ThreadPool.Names.SAME, false, false, BatchRequest::new,
+            this::handleBatch);
+    }
+
+    void enableBatching(String action) {
+        batchedActions.add(action);
+    }
+
+    /**
+     * Adds the given request to the pending batch of its node, unless it can't be batched.
+     *
+     * @return {@code true} if the request was batched, {@code false} if it must be sent on its own
+     */
+    <T extends TransportResponse> boolean maybeBatch(Transport.Connection connection, String action, TransportRequest request,
+                                                     TransportRequestOptions options, TransportResponseHandler<T> handler) {
+        final TimeValue window = this.window;
+        if (window.millis() <= 0 || options.timeout() != null || batchedActions.contains(action) == false
+            || nodesWithoutBatching.contains(connection.getNode().getEphemeralId())) {
+            return false;
+        }
+        final BytesReference bytes;
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(connection.getVersion());
+            request.writeTo(out);
+            bytes = out.bytes();
+        } catch (IOException e) {
+            // let the regular send path report the failure
+            return false;
+        }
+
+        final ThreadContext threadContext = threadPool.getThreadContext();
+        final Item<T> item = new Item<>(action, request, bytes, handler, threadContext.newRestorableContext(true));
+        final BatchKey key = new BatchKey(connection, threadContext.getHeaders());
+        PendingBatch newBatch = null;
+        PendingBatch fullBatch = null;
+        synchronized (pendingBatches) {
+            PendingBatch batch = pendingBatches.get(key);
+            if (batch == null) {
+                batch = new PendingBatch(key, threadContext.newRestorableContext(false));
+                pendingBatches.put(key, batch);
+                newBatch = batch;
+            }
+            batch.items.add(item);
+            if (batch.items.size() >= maxSize) {
+                pendingBatches.remove(key);
+                fullBatch = batch;
+            }
+        }
+        if (newBatch != null && fullBatch == null) {
+            final PendingBatch toFlush = newBatch;
+            try {
+                threadPool.schedule(() -> flush(toFlush), window, ThreadPool.Names.GENERIC);
+            } catch (EsRejectedExecutionException e) {
+                // the node is shutting down, sending the batch now fails its requests
+                flush(toFlush);
+            }
+        }
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+        return true;
+    }
+
+    /**
+     * Sends all the pending batches right away.
+     */
+    void flushAll() {
+        final List<PendingBatch> batches;
+        synchronized (pendingBatches) {
+            batches = new ArrayList<>(pendingBatches.values());
+            pendingBatches.clear();
+        }
+        for (PendingBatch batch : batches) {
+            send(batch);
+        }
+    }
+
+    private void flush(PendingBatch batch) {
+        synchronized (pendingBatches) {
+            if (pendingBatches.remove(batch.key, batch) == false) {
+                // already sent because it was full
+                return;
+            }
+        }
+        send(batch);
+    }
+
+    private void send(PendingBatch batch) {
+        final List<Item<?>> items = batch.items;
+        final List<String> actions = new ArrayList<>(items.size());
+        final List<BytesReference> requests = new ArrayList<>(items.size());
+        for (Item<?> item : items) {
+            actions.add(item.action);
+            requests.add(item.bytes);
+        }
+        final Transport.Connection connection = batch.key.connection;
+        try (ThreadContext.StoredContext ignore = batch.context.get()) {
+            transportService.sendRequest(connection, BATCH_ACTION_NAME, new BatchRequest(actions, requests),
+                TransportRequestOptions.EMPTY, new BatchResponseHandler(connection, items));
+        }
+    }
+
+    private void handleBatch(BatchRequest batch, TransportChannel channel, Task task) {
+        final int size = batch.actions.size();
+        // the serialized response or the exception of each request
+        final Object[] results = new Object[size];
+        final CountDown countDown = new CountDown(size);
+        final DiscoveryNode localNode = transportService.getLocalNode();
+        final ThreadContext threadContext = threadPool.getThreadContext();
+        for (int i = 0; i < size; i++) {
+            final int slot = i;
+            final String action = batch.actions.get(i);
+            final TransportChannel itemChannel = new TransportChannel() {
+                @Override
+                public String getProfileName() {
+                    return channel.getProfileName();
+                }
+
+                @Override
+                public String getChannelType() {
+                    return channel.getChannelType();
+                }
+
+                @Override
+                public Version getVersion() {
+                    return channel.getVersion();
+                }
+
+                @Override
+                public void sendResponse(TransportResponse response) throws IOException {
+                    try (BytesStreamOutput out = new BytesStreamOutput()) {
+                        out.setVersion(channel.getVersion());
+                        response.writeTo(out);
+                        results[slot] = out.bytes();
+                    }
+                    onItemCompleted();
+                }
+
+                @Override
+                public void sendResponse(Exception exception) throws IOException {
+                    results[slot] = new RemoteTransportException(localNode.getName(), localNode.getAddress(), action, exception);
+                    onItemCompleted();
+                }
+
+                private void onItemCompleted() throws IOException {
+                    if (countDown.countDown()) {
+                        channel.sendResponse(new BatchResponse(results));
+                    }
+                }
+            };
+            // each request is processed in a copy of the context of the batch
+            try (ThreadContext.StoredContext ignore = threadContext.newStoredContext(false)) {
+                handleItem(batch, i, itemChannel);
+            } catch (Exception e) {
+                TransportChannel.sendErrorResponse(itemChannel, action, batch, e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handleItem(BatchRequest batch, int index, TransportChannel channel) throws IOException {
+        final String action = batch.actions.get(index);
+        final RequestHandlerRegistry<TransportRequest> reg =
+            (RequestHandlerRegistry<TransportRequest>) transportService.getRequestHandler(action);
+        if (reg == null) {
+            throw new ActionNotFoundTransportException(action);
+        }
+        final TransportRequest request;
+        try (StreamInput in = batch.streamInput(index)) {
+            request = reg.newRequest(in);
+        }
+        request.remoteAddress(batch.remoteAddress());
+        final String executor = reg.getExecutor();
+        if (ThreadPool.Names.SAME.equals(executor)) {
+            reg.processMessageReceived(request, channel);
+        } else {
+            threadPool.executor(executor).execute(new AbstractRunnable() {
+                @Override
+                protected void doRun() throws Exception {
+                    reg.processMessageReceived(request, channel);
+                }
+
+                @Override
+                public boolean isForceExecution() {
+                    return reg.isForceExecution();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    TransportChannel.sendErrorResponse(channel, action, request, e);
+                }
+
+                @Override
+                public String toString() {
+                    return "processing of batched [" + action + "]: " + request;
+                }
+            });
+        }
+    }
+
+    private final class BatchResponseHandler implements TransportResponseHandler<BatchResponse> {
+        private final Transport.Connection connection;
+        private final List<Item<?>> items;
+
+        BatchResponseHandler(Transport.Connection connection, List<Item<?>> items) {
+            this.connection = connection;
+            this.items = items;
+        }
+
+        @Override
+        public BatchResponse read(StreamInput in) throws IOException {
+            return new BatchResponse(in, items);
+        }
+
+        @Override
+        public void handleResponse(BatchResponse response) {
+            for (int i = 0; i < items.size(); i++) {
+                items.get(i).complete(response.results[i]);
+            }
+        }
+
+        @Override
+        public void handleException(TransportException exp) {
+            if (ExceptionsHelper.unwrapCause(exp) instanceof ActionNotFoundTransportException) {
+                // the node doesn't support batches, send the requests on their own
+                nodesWithoutBatching.add(connection.getNode().getEphemeralId());
+                for (Item<?> item : items) {
+                    item.resend(connection);
+                }
+            } else {
+                for (Item<?> item : items) {
+                    item.complete(exp);
+                }
+            }
+        }
+
+        @Override
+        public String executor() {
+            return ThreadPool.Names.SAME;
+        }
+
+        @Override
+        public String toString() {
+            return "batch of " + items.size() + " requests to [" + connection.getNode() + "]";
+        }
+    }
+
+    private final class Item<T extends TransportResponse> {
+        private final String action;
+        private final TransportRequest request;
+        private final BytesReference bytes;
+        private final TransportResponseHandler<T> handler;
+        private final Supplier<ThreadContext.StoredContext> context;
+
+        Item(String action, TransportRequest request, BytesReference bytes, TransportResponseHandler<T> handler,
+             Supplier<ThreadContext.StoredContext> context) {
+            this.action = action;
+            this.request = request;
+            this.bytes = bytes;
+            this.handler = handler;
+            this.context = context;
+        }
+
+        Object read(StreamInput in, BytesReference response) {
+            try (StreamInput itemIn = wrap(response.streamInput(), in.getVersion(), in.namedWriteableRegistry())) {
+                return handler.read(itemIn);
+            } catch (Exception e) {
+                return new TransportSerializationException("Failed to deserialize response from handler [" + handler + "]", e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object result) {
+            threadPool.executor(handler.executor()).execute(new AbstractRunnable() {
+                @Override
+                protected void doRun() {
+                    try (ThreadContext.StoredContext ignore = context.get()) {
+                        if (result instanceof TransportException) {
+                            handler.handleException((TransportException) result);
+                        } else if (result instanceof Exception) {
+                            Exception e = (Exception) result;
+                            handler.handleException(new RemoteTransportException(e.getMessage(), e));
+                        } else {
+                            handler.handleResponse((T) result);
+                        }
+                    }
+                }
+
+                @Override
+                public boolean isForceExecution() {
+                    // the handler must be notified even if its executor is busy
+                    return true;
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    logger.warn(() -> new ParameterizedMessage("failed to notify response handler of batched [{}]", action), e);
+                }
+            });
+        }
+
+        void resend(Transport.Connection connection) {
+            try (ThreadContext.StoredContext ignore = context.get()) {
+                transportService.sendRequest(connection, action, request, TransportRequestOptions.EMPTY, handler);
+            }
+        }
+    }
+
+    private static StreamInput wrap(StreamInput in, Version version, NamedWriteableRegistry registry) {
+        final StreamInput wrapped = registry == null ? in : new NamedWriteableAwareStreamInput(in, registry);
+        wrapped.setVersion(version);
+        return wrapped;
+    }
+
+    private static final class PendingBatch {
+        private final BatchKey key;
+        private final Supplier<ThreadContext.StoredContext> context;
+        private final List<Item<?>> items = new ArrayList<>();
+
+        PendingBatch(BatchKey key, Supplier<ThreadContext.StoredContext> context) {
+            this.key = key;
+            this.context = context;
+        }
+    }
+
+    private static final class BatchKey {
+        private final Transport.Connection connection;
+        private final Map<String, String> headers;
+
+        BatchKey(Transport.Connection connection, Map<String, String> headers) {
+            this.connection = connection;
+            this.headers = headers;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BatchKey that = (BatchKey) o;
+            return connection == that.connection && headers.equals(that.headers);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(connection), headers);
+        }
+    }
+
+    static final class BatchRequest extends TransportRequest {
+        private final List<String> actions;
+        private final List<BytesReference> requests;
+        private final Version version;
+        private final NamedWriteableRegistry registry;
+
+        BatchRequest(List<String> actions, List<BytesReference> requests) {
+            assert actions.size() == requests.size();
+            this.actions = actions;
+            this.requests = requests;
+            this.version = Version.CURRENT;
+            this.registry = null;
+        }
+
+        BatchRequest(StreamInput in) throws IOException {
+            super(in);
+            final int size = in.readVInt();
+            actions = new ArrayList<>(size);
+            requests = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                actions.add(in.readString());
+                requests.add(in.readBytesReference());
+            }
+            version = in.getVersion();
+            registry = in.namedWriteableRegistry();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeVInt(actions.size());
+            for (int i = 0; i < actions.size(); i++) {
+                out.writeString(actions.get(i));
+                out.writeBytesReference(requests.get(i));
+            }
+        }
+
+        StreamInput streamInput(int index) throws IOException {
+            return wrap(requests.get(index).streamInput(), version, registry);
+        }
+
+        @Override
+        public String toString() {
+            return "batch of " + actions.size() + " requests";
+        }
+    }
+
+    /**
+     * The results of a {@link BatchRequest}, in the order of its requests. On the node that processed the batch each result is either
+     * a serialized response or an exception. On the node that sent the batch each result is either a response or an exception.
+     */
+    static final class BatchResponse extends TransportResponse {
+        private final Object[] results;
+
+        BatchResponse(Object[] results) {
+            this.results = results;
+        }
+
+        BatchResponse(StreamInput in, List<Item<?>> items) throws IOException {
+            super(in);
+            final int size = in.readVInt();
+            if (size != items.size()) {
+                throw new IllegalStateException("expected [" + items.size() + "] batched responses but got [" + size + "]");
+            }
+            results = new Object[size];
+            for (int i = 0; i < size; i++) {
+                if (in.readBoolean()) {
+                    results[i] = items.get(i).read(in, in.readBytesReference());
+                } else {
+                    results[i] = in.readException();
+                }
+            }
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(results.length);
+            for (Object result : results) {
+                if (result instanceof Exception) {
+                    out.writeBoolean(false);
+                    out.writeException((Exception) result);
+                } else {
+                    out.writeBoolean(true);
+                    out.writeBytesReference((BytesReference) result);
+                }
+            }
+        }
+    }
+}
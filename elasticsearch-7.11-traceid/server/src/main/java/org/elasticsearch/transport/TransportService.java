@@ -100,6 +100,7 @@ public class TransportService extends AbstractLifecycleComponent
     private final boolean remoteClusterClient;
     private final Transport.ResponseHandlers responseHandlers;
     private final TransportInterceptor interceptor;
+    private final TransportRequestBatcher requestBatcher;
 
     // An LRU (don't really care about concurrency here) that holds the latest timed out requests so if they
     // do show up, we can print more descriptive information about them
@@ -208,6 +209,7 @@ public class TransportService extends AbstractLifecycleComponent
             HandshakeRequest::new,
             (request, channel, task) -> channel.sendResponse(
                 new HandshakeResponse(localNode.getVersion(), Build.CURRENT.hash(), localNode, clusterName)));
+        requestBatcher = new TransportRequestBatcher(settings, this, threadPool, clusterSettings);
 
         if (PERMIT_HANDSHAKES_FROM_INCOMPATIBLE_BUILDS) {
             logger.warn("transport handshakes from incompatible builds are unsafely permitted on this node; remove system property [" +
@@ -275,6 +277,8 @@ public class TransportService extends AbstractLifecycleComponent
 
     @Override
     protected void doStop() {
+        // send the pending batches so that their requests fail like any other request that is sent while stopping
+        requestBatcher.flushAll();
         try {
             IOUtils.close(connectionManager, remoteClusterService, transport::stop);
         } catch (IOException e) {
@@ -823,6 +827,9 @@ public class TransportService extends AbstractLifecycleComponent
             throw new IllegalStateException("can't send request to a null connection");
         }
         DiscoveryNode node = connection.getNode();
+        if (isLocalNode(node) == false && requestBatcher.maybeBatch(connection, action, request, options, handler)) {
+            return;
+        }
 
         Supplier<ThreadContext.StoredContext> storedContextSupplier = threadPool.getThreadContext().newRestorableContext(true);
         ContextRestoreResponseHandler<T> responseHandler = new ContextRestoreResponseHandler<>(storedContextSupplier, handler);
@@ -1102,6 +1109,15 @@ public class TransportService extends AbstractLifecycleComponent
         return transport.getRequestHandlers().getHandler(action);
     }
 
+    /**
+     * Allows the requests of the given action to be batched with other requests to the same node when
+     * {@link TransportSettings#REQUEST_BATCHING_WINDOW} is set. The action should be a small, frequent, per shard action without a
+     * timeout whose handler is registered on all the nodes of the cluster.
+     */
+    public void enableRequestBatching(String action) {
+        requestBatcher.enableBatching(action);
+    }
+
     private void checkForTimeout(long requestId) {
         // lets see if its in the timeout holder, but sync on mutex to make sure any ongoing timeout handling has finished
         final DiscoveryNode sourceNode;
@@ -55,6 +55,13 @@ public final class TransportSettings {
         boolSetting("transport.tcp.compress", false, Setting.Property.NodeScope, Setting.Property.Deprecated);
     public static final Setting<Boolean> TRANSPORT_COMPRESS =
         boolSetting("transport.compress", OLD_TRANSPORT_COMPRESS, Setting.Property.NodeScope);
+    public static final Setting<Compression.Scheme> TRANSPORT_COMPRESSION_SCHEME =
+        new Setting<>("transport.compression_scheme", Compression.Scheme.DEFLATE.toString(), Compression.Scheme::parse,
+            Setting.Property.NodeScope);
+    // blocks of lz4 compressed messages that are smaller than this are sent as they are, so small messages are not compressed
+    public static final Setting<ByteSizeValue> TRANSPORT_COMPRESSION_MIN_SIZE =
+        Setting.byteSizeSetting("transport.compression_min_size", new ByteSizeValue(0), new ByteSizeValue(0),
+            new ByteSizeValue(Lz4TransportOutputStream.BLOCK_SIZE), Setting.Property.NodeScope);
     // the scheduled internal ping interval setting, defaults to disabled (-1)
     public static final Setting<TimeValue> PING_SCHEDULE =
         timeSetting("transport.ping_schedule", TimeValue.timeValueSeconds(-1), Setting.Property.NodeScope);
@@ -162,6 +169,13 @@ public final class TransportSettings {
             Setting.positiveTimeSetting("transport.slow_operation_logging_threshold", TimeValue.timeValueSeconds(5),
                     Setting.Property.Dynamic, Setting.Property.NodeScope);
 
+    // how long requests of the actions that support batching wait for other requests to the same node, zero disables batching
+    public static final Setting<TimeValue> REQUEST_BATCHING_WINDOW =
+        timeSetting("transport.request_batching.window", TimeValue.ZERO, TimeValue.ZERO,
+            Setting.Property.Dynamic, Setting.Property.NodeScope);
+    public static final Setting<Integer> REQUEST_BATCHING_MAX_SIZE =
+        intSetting("transport.request_batching.max_size", 128, 1, Setting.Property.Dynamic, Setting.Property.NodeScope);
+
 
     private TransportSettings() {
     }
@@ -44,6 +44,7 @@ import org.elasticsearch.search.sort.MinAndMax;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.transport.ActionNotFoundTransportException;
 import org.elasticsearch.transport.Transport;
 
 import java.io.IOException;
@@ -56,6 +57,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -604,6 +606,117 @@ public class CanMatchPreFilterSearchPhaseTests extends ESTestCase {
         );
     }
 
+    public void testBatchByNode() throws InterruptedException {
+        final TransportSearchAction.SearchTimeProvider timeProvider = new TransportSearchAction.SearchTimeProvider(0, System.nanoTime(),
+            System::nanoTime);
+        DiscoveryNode node = new DiscoveryNode("node_1", buildNewFakeTransportAddress(), Version.CURRENT);
+        final int numShards = randomIntBetween(2, 20);
+        final List<CanMatchNodeRequest> nodeRequests = new CopyOnWriteArrayList<>();
+
+        SearchTransportService searchTransportService = new SearchTransportService(null, null, null) {
+            @Override
+            public void sendCanMatch(Transport.Connection connection, ShardSearchRequest request, SearchTask task,
+                                     ActionListener<SearchService.CanMatchResponse> listener) {
+                throw new AssertionError("shard requests should be sent as a single node request");
+            }
+
+            @Override
+            public void sendCanMatch(Transport.Connection connection, CanMatchNodeRequest request, SearchTask task,
+                                     ActionListener<CanMatchNodeResponse> listener) {
+                nodeRequests.add(request);
+                List<CanMatchNodeResponse.ResponseOrFailure> responses = new ArrayList<>();
+                for (ShardSearchRequest shardRequest : request.getShardRequests()) {
+                    int shardId = shardRequest.shardId().id();
+                    responses.add(shardId == 1 ? new CanMatchNodeResponse.ResponseOrFailure(new IllegalStateException("boom")) :
+                        new CanMatchNodeResponse.ResponseOrFailure(new SearchService.CanMatchResponse(shardId % 2 == 0, null)));
+                }
+                new Thread(() -> listener.onResponse(new CanMatchNodeResponse(responses))).start();
+            }
+        };
+
+        AtomicReference<GroupShardsIterator<SearchShardIterator>> result = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        GroupShardsIterator<SearchShardIterator> shardsIter = getShardsIter("idx",
+            new OriginalIndices(new String[]{"idx"}, SearchRequest.DEFAULT_INDICES_OPTIONS), numShards, false, node, null);
+        final SearchRequest searchRequest = new SearchRequest();
+        searchRequest.allowPartialSearchResults(true);
+
+        CanMatchPreFilterSearchPhase canMatchPhase = new CanMatchPreFilterSearchPhase(logger,
+            searchTransportService,
+            (clusterAlias, nodeId) -> new SearchAsyncActionTests.MockConnection(node),
+            Collections.singletonMap("_na_", new AliasFilter(null, Strings.EMPTY_ARRAY)),
+            Collections.emptyMap(), EsExecutors.newDirectExecutorService(),
+            searchRequest, null, shardsIter, timeProvider, ClusterState.EMPTY_STATE, null,
+            (iter) -> new SearchPhase("test") {
+                @Override
+                public void run() {
+                    result.set(iter);
+                    latch.countDown();
+                }}, SearchResponse.Clusters.EMPTY, EMPTY_CONTEXT_PROVIDER, true);
+
+        canMatchPhase.start();
+        latch.await();
+
+        assertThat(nodeRequests.size(), equalTo(1));
+        assertThat(nodeRequests.get(0).getShardRequests().size(), equalTo(numShards));
+        for (SearchShardIterator i : result.get()) {
+            // the failed shard is still queried so that its failure is reported
+            boolean canMatch = i.shardId().id() % 2 == 0 || i.shardId().id() == 1;
+            assertEquals(canMatch, i.skip() == false);
+        }
+    }
+
+    public void testBatchByNodeFallsBackToShardRequests() throws InterruptedException {
+        final TransportSearchAction.SearchTimeProvider timeProvider = new TransportSearchAction.SearchTimeProvider(0, System.nanoTime(),
+            System::nanoTime);
+        DiscoveryNode node = new DiscoveryNode("node_1", buildNewFakeTransportAddress(), Version.CURRENT);
+        final int numShards = randomIntBetween(2, 20);
+        final Set<Integer> shardRequests = ConcurrentHashMap.newKeySet();
+
+        SearchTransportService searchTransportService = new SearchTransportService(null, null, null) {
+            @Override
+            public void sendCanMatch(Transport.Connection connection, ShardSearchRequest request, SearchTask task,
+                                     ActionListener<SearchService.CanMatchResponse> listener) {
+                assertTrue(shardRequests.add(request.shardId().id()));
+                new Thread(() -> listener.onResponse(new SearchService.CanMatchResponse(request.shardId().id() == 0, null))).start();
+            }
+
+            @Override
+            public void sendCanMatch(Transport.Connection connection, CanMatchNodeRequest request, SearchTask task,
+                                     ActionListener<CanMatchNodeResponse> listener) {
+                listener.onFailure(new ActionNotFoundTransportException(SearchTransportService.QUERY_CAN_MATCH_NODE_NAME));
+            }
+        };
+
+        AtomicReference<GroupShardsIterator<SearchShardIterator>> result = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        GroupShardsIterator<SearchShardIterator> shardsIter = getShardsIter("idx",
+            new OriginalIndices(new String[]{"idx"}, SearchRequest.DEFAULT_INDICES_OPTIONS), numShards, false, node, null);
+        final SearchRequest searchRequest = new SearchRequest();
+        searchRequest.allowPartialSearchResults(true);
+
+        CanMatchPreFilterSearchPhase canMatchPhase = new CanMatchPreFilterSearchPhase(logger,
+            searchTransportService,
+            (clusterAlias, nodeId) -> new SearchAsyncActionTests.MockConnection(node),
+            Collections.singletonMap("_na_", new AliasFilter(null, Strings.EMPTY_ARRAY)),
+            Collections.emptyMap(), EsExecutors.newDirectExecutorService(),
+            searchRequest, null, shardsIter, timeProvider, ClusterState.EMPTY_STATE, null,
+            (iter) -> new SearchPhase("test") {
+                @Override
+                public void run() {
+                    result.set(iter);
+                    latch.countDown();
+                }}, SearchResponse.Clusters.EMPTY, EMPTY_CONTEXT_PROVIDER, true);
+
+        canMatchPhase.start();
+        latch.await();
+
+        assertThat(shardRequests.size(), equalTo(numShards));
+        for (SearchShardIterator i : result.get()) {
+            assertEquals(i.shardId().id() == 0, i.skip() == false);
+        }
+    }
+
     private void assertAllShardsAreQueried(List<SearchShardIterator> updatedSearchShardIterators, List<ShardSearchRequest> requests) {
         int skippedShards = (int) updatedSearchShardIterators.stream()
             .filter(SearchShardIterator::skip)
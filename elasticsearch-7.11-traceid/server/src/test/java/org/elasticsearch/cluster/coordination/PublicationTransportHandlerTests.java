@@ -15,12 +15,17 @@ import org.elasticsearch.cluster.Diff;
 import org.elasticsearch.cluster.coordination.CoordinationMetadata.VotingConfiguration;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.CompressorFactory;
+import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
+import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.test.transport.CapturingTransport;
+import org.elasticsearch.transport.Compression;
 import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
@@ -76,4 +81,33 @@ public class PublicationTransportHandlerTests extends ESTestCase {
         assertThat(e.getCause(), instanceOf(IOException.class));
         assertThat(e.getCause().getMessage(), containsString("Simulated failure of diff serialization"));
     }
+
+    public void testSerializationRoundTrip() throws IOException {
+        final DiscoveryNode localNode = new DiscoveryNode("localNode", buildNewFakeTransportAddress(), Version.CURRENT);
+        final ClusterState clusterState = CoordinationStateTests.clusterState(2L, 1L,
+            DiscoveryNodes.builder().add(localNode).localNodeId(localNode.getId()).build(),
+            VotingConfiguration.EMPTY_CONFIG, VotingConfiguration.EMPTY_CONFIG, 0L);
+        final Compression.Scheme scheme = randomFrom(Compression.Scheme.values());
+        final Version nodeVersion = randomFrom(Version.V_7_10_0, Version.V_7_11_2, PublicationTransportHandler.LZ4_PUBLICATION_VERSION,
+            Version.CURRENT);
+
+        final BytesReference bytes = PublicationTransportHandler.serializeFullClusterState(clusterState, nodeVersion, scheme);
+        final boolean expectLZ4 = scheme == Compression.Scheme.LZ4
+            && nodeVersion.onOrAfter(PublicationTransportHandler.LZ4_PUBLICATION_VERSION);
+        assertEquals(expectLZ4, Compression.Scheme.isLZ4(bytes));
+        if (nodeVersion.before(PublicationTransportHandler.LZ4_PUBLICATION_VERSION)) {
+            // stock nodes of the same minor, like 7.11.2, only know deflate
+            assertTrue(CompressorFactory.COMPRESSOR.isCompressed(bytes));
+        }
+
+        try (StreamInput in = new NamedWriteableAwareStreamInput(PublicationTransportHandler.uncompressedStreamInput(bytes),
+            writableRegistry())) {
+            in.setVersion(nodeVersion);
+            assertTrue(in.readBoolean());
+            final ClusterState deserialized = ClusterState.readFrom(in, localNode);
+            assertEquals(clusterState.stateUUID(), deserialized.stateUUID());
+            assertEquals(clusterState.version(), deserialized.version());
+            assertEquals(clusterState.term(), deserialized.term());
+        }
+    }
 }
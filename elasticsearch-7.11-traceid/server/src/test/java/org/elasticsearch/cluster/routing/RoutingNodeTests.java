@@ -9,18 +9,24 @@
 package org.elasticsearch.cluster.routing;
 
 import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.IndexMetadata;
 import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.routing.allocation.RoutingAllocation;
 import org.elasticsearch.common.transport.TransportAddress;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.test.ESTestCase;
 
 import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 
@@ -118,4 +124,42 @@ public class RoutingNodeTests extends ESTestCase {
         assertThat(routingNode.numberOfOwningShardsForIndex(new Index("test3", IndexMetadata.INDEX_UUID_NA_VALUE)), equalTo(0));
     }
 
+    public void testModificationCount() {
+        long modificationCount = routingNode.modificationCount();
+        ShardRouting initializingShard1 =
+            TestShardRouting.newShardRouting("test", 3, "node-1", false, ShardRoutingState.INITIALIZING);
+        routingNode.add(initializingShard1);
+        assertThat(routingNode.modificationCount(), greaterThan(modificationCount));
+
+        modificationCount = routingNode.modificationCount();
+        routingNode.update(initializingShard1, initializingShard1.moveToStarted());
+        assertThat(routingNode.modificationCount(), greaterThan(modificationCount));
+
+        modificationCount = routingNode.modificationCount();
+        routingNode.remove(unassignedShard0);
+        assertThat(routingNode.modificationCount(), greaterThan(modificationCount));
+    }
+
+    public void testMemoizeForNode() {
+        RoutingAllocation allocation = new RoutingAllocation(null, null, ClusterState.builder(new ClusterName("test")).build(),
+            null, null, 0L);
+        AtomicInteger computations = new AtomicInteger();
+        Function<RoutingNode, Integer> function = node -> {
+            computations.incrementAndGet();
+            return node.size();
+        };
+        assertThat(allocation.memoizeForNode(routingNode, "key", function), equalTo(3));
+        assertThat(allocation.memoizeForNode(routingNode, "key", function), equalTo(3));
+        assertThat(computations.get(), equalTo(1));
+
+        // different keys are memoized separately
+        assertThat(allocation.memoizeForNode(routingNode, "other_key", function), equalTo(3));
+        assertThat(computations.get(), equalTo(2));
+
+        // a change to the shards of the node invalidates the memoized values
+        routingNode.remove(unassignedShard0);
+        assertThat(allocation.memoizeForNode(routingNode, "key", function), equalTo(2));
+        assertThat(computations.get(), equalTo(3));
+    }
+
 }
@@ -27,13 +27,19 @@ import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.cluster.routing.ShardRoutingState;
 import org.elasticsearch.cluster.routing.allocation.allocator.BalancedShardsAllocator;
 import org.elasticsearch.cluster.routing.allocation.allocator.ShardsAllocator;
+import org.elasticsearch.cluster.routing.allocation.decider.AllocationDecider;
+import org.elasticsearch.cluster.routing.allocation.decider.AllocationDeciders;
 import org.elasticsearch.cluster.routing.allocation.decider.ClusterRebalanceAllocationDecider;
+import org.elasticsearch.cluster.routing.allocation.decider.Decision;
+import org.elasticsearch.cluster.routing.allocation.decider.SameShardAllocationDecider;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.snapshots.EmptySnapshotsInfoService;
 import org.elasticsearch.test.gateway.TestGatewayAllocator;
 import org.hamcrest.Matchers;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.elasticsearch.cluster.routing.ShardRoutingState.STARTED;
@@ -400,4 +406,43 @@ public class BalanceConfigurationTests extends ESAllocationTestCase {
         }
     }
 
+    public void testBalancedIndicesSkipAllocationDeciders() {
+        final AtomicInteger canAllocateIndexCalls = new AtomicInteger();
+        final Settings settings = Settings.builder().put(
+            ClusterRebalanceAllocationDecider.CLUSTER_ROUTING_ALLOCATION_ALLOW_REBALANCE_SETTING.getKey(),
+            ClusterRebalanceAllocationDecider.ClusterRebalanceType.ALWAYS.toString()).build();
+        final AllocationDecider countingDecider = new AllocationDecider() {
+            @Override
+            public Decision canAllocate(IndexMetadata indexMetadata, RoutingNode node, RoutingAllocation allocation) {
+                canAllocateIndexCalls.incrementAndGet();
+                return super.canAllocate(indexMetadata, node, allocation);
+            }
+        };
+        final AllocationService strategy = new AllocationService(new AllocationDeciders(Arrays.asList(
+            new SameShardAllocationDecider(settings, new ClusterSettings(settings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS)),
+            countingDecider)), new TestGatewayAllocator(), new BalancedShardsAllocator(settings), EmptyClusterInfoService.INSTANCE,
+            EmptySnapshotsInfoService.INSTANCE);
+
+        Metadata metadata = Metadata.builder()
+            .put(IndexMetadata.builder("test").settings(settings(Version.CURRENT)).numberOfShards(4).numberOfReplicas(0))
+            .build();
+        ClusterState clusterState = ClusterState.builder(org.elasticsearch.cluster.ClusterName.CLUSTER_NAME_SETTING
+            .getDefault(Settings.EMPTY)).nodes(DiscoveryNodes.builder().add(newNode("node0")).add(newNode("node1")))
+            .metadata(metadata).routingTable(RoutingTable.builder().addAsNew(metadata.index("test")).build()).build();
+        clusterState = strategy.reroute(clusterState, "reroute");
+        clusterState = startInitializingShardsAndReroute(strategy, clusterState);
+        assertThat(clusterState.getRoutingNodes().node("node0").numberOfShardsWithState(STARTED), Matchers.equalTo(2));
+        assertThat(clusterState.getRoutingNodes().node("node1").numberOfShardsWithState(STARTED), Matchers.equalTo(2));
+
+        canAllocateIndexCalls.set(0);
+        clusterState = strategy.reroute(clusterState, "reroute");
+        assertThat(canAllocateIndexCalls.get(), Matchers.equalTo(0));
+
+        clusterState = ClusterState.builder(clusterState)
+            .nodes(DiscoveryNodes.builder(clusterState.nodes()).add(newNode("node2")).add(newNode("node3"))).build();
+        clusterState = strategy.reroute(clusterState, "reroute");
+        assertThat(canAllocateIndexCalls.get(), Matchers.greaterThan(0));
+        assertThat(clusterState.getRoutingNodes().shardsWithState(ShardRoutingState.RELOCATING).size(), Matchers.greaterThan(0));
+    }
+
 }
@@ -38,6 +38,7 @@ import java.util.stream.Collectors;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class CacheTests extends ESTestCase {
     private int numberOfEntries;
@@ -932,4 +933,119 @@ public class CacheTests extends ESTestCase {
             assertEquals(RemovalNotification.RemovalReason.INVALIDATED, removalNotifications.get(i).getRemovalReason());
         }
     }
+
+    // with the W-TinyLFU policy, a scan of keys that are used once doesn't evict keys that are used repeatedly
+    public void testWindowTinyLfuResistsScans() {
+        int maximumWeight = 100;
+        int numberOfHotKeys = 50;
+        Cache<Integer, String> cache =
+            CacheBuilder.<Integer, String>builder()
+                .setMaximumWeight(maximumWeight)
+                .setEvictionPolicy(Cache.EvictionPolicy.W_TINY_LFU)
+                .build();
+        for (int i = 0; i < numberOfHotKeys; i++) {
+            cache.put(i, Integer.toString(i));
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < numberOfHotKeys; i++) {
+                assertEquals(Integer.toString(i), cache.get(i));
+            }
+        }
+        for (int i = numberOfHotKeys; i < numberOfHotKeys + numberOfEntries; i++) {
+            cache.put(i, Integer.toString(i));
+        }
+        cache.refresh();
+        assertEquals(maximumWeight, cache.count());
+        for (int i = 0; i < numberOfHotKeys; i++) {
+            assertEquals(Integer.toString(i), cache.get(i));
+        }
+    }
+
+    public void testWindowTinyLfuEvictions() {
+        int maximumWeight = randomIntBetween(1, 200);
+        Set<Integer> keys = new HashSet<>();
+        Cache<Integer, String> cache =
+            CacheBuilder.<Integer, String>builder()
+                .setMaximumWeight(maximumWeight)
+                .setEvictionPolicy(Cache.EvictionPolicy.W_TINY_LFU)
+                .removalListener(notification -> {
+                    if (notification.getRemovalReason() != RemovalNotification.RemovalReason.REPLACED) {
+                        assertTrue(keys.remove(notification.getKey()));
+                    }
+                })
+                .build();
+        for (int i = 0; i < numberOfEntries; i++) {
+            int key = randomIntBetween(0, 2 * maximumWeight);
+            if (randomBoolean()) {
+                cache.put(key, Integer.toString(key));
+                keys.add(key);
+            } else if (randomBoolean()) {
+                cache.get(key);
+            } else {
+                cache.invalidate(key);
+            }
+        }
+        cache.refresh();
+        assertThat(cache.count(), lessThanOrEqualTo(maximumWeight));
+        assertEquals(keys.size(), cache.count());
+        Set<Integer> cachedKeys = new HashSet<>();
+        for (Integer key : cache.keys()) {
+            cachedKeys.add(key);
+        }
+        assertEquals(keys, cachedKeys);
+
+        cache.invalidateAll();
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.weight());
+        assertThat(keys, empty());
+    }
+
+    public void testWindowTinyLfuTorture() throws BrokenBarrierException, InterruptedException {
+        int numberOfThreads = randomIntBetween(2, 32);
+        final Cache<Integer, String> cache =
+                CacheBuilder.<Integer, String>builder()
+                        .setMaximumWeight(1000)
+                        .weigher((k, v) -> 2)
+                        .setEvictionPolicy(Cache.EvictionPolicy.W_TINY_LFU)
+                        .build();
+
+        CyclicBarrier barrier = new CyclicBarrier(1 + numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            final Random random = new Random(random().nextLong());
+            Thread thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (int j = 0; j < numberOfEntries; j++) {
+                        Integer key = random.nextInt(numberOfEntries);
+                        if (random.nextBoolean()) {
+                            cache.put(key, Integer.toString(key));
+                        } else {
+                            String value = cache.get(key);
+                            assertTrue(value == null || value.equals(Integer.toString(key)));
+                        }
+                    }
+                    barrier.await();
+                } catch (BrokenBarrierException | InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            thread.start();
+        }
+
+        // wait for all threads to be ready
+        barrier.await();
+        // wait for all threads to finish
+        barrier.await();
+
+        cache.refresh();
+        assertThat(cache.weight(), lessThanOrEqualTo(1000L));
+        List<Integer> keys = new ArrayList<>();
+        for (Integer key : cache.keys()) {
+            keys.add(key);
+        }
+        assertEquals(cache.count(), keys.size());
+        for (Integer key : keys) {
+            assertEquals(Integer.toString(key), cache.get(key));
+        }
+    }
 }
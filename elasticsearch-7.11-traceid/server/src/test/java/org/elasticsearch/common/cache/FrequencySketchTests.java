@@ -0,0 +1,56 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.common.cache;
+
+import org.elasticsearch.test.ESTestCase;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class FrequencySketchTests extends ESTestCase {
+
+    public void testIncrement() {
+        FrequencySketch sketch = new FrequencySketch(randomIntBetween(16, 1024));
+        int key = randomInt();
+        assertEquals(0, sketch.frequency(key));
+        int count = randomIntBetween(1, 15);
+        for (int i = 0; i < count; i++) {
+            sketch.increment(key);
+        }
+        // counts are never underestimated
+        assertThat(sketch.frequency(key), greaterThanOrEqualTo(count));
+    }
+
+    public void testSaturation() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        int key = randomInt();
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(key);
+        }
+        assertEquals(15, sketch.frequency(key));
+    }
+
+    public void testAging() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        int key = randomInt();
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(key);
+        }
+        assertEquals(15, sketch.frequency(key));
+        // enough other increments to halve all counters at least once
+        for (int i = 0; i < 10 * 64 * 2; i++) {
+            sketch.increment(key + 1 + i);
+        }
+        assertThat(sketch.frequency(key), lessThan(15));
+    }
+
+    public void testInvalidSize() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> new FrequencySketch(-1));
+        assertEquals("maximum size must not be negative but was [-1]", e.getMessage());
+    }
+}
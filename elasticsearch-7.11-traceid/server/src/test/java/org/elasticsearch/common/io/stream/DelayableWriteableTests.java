@@ -10,10 +10,13 @@ package org.elasticsearch.common.io.stream;
 
 import static java.util.Collections.singletonList;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.ReleasableBytesReference;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.test.VersionUtils;
 
@@ -158,6 +161,30 @@ public class DelayableWriteableTests extends ESTestCase {
         assertSame(d, d.asSerialized(Example::new, writableRegistry()));
     }
 
+    public void testDelayedRetainsReleasableBuffer() throws IOException {
+        Example e = new Example(randomAlphaOfLength(5));
+        AtomicBoolean released = new AtomicBoolean();
+        ReleasableBytesReference bytes;
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            DelayableWriteable.referencing(e).writeTo(out);
+            bytes = new ReleasableBytesReference(out.bytes(), () -> assertTrue(released.compareAndSet(false, true)));
+        }
+        DelayableWriteable<Example> delayed;
+        try (StreamInput in = new NamedWriteableAwareStreamInput(bytes.streamInput(), writableRegistry())) {
+            delayed = DelayableWriteable.delayed(Example::new, in);
+        }
+        assertTrue(delayed.isSerialized());
+        // the slice keeps the whole message, so that is what it accounts for
+        assertThat(delayed.getRetainedSizeInBytes(), equalTo((long) bytes.length()));
+        assertThat(delayed.getSerializedSize(), lessThan(delayed.getRetainedSizeInBytes()));
+        // the delayed writeable holds on to the buffer until it is closed
+        bytes.close();
+        assertFalse(released.get());
+        assertThat(delayed.expand(), equalTo(e));
+        delayed.close();
+        assertTrue(released.get());
+    }
+
     private <T extends Writeable> void roundTripTestCase(DelayableWriteable<T> original, Writeable.Reader<T> reader) throws IOException {
         DelayableWriteable<T> roundTripped = roundTrip(original, reader, Version.CURRENT);
         assertTrue(roundTripped.isSerialized());
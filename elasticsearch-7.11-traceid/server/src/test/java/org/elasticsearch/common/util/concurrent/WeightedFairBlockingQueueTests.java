@@ -0,0 +1,200 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.common.util.concurrent;
+
+import org.elasticsearch.common.collect.Map;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+public class WeightedFairBlockingQueueTests extends ESTestCase {
+
+    private static final String HEADER = "X-Search-Group";
+
+    private final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+
+    public void testInterleavesGroupsByWeight() {
+        final WeightedFairBlockingQueue queue = new WeightedFairBlockingQueue(threadContext, HEADER, Map.of("a", 3));
+        for (int i = 0; i < 8; i++) {
+            offer(queue, "a", new Task("a" + i));
+        }
+        for (int i = 0; i < 8; i++) {
+            offer(queue, "b", new Task("b" + i));
+        }
+        assertThat(queue.size(), equalTo(16));
+
+        final List<String> polled = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            polled.add(((Task) queue.poll()).name);
+        }
+        // tasks cost the same, so group a gets three times as many as group b, in the order they were submitted
+        assertThat(polled, containsInAnyOrder("a0", "a1", "a2", "a3", "a4", "a5", "b0", "b1"));
+        assertThat(polled.indexOf("a0"), lessThan(polled.indexOf("a1")));
+        assertThat(polled.indexOf("b0"), lessThan(polled.indexOf("b1")));
+        assertThat(queue.size(), equalTo(8));
+    }
+
+    public void testEstimatesCostFromShape() {
+        final WeightedFairBlockingQueue queue = new WeightedFairBlockingQueue(threadContext, HEADER, Map.of());
+        queue.onCompletion(new ShapedTask("heavy"), TimeValue.timeValueMillis(100).nanos());
+        queue.onCompletion(new ShapedTask("light"), TimeValue.timeValueMillis(1).nanos());
+        assertThat(queue.estimateCostNanos(new ShapedTask("heavy")), equalTo(TimeValue.timeValueMillis(100).nanos()));
+        assertThat(queue.estimateCostNanos(new ShapedTask("light")), equalTo(TimeValue.timeValueMillis(1).nanos()));
+
+        for (int i = 0; i < 3; i++) {
+            offer(queue, "reports", new ShapedTask("heavy"));
+        }
+        for (int i = 0; i < 3; i++) {
+            offer(queue, "interactive", new ShapedTask("light"));
+        }
+        final List<String> polled = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            polled.add(((ShapedTask) queue.poll()).shape());
+        }
+        // the cheap tasks don't wait for more than one expensive task
+        assertThat(polled, containsInAnyOrder("heavy", "light", "light", "light"));
+        assertThat(((ShapedTask) queue.poll()).shape(), equalTo("heavy"));
+    }
+
+    public void testEnforcesConcurrencyShare() {
+        final WeightedFairBlockingQueue queue = new WeightedFairBlockingQueue(threadContext, HEADER, Map.of());
+        queue.setMaxConcurrency(() -> 2);
+        queue.onCompletion(new ShapedTask("heavy"), TimeValue.timeValueMillis(100).nanos());
+        queue.onCompletion(new ShapedTask("light"), TimeValue.timeValueMillis(1).nanos());
+        final List<ShapedTask> heavy = Arrays.asList(new ShapedTask("heavy"), new ShapedTask("heavy"));
+        for (ShapedTask task : heavy) {
+            offer(queue, "b", task);
+        }
+        for (int i = 0; i < 3; i++) {
+            offer(queue, "a", new ShapedTask("light"));
+        }
+
+        // each group can use one of the two threads while the other one has waiting tasks
+        final List<String> polled = Arrays.asList(((ShapedTask) queue.poll()).shape(), ((ShapedTask) queue.poll()).shape());
+        assertThat(polled, containsInAnyOrder("heavy", "light"));
+        // both groups use their share, so the group that was charged less goes first
+        assertThat(((ShapedTask) queue.poll()).shape(), equalTo("light"));
+        // group a runs two tasks, so group b goes first once its task completed even though it was charged more
+        queue.onCompletion(heavy.get(0), -1);
+        assertThat(queue.poll(), equalTo(heavy.get(1)));
+        assertThat(((ShapedTask) queue.poll()).shape(), equalTo("light"));
+        assertThat(queue.poll(), nullValue());
+    }
+
+    public void testRemoveAndDrain() throws InterruptedException {
+        final WeightedFairBlockingQueue queue = new WeightedFairBlockingQueue(threadContext, HEADER, Map.of());
+        final Task first = new Task("first");
+        final Task second = new Task("second");
+        final Task third = new Task("third");
+        offer(queue, "a", first);
+        offer(queue, "b", second);
+        offer(queue, null, third);
+        assertThat(new HashSet<>(Arrays.asList(queue.toArray())), equalTo(new HashSet<>(Arrays.asList(first, second, third))));
+
+        assertTrue(queue.remove(second));
+        assertFalse(queue.remove(second));
+        assertThat(queue.size(), equalTo(2));
+
+        final List<Runnable> drained = new ArrayList<>();
+        assertThat(queue.drainTo(drained), equalTo(2));
+        assertThat(drained, containsInAnyOrder(first, third));
+        assertThat(queue.size(), equalTo(0));
+        assertThat(queue.peek(), nullValue());
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS), nullValue());
+    }
+
+    public void testFairExecutor() throws Exception {
+        final EsThreadPoolExecutor executor = EsExecutors.newAutoQueueFixedFair("test", 1, 100, 10, 1000, 1000,
+            TimeValue.timeValueSeconds(1), HEADER, Map.of(), EsExecutors.daemonThreadFactory("test"), threadContext);
+        try {
+            executor.prestartAllCoreThreads();
+            final CountDownLatch blocked = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            final List<String> executed = new CopyOnWriteArrayList<>();
+            final CountDownLatch done = new CountDownLatch(8);
+            for (String group : Arrays.asList("a", "b")) {
+                for (int i = 0; i < 4; i++) {
+                    try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+                        threadContext.putHeader(HEADER, group);
+                        executor.execute(() -> {
+                            executed.add(threadContext.getHeader(HEADER));
+                            done.countDown();
+                        });
+                    }
+                }
+            }
+            blocked.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            // the tasks of group b don't wait for all the tasks of group a that were submitted before them
+            for (int i = 0; i < executed.size(); i += 2) {
+                assertThat(executed.subList(i, i + 2), containsInAnyOrder("a", "b"));
+            }
+        } finally {
+            terminate(executor);
+        }
+    }
+
+    private void offer(WeightedFairBlockingQueue queue, String group, Runnable task) {
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            if (group != null) {
+                threadContext.putHeader(HEADER, group);
+            }
+            assertTrue(queue.offer(task));
+        }
+    }
+
+    private static class Task implements Runnable {
+        final String name;
+
+        Task(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    private static class ShapedTask implements ShapedRunnable {
+        final String shape;
+
+        ShapedTask(String shape) {
+            this.shape = shape;
+        }
+
+        @Override
+        public String shape() {
+            return shape;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
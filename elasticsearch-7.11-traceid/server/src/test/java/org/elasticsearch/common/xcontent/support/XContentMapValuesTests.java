@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -64,6 +65,9 @@ public class XContentMapValuesTests extends AbstractFilteringTestCase {
         assertEquals("Filtered map must be equal to the expected map",
                 toMap(expected, xContentType, humanReadable),
                 XContentMapValues.filter(toMap(actual, xContentType, humanReadable), sourceIncludes, sourceExcludes));
+        assertEquals("Streaming filtered map must be equal to the expected map",
+                toMap(expected, xContentType, humanReadable),
+                filterStreaming(toMap(actual, xContentType, humanReadable), xContentType, sourceIncludes, sourceExcludes));
     }
 
     @SuppressWarnings({"unchecked"})
@@ -673,4 +677,71 @@ public class XContentMapValuesTests extends AbstractFilteringTestCase {
         ToXContentObject toXContent = (builder, params) -> test.apply(builder);
         return convertToMap(toXContent(toXContent, xContentType, humanReadable), true, xContentType).v2();
     }
+
+    public void testFilterStreamingKeepsOrder() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("c", 1);
+        map.put("b", Collections.singletonMap("skipped", Arrays.asList(1, 2, 3)));
+        map.put("a", Arrays.asList(Collections.singletonMap("d", 2), Collections.singletonMap("e", 3)));
+        map.put("d", 4);
+        Map<String, Object> filtered = filterStreaming(map, XContentType.JSON, new String[] {"c", "a.d", "d"}, Strings.EMPTY_ARRAY);
+        assertThat(filtered.keySet(), contains("c", "a", "d"));
+        assertEquals(Collections.singletonList(Collections.singletonMap("d", 2)), filtered.get("a"));
+    }
+
+    public void testFilterStreamingMatchesFilter() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            XContentType xContentType = randomFrom(XContentType.values());
+            // round trip the document so that both filters see the same values
+            Map<String, Object> map = convertToMap(BytesReference.bytes(XContentFactory.contentBuilder(xContentType)
+                .map(randomDocument(3))), false, xContentType).v2();
+            String[] includes = randomBoolean() ? Strings.EMPTY_ARRAY : randomPatterns();
+            String[] excludes = randomBoolean() ? Strings.EMPTY_ARRAY : randomPatterns();
+            assertEquals("includes " + Arrays.toString(includes) + ", excludes " + Arrays.toString(excludes) + ", source " + map,
+                XContentMapValues.filter(map, includes, excludes), filterStreaming(map, xContentType, includes, excludes));
+        }
+    }
+
+    private static String[] randomPatterns() {
+        String[] patterns = new String[randomIntBetween(1, 3)];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = randomFrom("a", "b", "a.b", "b.c", "*.b", "a.*", "*", "c*", "a.b.c", "b.a.b");
+        }
+        return patterns;
+    }
+
+    private static Map<String, Object> randomDocument(int depth) {
+        Map<String, Object> document = new HashMap<>();
+        int numFields = randomIntBetween(0, 4);
+        for (int i = 0; i < numFields; i++) {
+            document.put(randomFrom("a", "b", "c", "a.b", "cd"), randomValue(depth));
+        }
+        return document;
+    }
+
+    private static Object randomValue(int depth) {
+        switch (depth == 0 ? 0 : randomIntBetween(0, 2)) {
+            case 0:
+                return randomBoolean() ? randomAlphaOfLength(3) : randomInt(10);
+            case 1:
+                return randomDocument(depth - 1);
+            default:
+                List<Object> list = new ArrayList<>();
+                int size = randomIntBetween(0, 3);
+                for (int i = 0; i < size; i++) {
+                    list.add(randomValue(depth - 1));
+                }
+                return list;
+        }
+    }
+
+    private Map<String, Object> filterStreaming(Map<String, Object> map, XContentType xContentType,
+                                                String[] includes, String[] excludes) throws IOException {
+        BytesReference source = BytesReference.bytes(XContentFactory.contentBuilder(xContentType).map(map));
+        XContentBuilder builder = XContentFactory.contentBuilder(xContentType);
+        try (XContentParser parser = createParser(xContentType.xContent(), source)) {
+            XContentMapValues.filterStreaming(includes, excludes).accept(parser, builder);
+        }
+        return convertToMap(BytesReference.bytes(builder), true, xContentType).v2();
+    }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.index.codec.rollup;
+package org.elasticsearch.index.codec.rollup;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.common.CheckedBiConsumer;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.search.aggregations.AdaptingAggregator;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregatorTestCase;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.bucket.histogram.InternalDateHistogram;
+import org.elasticsearch.search.aggregations.metrics.InternalMax;
+import org.elasticsearch.search.aggregations.metrics.InternalMin;
+import org.elasticsearch.search.aggregations.metrics.InternalSum;
+import org.elasticsearch.search.aggregations.metrics.InternalValueCount;
+import org.elasticsearch.search.aggregations.metrics.MaxAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.MinAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.SumAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.ValueCountAggregationBuilder;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+
+public class SegmentRollupAggregatorTests extends AggregatorTestCase {
+
+    private static final MappedFieldType TIMESTAMP = new DateFieldMapper.DateFieldType("@timestamp");
+    private static final MappedFieldType VALUE = new NumberFieldMapper.NumberFieldType("value", NumberFieldMapper.NumberType.LONG);
+    private static final long MINUTE = 60_000;
+
+    @Override
+    protected IndexSettings createIndexSettings() {
+        Settings settings = Settings.builder()
+            .put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(SegmentRollupConfig.DATE_FIELD_SETTING.getKey(), "@timestamp")
+            .put(SegmentRollupConfig.INTERVAL_SETTING.getKey(), "1m")
+            .putList(SegmentRollupConfig.METRIC_FIELDS_SETTING.getKey(), "value")
+            .build();
+        return new IndexSettings(
+            IndexMetadata.builder("_index").settings(settings)
+                .numberOfShards(1)
+                .numberOfReplicas(0)
+                .creationDate(System.currentTimeMillis())
+                .build(),
+            Settings.EMPTY
+        );
+    }
+
+    public void testMetrics() throws IOException {
+        testCase((searcher, docs) -> {
+            long from = Long.MIN_VALUE;
+            long to = Long.MAX_VALUE;
+            Query query = new MatchAllDocsQuery();
+            if (randomBoolean()) {
+                // ranges that are aligned with the rollup interval
+                from = randomLongBetween(0, 30) * MINUTE;
+                to = from + randomLongBetween(1, 10) * MINUTE - 1;
+                query = LongPoint.newRangeQuery("@timestamp", from, to);
+            }
+            long count = 0;
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (long[] doc : docs) {
+                if (doc[0] >= from && doc[0] <= to) {
+                    count++;
+                    sum += doc[1];
+                    min = Math.min(min, doc[1]);
+                    max = Math.max(max, doc[1]);
+                }
+            }
+
+            AggregationBuilder sumAgg = new SumAggregationBuilder("sum").field("value");
+            assertEquals(sum, ((InternalSum) searchAndReduce(searcher, query, sumAgg, TIMESTAMP, VALUE)).getValue(), 0d);
+            assertReadsRollups(searcher, query, sumAgg);
+
+            AggregationBuilder minAgg = new MinAggregationBuilder("min").field("value");
+            assertEquals(min, ((InternalMin) searchAndReduce(searcher, query, minAgg, TIMESTAMP, VALUE)).getValue(), 0d);
+            assertReadsRollups(searcher, query, minAgg);
+
+            AggregationBuilder maxAgg = new MaxAggregationBuilder("max").field("value");
+            assertEquals(max, ((InternalMax) searchAndReduce(searcher, query, maxAgg, TIMESTAMP, VALUE)).getValue(), 0d);
+            assertReadsRollups(searcher, query, maxAgg);
+
+            AggregationBuilder countAgg = new ValueCountAggregationBuilder("count").field("value");
+            assertEquals(count, ((InternalValueCount) searchAndReduce(searcher, query, countAgg, TIMESTAMP, VALUE)).getValue());
+            assertReadsRollups(searcher, query, countAgg);
+        });
+    }
+
+    public void testDateHistogram() throws IOException {
+        testCase((searcher, docs) -> {
+            String interval = randomFrom("30s", "1m", "5m");
+            long intervalMillis = TimeValue.parseTimeValue(interval, "interval").millis();
+            Query query = randomBoolean() ? new MatchAllDocsQuery() : LongPoint.newRangeQuery("@timestamp", 5 * MINUTE, 25 * MINUTE - 1);
+            long from = query instanceof MatchAllDocsQuery ? Long.MIN_VALUE : 5 * MINUTE;
+            long to = query instanceof MatchAllDocsQuery ? Long.MAX_VALUE : 25 * MINUTE - 1;
+            Map<Long, Long> expected = new TreeMap<>();
+            for (long[] doc : docs) {
+                if (doc[0] >= from && doc[0] <= to) {
+                    expected.merge(Math.floorDiv(doc[0], intervalMillis) * intervalMillis, 1L, Long::sum);
+                }
+            }
+
+            AggregationBuilder histoAgg = new DateHistogramAggregationBuilder("histo").field("@timestamp")
+                .fixedInterval(new DateHistogramInterval(interval))
+                .minDocCount(1);
+            InternalDateHistogram histogram = searchAndReduce(searcher, query, histoAgg, TIMESTAMP, VALUE);
+            Map<Long, Long> actual = new TreeMap<>();
+            for (InternalDateHistogram.Bucket bucket : histogram.getBuckets()) {
+                actual.put(((ZonedDateTime) bucket.getKey()).toInstant().toEpochMilli(), bucket.getDocCount());
+            }
+            assertEquals(expected, actual);
+            if (intervalMillis % MINUTE == 0) {
+                // every rollup bucket falls into a single histogram bucket
+                assertReadsRollups(searcher, query, histoAgg);
+            }
+        });
+    }
+
+    public void testDateHistogramAdaptsIntoRangeWhenRollupsSplit() throws IOException {
+        testCase((searcher, docs) -> {
+            // 30 seconds buckets split the one minute rollup buckets
+            AggregationBuilder histoAgg = new DateHistogramAggregationBuilder("histo").field("@timestamp")
+                .fixedInterval(new DateHistogramInterval("30s"));
+            Query query = new MatchAllDocsQuery();
+            assertThat(createAggregator(histoAgg, createAggregationContext(searcher, query, TIMESTAMP, VALUE)),
+                instanceOf(AdaptingAggregator.class));
+
+            // so does a query that starts in the middle of a rollup bucket
+            histoAgg = new DateHistogramAggregationBuilder("histo").field("@timestamp").fixedInterval(new DateHistogramInterval("1m"));
+            query = LongPoint.newRangeQuery("@timestamp", 5 * MINUTE + 1, 25 * MINUTE - 1);
+            assertThat(createAggregator(histoAgg, createAggregationContext(searcher, query, TIMESTAMP, VALUE)),
+                instanceOf(AdaptingAggregator.class));
+
+            // but whole rollup buckets are read from the rollups
+            query = LongPoint.newRangeQuery("@timestamp", 5 * MINUTE, 25 * MINUTE - 1);
+            assertThat(createAggregator(histoAgg, createAggregationContext(searcher, query, TIMESTAMP, VALUE)),
+                not(instanceOf(AdaptingAggregator.class)));
+        });
+    }
+
+    /**
+     * Asserts that the aggregator doesn't collect the documents of any segment
+     * because it reads all it needs from the rollups.
+     */
+    private void assertReadsRollups(IndexSearcher searcher, Query query, AggregationBuilder builder) throws IOException {
+        AggregationContext context = createAggregationContext(searcher, query, TIMESTAMP, VALUE);
+        Aggregator aggregator = createAggregator(builder, context);
+        aggregator.preCollection();
+        for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+            expectThrows(CollectionTerminatedException.class, () -> aggregator.getLeafCollector(leaf));
+        }
+    }
+
+    private void testCase(CheckedBiConsumer<IndexSearcher, List<long[]>, IOException> verify) throws IOException {
+        List<long[]> docs = new ArrayList<>();
+        try (Directory dir = newDirectory()) {
+            try (IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setCodec(SegmentRollupTests.codec()))) {
+                int numDocs = randomIntBetween(1, 500);
+                for (int i = 0; i < numDocs; i++) {
+                    long timestamp = randomLongBetween(0, 30 * MINUTE);
+                    long value = randomLongBetween(-1000, 1000);
+                    Document doc = new Document();
+                    doc.add(new SortedNumericDocValuesField("@timestamp", timestamp));
+                    doc.add(new LongPoint("@timestamp", timestamp));
+                    doc.add(new SortedNumericDocValuesField("value", value));
+                    w.addDocument(doc);
+                    docs.add(new long[] { timestamp, value });
+                    if (rarely()) {
+                        w.commit();
+                    }
+                }
+            }
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                // we don't use newSearcher because the rollups are only read from segment readers
+                verify.accept(new IndexSearcher(reader), docs);
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.index.codec.rollup;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.lucene87.Lucene87Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreaker.Durability;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.greaterThan;
+
+public class SegmentRollupTests extends ESTestCase {
+
+    private static final SegmentRollupConfig CONFIG = new SegmentRollupConfig("@timestamp", 60_000, Collections.singleton("value"));
+
+    private final SegmentRollupCache rollups = new SegmentRollupCache(new NoopCircuitBreaker(CircuitBreaker.ACCOUNTING));
+
+    public void testRollupMatchesDocValues() throws IOException {
+        try (Directory dir = newDirectory()) {
+            try (IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setCodec(codec()))) {
+                int numDocs = randomIntBetween(1, 1000);
+                for (int i = 0; i < numDocs; i++) {
+                    Document doc = new Document();
+                    addTimestamp(doc, randomLongBetween(-3_600_000, 24 * 3_600_000));
+                    int numValues = randomIntBetween(0, 3);
+                    for (int v = 0; v < numValues; v++) {
+                        doc.add(new SortedNumericDocValuesField("value", randomLongBetween(-1000, 1000)));
+                    }
+                    w.addDocument(doc);
+                    if (rarely()) {
+                        w.commit();
+                    }
+                }
+                if (randomBoolean()) {
+                    w.forceMerge(1);
+                }
+            }
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                for (LeafReaderContext leaf : reader.leaves()) {
+                    SegmentRollup rollup = rollups.load(leaf.reader());
+                    assertNotNull(rollup);
+                    assertSame(rollup, rollups.load(leaf.reader()));
+                    assertEquals("@timestamp", rollup.dateField());
+                    assertEquals(60_000, rollup.interval());
+                    assertRollup(leaf, rollup);
+                }
+            }
+        }
+    }
+
+    public void testSelect() throws IOException {
+        try (Directory dir = newDirectory()) {
+            try (IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setCodec(codec()))) {
+                for (long timestamp = 0; timestamp < 180_000; timestamp += 30_000) {
+                    Document doc = new Document();
+                    addTimestamp(doc, timestamp);
+                    doc.add(new SortedNumericDocValuesField("value", timestamp / 1000));
+                    w.addDocument(doc);
+                }
+                w.forceMerge(1);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                SegmentRollup rollup = rollups.load(reader.leaves().get(0).reader());
+                assertNotNull(rollup);
+                assertEquals(3, rollup.numBuckets());
+                assertEquals(3, rollup.select(null).numBuckets());
+                assertEquals(3, rollup.select(new MatchAllDocsQuery()).numBuckets());
+
+                Query range = LongPoint.newRangeQuery("@timestamp", 60_000, 119_999);
+                for (Query query : new Query[] {
+                    range,
+                    new IndexOrDocValuesQuery(range, SortedNumericDocValuesField.newSlowRangeQuery("@timestamp", 60_000, 119_999)),
+                    new BooleanQuery.Builder().add(range, Occur.FILTER).add(new MatchAllDocsQuery(), Occur.MUST).build() }) {
+                    SegmentRollup selected = rollup.select(query);
+                    assertNotNull(selected);
+                    assertEquals(1, selected.numBuckets());
+                    assertEquals(60_000, selected.bucketStart(0));
+                    assertEquals(2, selected.docCount(0));
+                    assertEquals(60_000, selected.minTimestamp(0));
+                    assertEquals(90_000, selected.maxTimestamp(0));
+                    assertEquals(2, selected.metric("value").valueCount(0));
+                    assertEquals(150, selected.metric("value").sum(0), 0d);
+                    assertEquals(60, selected.metric("value").min(0), 0d);
+                    assertEquals(90, selected.metric("value").max(0), 0d);
+                }
+
+                // the range selects some of the documents of the bucket that starts at 60s
+                assertNull(rollup.select(LongPoint.newRangeQuery("@timestamp", 70_000, 200_000)));
+                // the range falls between the documents of two buckets
+                assertEquals(0, rollup.select(LongPoint.newRangeQuery("@timestamp", 95_000, 110_000)).numBuckets());
+                assertNull(rollup.select(LongPoint.newRangeQuery("other", 0, 200_000)));
+                assertNull(rollup.select(new TermQuery(new Term("other", "value"))));
+                assertNull(rollup.select(new BooleanQuery.Builder().add(range, Occur.SHOULD).build()));
+            }
+        }
+    }
+
+    public void testDeletedDocuments() throws IOException {
+        try (Directory dir = newDirectory()) {
+            try (IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setCodec(codec()))) {
+                for (int i = 0; i < 10; i++) {
+                    Document doc = new Document();
+                    addTimestamp(doc, i * 1000);
+                    doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+                    w.addDocument(doc);
+                }
+                w.commit();
+                w.deleteDocuments(new Term("id", "3"));
+            }
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                int segmentsWithDeletes = 0;
+                for (LeafReaderContext leaf : reader.leaves()) {
+                    if (leaf.reader().numDeletedDocs() > 0) {
+                        segmentsWithDeletes++;
+                        assertNull(rollups.load(leaf.reader()));
+                    } else {
+                        assertNotNull(rollups.load(leaf.reader()));
+                    }
+                }
+                assertEquals(1, segmentsWithDeletes);
+            }
+        }
+    }
+
+    public void testValuesWithoutTimestamp() throws IOException {
+        try (Directory dir = newDirectory()) {
+            try (IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setCodec(codec()))) {
+                for (int i = 0; i < 10; i++) {
+                    Document doc = new Document();
+                    if (i != 5) {
+                        addTimestamp(doc, i * 1000);
+                    }
+                    doc.add(new SortedNumericDocValuesField("value", i));
+                    w.addDocument(doc);
+                }
+                w.forceMerge(1);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                SegmentRollup rollup = rollups.load(reader.leaves().get(0).reader());
+                assertNotNull(rollup);
+                assertEquals(1, rollup.numBuckets());
+                assertEquals(9, rollup.docCount(0));
+                // we can't tell whether the value of the document without timestamp matches a range query
+                assertNull(rollup.metric("value"));
+            }
+        }
+    }
+
+    public void testManyTimestamps() throws IOException {
+        try (Directory dir = newDirectory()) {
+            try (IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setCodec(codec()))) {
+                Document doc = new Document();
+                addTimestamp(doc, 1000);
+                addTimestamp(doc, 100_000);
+                w.addDocument(doc);
+                w.forceMerge(1);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                assertNull(rollups.load(reader.leaves().get(0).reader()));
+            }
+        }
+    }
+
+    public void testHiddenFields() throws IOException {
+        try (Directory dir = newDirectory()) {
+            try (IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setCodec(codec()))) {
+                Document doc = new Document();
+                addTimestamp(doc, 1000);
+                doc.add(new SortedNumericDocValuesField("value", 1));
+                w.addDocument(doc);
+                w.forceMerge(1);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                LeafReader leaf = reader.leaves().get(0).reader();
+                assertNotNull(rollups.load(leaf).metric("value"));
+
+                // readers that hide the fields, like field level security does, don't expose their rollups
+                SegmentRollup rollup = rollups.load(hideField(leaf, "value"));
+                assertNotNull(rollup);
+                assertEquals(1, rollup.docCount(0));
+                assertNull(rollup.metric("value"));
+                assertNull(rollups.load(hideField(leaf, "@timestamp")));
+
+                assertNotNull(rollups.load(leaf).metric("value"));
+            }
+        }
+    }
+
+    public void testBreaker() throws IOException {
+        AtomicLong used = new AtomicLong();
+        AtomicBoolean tripped = new AtomicBoolean(true);
+        SegmentRollupCache cache = new SegmentRollupCache(new NoopCircuitBreaker(CircuitBreaker.ACCOUNTING) {
+            @Override
+            public double addEstimateBytesAndMaybeBreak(long bytes, String label) {
+                if (tripped.get()) {
+                    throw new CircuitBreakingException("simulated", bytes, 0, Durability.PERMANENT);
+                }
+                return used.addAndGet(bytes);
+            }
+
+            @Override
+            public long addWithoutBreaking(long bytes) {
+                return used.addAndGet(bytes);
+            }
+        });
+        try (Directory dir = newDirectory()) {
+            try (IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setCodec(codec()))) {
+                for (long timestamp = 0; timestamp < 600_000; timestamp += 30_000) {
+                    Document doc = new Document();
+                    addTimestamp(doc, timestamp);
+                    doc.add(new SortedNumericDocValuesField("value", timestamp));
+                    w.addDocument(doc);
+                }
+                w.forceMerge(1);
+            }
+            DirectoryReader reader = DirectoryReader.open(dir);
+            LeafReader leaf = reader.leaves().get(0).reader();
+            // a rollup that doesn't fit isn't loaded
+            assertNull(cache.load(leaf));
+            assertEquals(0, cache.ramBytesUsed());
+
+            tripped.set(false);
+            SegmentRollup rollup = cache.load(leaf);
+            assertNotNull(rollup);
+            assertSame(rollup, cache.load(leaf));
+            assertThat(cache.ramBytesUsed(), greaterThan(0L));
+            assertEquals(rollup.ramBytesUsed(), cache.ramBytesUsed());
+            assertEquals(cache.ramBytesUsed(), used.get());
+
+            // the memory is released with the segment
+            reader.close();
+            assertEquals(0, cache.ramBytesUsed());
+            assertEquals(0, used.get());
+        }
+    }
+
+    private static LeafReader hideField(LeafReader reader, String field) {
+        List<FieldInfo> visible = new ArrayList<>();
+        for (FieldInfo fieldInfo : reader.getFieldInfos()) {
+            if (fieldInfo.name.equals(field) == false) {
+                visible.add(fieldInfo);
+            }
+        }
+        FieldInfos fieldInfos = new FieldInfos(visible.toArray(new FieldInfo[0]));
+        return new FilterLeafReader(reader) {
+            @Override
+            public FieldInfos getFieldInfos() {
+                return fieldInfos;
+            }
+
+            @Override
+            public CacheHelper getCoreCacheHelper() {
+                return in.getCoreCacheHelper();
+            }
+
+            @Override
+            public CacheHelper getReaderCacheHelper() {
+                return in.getReaderCacheHelper();
+            }
+        };
+    }
+
+    private static void addTimestamp(Document doc, long timestamp) {
+        doc.add(new SortedNumericDocValuesField("@timestamp", timestamp));
+        doc.add(new LongPoint("@timestamp", timestamp));
+    }
+
+    private static void assertRollup(LeafReaderContext leaf, SegmentRollup rollup) throws IOException {
+        // bucket start -> doc count, value count, sum, min, max
+        TreeMap<Long, long[]> expected = new TreeMap<>();
+        SortedNumericDocValues timestamps = DocValues.getSortedNumeric(leaf.reader(), "@timestamp");
+        SortedNumericDocValues values = DocValues.getSortedNumeric(leaf.reader(), "value");
+        for (int doc = timestamps.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = timestamps.nextDoc()) {
+            long start = Math.floorDiv(timestamps.nextValue(), 60_000L) * 60_000L;
+            long[] bucket = expected.computeIfAbsent(start, s -> new long[] {0, 0, 0, Long.MAX_VALUE, Long.MIN_VALUE});
+            bucket[0]++;
+            if (values.advanceExact(doc)) {
+                for (int i = 0; i < values.docValueCount(); i++) {
+                    long value = values.nextValue();
+                    bucket[1]++;
+                    bucket[2] += value;
+                    bucket[3] = Math.min(bucket[3], value);
+                    bucket[4] = Math.max(bucket[4], value);
+                }
+            }
+        }
+        assertEquals(expected.size(), rollup.numBuckets());
+        SegmentRollup.Metric metric = rollup.metric("value");
+        assertNotNull(metric);
+        int b = 0;
+        for (Map.Entry<Long, long[]> entry : expected.entrySet()) {
+            assertEquals(entry.getKey().longValue(), rollup.bucketStart(b));
+            long[] bucket = entry.getValue();
+            assertEquals(bucket[0], rollup.docCount(b));
+            assertEquals(bucket[1], metric.valueCount(b));
+            assertEquals(bucket[2], metric.sum(b), 0d);
+            if (bucket[1] > 0) {
+                assertEquals(bucket[3], metric.min(b), 0d);
+                assertEquals(bucket[4], metric.max(b), 0d);
+            }
+            b++;
+        }
+    }
+
+    static Codec codec() {
+        Map<String, MappedFieldType> fieldTypes = new HashMap<>();
+        fieldTypes.put("@timestamp", new DateFieldMapper.DateFieldType("@timestamp"));
+        fieldTypes.put("value", new NumberFieldMapper.NumberFieldType("value", NumberFieldMapper.NumberType.LONG));
+        DocValuesFormat rollupFormat = new RollupDocValuesFormat(CONFIG, fieldTypes::get);
+        return new Lucene87Codec() {
+            @Override
+            public DocValuesFormat getDocValuesFormatForField(String field) {
+                return CONFIG.isRollupField(field) ? rollupFormat : super.getDocValuesFormatForField(field);
+            }
+        };
+    }
+}
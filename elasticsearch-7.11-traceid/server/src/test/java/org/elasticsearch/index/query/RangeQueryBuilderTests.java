@@ -39,6 +39,7 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
 import static org.hamcrest.Matchers.equalTo;
@@ -572,5 +573,19 @@ public class RangeQueryBuilderTests extends AbstractQueryTestCase<RangeQueryBuil
         rewriteQuery = rewriteQuery(queryBuilder, new QueryShardContext(context));
         assertNotNull(rewriteQuery.toQuery(context));
         assertFalse("query should not be cacheable: " + queryBuilder.toString(), context.isCacheable());
+
+        // unless "now" is rounded, in which case the resolved value goes into the request cache key
+        queryBuilder = new RangeQueryBuilder(randomFrom(DATE_FIELD_NAME, DATE_ALIAS_FIELD_NAME));
+        queryBuilder.from("now-15m/m").to("now/m");
+        context = createShardContext();
+        rewriteQuery = rewriteQuery(queryBuilder, new QueryShardContext(context));
+        assertNotNull(rewriteQuery.toQuery(context));
+        assertTrue("query should be cacheable: " + queryBuilder.toString(), context.isCacheable());
+        long now = context.nowInMillis();
+        long minute = TimeUnit.MINUTES.toMillis(1);
+        long[] roundedNowValues = context.getRoundedNowValues();
+        assertEquals(2, roundedNowValues.length);
+        assertEquals(now - now % minute - 15 * minute, roundedNowValues[0]);
+        assertEquals(now - now % minute + minute - 1, roundedNowValues[1]);
     }
 }
@@ -70,6 +70,7 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -77,6 +78,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 
 import static java.util.Collections.unmodifiableMap;
 import static org.elasticsearch.test.VersionUtils.randomVersion;
@@ -406,6 +408,77 @@ public class StoreTests extends ESTestCase {
         IOUtils.close(dir);
     }
 
+    public void testCombineChecksums() {
+        final byte[] bytes = randomByteArrayOfLength(between(0, 4096));
+        final int split = between(0, bytes.length);
+        final CRC32 first = new CRC32();
+        first.update(bytes, 0, split);
+        final CRC32 second = new CRC32();
+        second.update(bytes, split, bytes.length - split);
+        final CRC32 whole = new CRC32();
+        whole.update(bytes, 0, bytes.length);
+        assertThat(Store.combineChecksums(first.getValue(), second.getValue(), bytes.length - split), equalTo(whole.getValue()));
+    }
+
+    public void testVerifyParts() throws IOException {
+        final ShardId shardId = new ShardId("index", "_na_", 1);
+        Store store = new Store(shardId, INDEX_SETTINGS, StoreTests.newDirectory(random()), new DummyShardLock(shardId));
+        IndexOutput output = store.directory().createOutput("foo.bar", IOContext.DEFAULT);
+        int iters = scaledRandomIntBetween(10, 100);
+        for (int i = 0; i < iters; i++) {
+            BytesRef bytesRef = new BytesRef(TestUtil.randomRealisticUnicodeString(random(), 10, 1024));
+            output.writeBytes(bytesRef.bytes, bytesRef.offset, bytesRef.length);
+        }
+        CodecUtil.writeFooter(output);
+        output.close();
+        final long length = store.directory().fileLength("foo.bar");
+        final StoreFileMetadata metadata;
+        try (IndexInput indexInput = store.directory().openInput("foo.bar", IOContext.DEFAULT)) {
+            metadata = new StoreFileMetadata("foo.bar", length, Store.digestToString(CodecUtil.retrieveChecksum(indexInput)),
+                Version.LATEST);
+        }
+        // parts can end anywhere, including within the footer
+        final long partLength = randomLongBetween(1, length);
+
+        Store.verifyParts(metadata, readParts(store, "foo.bar", metadata, partLength));
+
+        final List<Store.PartChecksum> missingPart = readParts(store, "foo.bar", metadata, partLength);
+        missingPart.remove(between(0, missingPart.size() - 1));
+        expectThrows(CorruptIndexException.class, () -> Store.verifyParts(metadata, missingPart));
+
+        corruptFile(store.directory(), "foo.bar", "foo1.bar");
+        final StoreFileMetadata corruptedMetadata =
+            new StoreFileMetadata("foo1.bar", metadata.length(), metadata.checksum(), metadata.writtenBy());
+        expectThrows(CorruptIndexException.class,
+            () -> Store.verifyParts(corruptedMetadata, readParts(store, "foo1.bar", corruptedMetadata, partLength)));
+        store.close();
+    }
+
+    private static List<Store.PartChecksum> readParts(Store store, String name, StoreFileMetadata metadata,
+                                                      long partLength) throws IOException {
+        final List<Store.PartChecksum> parts = new ArrayList<>();
+        for (long offset = 0; offset < metadata.length(); offset += partLength) {
+            try (IndexInput indexInput = store.openVerifyingInput(name, IOContext.DEFAULT, metadata, offset)) {
+                final byte[] buffer = new byte[Math.toIntExact(Math.min(partLength, metadata.length() - offset))];
+                int read = 0;
+                while (read < buffer.length) {
+                    final int len = between(1, buffer.length - read);
+                    indexInput.readBytes(buffer, read, len);
+                    if (randomBoolean()) {
+                        // bytes that are read again, like on a retried upload, are only counted once
+                        indexInput.seek(offset + randomIntBetween(0, read));
+                        indexInput.readBytes(buffer, 0, Math.toIntExact(offset + read + len - indexInput.getFilePointer()));
+                    }
+                    read += len;
+                }
+                parts.add(Store.getPartChecksum(indexInput));
+            }
+        }
+        // the parts can be verified in any order
+        Collections.shuffle(parts, random());
+        return parts;
+    }
+
     private void readIndexInputFullyWithRandomSeeks(IndexInput indexInput) throws IOException {
         BytesRef ref = new BytesRef(scaledRandomIntBetween(1, 1024));
         long pos = 0;
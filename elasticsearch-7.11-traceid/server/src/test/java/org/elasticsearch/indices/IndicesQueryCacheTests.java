@@ -36,6 +36,8 @@ import org.elasticsearch.test.ESTestCase;
 import java.io.IOException;
 import java.util.Set;
 
+import static org.hamcrest.Matchers.greaterThan;
+
 public class IndicesQueryCacheTests extends ESTestCase {
 
     private static class DummyQuery extends Query {
@@ -163,6 +165,57 @@ public class IndicesQueryCacheTests extends ESTestCase {
         cache.close(); // this triggers some assertions
     }
 
+    public void testStripedCacheStats() throws IOException {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig());
+        w.addDocument(new Document());
+        DirectoryReader r = DirectoryReader.open(w);
+        w.close();
+        ShardId shard = new ShardId("index", "_na_", 0);
+        r = ElasticsearchDirectoryReader.wrap(r, shard);
+        IndexSearcher s = new IndexSearcher(r);
+        s.setQueryCachingPolicy(alwaysCachePolicy());
+
+        Settings settings = Settings.builder()
+                .put(IndicesQueryCache.INDICES_CACHE_QUERY_SIZE_SETTING.getKey(), "10mb")
+                .put(IndicesQueryCache.INDICES_CACHE_QUERY_COUNT_SETTING.getKey(), 10)
+                .put(IndicesQueryCache.INDICES_QUERIES_CACHE_ALL_SEGMENTS_SETTING.getKey(), true)
+                .put(IndicesQueryCache.INDICES_QUERIES_CACHE_STRIPED_SETTING.getKey(), true)
+                .build();
+        IndicesQueryCache cache = new IndicesQueryCache(settings);
+        s.setQueryCache(cache);
+
+        assertEquals(1, s.count(new DummyQuery(0)));
+
+        QueryCacheStats stats = cache.getStats(shard);
+        assertEquals(1L, stats.getCacheSize());
+        assertEquals(1L, stats.getCacheCount());
+        assertEquals(0L, stats.getHitCount());
+        assertEquals(1L, stats.getMissCount());
+        assertThat(stats.getMemorySizeInBytes(), greaterThan(0L));
+
+        assertEquals(1, s.count(new DummyQuery(0)));
+
+        stats = cache.getStats(shard);
+        assertEquals(1L, stats.getCacheSize());
+        assertEquals(1L, stats.getCacheCount());
+        assertEquals(1L, stats.getHitCount());
+        assertEquals(1L, stats.getMissCount());
+
+        IOUtils.close(r, dir);
+
+        // got emptied, but no changes to other metrics
+        stats = cache.getStats(shard);
+        assertEquals(0L, stats.getCacheSize());
+        assertEquals(1L, stats.getCacheCount());
+        assertEquals(1L, stats.getHitCount());
+        assertEquals(1L, stats.getMissCount());
+        assertEquals(0L, stats.getMemorySizeInBytes());
+
+        cache.onClose(shard);
+        cache.close(); // this triggers some assertions
+    }
+
     public void testTwoShards() throws IOException {
         Directory dir1 = newDirectory();
         IndexWriter w1 = new IndexWriter(dir1, newIndexWriterConfig());
@@ -0,0 +1,256 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.indices;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FilterDirectoryReader;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.greaterThan;
+
+public class IndicesStoredFieldsCacheTests extends ESTestCase {
+
+    private static IndicesStoredFieldsCache newCache(String size) {
+        return new IndicesStoredFieldsCache(
+            Settings.builder().put(IndicesStoredFieldsCache.INDICES_STORED_FIELDS_CACHE_SIZE_SETTING.getKey(), size).build());
+    }
+
+    private static Directory newIndex(int numDocs) throws IOException {
+        Directory dir = newDirectory();
+        try (IndexWriter w = new IndexWriter(dir, new IndexWriterConfig())) {
+            for (int i = 0; i < numDocs; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("id", Integer.toString(i), Store.YES));
+                doc.add(new StoredField("source", new BytesRef(randomAlphaOfLength(100))));
+                doc.add(new StoredField("int", i));
+                doc.add(new StoredField("long", (long) i));
+                doc.add(new StoredField("float", (float) i));
+                doc.add(new StoredField("double", (double) i));
+                w.addDocument(doc);
+            }
+        }
+        return dir;
+    }
+
+    public void testDisabledByDefault() throws IOException {
+        IndicesStoredFieldsCache cache = new IndicesStoredFieldsCache(Settings.EMPTY);
+        assertFalse(cache.isEnabled());
+        try (Directory dir = newIndex(1); DirectoryReader reader = DirectoryReader.open(dir)) {
+            assertSame(reader, cache.wrap(reader));
+        }
+        cache.close();
+    }
+
+    public void testBasics() throws IOException {
+        IndicesStoredFieldsCache cache = newCache("1mb");
+        assertTrue(cache.isEnabled());
+        int numDocs = randomIntBetween(1, 20);
+        try (Directory dir = newIndex(numDocs); DirectoryReader uncached = DirectoryReader.open(dir)) {
+            DirectoryReader reader = cache.wrap(DirectoryReader.open(dir));
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < numDocs; i++) {
+                    Document expected = uncached.document(i);
+                    Document actual = reader.document(i);
+                    assertEquals(expected.toString(), actual.toString());
+                    assertEquals(expected.getBinaryValue("source"), actual.getBinaryValue("source"));
+                }
+            }
+            assertEquals(numDocs, cache.count());
+            assertEquals(numDocs, cache.getMissCount());
+            assertEquals(numDocs, cache.getHitCount());
+            assertThat(cache.getMemorySizeInBytes(), greaterThan(0L));
+
+            // entries are removed when their segment is closed
+            reader.close();
+            assertEquals(0, cache.count());
+            assertEquals(0, cache.getMemorySizeInBytes());
+        }
+        cache.close();
+    }
+
+    public void testCloseOnlyRemovesEntriesOfTheClosedSegment() throws IOException {
+        IndicesStoredFieldsCache cache = newCache("1mb");
+        int numDocs = randomIntBetween(1, 20);
+        int otherNumDocs = randomIntBetween(1, 20);
+        try (Directory dir = newIndex(numDocs);
+             Directory otherDir = newIndex(otherNumDocs);
+             DirectoryReader other = cache.wrap(DirectoryReader.open(otherDir))) {
+            DirectoryReader reader = cache.wrap(DirectoryReader.open(dir));
+            for (int i = 0; i < numDocs; i++) {
+                reader.document(i);
+            }
+            for (int i = 0; i < otherNumDocs; i++) {
+                other.document(i);
+            }
+            assertEquals(numDocs + otherNumDocs, cache.count());
+
+            reader.close();
+            assertEquals(otherNumDocs, cache.count());
+            for (int i = 0; i < otherNumDocs; i++) {
+                other.document(i);
+            }
+            StoredFieldsCacheStats stats = cache.stats();
+            assertEquals(otherNumDocs, stats.getCount());
+            assertEquals(otherNumDocs, stats.getHitCount());
+            assertEquals(numDocs + otherNumDocs, stats.getMissCount());
+            assertEquals(0, stats.getEvictions());
+            assertEquals(cache.getMemorySizeInBytes(), stats.getMemorySizeInBytes());
+        }
+        cache.close();
+    }
+
+    public void testVisitorStatus() throws IOException {
+        IndicesStoredFieldsCache cache = newCache("1mb");
+        try (Directory dir = newIndex(1); DirectoryReader reader = cache.wrap(DirectoryReader.open(dir))) {
+            LeafReader leaf = reader.leaves().get(0).reader();
+            // load the document in the cache first so that the visitors below are served from it
+            leaf.document(0);
+
+            List<String> visited = new ArrayList<>();
+            leaf.document(0, new StoredFieldVisitor() {
+                @Override
+                public Status needsField(FieldInfo fieldInfo) {
+                    visited.add(fieldInfo.name);
+                    return fieldInfo.name.equals("int") ? Status.STOP : Status.NO;
+                }
+
+                @Override
+                public void intField(FieldInfo fieldInfo, int value) {
+                    fail("stopped fields must not be visited");
+                }
+            });
+            assertEquals(org.elasticsearch.common.collect.List.of("id", "source", "int"), visited);
+
+            byte[][] source = new byte[1][];
+            leaf.document(0, new StoredFieldVisitor() {
+                @Override
+                public Status needsField(FieldInfo fieldInfo) {
+                    return fieldInfo.name.equals("source") ? Status.YES : Status.NO;
+                }
+
+                @Override
+                public void binaryField(FieldInfo fieldInfo, byte[] value) {
+                    source[0] = value;
+                }
+            });
+            // visitors get their own copy of the value
+            byte[] expected = source[0].clone();
+            source[0][0]++;
+            assertArrayEquals(expected, leaf.document(0).getBinaryValue("source").bytes);
+            assertEquals(3, cache.getHitCount());
+        }
+        cache.close();
+    }
+
+    public void testFailedLoadIsNotCached() throws IOException {
+        IndicesStoredFieldsCache cache = newCache("1mb");
+        try (Directory dir = newIndex(1); DirectoryReader reader = cache.wrap(new FailingDirectoryReader(DirectoryReader.open(dir)))) {
+            IOException e = expectThrows(IOException.class, () -> reader.document(0));
+            assertEquals("simulated", e.getMessage());
+            assertEquals(0, cache.count());
+            assertEquals(0, cache.registeredKeyCount());
+        }
+        cache.close();
+    }
+
+    public void testWrappedElasticsearchReaderIsNotCached() throws IOException {
+        IndicesStoredFieldsCache cache = newCache("1mb");
+        try (Directory dir = newIndex(1);
+             DirectoryReader reader = ElasticsearchDirectoryReader.wrap(DirectoryReader.open(dir), new ShardId("_index", "_na_", 0))) {
+            assertNotSame(reader, cache.wrap(reader));
+            DirectoryReader wrapped = new FilterDirectoryReader(reader, new FilterDirectoryReader.SubReaderWrapper() {
+                @Override
+                public LeafReader wrap(LeafReader leaf) {
+                    return leaf;
+                }
+            }) {
+                @Override
+                protected DirectoryReader doWrapDirectoryReader(DirectoryReader in) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public CacheHelper getReaderCacheHelper() {
+                    return in.getReaderCacheHelper();
+                }
+            };
+            assertSame(wrapped, cache.wrap(wrapped));
+        }
+        cache.close();
+    }
+
+    public void testEviction() throws IOException {
+        IndicesStoredFieldsCache cache = newCache("1kb");
+        int numDocs = 100;
+        try (Directory dir = newIndex(numDocs); DirectoryReader reader = cache.wrap(DirectoryReader.open(dir))) {
+            for (int i = 0; i < numDocs; i++) {
+                reader.document(i);
+            }
+            assertThat(cache.getEvictions(), greaterThan(0L));
+            assertEquals(numDocs, cache.count() + cache.getEvictions());
+        }
+        cache.close();
+    }
+
+    private static final class FailingDirectoryReader extends FilterDirectoryReader {
+
+        FailingDirectoryReader(DirectoryReader in) throws IOException {
+            super(in, new SubReaderWrapper() {
+                @Override
+                public LeafReader wrap(LeafReader reader) {
+                    return new FilterLeafReader(reader) {
+                        @Override
+                        public void document(int docID, StoredFieldVisitor visitor) throws IOException {
+                            throw new IOException("simulated");
+                        }
+
+                        @Override
+                        public CacheHelper getCoreCacheHelper() {
+                            return in.getCoreCacheHelper();
+                        }
+
+                        @Override
+                        public CacheHelper getReaderCacheHelper() {
+                            return in.getReaderCacheHelper();
+                        }
+                    };
+                }
+            });
+        }
+
+        @Override
+        protected DirectoryReader doWrapDirectoryReader(DirectoryReader in) {
+            throw new UnsupportedOperationException("doWrapDirectoryReader() should never be invoked");
+        }
+
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return in.getReaderCacheHelper();
+        }
+    }
+}
@@ -8,9 +8,15 @@
 
 package org.elasticsearch.indices;
 
+import org.elasticsearch.Version;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.VersionUtils;
 
+import java.io.IOException;
 import java.util.Collections;
 
 import static org.hamcrest.CoreMatchers.containsString;
@@ -28,4 +34,31 @@ public class NodeIndicesStatsTests extends ESTestCase {
             hasToString(containsString("level parameter must be one of [indices] or [node] or [shards] but was [" + level + "]")));
     }
 
+    public void testStoredFieldsCacheStatsSerialization() throws IOException {
+        final StoredFieldsCacheStats storedFieldsCache = new StoredFieldsCacheStats(randomNonNegativeLong(), randomNonNegativeLong(),
+            randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong());
+        final NodeIndicesStats stats = new NodeIndicesStats(new CommonStats(), Collections.emptyMap(), storedFieldsCache);
+
+        NodeIndicesStats copy = copy(stats, Version.CURRENT);
+        assertEquals(storedFieldsCache.getMemorySizeInBytes(), copy.getStoredFieldsCache().getMemorySizeInBytes());
+        assertEquals(storedFieldsCache.getCount(), copy.getStoredFieldsCache().getCount());
+        assertEquals(storedFieldsCache.getEvictions(), copy.getStoredFieldsCache().getEvictions());
+        assertEquals(storedFieldsCache.getHitCount(), copy.getStoredFieldsCache().getHitCount());
+        assertEquals(storedFieldsCache.getMissCount(), copy.getStoredFieldsCache().getMissCount());
+
+        copy = copy(stats, VersionUtils.randomVersionBetween(random(), Version.V_7_0_0,
+            VersionUtils.getPreviousVersion(NodeIndicesStats.STORED_FIELDS_CACHE_STATS_VERSION)));
+        assertNull(copy.getStoredFieldsCache());
+    }
+
+    private static NodeIndicesStats copy(NodeIndicesStats stats, Version version) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(version);
+            stats.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                in.setVersion(version);
+                return new NodeIndicesStats(in);
+            }
+        }
+    }
 }
@@ -0,0 +1,307 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.indices;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class StripedQueryCacheTests extends ESTestCase {
+
+    private static class DummyQuery extends Query {
+
+        private final int id;
+
+        DummyQuery(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return sameClassAs(obj) && id == ((DummyQuery) obj).id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * classHash() + id;
+        }
+
+        @Override
+        public String toString(String field) {
+            return "dummy";
+        }
+
+        @Override
+        public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) {
+            return new ConstantScoreWeight(this, boost) {
+                @Override
+                public Scorer scorer(LeafReaderContext context) {
+                    return new ConstantScoreScorer(this, score(), scoreMode, DocIdSetIterator.all(context.reader().maxDoc()));
+                }
+
+                @Override
+                public boolean isCacheable(LeafReaderContext ctx) {
+                    return true;
+                }
+            };
+        }
+    }
+
+    private static QueryCachingPolicy alwaysCachePolicy() {
+        return new QueryCachingPolicy() {
+            @Override
+            public void onUse(Query query) {
+            }
+
+            @Override
+            public boolean shouldCache(Query query) {
+                return true;
+            }
+        };
+    }
+
+    public void testBasics() throws IOException {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig());
+        w.addDocument(new Document());
+        DirectoryReader r = DirectoryReader.open(w);
+        w.close();
+        IndexSearcher s = new IndexSearcher(r);
+        s.setQueryCachingPolicy(alwaysCachePolicy());
+        StripedQueryCache cache =
+            new StripedQueryCache(10, 1 << 20, context -> true, 1f, randomIntBetween(1, 4), EsExecutors.newDirectExecutorService());
+        s.setQueryCache(cache);
+
+        assertEquals(1, s.count(new DummyQuery(0)));
+        assertEquals(1L, cache.getCacheSize());
+        assertEquals(1L, cache.getCacheCount());
+        assertEquals(0L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+
+        assertEquals(1, s.count(new DummyQuery(0)));
+        assertEquals(1L, cache.getCacheSize());
+        assertEquals(1L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+
+        for (int i = 1; i < 20; ++i) {
+            assertEquals(1, s.count(new DummyQuery(i)));
+        }
+        // no more than 10 queries
+        assertThat(cache.getCacheSize(), lessThanOrEqualTo(10L));
+        assertEquals(20L, cache.getMissCount());
+
+        r.close();
+        // closing the segment cleared its entries
+        assertEquals(0L, cache.getCacheSize());
+        assertEquals(0L, cache.ramBytesUsed());
+        dir.close();
+    }
+
+    public void testAdmission() throws IOException {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig());
+        w.addDocument(new Document());
+        DirectoryReader r = DirectoryReader.open(w);
+        w.close();
+        IndexSearcher s = new IndexSearcher(r);
+        s.setQueryCachingPolicy(alwaysCachePolicy());
+        // room for a single entry
+        final long entrySize = StripedQueryCache.ENTRY_RAM_BYTES_USED + new BitDocIdSet(new FixedBitSet(1), 1).ramBytesUsed();
+        StripedQueryCache cache = new StripedQueryCache(1000, entrySize * 3 / 2, context -> true, 1f, 1,
+            EsExecutors.newDirectExecutorService());
+        s.setQueryCache(cache);
+
+        for (int i = 0; i < 5; i++) {
+            s.count(new DummyQuery(0));
+        }
+        assertEquals(1L, cache.getCacheSize());
+        assertEquals(4L, cache.getHitCount());
+
+        // a query that was used less often doesn't replace the cached one
+        s.count(new DummyQuery(1));
+        assertEquals(1L, cache.getCacheCount());
+        s.count(new DummyQuery(0));
+        assertEquals(5L, cache.getHitCount());
+
+        // until it gets used more often
+        for (int i = 0; i < 10; i++) {
+            s.count(new DummyQuery(1));
+        }
+        assertEquals(1L, cache.getCacheSize());
+        assertEquals(2L, cache.getCacheCount());
+        final long hits = cache.getHitCount();
+        s.count(new DummyQuery(1));
+        assertEquals(hits + 1, cache.getHitCount());
+
+        r.close();
+        assertEquals(0L, cache.getCacheSize());
+        dir.close();
+    }
+
+    public void testQueryLimitWithQueriesSharedAcrossSegments() throws IOException {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+        final int numSegments = randomIntBetween(5, 10);
+        for (int i = 0; i < numSegments; i++) {
+            w.addDocument(new Document());
+            w.flush();
+        }
+        DirectoryReader r = DirectoryReader.open(w);
+        w.close();
+        assertEquals(numSegments, r.leaves().size());
+        IndexSearcher s = new IndexSearcher(r);
+        s.setQueryCachingPolicy(alwaysCachePolicy());
+        final int maxSize = randomIntBetween(2, 5);
+        StripedQueryCache cache = new StripedQueryCache(maxSize, 1 << 20, context -> true, 1f, 1, EsExecutors.newDirectExecutorService());
+        s.setQueryCache(cache);
+
+        // every query is cached on every segment
+        for (int i = 0; i < maxSize; i++) {
+            assertEquals(numSegments, s.count(new DummyQuery(i)));
+        }
+        final long cacheSize = (long) maxSize * numSegments;
+        assertEquals(cacheSize, cache.getCacheSize());
+
+        // a more popular new query doesn't evict entries of queries that would stay cached on other segments
+        for (int i = 0; i < 10; i++) {
+            assertEquals(numSegments, s.count(new DummyQuery(maxSize)));
+        }
+        assertEquals(cacheSize, cache.getCacheSize());
+        assertEquals(cacheSize, cache.getCacheCount());
+
+        // but evicts a query that is only cached on a single segment
+        r.close();
+        r = DirectoryReader.open(dir);
+        s = new IndexSearcher(r);
+        s.setQueryCachingPolicy(alwaysCachePolicy());
+        s.setQueryCache(cache);
+        assertEquals(0L, cache.getCacheSize());
+        IndexSearcher leafSearcher = new IndexSearcher(r.leaves().get(0).reader());
+        leafSearcher.setQueryCachingPolicy(alwaysCachePolicy());
+        leafSearcher.setQueryCache(cache);
+        assertEquals(1, leafSearcher.count(new DummyQuery(0)));
+        for (int i = 1; i < maxSize; i++) {
+            assertEquals(numSegments, s.count(new DummyQuery(i)));
+        }
+        assertEquals(1L + (long) (maxSize - 1) * numSegments, cache.getCacheSize());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(numSegments, s.count(new DummyQuery(maxSize)));
+        }
+        // a single entry was evicted to make room for the new query on every segment
+        assertEquals(cacheSize, cache.getCacheSize());
+        final long hits = cache.getHitCount();
+        assertEquals(1, leafSearcher.count(new DummyQuery(0)));
+        assertEquals(hits, cache.getHitCount());
+
+        r.close();
+        assertEquals(0L, cache.getCacheSize());
+        dir.close();
+    }
+
+    public void testEntriesAreComputedInTheBackground() throws IOException {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig());
+        w.addDocument(new Document());
+        DirectoryReader r = DirectoryReader.open(w);
+        w.close();
+        IndexSearcher s = new IndexSearcher(r);
+        s.setQueryCachingPolicy(alwaysCachePolicy());
+        List<Runnable> tasks = new ArrayList<>();
+        StripedQueryCache cache = new StripedQueryCache(10, 1 << 20, context -> true, 1f, 1, tasks::add);
+        s.setQueryCache(cache);
+
+        assertEquals(1, s.count(new DummyQuery(0)));
+        assertEquals(1, s.count(new DummyQuery(0)));
+        // the second search didn't compute the entry again
+        assertEquals(1, tasks.size());
+        assertEquals(0L, cache.getCacheSize());
+
+        // the segment stays open until the entry is computed
+        r.close();
+        tasks.get(0).run();
+        // and the entry is removed when the segment gets closed
+        assertEquals(1L, cache.getCacheCount());
+        assertEquals(0L, cache.getCacheSize());
+        dir.close();
+    }
+
+    public void testConcurrentSearches() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig());
+        int numDocs = randomIntBetween(1, 100);
+        for (int i = 0; i < numDocs; i++) {
+            w.addDocument(new Document());
+            if (rarely()) {
+                w.commit();
+            }
+        }
+        DirectoryReader r = DirectoryReader.open(w);
+        w.close();
+        IndexSearcher s = new IndexSearcher(r);
+        s.setQueryCachingPolicy(alwaysCachePolicy());
+        StripedQueryCache cache = new StripedQueryCache(randomIntBetween(1, 20), 1 << 20, context -> true, 1f,
+            randomIntBetween(1, 8), EsExecutors.newDirectExecutorService());
+        s.setQueryCache(cache);
+
+        Thread[] threads = new Thread[randomIntBetween(2, 8)];
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < threads.length; t++) {
+            final Random random = new Random(randomLong());
+            threads[t] = new Thread(() -> {
+                try {
+                    latch.await();
+                    for (int i = 0; i < 200; i++) {
+                        if (s.count(new DummyQuery(random.nextInt(30))) != numDocs) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            });
+            threads[t].start();
+        }
+        latch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.get());
+        assertEquals(threads.length * 200L * r.leaves().size(), cache.getHitCount() + cache.getMissCount());
+
+        r.close();
+        assertEquals(0L, cache.getCacheSize());
+        dir.close();
+    }
+}
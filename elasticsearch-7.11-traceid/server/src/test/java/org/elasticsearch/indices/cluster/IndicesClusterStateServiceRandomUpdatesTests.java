@@ -134,6 +134,44 @@ public class IndicesClusterStateServiceRandomUpdatesTests extends AbstractIndice
         logger.info("Final cluster state: {}", state);
     }
 
+    public void testRunConcurrently() {
+        final int numTasks = randomIntBetween(0, 50);
+        final AtomicInteger runs = new AtomicInteger();
+        final List<AtomicInteger> taskRuns = new ArrayList<>();
+        final List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < numTasks; i++) {
+            final AtomicInteger taskRun = new AtomicInteger();
+            taskRuns.add(taskRun);
+            tasks.add(() -> {
+                taskRun.incrementAndGet();
+                runs.incrementAndGet();
+            });
+        }
+        IndicesClusterStateService.runConcurrently(tasks, randomIntBetween(1, 8), threadPool.generic());
+        // all tasks have completed once the method returns, and each one ran exactly once
+        assertEquals(numTasks, runs.get());
+        for (AtomicInteger taskRun : taskRuns) {
+            assertEquals(1, taskRun.get());
+        }
+    }
+
+    public void testRunConcurrentlyDoesNotWaitForIdleWorkers() {
+        final int numTasks = randomIntBetween(2, 50);
+        final AtomicInteger runs = new AtomicInteger();
+        final List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < numTasks; i++) {
+            tasks.add(runs::incrementAndGet);
+        }
+        // an executor that is too busy to run the forked workers before the calling thread has run all the tasks
+        final List<Runnable> queuedWorkers = new ArrayList<>();
+        IndicesClusterStateService.runConcurrently(tasks, randomIntBetween(2, 8), queuedWorkers::add);
+        assertEquals(numTasks, runs.get());
+        assertFalse(queuedWorkers.isEmpty());
+        // workers that get a thread late find nothing left to run
+        queuedWorkers.forEach(Runnable::run);
+        assertEquals(numTasks, runs.get());
+    }
+
     /**
      * This test ensures that when a node joins a brand new cluster (different cluster UUID),
      * different from the cluster it was previously a part of, the in-memory index data structures
@@ -0,0 +1,72 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.indices.recovery;
+
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class AdaptiveChunkConcurrencyTests extends ESTestCase {
+
+    private static final long CHUNK_SIZE = 512 * 1024;
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * Simulates a link that is saturated by {@code saturatingConcurrency} chunks in flight: every round takes one round trip up to
+     * that concurrency, and proportionally longer beyond it.
+     */
+    private static void runRounds(AdaptiveChunkConcurrency adaptiveConcurrency, long[] clock, int saturatingConcurrency, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            final int concurrency = adaptiveConcurrency.concurrency();
+            for (int i = 0; i < concurrency; i++) {
+                adaptiveConcurrency.onChunkSent();
+            }
+            clock[0] += ROUND_TRIP_NANOS * Math.max(1.0, (double) concurrency / saturatingConcurrency);
+            for (int i = 0; i < concurrency; i++) {
+                adaptiveConcurrency.onChunkCompleted(CHUNK_SIZE);
+            }
+        }
+    }
+
+    public void testConvergesToSaturatingConcurrency() {
+        final long[] clock = new long[]{randomNonNegativeLong() / 2};
+        final int saturatingConcurrency = randomIntBetween(3, 8);
+        final AdaptiveChunkConcurrency adaptiveConcurrency =
+            new AdaptiveChunkConcurrency(randomIntBetween(1, 2), AdaptiveChunkConcurrency.MAX_CONCURRENCY, () -> clock[0]);
+        runRounds(adaptiveConcurrency, clock, saturatingConcurrency, 50);
+        for (int round = 0; round < 50; round++) {
+            runRounds(adaptiveConcurrency, clock, saturatingConcurrency, 1);
+            // probing one request past the saturation point is expected, it is reverted on the next round
+            assertThat(adaptiveConcurrency.concurrency(),
+                allOf(greaterThanOrEqualTo(saturatingConcurrency - 1), lessThanOrEqualTo(saturatingConcurrency + 1)));
+        }
+    }
+
+    public void testNeverExceedsMaxConcurrency() {
+        final long[] clock = new long[]{0L};
+        final int maxConcurrency = randomIntBetween(1, AdaptiveChunkConcurrency.MAX_CONCURRENCY);
+        final AdaptiveChunkConcurrency adaptiveConcurrency =
+            new AdaptiveChunkConcurrency(randomIntBetween(1, maxConcurrency), maxConcurrency, () -> clock[0]);
+        for (int round = 0; round < 100; round++) {
+            runRounds(adaptiveConcurrency, clock, Integer.MAX_VALUE, 1);
+            assertThat(adaptiveConcurrency.concurrency(), allOf(greaterThanOrEqualTo(1), lessThanOrEqualTo(maxConcurrency)));
+        }
+        assertEquals(maxConcurrency, adaptiveConcurrency.concurrency());
+    }
+
+    public void testInvalidInitialConcurrency() {
+        expectThrows(IllegalArgumentException.class, () -> new AdaptiveChunkConcurrency(0, 4, System::nanoTime));
+        expectThrows(IllegalArgumentException.class, () -> new AdaptiveChunkConcurrency(5, 4, System::nanoTime));
+    }
+}
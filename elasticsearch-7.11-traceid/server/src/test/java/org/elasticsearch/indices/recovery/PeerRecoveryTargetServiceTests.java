@@ -8,6 +8,7 @@
 
 package org.elasticsearch.indices.recovery;
 
+import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.elasticsearch.Version;
@@ -35,6 +36,7 @@ import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.store.StoreFileMetadata;
 import org.elasticsearch.index.translog.Translog;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -147,6 +149,57 @@ public class PeerRecoveryTargetServiceTests extends IndexShardTestCase {
         return shard.seqNoStats();
     }
 
+    public void testWriteFilesFromSnapshot() throws Exception {
+        IndexShard sourceShard = newStartedShard(true);
+        int numDocs = between(1, 20);
+        for (int i = 0; i < numDocs; i++) {
+            indexDoc(sourceShard, "_doc", Integer.toString(i));
+        }
+        sourceShard.flush(new FlushRequest());
+        Store.MetadataSnapshot sourceSnapshot = sourceShard.store().getMetadata(null);
+        List<StoreFileMetadata> mdFiles = new ArrayList<>();
+        for (StoreFileMetadata md : sourceSnapshot) {
+            mdFiles.add(md);
+        }
+        final IndexShard targetShard = newShard(false);
+        final DiscoveryNode pNode = getFakeDiscoNode(sourceShard.routingEntry().currentNodeId());
+        final DiscoveryNode rNode = getFakeDiscoNode(targetShard.routingEntry().currentNodeId());
+        targetShard.markAsRecovering("test-peer-recovery", new RecoveryState(targetShard.routingEntry(), rNode, pNode));
+        final RecoveryTarget recoveryTarget = new RecoveryTarget(targetShard, null, null);
+        final PlainActionFuture<Void> receiveFileInfoFuture = new PlainActionFuture<>();
+        recoveryTarget.receiveFileInfo(
+            mdFiles.stream().map(StoreFileMetadata::name).collect(Collectors.toList()),
+            mdFiles.stream().map(StoreFileMetadata::length).collect(Collectors.toList()),
+            Collections.emptyList(), Collections.emptyList(), 0, receiveFileInfoFuture
+        );
+        receiveFileInfoFuture.actionGet();
+        for (StoreFileMetadata md : mdFiles) {
+            final byte[] content = new byte[Math.toIntExact(md.length())];
+            try (IndexInput in = sourceShard.store().directory().openInput(md.name(), IOContext.READONCE)) {
+                in.readBytes(content, 0, content.length);
+            }
+            if (randomBoolean()) {
+                // a truncated file is discarded, and can then be written again
+                final int length = between(0, content.length - 1);
+                expectThrows(CorruptIndexException.class,
+                    () -> recoveryTarget.writeFileFromSnapshot(md, new ByteArrayInputStream(content, 0, length)));
+                assertThat(recoveryTarget.state().getIndex().getFileDetails(md.name()).recovered(), equalTo(0L));
+            }
+            recoveryTarget.writeFileFromSnapshot(md, new ByteArrayInputStream(content));
+            assertTrue(recoveryTarget.state().getIndex().getFileDetails(md.name()).fullyRecovered());
+        }
+        PlainActionFuture<Void> cleanFilesFuture = new PlainActionFuture<>();
+        recoveryTarget.cleanFiles(0, Long.parseLong(sourceSnapshot.getCommitUserData().get(SequenceNumbers.MAX_SEQ_NO)),
+            sourceSnapshot, cleanFilesFuture);
+        cleanFilesFuture.actionGet();
+        recoveryTarget.decRef();
+        Store.MetadataSnapshot targetSnapshot = targetShard.snapshotStoreMetadata();
+        Store.RecoveryDiff diff = sourceSnapshot.recoveryDiff(targetSnapshot);
+        assertThat(diff.different, empty());
+        assertThat(diff.missing, empty());
+        closeShards(sourceShard, targetShard);
+    }
+
     public void testPrepareIndexForPeerRecovery() throws Exception {
         DiscoveryNode localNode = new DiscoveryNode("foo", buildNewFakeTransportAddress(),
             Collections.emptyMap(), Collections.emptySet(), Version.CURRENT);
@@ -64,9 +64,11 @@ import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardRelocatedException;
 import org.elasticsearch.index.shard.IndexShardState;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.snapshots.blobstore.BlobStoreIndexShardSnapshot;
 import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.store.StoreFileMetadata;
 import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.repositories.IndexId;
 import org.elasticsearch.test.CorruptionUtils;
 import org.elasticsearch.test.DummyShardLock;
 import org.elasticsearch.test.ESTestCase;
@@ -75,6 +77,8 @@ import org.elasticsearch.test.VersionUtils;
 import org.elasticsearch.threadpool.FixedExecutorBuilder;
 import org.elasticsearch.threadpool.TestThreadPool;
 import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.ReceiveTimeoutTransportException;
+import org.elasticsearch.transport.RemoteTransportException;
 import org.junit.After;
 import org.junit.Before;
 
@@ -91,6 +95,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -843,6 +848,62 @@ public class RecoverySourceHandlerTests extends ESTestCase {
         return files;
     }
 
+    public void testRecoverFilesFromSnapshotOnlySendsFilesThatTheTargetGaveUpOn() throws Exception {
+        final IndexId indexId = new IndexId("index", UUIDs.randomBase64UUID());
+        final List<StoreFileMetadata> files = new ArrayList<>();
+        final List<BlobStoreIndexShardSnapshot.FileInfo> snapshotFiles = new ArrayList<>();
+        final int numFiles = between(1, 10);
+        for (int i = 0; i < numFiles; i++) {
+            final StoreFileMetadata md = new StoreFileMetadata("_" + i + ".cfs", between(1, 100), "checksum-" + i,
+                Version.CURRENT.luceneVersion);
+            files.add(md);
+            if (i == 0 || randomBoolean()) {
+                snapshotFiles.add(new BlobStoreIndexShardSnapshot.FileInfo("__" + i, md, null));
+            }
+        }
+        final SnapshotFilesProvider snapshotFilesProvider = new SnapshotFilesProvider(null, null, threadPool) {
+            @Override
+            public void findSnapshotFiles(ShardId shardId, List<StoreFileMetadata> storeFiles,
+                                          ActionListener<Optional<RepositoryFiles>> listener) {
+                listener.onResponse(Optional.of(new RepositoryFiles("repo", indexId, snapshotFiles)));
+            }
+        };
+
+        final Set<String> restoredFiles = ConcurrentCollections.newConcurrentSet();
+        final RecoverySourceHandler handler = new RecoverySourceHandler(null, new TestRecoveryTargetHandler() {
+            @Override
+            public void restoreFileFromSnapshot(String repository, IndexId id, BlobStoreIndexShardSnapshot.FileInfo snapshotFile,
+                                                ActionListener<Void> listener) {
+                if (randomBoolean()) {
+                    restoredFiles.add(snapshotFile.physicalName());
+                    listener.onResponse(null);
+                } else {
+                    // the target responded, so it gave up on the file
+                    listener.onFailure(new RemoteTransportException("failed to restore", new IOException("repository unavailable")));
+                }
+            }
+        }, threadPool, getStartRecoveryRequest(), between(1, 1024), between(1, 5), randomBoolean(), between(1, 5), snapshotFilesProvider);
+        final PlainActionFuture<List<StoreFileMetadata>> future = new PlainActionFuture<>();
+        handler.recoverFilesFromSnapshot(files, future);
+        assertThat(future.get().stream().map(StoreFileMetadata::name).collect(Collectors.toList()),
+            equalTo(files.stream().map(StoreFileMetadata::name).filter(name -> restoredFiles.contains(name) == false)
+                .collect(Collectors.toList())));
+
+        // without an answer from the target, the file may still be downloading, so it must not be sent
+        final StartRecoveryRequest request = getStartRecoveryRequest();
+        final RecoverySourceHandler timingOutHandler = new RecoverySourceHandler(null, new TestRecoveryTargetHandler() {
+            @Override
+            public void restoreFileFromSnapshot(String repository, IndexId id, BlobStoreIndexShardSnapshot.FileInfo snapshotFile,
+                                                ActionListener<Void> listener) {
+                listener.onFailure(new ReceiveTimeoutTransportException(request.targetNode(),
+                    PeerRecoveryTargetService.Actions.RESTORE_FILE_FROM_SNAPSHOT, "timed out"));
+            }
+        }, threadPool, request, between(1, 1024), between(1, 5), randomBoolean(), between(1, 5), snapshotFilesProvider);
+        final PlainActionFuture<List<StoreFileMetadata>> timingOutFuture = new PlainActionFuture<>();
+        timingOutHandler.recoverFilesFromSnapshot(files, timingOutFuture);
+        expectThrows(ReceiveTimeoutTransportException.class, timingOutFuture::actionGet);
+    }
+
     class TestRecoveryTargetHandler implements RecoveryTargetHandler {
         @Override
         public void prepareForTranslogOperations(int totalTranslogOps, ActionListener<Void> listener) {
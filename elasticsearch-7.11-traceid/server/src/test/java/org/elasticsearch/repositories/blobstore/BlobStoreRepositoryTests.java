@@ -8,7 +8,9 @@
 
 package org.elasticsearch.repositories.blobstore;
 
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.Version;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.cluster.snapshots.create.CreateSnapshotResponse;
 import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
@@ -16,10 +18,15 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.metadata.RepositoryMetadata;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.UUIDs;
+import org.elasticsearch.common.blobstore.BlobContainer;
+import org.elasticsearch.common.blobstore.support.FilterBlobContainer;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.MockBigArrays;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.indices.recovery.RecoverySettings;
@@ -37,12 +44,17 @@ import org.elasticsearch.snapshots.SnapshotState;
 import org.elasticsearch.test.ESIntegTestCase;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -233,6 +245,64 @@ public class BlobStoreRepositoryTests extends ESSingleNodeTestCase {
             " See the breaking changes documentation for the next major version.");
     }
 
+    public void testDeleteBlobsInBatchesDeletesAllBatchesButTheFailedOne() throws Exception {
+        final Path location = ESIntegTestCase.randomRepoPath(node().settings());
+        final Settings settings = Settings.builder().put(node().settings()).put("location", location).build();
+        final RepositoryMetadata metadata = new RepositoryMetadata("test-repo", REPO_TYPE, settings);
+        final Set<String> failedBatch = ConcurrentCollections.newConcurrentSet();
+        final AtomicBoolean failBatch = new AtomicBoolean(true);
+        final BlobStoreRepository repository = new FsRepository(metadata, new Environment(settings, null), NamedXContentRegistry.EMPTY,
+            getInstanceFromNode(ClusterService.class), MockBigArrays.NON_RECYCLING_INSTANCE,
+            new RecoverySettings(settings, new ClusterSettings(settings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS))) {
+
+            @Override
+            protected void assertSnapshotOrGenericThread() {
+                // eliminate thread name check as we access blobStore on test/main threads
+            }
+
+            @Override
+            protected BlobContainer blobContainer() {
+                return new FilterBlobContainer(super.blobContainer()) {
+                    @Override
+                    protected BlobContainer wrapChild(BlobContainer child) {
+                        return child;
+                    }
+
+                    @Override
+                    public void deleteBlobsIgnoringIfNotExists(List<String> blobNames) throws IOException {
+                        if (failBatch.compareAndSet(true, false)) {
+                            failedBatch.addAll(blobNames);
+                            throw new IOException("simulated batch failure");
+                        }
+                        super.deleteBlobsIgnoringIfNotExists(blobNames);
+                    }
+                };
+            }
+        };
+        repository.start();
+
+        final int numBlobs = randomIntBetween(BlobStoreRepository.MAX_BLOBS_PER_DELETE_BATCH + 1,
+            3 * BlobStoreRepository.MAX_BLOBS_PER_DELETE_BATCH + 500);
+        final List<String> blobNames = new ArrayList<>(numBlobs);
+        final BytesArray blobContent = new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 16)));
+        for (int i = 0; i < numBlobs; i++) {
+            final String blobName = "blob-" + i;
+            repository.blobContainer().writeBlob(blobName, blobContent.streamInput(), blobContent.length(), true);
+            blobNames.add(blobName);
+        }
+
+        final AtomicInteger completions = new AtomicInteger();
+        final PlainActionFuture<Void> future = PlainActionFuture.newFuture();
+        repository.deleteBlobsInBatches(Collections.emptyList(), blobNames.iterator(),
+            ActionListener.runBefore(future, completions::incrementAndGet));
+        final Exception e = expectThrows(Exception.class, future::actionGet);
+        assertThat(ExceptionsHelper.unwrap(e, IOException.class).getMessage(), equalTo("simulated batch failure"));
+        assertThat(completions.get(), equalTo(1));
+        assertThat(failedBatch.size(), equalTo(BlobStoreRepository.MAX_BLOBS_PER_DELETE_BATCH));
+        assertThat(repository.blobContainer().listBlobs().keySet(), equalTo(failedBatch));
+        repository.close();
+    }
+
     private static void writeIndexGen(BlobStoreRepository repository, RepositoryData repositoryData, long generation) throws Exception {
         PlainActionFuture.<RepositoryData, Exception>get(
                 f -> repository.writeIndexGen(repositoryData, generation, Version.CURRENT, Function.identity(), f));
@@ -8,6 +8,7 @@
 package org.elasticsearch.repositories.fs;
 
 import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.SortedDocValuesField;
@@ -19,10 +20,12 @@ import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.store.BaseDirectoryWrapper;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOSupplier;
 import org.apache.lucene.util.TestUtil;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.cluster.metadata.IndexMetadata;
@@ -43,10 +46,12 @@ import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.snapshots.IndexShardSnapshotStatus;
 import org.elasticsearch.index.store.Store;
+import org.elasticsearch.index.store.StoreFileMetadata;
 import org.elasticsearch.indices.recovery.RecoverySettings;
 import org.elasticsearch.indices.recovery.RecoveryState;
 import org.elasticsearch.repositories.IndexId;
 import org.elasticsearch.repositories.blobstore.BlobStoreTestUtil;
+import org.elasticsearch.snapshots.AbortedSnapshotException;
 import org.elasticsearch.snapshots.Snapshot;
 import org.elasticsearch.snapshots.SnapshotId;
 import org.elasticsearch.test.DummyShardLock;
@@ -55,17 +60,25 @@ import org.elasticsearch.test.IndexSettingsModule;
 import org.elasticsearch.threadpool.TestThreadPool;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class FsRepositoryTests extends ESTestCase {
 
@@ -159,6 +172,125 @@ public class FsRepositoryTests extends ESTestCase {
         }
     }
 
+    public void testSnapshotOfCorruptedMultiPartFileFailsAndMarksStoreCorrupted() throws IOException, InterruptedException {
+        ThreadPool threadPool = new TestThreadPool(getClass().getSimpleName());
+        final Path indexPath = createTempDir();
+        try (BaseDirectoryWrapper directory = newFSDirectory(indexPath)) {
+            directory.setCheckIndexOnClose(false);
+            indexDocs(directory);
+            final Store store = newStore(directory);
+            final IndexCommit indexCommit = Lucene.getIndexCommit(Lucene.readSegmentInfos(store.directory()), store.directory());
+            final StoreFileMetadata fileToCorrupt = largestUploadedFile(store, indexCommit);
+            final FsRepository repository = newRepository(threadPool, between(5, Math.toIntExact(fileToCorrupt.length() / 2)));
+
+            // flip a byte that the checksum covers, but leave the footer alone so that the metadata of the file can still be read
+            final Path path = indexPath.resolve(fileToCorrupt.name());
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(1);
+                final long position = randomLongBetween(0, fileToCorrupt.length() - CodecUtil.footerLength() - 1);
+                channel.read(buffer, position);
+                buffer.put(0, (byte) (buffer.get(0) ^ 42));
+                buffer.rewind();
+                channel.write(buffer, position);
+            }
+
+            final IndexShardSnapshotStatus snapshotStatus = IndexShardSnapshotStatus.newInitializing(null);
+            final PlainActionFuture<String> future = PlainActionFuture.newFuture();
+            runGeneric(threadPool, () -> repository.snapshotShard(store, null, new SnapshotId("test", "test"), indexId(), indexCommit,
+                null, snapshotStatus, Version.CURRENT, Collections.emptyMap(), future));
+            final Exception e = expectThrows(Exception.class, future::actionGet);
+            assertNotNull(ExceptionsHelper.unwrapCorruption(e));
+            assertTrue(store.isMarkedCorrupted());
+            final IndexShardSnapshotStatus.Copy copy = snapshotStatus.asCopy();
+            assertThat(copy.getProcessedFileCount(), lessThanOrEqualTo(copy.getIncrementalFileCount()));
+        } finally {
+            terminate(threadPool);
+        }
+    }
+
+    public void testAbortSnapshotWhileUploadingParts() throws IOException, InterruptedException {
+        ThreadPool threadPool = new TestThreadPool(getClass().getSimpleName());
+        try (Directory directory = newDirectory()) {
+            indexDocs(directory);
+            final Store store = newStore(directory);
+            final IndexCommit indexCommit = Lucene.getIndexCommit(Lucene.readSegmentInfos(store.directory()), store.directory());
+            final IndexShardSnapshotStatus snapshotStatus = IndexShardSnapshotStatus.newInitializing(null);
+            final Settings settings = repositorySettings(between(5, 50));
+            final FsRepository repository = new FsRepository(new RepositoryMetadata("test", "fs", settings),
+                new Environment(settings, null), NamedXContentRegistry.EMPTY, BlobStoreTestUtil.mockClusterService(),
+                MockBigArrays.NON_RECYCLING_INSTANCE, new RecoverySettings(settings,
+                new ClusterSettings(settings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS))) {
+                @Override
+                public InputStream maybeRateLimitSnapshots(InputStream stream) {
+                    // abort the snapshot once the first bytes of a part are read, so that the part is left unfinished
+                    return new FilterInputStream(super.maybeRateLimitSnapshots(stream)) {
+                        @Override
+                        public int read(byte[] b, int off, int len) throws IOException {
+                            final int read = super.read(b, off, len);
+                            snapshotStatus.abortIfNotCompleted("test");
+                            return read;
+                        }
+                    };
+                }
+            };
+            repository.start();
+
+            final PlainActionFuture<String> future = PlainActionFuture.newFuture();
+            runGeneric(threadPool, () -> repository.snapshotShard(store, null, new SnapshotId("test", "test"), indexId(), indexCommit,
+                null, snapshotStatus, Version.CURRENT, Collections.emptyMap(), future));
+            final Exception e = expectThrows(Exception.class, future::actionGet);
+            assertNotNull(ExceptionsHelper.unwrap(e, AbortedSnapshotException.class));
+            assertFalse(store.isMarkedCorrupted());
+            final IndexShardSnapshotStatus.Copy copy = snapshotStatus.asCopy();
+            assertThat(copy.getStage(), equalTo(IndexShardSnapshotStatus.Stage.ABORTED));
+            assertThat(copy.getProcessedFileCount(), lessThanOrEqualTo(copy.getIncrementalFileCount()));
+        } finally {
+            terminate(threadPool);
+        }
+    }
+
+    private static Settings repositorySettings(int chunkSize) {
+        final Path repo = createTempDir();
+        return Settings.builder()
+            .put(Environment.PATH_HOME_SETTING.getKey(), createTempDir().toAbsolutePath())
+            .put(Environment.PATH_REPO_SETTING.getKey(), repo.toAbsolutePath())
+            .putList(Environment.PATH_DATA_SETTING.getKey(), tmpPaths())
+            .put("location", repo)
+            .put("compress", randomBoolean())
+            .put("chunk_size", chunkSize, ByteSizeUnit.BYTES).build();
+    }
+
+    private static FsRepository newRepository(ThreadPool threadPool, int chunkSize) {
+        final Settings settings = repositorySettings(chunkSize);
+        final FsRepository repository = new FsRepository(new RepositoryMetadata("test", "fs", settings), new Environment(settings, null),
+            NamedXContentRegistry.EMPTY, BlobStoreTestUtil.mockClusterService(), MockBigArrays.NON_RECYCLING_INSTANCE,
+            new RecoverySettings(settings, new ClusterSettings(settings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS)));
+        repository.start();
+        return repository;
+    }
+
+    private static Store newStore(Directory directory) {
+        final IndexSettings idxSettings = IndexSettingsModule.newIndexSettings("myindex",
+            Settings.builder().put(IndexMetadata.SETTING_INDEX_UUID, "myindexUUID").build());
+        final ShardId shardId = new ShardId(idxSettings.getIndex(), 1);
+        return new Store(shardId, idxSettings, directory, new DummyShardLock(shardId));
+    }
+
+    private static IndexId indexId() {
+        return new IndexId("myindex", "myindexUUID");
+    }
+
+    /**
+     * Returns the largest file of the given commit that is uploaded to the repository rather than stored in the shard's metadata.
+     */
+    private static StoreFileMetadata largestUploadedFile(Store store, IndexCommit indexCommit) throws IOException {
+        final Store.MetadataSnapshot metadata = store.getMetadata(indexCommit);
+        return StreamSupport.stream(metadata.spliterator(), false)
+            .filter(md -> md.hashEqualsContents() == false)
+            .max(Comparator.comparingLong(StoreFileMetadata::length))
+            .orElseThrow(() -> new AssertionError("no file to upload"));
+    }
+
     private void runGeneric(ThreadPool threadPool, Runnable runnable) throws InterruptedException {
         CountDownLatch latch = new CountDownLatch(1);
         threadPool.generic().submit(() -> {
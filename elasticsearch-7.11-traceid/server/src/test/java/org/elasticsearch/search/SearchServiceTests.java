@@ -21,6 +21,7 @@ import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.OriginalIndices;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.CanMatchNodeResponse;
 import org.elasticsearch.action.search.ClearScrollRequest;
 import org.elasticsearch.action.search.SearchPhaseExecutionException;
 import org.elasticsearch.action.search.SearchRequest;
@@ -83,6 +84,7 @@ import org.elasticsearch.search.internal.ShardSearchContextId;
 import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.suggest.SuggestBuilder;
+import org.elasticsearch.tasks.TaskCancelledException;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.junit.Before;
@@ -769,6 +771,46 @@ public class SearchServiceTests extends ESSingleNodeTestCase {
         latch.await();
     }
 
+    public void testCanMatchShardsOfNode() throws Exception {
+        createIndex("index");
+        final SearchService service = getInstanceFromNode(SearchService.class);
+        final IndexShard indexShard = getInstanceFromNode(IndicesService.class).indexServiceSafe(resolveIndex("index")).getShard(0);
+        final SearchRequest matchAll = new SearchRequest().allowPartialSearchResults(true)
+            .source(new SearchSourceBuilder().query(new MatchAllQueryBuilder()));
+        final SearchRequest matchNone = new SearchRequest().allowPartialSearchResults(true)
+            .source(new SearchSourceBuilder().query(new MatchNoneQueryBuilder()));
+        final List<ShardSearchRequest> requests = new ArrayList<>();
+        requests.add(new ShardSearchRequest(OriginalIndices.NONE, matchNone, indexShard.shardId(), 0, 3,
+            new AliasFilter(null, Strings.EMPTY_ARRAY), 1f, -1, null));
+        requests.add(new ShardSearchRequest(OriginalIndices.NONE, matchAll, new ShardId(new Index("missing", "_na_"), 0), 1, 3,
+            new AliasFilter(null, Strings.EMPTY_ARRAY), 1f, -1, null));
+        requests.add(new ShardSearchRequest(OriginalIndices.NONE, matchAll, indexShard.shardId(), 2, 3,
+            new AliasFilter(null, Strings.EMPTY_ARRAY), 1f, -1, null));
+
+        // the responses are in the order of the requests, whichever shard completes first
+        PlainActionFuture<List<CanMatchNodeResponse.ResponseOrFailure>> future = new PlainActionFuture<>();
+        service.canMatch(requests, new SearchShardTask(123L, "", "", "", null, Collections.emptyMap()), future);
+        List<CanMatchNodeResponse.ResponseOrFailure> responses = future.get();
+        assertEquals(3, responses.size());
+        assertFalse(responses.get(0).getResponse().canMatch());
+        assertThat(responses.get(1).getException(), instanceOf(IndexNotFoundException.class));
+        assertTrue(responses.get(2).getResponse().canMatch());
+
+        // shards that haven't started when the task is cancelled fail
+        SearchShardTask cancelled = new SearchShardTask(124L, "", "", "", null, Collections.emptyMap()) {
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        };
+        future = new PlainActionFuture<>();
+        service.canMatch(requests, cancelled, future);
+        responses = future.get();
+        assertEquals(3, responses.size());
+        assertThat(responses.get(0).getException(), instanceOf(TaskCancelledException.class));
+        assertThat(responses.get(2).getException(), instanceOf(TaskCancelledException.class));
+    }
+
     public void testCanRewriteToMatchNone() {
         assertFalse(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new MatchNoneQueryBuilder())
             .aggregation(new GlobalAggregationBuilder("test"))));
@@ -0,0 +1,100 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.search;
+
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.AliasFilter;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESTestCase;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+public class SearchShapeTests extends ESTestCase {
+
+    private static String shape(String index, SearchSourceBuilder source) {
+        ShardSearchRequest request = new ShardSearchRequest(new ShardId(index, "_na_", 0), new String[0], 0L, AliasFilter.EMPTY);
+        request.source(source);
+        return SearchService.searchShape("query", request);
+    }
+
+    private static String shape(QueryBuilder query) {
+        return shape("index", new SearchSourceBuilder().query(query));
+    }
+
+    public void testNoSource() {
+        ShardSearchRequest request = new ShardSearchRequest(new ShardId("index", "_na_", 0), new String[0], 0L, AliasFilter.EMPTY);
+        assertThat(SearchService.searchShape("query", request), equalTo("query"));
+    }
+
+    public void testIndexIsNotPartOfTheShape() {
+        SearchSourceBuilder source = new SearchSourceBuilder().query(QueryBuilders.termQuery("field", "value"));
+        String shape = shape("logs-2021.03.01", source);
+        assertThat(shape, equalTo(shape("logs-2021.03.02", source)));
+        assertThat(shape, not(containsString("logs")));
+    }
+
+    public void testQueryShape() {
+        assertThat(shape(null), equalTo("query query [match_all]"));
+        assertThat(shape(QueryBuilders.termQuery("field", "value")), equalTo("query query [term]"));
+        assertThat(shape(QueryBuilders.termQuery("field", "value")), equalTo(shape(QueryBuilders.termQuery("other", "other"))));
+
+        BoolQueryBuilder bool = QueryBuilders.boolQuery()
+            .must(QueryBuilders.matchQuery("field", "value"))
+            .filter(QueryBuilders.rangeQuery("timestamp").gte("now-1d"))
+            .filter(QueryBuilders.termQuery("field", "value"));
+        assertThat(shape(bool), equalTo("query query [bool(must:(match,)filter:(range,term,))]"));
+
+        assertThat(shape(QueryBuilders.constantScoreQuery(bool)),
+            equalTo("query query [constant_score(bool(must:(match,)filter:(range,term,)),)]"));
+        assertThat(shape(QueryBuilders.disMaxQuery().add(QueryBuilders.termQuery("a", "b")).add(QueryBuilders.matchQuery("c", "d"))),
+            equalTo("query query [dis_max(term,match,)]"));
+        assertThat(shape(QueryBuilders.boostingQuery(QueryBuilders.termQuery("a", "b"), QueryBuilders.rangeQuery("c").lt(1))),
+            equalTo("query query [boosting(positive:(term,)negative:(range,))]"));
+    }
+
+    public void testBoolQueriesOfDifferentStructures() {
+        String filtered = shape(QueryBuilders.boolQuery().filter(QueryBuilders.termQuery("field", "value")));
+        String scored = shape(QueryBuilders.boolQuery().must(QueryBuilders.termQuery("field", "value")));
+        String nested = shape(QueryBuilders.boolQuery()
+            .filter(QueryBuilders.boolQuery().should(QueryBuilders.termQuery("field", "value"))));
+        assertThat(filtered, not(equalTo(scored)));
+        assertThat(filtered, not(equalTo(nested)));
+        assertThat(scored, not(equalTo(nested)));
+    }
+
+    public void testQueryShapeIsBounded() {
+        BoolQueryBuilder manyClauses = QueryBuilders.boolQuery();
+        for (int i = 0; i < 100; i++) {
+            manyClauses.should(QueryBuilders.termQuery("field", "value" + i));
+        }
+        assertThat(shape(manyClauses), equalTo("query query [bool(should:(term,term,term,term,term,term,term,term,...,))]"));
+
+        QueryBuilder deep = QueryBuilders.termQuery("field", "value");
+        for (int i = 0; i < 10; i++) {
+            deep = QueryBuilders.boolQuery().filter(deep);
+        }
+        assertThat(shape(deep), equalTo("query query [bool(filter:(bool(filter:(bool(filter:(bool(filter:(bool,)),)),)),))]"));
+    }
+
+    public void testAggregationsAndOptions() {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .size(0)
+            .sort("timestamp", SortOrder.DESC)
+            .aggregation(AggregationBuilders.terms("terms").field("field").subAggregation(AggregationBuilders.avg("avg").field("value")));
+        assertThat(shape("index", source), equalTo("query query [match_all] aggs [terms(avg,),] sorted no_hits"));
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.search.aggregations.BaseAggregationTestCase;
+import org.elasticsearch.search.aggregations.bucket.sampler.RandomSamplerAggregationBuilder;
+import org.elasticsearch.test.VersionUtils;
+
+public class RandomSamplerTests extends BaseAggregationTestCase<RandomSamplerAggregationBuilder> {
+
+    @Override
+    protected final RandomSamplerAggregationBuilder createTestAggregatorBuilder() {
+        RandomSamplerAggregationBuilder factory = new RandomSamplerAggregationBuilder(randomAlphaOfLengthBetween(3, 10),
+            randomDoubleBetween(0.0001, 1.0, true));
+        if (randomBoolean()) {
+            factory.seed(randomInt());
+        }
+        return factory;
+    }
+
+    public void testInvalidProbability() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> new RandomSamplerAggregationBuilder("sampler", randomFrom(0.0, -0.5, 1.5)));
+        assertThat(e.getMessage(), org.hamcrest.Matchers.containsString("[probability] must be in the range (0, 1]"));
+    }
+
+    public void testSerializationToOldVersion() throws Exception {
+        RandomSamplerAggregationBuilder builder = createTestAggregatorBuilder();
+        try (BytesStreamOutput output = new BytesStreamOutput()) {
+            output.setVersion(VersionUtils.randomVersionBetween(random(), Version.V_7_0_0, Version.V_7_11_2));
+            IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> builder.writeTo(output));
+            assertThat(e.getMessage(), org.hamcrest.Matchers.containsString("don't support [random_sampler] aggregations"));
+        }
+    }
+}
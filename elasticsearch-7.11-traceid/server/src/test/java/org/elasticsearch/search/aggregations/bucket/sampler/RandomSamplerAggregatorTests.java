@@ -0,0 +1,144 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.sampler;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.common.CheckedConsumer;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.search.aggregations.AggregatorTestCase;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.PercentilesAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.Sum;
+import org.elasticsearch.search.aggregations.metrics.SumAggregationBuilder;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+public class RandomSamplerAggregatorTests extends AggregatorTestCase {
+
+    private static final int NUM_DOCS = 5000;
+
+    public void testScalesCountsAndSums() throws IOException {
+        MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType("value", NumberFieldMapper.NumberType.LONG);
+        RandomSamplerAggregationBuilder aggBuilder = new RandomSamplerAggregationBuilder("sampler", 0.2)
+            .subAggregation(new SumAggregationBuilder("sum").field("value"))
+            .subAggregation(new TermsAggregationBuilder("terms").field("value"));
+        testCase(searcher -> {
+            InternalRandomSampler sampler = searchAndReduce(searcher, new MatchAllDocsQuery(), aggBuilder, fieldType);
+            assertEquals(0.2, sampler.getProbability(), 0);
+            assertThat(sampler.getSampledDocCount(), both(greaterThan(0L)).and(lessThan((long) NUM_DOCS)));
+            assertEquals(Math.round(sampler.getSampledDocCount() / 0.2), sampler.getDocCount());
+            // with 5000 documents sampled at 20% the estimate is within 10% with overwhelming probability
+            assertEquals(NUM_DOCS, sampler.getDocCount(), NUM_DOCS * 0.1);
+            Sum sum = sampler.getAggregations().get("sum");
+            assertEquals(NUM_DOCS * 2.0, sum.getValue(), NUM_DOCS * 2.0 * 0.15);
+            Terms terms = sampler.getAggregations().get("terms");
+            long termsDocCount = 0;
+            for (Terms.Bucket bucket : terms.getBuckets()) {
+                termsDocCount += bucket.getDocCount();
+            }
+            assertEquals(NUM_DOCS, termsDocCount, NUM_DOCS * 0.1);
+        });
+    }
+
+    public void testProbabilityOne() throws IOException {
+        MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType("value", NumberFieldMapper.NumberType.LONG);
+        RandomSamplerAggregationBuilder aggBuilder = new RandomSamplerAggregationBuilder("sampler", 1.0)
+            .subAggregation(new SumAggregationBuilder("sum").field("value"));
+        testCase(searcher -> {
+            InternalRandomSampler sampler = searchAndReduce(searcher, new MatchAllDocsQuery(), aggBuilder, fieldType);
+            assertEquals(NUM_DOCS, sampler.getDocCount());
+            assertEquals(NUM_DOCS, sampler.getSampledDocCount());
+            Sum sum = sampler.getAggregations().get("sum");
+            assertEquals(NUM_DOCS * 2.0, sum.getValue(), 0);
+        });
+    }
+
+    public void testOnlySamplesMatchingDocs() throws IOException {
+        MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType("value", NumberFieldMapper.NumberType.LONG);
+        RandomSamplerAggregationBuilder aggBuilder = new RandomSamplerAggregationBuilder("sampler", 0.2)
+            .subAggregation(new TermsAggregationBuilder("terms").field("value"));
+        testCase(searcher -> {
+            InternalRandomSampler sampler = searchAndReduce(searcher, LongPoint.newExactQuery("value", 1), aggBuilder, fieldType);
+            // a third of the documents match and with 1667 of them sampled at 20% the estimate is within 20%
+            assertEquals(NUM_DOCS / 3.0, sampler.getDocCount(), NUM_DOCS / 3.0 * 0.2);
+            Terms terms = sampler.getAggregations().get("terms");
+            assertEquals(1, terms.getBuckets().size());
+            assertEquals(1L, terms.getBuckets().get(0).getKeyAsNumber().longValue());
+            assertEquals(sampler.getDocCount(), terms.getBuckets().get(0).getDocCount());
+        });
+    }
+
+    public void testUnmappedTerms() throws IOException {
+        MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType("value", NumberFieldMapper.NumberType.LONG);
+        RandomSamplerAggregationBuilder aggBuilder = new RandomSamplerAggregationBuilder("sampler", 0.2)
+            .subAggregation(new TermsAggregationBuilder("terms").field("unmapped"));
+        testCase(searcher -> {
+            InternalRandomSampler sampler = searchAndReduce(searcher, new MatchAllDocsQuery(), aggBuilder, fieldType);
+            Terms terms = sampler.getAggregations().get("terms");
+            assertThat(terms.getBuckets(), empty());
+        });
+    }
+
+    public void testUnsupportedSubAggregation() throws IOException {
+        MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType("value", NumberFieldMapper.NumberType.LONG);
+        RandomSamplerAggregationBuilder aggBuilder = new RandomSamplerAggregationBuilder("sampler", 0.5)
+            .subAggregation(new PercentilesAggregationBuilder("percentiles").field("value"));
+        testCase(searcher -> {
+            IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                () -> searchAndReduce(searcher, new MatchAllDocsQuery(), aggBuilder, fieldType));
+            assertThat(e.getMessage(), containsString("cannot extrapolate the results of [percentiles] aggregation [percentiles]"));
+        });
+    }
+
+    public void testSampledDocsAreDeterministic() throws IOException {
+        final double probability = randomDoubleBetween(0.01, 0.99, true);
+        final long seed = randomLong();
+        final int maxDoc = randomIntBetween(1, 10000);
+        RandomSamplerAggregator.SampledDocs first = new RandomSamplerAggregator.SampledDocs(probability, seed, maxDoc);
+        RandomSamplerAggregator.SampledDocs second = new RandomSamplerAggregator.SampledDocs(probability, seed, maxDoc);
+        int previous = -1;
+        for (int doc = first.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = first.nextDoc()) {
+            assertThat(doc, both(greaterThan(previous)).and(lessThan(maxDoc)));
+            assertEquals(doc, second.advance(doc));
+            previous = doc;
+        }
+    }
+
+    private void testCase(CheckedConsumer<IndexSearcher, IOException> verify) throws IOException {
+        try (Directory dir = newDirectory(); IndexWriter w = new IndexWriter(dir, newIndexWriterConfig())) {
+            for (int i = 0; i < NUM_DOCS; i++) {
+                Document doc = new Document();
+                // values 1, 2 and 3 so that the sum is twice the number of documents
+                doc.add(new SortedNumericDocValuesField("value", 1 + i % 3));
+                doc.add(new LongPoint("value", 1 + i % 3));
+                w.addDocument(doc);
+            }
+            try (IndexReader reader = DirectoryReader.open(w)) {
+                verify.accept(new IndexSearcher(reader));
+            }
+        }
+    }
+}
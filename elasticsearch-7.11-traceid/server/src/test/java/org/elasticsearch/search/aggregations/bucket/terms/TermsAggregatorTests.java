@@ -21,9 +21,11 @@ import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.DocValuesFieldExistsQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BytesRef;
@@ -114,6 +116,7 @@ import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
 
 public class TermsAggregatorTests extends AggregatorTestCase {
 
@@ -222,6 +225,55 @@ public class TermsAggregatorTests extends AggregatorTestCase {
         directory.close();
     }
 
+    public void testBitsetExecutionHint() throws Exception {
+        String[] levels = new String[] {"debug", "info", "warn", "error"};
+        Map<String, Long> expected = new HashMap<>();
+        try (Directory directory = newDirectory()) {
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                int numDocs = randomIntBetween(10, 500);
+                for (int i = 0; i < numDocs; i++) {
+                    Document document = new Document();
+                    boolean prod = randomBoolean();
+                    document.add(new StringField("env", prod ? "prod" : "dev", Field.Store.NO));
+                    for (String level : randomSubsetOf(randomIntBetween(0, 2), levels)) {
+                        document.add(new StringField("level", level, Field.Store.NO));
+                        document.add(new SortedSetDocValuesField("level", new BytesRef(level)));
+                        if (prod) {
+                            expected.merge(level, 1L, Long::sum);
+                        }
+                    }
+                    indexWriter.addDocument(document);
+                    if (frequently()) {
+                        indexWriter.commit();
+                    }
+                }
+            }
+            MappedFieldType fieldType = new KeywordFieldMapper.KeywordFieldType("level");
+            MappedFieldType envFieldType = new KeywordFieldMapper.KeywordFieldType("env");
+            try (IndexReader indexReader = wrapInMockESDirectoryReader(DirectoryReader.open(directory))) {
+                IndexSearcher indexSearcher = newSearcher(indexReader, false, true);
+                TermsAggregationBuilder aggregationBuilder = new TermsAggregationBuilder("levels")
+                    .executionHint("bitset")
+                    .field("level");
+                TermsAggregator aggregator = createAggregator(aggregationBuilder, indexSearcher, fieldType, envFieldType);
+                assertThat(aggregator, instanceOf(GlobalOrdinalsStringTermsAggregator.BitsetLowCardinality.class));
+
+                StringTerms result = searchAndReduce(indexSearcher, new TermQuery(new Term("env", "prod")),
+                    aggregationBuilder, fieldType, envFieldType);
+                assertEquals(expected.size(), result.getBuckets().size());
+                for (StringTerms.Bucket bucket : result.getBuckets()) {
+                    assertEquals(expected.get(bucket.getKeyAsString()).longValue(), bucket.getDocCount());
+                }
+
+                // sub-aggregations aren't supported so we fall back to global ordinals
+                aggregationBuilder.subAggregation(AggregationBuilders.cardinality("card").field("level"));
+                aggregator = createAggregator(aggregationBuilder, indexSearcher, fieldType, envFieldType);
+                assertThat(aggregator, instanceOf(GlobalOrdinalsStringTermsAggregator.class));
+                assertThat(aggregator, not(instanceOf(GlobalOrdinalsStringTermsAggregator.BitsetLowCardinality.class)));
+            }
+        }
+    }
+
     public void testSimple() throws Exception {
         try (Directory directory = newDirectory()) {
             try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
@@ -11,22 +11,29 @@ package org.elasticsearch.search.aggregations.metrics;
 import com.carrotsearch.hppc.BitMixer;
 import com.carrotsearch.hppc.IntHashSet;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.MockBigArrays;
 import org.elasticsearch.common.util.PageCacheRecycler;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.VersionUtils;
 
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.elasticsearch.search.aggregations.metrics.AbstractCardinalityAlgorithm.MAX_PRECISION;
 import static org.elasticsearch.search.aggregations.metrics.AbstractCardinalityAlgorithm.MIN_PRECISION;
 import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -103,6 +110,83 @@ public class HyperLogLogPlusPlusTests extends ESTestCase {
         }
     }
 
+    public void testMergeSerialized() throws IOException {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus single = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 0);
+        final HyperLogLogPlusPlus merged = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 0);
+        final int numParts = randomIntBetween(1, 10);
+        for (int part = 0; part < numParts; ++part) {
+            final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+            final long bucket = randomInt(5);
+            final int numValues = randomIntBetween(1, randomBoolean() ? 100 : 10000);
+            for (int i = 0; i < numValues; ++i) {
+                final long hash = BitMixer.mix64(randomInt(1000000));
+                single.collect(0, hash);
+                counts.collect(bucket, hash);
+            }
+            try (BytesStreamOutput out = new BytesStreamOutput()) {
+                counts.writeTo(bucket, out);
+                try (StreamInput in = out.bytes().streamInput()) {
+                    merged.merge(0, in);
+                }
+                try (StreamInput in = out.bytes().streamInput()) {
+                    AbstractHyperLogLogPlusPlus read = AbstractHyperLogLogPlusPlus.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
+                    assertTrue(read.equals(0, counts, bucket));
+                }
+            }
+        }
+        assertEquals(single.cardinality(0), merged.cardinality(0));
+    }
+
+    public void testSerializeToOlderVersion() throws IOException {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        final int numValues = randomIntBetween(1, 10000);
+        for (int i = 0; i < numValues; ++i) {
+            counts.collect(0, BitMixer.mix64(randomInt(1000000)));
+        }
+        counts.upgradeToHll(0);
+        final Version version = VersionUtils.randomVersionBetween(random(), Version.V_7_0_0,
+            VersionUtils.getPreviousVersion(AbstractHyperLogLogPlusPlus.COMPACT_REGISTERS_VERSION));
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(version);
+            counts.writeTo(0, out);
+            // the precision, the algorithm and one byte per register
+            assertThat(out.size(), equalTo(1 + 1 + (1 << p)));
+            try (StreamInput in = out.bytes().streamInput()) {
+                in.setVersion(version);
+                AbstractHyperLogLogPlusPlus read = AbstractHyperLogLogPlusPlus.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
+                assertTrue(read.equals(0, counts, 0));
+            }
+            final HyperLogLogPlusPlus merged = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+            try (StreamInput in = out.bytes().streamInput()) {
+                in.setVersion(version);
+                merged.merge(0, in);
+            }
+            assertEquals(counts.cardinality(0), merged.cardinality(0));
+        }
+    }
+
+    public void testSerializedRegistersAreCompact() throws IOException {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        counts.collect(0, BitMixer.mix64(randomInt()));
+        counts.upgradeToHll(0);
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            counts.writeTo(0, out);
+            // a single non-empty register is written sparse
+            assertThat(out.size(), lessThan(16));
+        }
+        for (int i = 0; i < 1 << p; ++i) {
+            counts.collect(0, BitMixer.mix64(i));
+        }
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            counts.writeTo(0, out);
+            // most registers are used so they are packed on 6 bits
+            assertThat(out.size(), lessThanOrEqualTo(AbstractHyperLogLogPlusPlus.packedSizeInBytes(1 << p) + 8));
+        }
+    }
+
     public void testFakeHashes() {
         // hashes with lots of leading zeros trigger different paths in the code that we try to go through here
         final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
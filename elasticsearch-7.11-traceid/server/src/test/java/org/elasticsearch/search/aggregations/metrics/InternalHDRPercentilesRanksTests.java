@@ -34,9 +34,9 @@ public class InternalHDRPercentilesRanksTests extends InternalPercentilesRanksTe
         // it is hard to check the values due to the inaccuracy of the algorithm
         long totalCount = 0;
         for (InternalHDRPercentileRanks ranks : inputs) {
-            totalCount += ranks.state.getTotalCount();
+            totalCount += ranks.getState().getTotalCount();
         }
-        assertEquals(totalCount, reduced.state.getTotalCount());
+        assertEquals(totalCount, reduced.getState().getTotalCount());
     }
 
     @Override
@@ -48,7 +48,7 @@ public class InternalHDRPercentilesRanksTests extends InternalPercentilesRanksTe
     protected InternalHDRPercentileRanks mutateInstance(InternalHDRPercentileRanks instance) {
         String name = instance.getName();
         double[] percents = instance.keys;
-        DoubleHistogram state = instance.state;
+        DoubleHistogram state = instance.getState();
         boolean keyed = instance.keyed;
         DocValueFormat formatter = instance.formatter();
         Map<String, Object> metadata = instance.getMetadata();
@@ -37,9 +37,9 @@ public class InternalHDRPercentilesTests extends InternalPercentilesTestCase<Int
         // it is hard to check the values due to the inaccuracy of the algorithm
         long totalCount = 0;
         for (InternalHDRPercentiles ranks : inputs) {
-            totalCount += ranks.state.getTotalCount();
+            totalCount += ranks.getState().getTotalCount();
         }
-        assertEquals(totalCount, reduced.state.getTotalCount());
+        assertEquals(totalCount, reduced.getState().getTotalCount());
     }
 
     @Override
@@ -80,7 +80,7 @@ public class InternalHDRPercentilesTests extends InternalPercentilesTestCase<Int
     protected InternalHDRPercentiles mutateInstance(InternalHDRPercentiles instance) {
         String name = instance.getName();
         double[] percents = instance.keys;
-        DoubleHistogram state = instance.state;
+        DoubleHistogram state = instance.getState();
         boolean keyed = instance.keyed;
         DocValueFormat formatter = instance.formatter();
         Map<String, Object> metadata = instance.getMetadata();
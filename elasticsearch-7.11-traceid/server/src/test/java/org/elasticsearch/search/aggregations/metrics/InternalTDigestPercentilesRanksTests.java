@@ -35,18 +35,18 @@ public class InternalTDigestPercentilesRanksTests extends InternalPercentilesRan
         double max = Double.NEGATIVE_INFINITY;
         long totalCount = 0;
         for (InternalTDigestPercentileRanks ranks : inputs) {
-            if (ranks.state.centroidCount() == 0) {
+            if (ranks.getState().centroidCount() == 0) {
                 // quantiles would return NaN
                 continue;
             }
-            totalCount += ranks.state.size();
-            min = Math.min(ranks.state.quantile(0), min);
-            max = Math.max(ranks.state.quantile(1), max);
+            totalCount += ranks.getState().size();
+            min = Math.min(ranks.getState().quantile(0), min);
+            max = Math.max(ranks.getState().quantile(1), max);
         }
-        assertEquals(totalCount, reduced.state.size());
+        assertEquals(totalCount, reduced.getState().size());
         if (totalCount > 0) {
-            assertEquals(reduced.state.quantile(0), min, 0d);
-            assertEquals(reduced.state.quantile(1), max, 0d);
+            assertEquals(reduced.getState().quantile(0), min, 0d);
+            assertEquals(reduced.getState().quantile(1), max, 0d);
         }
     }
 
@@ -59,7 +59,7 @@ public class InternalTDigestPercentilesRanksTests extends InternalPercentilesRan
     protected InternalTDigestPercentileRanks mutateInstance(InternalTDigestPercentileRanks instance) {
         String name = instance.getName();
         double[] percents = instance.keys;
-        TDigestState state = instance.state;
+        TDigestState state = instance.getState();
         boolean keyed = instance.keyed;
         DocValueFormat formatter = instance.formatter();
         Map<String, Object> metadata = instance.getMetadata();
@@ -8,8 +8,12 @@
 
 package org.elasticsearch.search.aggregations.metrics;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.test.VersionUtils;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -33,19 +37,19 @@ public class InternalTDigestPercentilesTests extends InternalPercentilesTestCase
 
     @Override
     protected void assertReduced(InternalTDigestPercentiles reduced, List<InternalTDigestPercentiles> inputs) {
-        final TDigestState expectedState = new TDigestState(reduced.state.compression());
+        final TDigestState expectedState = new TDigestState(reduced.getState().compression());
 
         long totalCount = 0;
         for (InternalTDigestPercentiles input : inputs) {
             assertArrayEquals(reduced.keys, input.keys, 0d);
-            expectedState.add(input.state);
-            totalCount += input.state.size();
+            expectedState.add(input.getState());
+            totalCount += input.getState().size();
         }
 
-        assertEquals(totalCount, reduced.state.size());
+        assertEquals(totalCount, reduced.getState().size());
         if (totalCount > 0) {
-            assertEquals(expectedState.quantile(0), reduced.state.quantile(0), 0d);
-            assertEquals(expectedState.quantile(1), reduced.state.quantile(1), 0d);
+            assertEquals(expectedState.quantile(0), reduced.getState().quantile(0), 0d);
+            assertEquals(expectedState.quantile(1), reduced.getState().quantile(1), 0d);
         }
     }
 
@@ -58,7 +62,7 @@ public class InternalTDigestPercentilesTests extends InternalPercentilesTestCase
     protected InternalTDigestPercentiles mutateInstance(InternalTDigestPercentiles instance) {
         String name = instance.getName();
         double[] percents = instance.keys;
-        TDigestState state = instance.state;
+        TDigestState state = instance.getState();
         boolean keyed = instance.keyed;
         DocValueFormat formatter = instance.formatter();
         Map<String, Object> metadata = instance.getMetadata();
@@ -96,6 +100,19 @@ public class InternalTDigestPercentilesTests extends InternalPercentilesTestCase
         return new InternalTDigestPercentiles(name, percents, state, keyed, formatter, metadata);
     }
 
+    public void testSerializationToOlderVersion() throws IOException {
+        final InternalTDigestPercentiles instance = createTestInstance();
+        final Version version = VersionUtils.randomVersionBetween(random(), Version.V_7_0_0,
+            VersionUtils.getPreviousVersion(AbstractInternalTDigestPercentiles.SERIALIZED_STATE_VERSION));
+        final InternalTDigestPercentiles copy = (InternalTDigestPercentiles) copyNamedWriteable(instance, getNamedWriteableRegistry(),
+            InternalAggregation.class, version);
+        assertEquals(instance.getState().size(), copy.getState().size());
+        assertEquals(instance.getState().centroidCount(), copy.getState().centroidCount());
+        for (double percent : instance.keys) {
+            assertEquals(instance.percentile(percent), copy.percentile(percent), 0d);
+        }
+    }
+
     public void testIterator() {
         final double[] percents =  randomPercents(false);
         final double[] values = new double[frequently() ? randomIntBetween(1, 10) : 0];
@@ -58,7 +58,7 @@ public class TDigestPercentilesAggregatorTests extends AggregatorTestCase {
         testCase(new MatchAllDocsQuery(), iw -> {
             // Intentionally not writing any docs
         }, tdigest -> {
-            assertEquals(0L, tdigest.state.size());
+            assertEquals(0L, tdigest.getState().size());
             assertFalse(AggregationInspectionHelper.hasValue(tdigest));
         });
     }
@@ -68,7 +68,7 @@ public class TDigestPercentilesAggregatorTests extends AggregatorTestCase {
             iw.addDocument(singleton(new SortedNumericDocValuesField("wrong_number", 7)));
             iw.addDocument(singleton(new SortedNumericDocValuesField("wrong_number", 1)));
         }, tdigest -> {
-            assertEquals(0L, tdigest.state.size());
+            assertEquals(0L, tdigest.getState().size());
             assertFalse(AggregationInspectionHelper.hasValue(tdigest));
         });
     }
@@ -83,8 +83,8 @@ public class TDigestPercentilesAggregatorTests extends AggregatorTestCase {
             iw.addDocument(singleton(new SortedNumericDocValuesField("number", 1)));
             iw.addDocument(singleton(new SortedNumericDocValuesField("number", 0)));
         }, tdigest -> {
-            assertEquals(7L, tdigest.state.size());
-            assertEquals(7L, tdigest.state.centroidCount());
+            assertEquals(7L, tdigest.getState().size());
+            assertEquals(7L, tdigest.getState().centroidCount());
             assertEquals(4.5d, tdigest.percentile(75), 0.0d);
             assertEquals("4.5", tdigest.percentileAsString(75));
             assertEquals(2.0d, tdigest.percentile(50), 0.0d);
@@ -105,8 +105,8 @@ public class TDigestPercentilesAggregatorTests extends AggregatorTestCase {
             iw.addDocument(singleton(new NumericDocValuesField("number", 1)));
             iw.addDocument(singleton(new NumericDocValuesField("number", 0)));
         }, tdigest -> {
-            assertEquals(tdigest.state.size(), 7L);
-            assertEquals(tdigest.state.centroidCount(), 7L);
+            assertEquals(tdigest.getState().size(), 7L);
+            assertEquals(tdigest.getState().centroidCount(), 7L);
             assertEquals(8.0d, tdigest.percentile(100), 0.0d);
             assertEquals("8.0", tdigest.percentileAsString(100));
             assertEquals(6.98d, tdigest.percentile(88), 0.0d);
@@ -133,8 +133,8 @@ public class TDigestPercentilesAggregatorTests extends AggregatorTestCase {
         };
 
         testCase(LongPoint.newRangeQuery("row", 1, 4), docs, tdigest -> {
-            assertEquals(4L, tdigest.state.size());
-            assertEquals(4L, tdigest.state.centroidCount());
+            assertEquals(4L, tdigest.getState().size());
+            assertEquals(4L, tdigest.getState().centroidCount());
             assertEquals(2.0d, tdigest.percentile(100), 0.0d);
             assertEquals(1.0d, tdigest.percentile(50), 0.0d);
             assertEquals(0.5d, tdigest.percentile(25), 0.0d);
@@ -142,8 +142,8 @@ public class TDigestPercentilesAggregatorTests extends AggregatorTestCase {
         });
 
         testCase(LongPoint.newRangeQuery("row", 100, 110), docs, tdigest -> {
-            assertEquals(0L, tdigest.state.size());
-            assertEquals(0L, tdigest.state.centroidCount());
+            assertEquals(0L, tdigest.getState().size());
+            assertEquals(0L, tdigest.getState().centroidCount());
             assertFalse(AggregationInspectionHelper.hasValue(tdigest));
         });
     }
@@ -8,8 +8,11 @@
 
 package org.elasticsearch.search.aggregations.metrics;
 
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.test.ESTestCase;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 public class TDigestStateTests extends ESTestCase {
@@ -39,4 +42,29 @@ public class TDigestStateTests extends ESTestCase {
             prev = v;
         }
     }
+
+    public void testMergeSerialized() throws IOException {
+        final double compression = randomFrom(50.0, 100.0, 200.0);
+        final TDigestState expected = new TDigestState(compression);
+        final TDigestState merged = new TDigestState(compression);
+        final int numParts = randomIntBetween(1, 10);
+        for (int part = 0; part < numParts; part++) {
+            final TDigestState digest = new TDigestState(compression);
+            final int numValues = randomIntBetween(1, 1000);
+            for (int i = 0; i < numValues; i++) {
+                digest.add(randomDouble());
+            }
+            expected.add(digest);
+            try (BytesStreamOutput out = new BytesStreamOutput()) {
+                TDigestState.write(digest, out);
+                try (StreamInput in = out.bytes().streamInput()) {
+                    TDigestState.merge(merged, in);
+                }
+            }
+        }
+        assertEquals(expected.size(), merged.size());
+        for (double q : new double[] { 0, 0.01, 0.5, 0.99, 1 }) {
+            assertEquals(expected.quantile(q), merged.quantile(q), 0.05);
+        }
+    }
 }
@@ -27,5 +27,8 @@ public class FetchPhaseTests extends ESTestCase {
             docs[i] = new FetchPhase.DocIdToIndex(start, i);
         }
         assertFalse(FetchPhase.hasSequentialDocs(docs));
+        // the docs before the first gap are still sequential on their own
+        assertEquals(from > 0, FetchPhase.hasSequentialDocs(docs, 0, from));
+        assertFalse(FetchPhase.hasSequentialDocs(docs, 0, from + 1));
     }
 }
@@ -63,6 +63,24 @@ public class ShardSearchRequestTests extends AbstractSearchTestCase {
         }
     }
 
+    public void testCacheKey() throws IOException {
+        ShardId shardId = new ShardId("index", "_na_", 0);
+        QueryBuilder filter = termQuery("animal", "cat");
+        ShardSearchRequest request = new ShardSearchRequest(shardId, Strings.EMPTY_ARRAY, 1L, new AliasFilter(filter, "cats"));
+        // neither the alias names nor the current time are part of the key
+        assertEquals(request.cacheKey(),
+            new ShardSearchRequest(shardId, Strings.EMPTY_ARRAY, 2L, new AliasFilter(filter, "felines")).cacheKey());
+        assertNotEquals(request.cacheKey(),
+            new ShardSearchRequest(shardId, Strings.EMPTY_ARRAY, 1L, new AliasFilter(termQuery("animal", "dog"), "cats")).cacheKey());
+        assertNotEquals(request.cacheKey(), new ShardSearchRequest(shardId, Strings.EMPTY_ARRAY, 1L, AliasFilter.EMPTY).cacheKey());
+
+        // but the values resolved from rounded "now" date math are
+        assertEquals(request.cacheKey(), request.cacheKey(new long[0]));
+        assertEquals(request.cacheKey(new long[] { 60_000L }), request.cacheKey(new long[] { 60_000L }));
+        assertNotEquals(request.cacheKey(new long[] { 60_000L }), request.cacheKey(new long[] { 120_000L }));
+        assertNotEquals(request.cacheKey(), request.cacheKey(new long[] { 60_000L }));
+    }
+
     public void testAllowPartialResultsSerializationPre7_0_0() throws IOException {
         Version version = VersionUtils.randomVersionBetween(random(), Version.V_6_0_0, VersionUtils.getPreviousVersion(Version.V_7_0_0));
         ShardSearchRequest shardSearchTransportRequest = createShardSearchRequest();
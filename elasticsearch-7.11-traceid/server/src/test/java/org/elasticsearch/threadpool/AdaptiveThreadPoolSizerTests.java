@@ -0,0 +1,228 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.threadpool;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class AdaptiveThreadPoolSizerTests extends ESTestCase {
+
+    private static final TimeValue TARGET = TimeValue.timeValueMillis(100);
+
+    public void testEstimateQueueWait() {
+        assertThat(AdaptiveThreadPoolSizer.estimateQueueWaitNanos(0, 0, 1000), equalTo(0d));
+        assertThat(AdaptiveThreadPoolSizer.estimateQueueWaitNanos(5, 0, 1000), equalTo(Double.POSITIVE_INFINITY));
+        // 10 tasks per second completed, 20 tasks in the queue: the last one waits for 2 seconds
+        assertThat(AdaptiveThreadPoolSizer.estimateQueueWaitNanos(20, 10, TimeUnit.SECONDS.toNanos(1)),
+            equalTo((double) TimeUnit.SECONDS.toNanos(2)));
+    }
+
+    public void testGrowsFromFreeBudget() {
+        final AtomicLong clock = new AtomicLong();
+        final FakePool search = new FakePool("search", 4);
+        final FakePool write = new FakePool("write", 4);
+        final AdaptiveThreadPoolSizer sizer = new AdaptiveThreadPoolSizer(Arrays.asList(search, write), 10, 1, TARGET, clock::get);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        search.tick(10, 100);
+        write.tick(100, 0);
+        sizer.adjust();
+        assertThat(search.size(), equalTo(5));
+        assertThat(write.size(), equalTo(4));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        search.tick(10, 100);
+        write.tick(100, 0);
+        sizer.adjust();
+        assertThat(search.size(), equalTo(6));
+        assertThat(write.size(), equalTo(4));
+
+        // the budget is exhausted and the write pool is below the target, so it gives one of its threads
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        search.tick(10, 100);
+        write.tick(100, 0);
+        sizer.adjust();
+        assertThat(search.size(), equalTo(7));
+        assertThat(write.size(), equalTo(3));
+    }
+
+    public void testDoesNotTakeFromBusyPools() {
+        final AtomicLong clock = new AtomicLong();
+        final FakePool search = new FakePool("search", 4);
+        final FakePool write = new FakePool("write", 4);
+        final AdaptiveThreadPoolSizer sizer = new AdaptiveThreadPoolSizer(Arrays.asList(search, write), 8, 1, TARGET, clock::get);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        search.tick(10, 100);
+        write.tick(10, 50);
+        sizer.adjust();
+        assertThat(search.size(), equalTo(4));
+        assertThat(write.size(), equalTo(4));
+    }
+
+    public void testDoesNotShrinkIdlePoolsWithinBudget() {
+        final AtomicLong clock = new AtomicLong();
+        final FakePool search = new FakePool("search", 4);
+        final FakePool write = new FakePool("write", 4);
+        final AdaptiveThreadPoolSizer sizer = new AdaptiveThreadPoolSizer(Arrays.asList(search, write), 8, 1, TARGET, clock::get);
+
+        for (int i = 0; i < 5; i++) {
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            search.tick(0, 0);
+            write.tick(0, 0);
+            sizer.adjust();
+        }
+        assertThat(search.size(), equalTo(4));
+        assertThat(write.size(), equalTo(4));
+    }
+
+    public void testRespectsMinThreads() {
+        final AtomicLong clock = new AtomicLong();
+        final FakePool search = new FakePool("search", 4);
+        final FakePool write = new FakePool("write", 2);
+        final AdaptiveThreadPoolSizer sizer = new AdaptiveThreadPoolSizer(Arrays.asList(search, write), 6, 2, TARGET, clock::get);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        search.tick(10, 100);
+        write.tick(100, 0);
+        sizer.adjust();
+        assertThat(search.size(), equalTo(4));
+        assertThat(write.size(), equalTo(2));
+    }
+
+    public void testShrinksToLoweredBudget() {
+        final AtomicLong clock = new AtomicLong();
+        final FakePool search = new FakePool("search", 4);
+        final FakePool write = new FakePool("write", 4);
+        final AdaptiveThreadPoolSizer sizer = new AdaptiveThreadPoolSizer(Arrays.asList(search, write), 6, 1, TARGET, clock::get);
+
+        // each pool gives back at most one thread per adjustment
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        search.tick(10, 100);
+        write.tick(100, 0);
+        sizer.adjust();
+        assertThat(search.size(), equalTo(3));
+        assertThat(write.size(), equalTo(3));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        search.tick(10, 100);
+        write.tick(100, 0);
+        sizer.adjust();
+        assertThat(search.size(), equalTo(4));
+        assertThat(write.size(), equalTo(2));
+    }
+
+    public void testRejectsTooSmallBudget() {
+        final IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> new AdaptiveThreadPoolSizer(
+            Arrays.asList(new FakePool("search", 1), new FakePool("write", 1)), 3, 2, TARGET, System::nanoTime));
+        assertThat(e.getMessage(), containsString("must be at least [4]"));
+    }
+
+    public void testResizesThreadPool() throws Exception {
+        final Settings settings = Settings.builder()
+            .put("node.name", getTestName())
+            .put(AdaptiveThreadPoolSizer.ENABLED_SETTING.getKey(), true)
+            .put(AdaptiveThreadPoolSizer.INTERVAL_SETTING.getKey(), "100ms")
+            .build();
+        final ThreadPool threadPool = new ThreadPool(settings);
+        try {
+            final ThreadPoolExecutor search = (ThreadPoolExecutor) threadPool.executor(ThreadPool.Names.SEARCH);
+            final ThreadPoolExecutor write = (ThreadPoolExecutor) threadPool.executor(ThreadPool.Names.WRITE);
+            final int initialSearchSize = search.getMaximumPoolSize();
+            final int initialWriteSize = write.getMaximumPoolSize();
+            final CountDownLatch blocked = new CountDownLatch(1);
+            try {
+                // block the write pool and queue more tasks behind it so that it takes threads from the idle search pool
+                for (int i = 0; i < initialWriteSize + initialSearchSize; i++) {
+                    write.execute(() -> {
+                        try {
+                            blocked.await();
+                        } catch (InterruptedException e) {
+                            throw new AssertionError(e);
+                        }
+                    });
+                }
+                assertBusy(() -> assertThat(write.getMaximumPoolSize(), greaterThan(initialWriteSize)));
+            } finally {
+                blocked.countDown();
+            }
+            assertBusy(() -> {
+                assertThat(search.getMaximumPoolSize() + write.getMaximumPoolSize(), equalTo(initialSearchSize + initialWriteSize));
+                assertThat(search.getCorePoolSize(), equalTo(search.getMaximumPoolSize()));
+                assertThat(write.getCorePoolSize(), equalTo(write.getMaximumPoolSize()));
+            });
+        } finally {
+            terminate(threadPool);
+        }
+    }
+
+    public void testRejectsScalingPools() {
+        final Settings settings = Settings.builder()
+            .put("node.name", getTestName())
+            .put(AdaptiveThreadPoolSizer.ENABLED_SETTING.getKey(), true)
+            .putList(AdaptiveThreadPoolSizer.POOLS_SETTING.getKey(), ThreadPool.Names.SEARCH, ThreadPool.Names.GENERIC)
+            .build();
+        final IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> new ThreadPool(settings));
+        assertThat(e.getMessage(), containsString("only fixed thread pools can"));
+    }
+
+    private static final class FakePool implements AdaptiveThreadPoolSizer.ManagedPool {
+        private final String name;
+        private int size;
+        private long completed;
+        private int queued;
+
+        FakePool(String name, int size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        void tick(long completedTasks, int queueSize) {
+            completed += completedTasks;
+            queued = queueSize;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void resize(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public long completedTaskCount() {
+            return completed;
+        }
+
+        @Override
+        public int queueSize() {
+            return queued;
+        }
+    }
+}
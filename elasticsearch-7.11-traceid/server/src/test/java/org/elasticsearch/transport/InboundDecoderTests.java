@@ -167,6 +167,7 @@ public class InboundDecoderTests extends ESTestCase {
         boolean isRequest = randomBoolean();
         String action = "test-request";
         long requestId = randomNonNegativeLong();
+        final Compression.Scheme scheme = randomFrom(Compression.Scheme.values());
         final String headerKey = randomAlphaOfLength(10);
         final String headerValue = randomAlphaOfLength(20);
         if (isRequest) {
@@ -179,11 +180,11 @@ public class InboundDecoderTests extends ESTestCase {
         if (isRequest) {
             transportMessage = new TestRequest(randomAlphaOfLength(100));
             message = new OutboundMessage.Request(threadContext, new String[0], transportMessage, Version.CURRENT, action, requestId,
-                false, true);
+                false, scheme);
         } else {
             transportMessage = new TestResponse(randomAlphaOfLength(100));
             message = new OutboundMessage.Response(threadContext, Collections.emptySet(), transportMessage, Version.CURRENT, requestId,
-                false, true);
+                false, scheme);
         }
 
         final BytesReference totalBytes = message.serialize(new BytesStreamOutput());
@@ -224,6 +225,7 @@ public class InboundDecoderTests extends ESTestCase {
         final Object endMarker = fragments.get(1);
 
         assertEquals(uncompressedBytes, content);
+        assertEquals(scheme, header.getCompressionScheme());
         // Ref count is not incremented since the bytes are immediately consumed on decompression
         assertEquals(1, releasable2.refCount());
         assertEquals(InboundDecoder.END_CONTENT, endMarker);
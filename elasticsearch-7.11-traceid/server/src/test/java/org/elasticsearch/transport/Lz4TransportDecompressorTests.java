@@ -0,0 +1,152 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.transport;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.CompositeBytesReference;
+import org.elasticsearch.common.bytes.ReleasableBytesReference;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.OutputStreamStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.PageCacheRecycler;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.lessThan;
+
+public class Lz4TransportDecompressorTests extends ESTestCase {
+
+    public void testSimpleCompression() throws IOException {
+        try (BytesStreamOutput output = new BytesStreamOutput()) {
+            byte randomByte = randomByte();
+            try (OutputStream lz4Stream = new Lz4TransportOutputStream(Streams.flushOnCloseStream(output), 0)) {
+                lz4Stream.write(randomByte);
+            }
+
+            BytesReference bytes = output.bytes();
+            assertTrue(Compression.Scheme.isLZ4(bytes));
+
+            TransportDecompressor decompressor = TransportDecompressor.getDecompressor(PageCacheRecycler.NON_RECYCLING_INSTANCE, bytes);
+            assertNotNull(decompressor);
+            int bytesConsumed = decompressor.decompress(bytes);
+            assertEquals(bytes.length(), bytesConsumed);
+            assertTrue(decompressor.isEOS());
+            ReleasableBytesReference releasableBytesReference = decompressor.pollDecompressedPage();
+            assertEquals(1, releasableBytesReference.length());
+            assertEquals(randomByte, releasableBytesReference.get(0));
+            releasableBytesReference.close();
+            assertNull(decompressor.pollDecompressedPage());
+        }
+    }
+
+    public void testMultiPageCompression() throws IOException {
+        try (BytesStreamOutput output = new BytesStreamOutput()) {
+            try (StreamOutput lz4Stream = new OutputStreamStreamOutput(
+                    new Lz4TransportOutputStream(Streams.flushOnCloseStream(output), 0))) {
+                for (int i = 0; i < 10000; ++i) {
+                    lz4Stream.writeInt(i);
+                }
+            }
+
+            BytesReference bytes = output.bytes();
+            assertThat(bytes.length(), lessThan(4 * 10000));
+
+            TransportDecompressor decompressor = new Lz4TransportDecompressor(PageCacheRecycler.NON_RECYCLING_INSTANCE);
+            int bytesConsumed = decompressor.decompress(bytes);
+            assertEquals(bytes.length(), bytesConsumed);
+            assertTrue(decompressor.isEOS());
+            assertDecompressedInts(decompressor, 10000);
+        }
+    }
+
+    public void testIncrementalMultiPageCompression() throws IOException {
+        final int numInts = randomIntBetween(1, 20000);
+        final int minCompressSize = randomFrom(0, randomIntBetween(1, Lz4TransportOutputStream.BLOCK_SIZE));
+        try (BytesStreamOutput output = new BytesStreamOutput()) {
+            try (StreamOutput lz4Stream = new OutputStreamStreamOutput(
+                    new Lz4TransportOutputStream(Streams.flushOnCloseStream(output), minCompressSize))) {
+                for (int i = 0; i < numInts; ++i) {
+                    lz4Stream.writeInt(i);
+                }
+            }
+
+            BytesReference bytes = output.bytes();
+
+            TransportDecompressor decompressor = new Lz4TransportDecompressor(PageCacheRecycler.NON_RECYCLING_INSTANCE);
+            int offset = 0;
+            while (offset < bytes.length()) {
+                assertFalse(decompressor.isEOS());
+                // the first call needs at least the header
+                int length = Math.min(bytes.length() - offset, randomIntBetween(offset == 0 ? 4 : 1, 1000));
+                int bytesConsumed = decompressor.decompress(bytes.slice(offset, length));
+                assertEquals(length, bytesConsumed);
+                offset += length;
+            }
+            assertTrue(decompressor.isEOS());
+            assertDecompressedInts(decompressor, numInts);
+        }
+    }
+
+    public void testSmallBlocksAreNotCompressed() throws IOException {
+        try (BytesStreamOutput output = new BytesStreamOutput()) {
+            try (StreamOutput lz4Stream = new OutputStreamStreamOutput(
+                    new Lz4TransportOutputStream(Streams.flushOnCloseStream(output), 1024))) {
+                for (int i = 0; i < 100; ++i) {
+                    lz4Stream.writeInt(0);
+                }
+            }
+            // header, block header, stored bytes and end of stream
+            BytesReference bytes = output.bytes();
+            assertEquals(4 + 8 + 400 + 8, bytes.length());
+
+            TransportDecompressor decompressor = new Lz4TransportDecompressor(PageCacheRecycler.NON_RECYCLING_INSTANCE);
+            assertEquals(bytes.length(), decompressor.decompress(bytes));
+            assertTrue(decompressor.isEOS());
+            ReleasableBytesReference page = decompressor.pollDecompressedPage();
+            assertEquals(400, page.length());
+            page.close();
+        }
+    }
+
+    public void testCorruptedBlockHeader() throws IOException {
+        try (BytesStreamOutput output = new BytesStreamOutput()) {
+            output.write(Compression.Scheme.LZ4_HEADER);
+            output.writeInt(Lz4TransportOutputStream.BLOCK_SIZE + 1);
+            output.writeInt(10);
+            TransportDecompressor decompressor = new Lz4TransportDecompressor(PageCacheRecycler.NON_RECYCLING_INSTANCE);
+            IOException e = expectThrows(IOException.class, () -> decompressor.decompress(output.bytes()));
+            assertEquals("invalid lz4 block header with length [" + (Lz4TransportOutputStream.BLOCK_SIZE + 1)
+                + "] and stored length [10]", e.getMessage());
+            decompressor.close();
+        }
+    }
+
+    private static void assertDecompressedInts(TransportDecompressor decompressor, int numInts) throws IOException {
+        List<ReleasableBytesReference> pages = new ArrayList<>();
+        ReleasableBytesReference page;
+        while ((page = decompressor.pollDecompressedPage()) != null) {
+            pages.add(page);
+        }
+        BytesReference composite = CompositeBytesReference.of(pages.toArray(new BytesReference[0]));
+        assertEquals(4 * numInts, composite.length());
+        StreamInput streamInput = composite.streamInput();
+        for (int i = 0; i < numInts; ++i) {
+            assertEquals(i, streamInput.readInt());
+        }
+        Releasables.close(pages);
+    }
+}
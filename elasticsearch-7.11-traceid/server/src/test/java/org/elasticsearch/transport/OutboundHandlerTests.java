@@ -26,6 +26,7 @@ import org.elasticsearch.common.util.PageCacheRecycler;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.core.internal.io.Streams;
 import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.VersionUtils;
 import org.elasticsearch.threadpool.TestThreadPool;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.junit.After;
@@ -174,6 +175,32 @@ public class OutboundHandlerTests extends ESTestCase {
         assertEquals("header_value", header.getHeaders().v1().get("header"));
     }
 
+    public void testLz4FallsBackToDeflateForOlderNodes() throws IOException {
+        final Version version = randomBoolean()
+            ? VersionUtils.randomVersionBetween(random(), Version.CURRENT.minimumCompatibilityVersion(),
+                VersionUtils.getPreviousVersion(Compression.Scheme.LZ4_VERSION))
+            : VersionUtils.randomVersionBetween(random(), Compression.Scheme.LZ4_VERSION, Version.CURRENT);
+        final String value = randomAlphaOfLength(1024);
+        final long requestId = randomLongBetween(0, 300);
+        handler.sendRequest(node, channel, requestId, "action", new TestRequest(value), options, version, Compression.Scheme.LZ4,
+            false);
+        channel.getListenerCaptor().get().onResponse(null);
+
+        pipeline.handleBytes(channel, new ReleasableBytesReference(channel.getMessageCaptor().get(), () -> {
+        }));
+        final Tuple<Header, BytesReference> tuple = message.get();
+        final Header header = tuple.v1();
+        assertEquals(version, header.getVersion());
+        assertTrue(header.isCompressed());
+        if (version.onOrAfter(Compression.Scheme.LZ4_VERSION)) {
+            assertEquals(Compression.Scheme.LZ4, header.getCompressionScheme());
+        } else {
+            // nodes before the LZ4 version only know how to decompress deflate
+            assertEquals(Compression.Scheme.DEFLATE, header.getCompressionScheme());
+        }
+        assertEquals(value, new TestRequest(tuple.v2().streamInput()).value);
+    }
+
     public void testSendResponse() throws IOException {
         ThreadContext threadContext = threadPool.getThreadContext();
         Version version = randomFrom(Version.CURRENT, Version.CURRENT.minimumCompatibilityVersion());
@@ -0,0 +1,199 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.transport;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.core.internal.io.IOUtils;
+import org.elasticsearch.node.NodeClosedException;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.transport.MockTransportService;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportActionProxyTests.SimpleTestRequest;
+import org.elasticsearch.transport.TransportActionProxyTests.SimpleTestResponse;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+
+public class TransportRequestBatcherTests extends ESTestCase {
+
+    private static final String ACTION = "internal:test";
+
+    private ThreadPool threadPool;
+    private MockTransportService serviceA;
+    private MockTransportService serviceB;
+    private final AtomicInteger batchesReceived = new AtomicInteger();
+    private final AtomicInteger requestsReceived = new AtomicInteger();
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        threadPool = new TestThreadPool(getClass().getName());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        IOUtils.close(serviceA, serviceB, () -> terminate(threadPool));
+    }
+
+    private void startServices(Settings settings) {
+        serviceA = MockTransportService.createNewService(settings, Version.CURRENT, threadPool, null);
+        serviceB = MockTransportService.createNewService(settings, Version.CURRENT, threadPool, null);
+        for (MockTransportService service : new MockTransportService[] { serviceA, serviceB }) {
+            service.start();
+            service.acceptIncomingRequests();
+            service.enableRequestBatching(ACTION);
+        }
+        serviceB.registerRequestHandler(ACTION, randomFrom(ThreadPool.Names.SAME, ThreadPool.Names.GENERIC), SimpleTestRequest::new,
+            (request, channel, task) -> {
+                if (request.sourceNode.startsWith("fail")) {
+                    throw new ElasticsearchException("failed [" + request.sourceNode + "]");
+                }
+                assertEquals("test-value", threadPool.getThreadContext().getHeader("test-header"));
+                channel.sendResponse(new SimpleTestResponse("response-" + request.sourceNode));
+            });
+        serviceB.addMessageListener(new TransportMessageListener() {
+            @Override
+            public void onRequestReceived(long requestId, String action) {
+                if (action.equals(TransportRequestBatcher.BATCH_ACTION_NAME)) {
+                    batchesReceived.incrementAndGet();
+                } else if (action.equals(ACTION)) {
+                    requestsReceived.incrementAndGet();
+                }
+            }
+        });
+        serviceA.connectToNode(serviceB.getLocalNode());
+    }
+
+    private static Settings batchingSettings(TimeValue window, int maxSize) {
+        return Settings.builder()
+            .put(TransportSettings.REQUEST_BATCHING_WINDOW.getKey(), window)
+            .put(TransportSettings.REQUEST_BATCHING_MAX_SIZE.getKey(), maxSize)
+            .build();
+    }
+
+    private AtomicReferenceArray<Object> sendRequests(int numRequests, TransportRequestOptions options) throws InterruptedException {
+        final AtomicReferenceArray<Object> results = new AtomicReferenceArray<>(numRequests);
+        final CountDownLatch latch = new CountDownLatch(numRequests);
+        final ThreadContext threadContext = threadPool.getThreadContext();
+        for (int i = 0; i < numRequests; i++) {
+            final int index = i;
+            final String source = (randomBoolean() ? "fail-" : "ok-") + i;
+            try (ThreadContext.StoredContext ignore = threadContext.stashContext()) {
+                threadContext.putHeader("test-header", "test-value");
+                serviceA.sendRequest(serviceB.getLocalNode(), ACTION, new SimpleTestRequest(source, false), options,
+                    new TransportResponseHandler<SimpleTestResponse>() {
+                        @Override
+                        public SimpleTestResponse read(StreamInput in) throws IOException {
+                            return new SimpleTestResponse(in);
+                        }
+
+                        @Override
+                        public void handleResponse(SimpleTestResponse response) {
+                            assertEquals("test-value", threadContext.getHeader("test-header"));
+                            results.set(index, response.targetNode);
+                            latch.countDown();
+                        }
+
+                        @Override
+                        public void handleException(TransportException exp) {
+                            assertEquals("test-value", threadContext.getHeader("test-header"));
+                            results.set(index, exp);
+                            latch.countDown();
+                        }
+                    });
+            }
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return results;
+    }
+
+    private static void assertResults(AtomicReferenceArray<Object> results) {
+        for (int i = 0; i < results.length(); i++) {
+            final Object result = results.get(i);
+            if (result instanceof TransportException) {
+                assertThat(((TransportException) result).getCause().getMessage(), containsString("failed [fail-" + i + "]"));
+            } else {
+                assertEquals("response-ok-" + i, result);
+            }
+        }
+    }
+
+    public void testFullBatchIsSentRightAway() throws InterruptedException {
+        final int numRequests = randomIntBetween(1, 20);
+        startServices(batchingSettings(TimeValue.timeValueHours(1), numRequests));
+        assertResults(sendRequests(numRequests, TransportRequestOptions.EMPTY));
+        assertEquals(1, batchesReceived.get());
+        assertEquals(0, requestsReceived.get());
+    }
+
+    public void testBatchIsSentAfterWindow() throws InterruptedException {
+        final int numRequests = randomIntBetween(1, 20);
+        startServices(batchingSettings(TimeValue.timeValueMillis(randomIntBetween(1, 50)), randomIntBetween(1, 30)));
+        assertResults(sendRequests(numRequests, TransportRequestOptions.EMPTY));
+        assertThat(batchesReceived.get(), greaterThan(0));
+        assertEquals(0, requestsReceived.get());
+    }
+
+    public void testRequestsWithTimeoutAreNotBatched() throws InterruptedException {
+        final int numRequests = randomIntBetween(1, 20);
+        startServices(batchingSettings(TimeValue.timeValueHours(1), 1));
+        TransportRequestOptions options = TransportRequestOptions.timeout(TimeValue.timeValueMinutes(1));
+        assertResults(sendRequests(numRequests, options));
+        assertEquals(0, batchesReceived.get());
+        assertEquals(numRequests, requestsReceived.get());
+    }
+
+    public void testDisabledByDefault() throws InterruptedException {
+        final int numRequests = randomIntBetween(1, 20);
+        startServices(Settings.EMPTY);
+        assertResults(sendRequests(numRequests, TransportRequestOptions.EMPTY));
+        assertEquals(0, batchesReceived.get());
+        assertEquals(numRequests, requestsReceived.get());
+    }
+
+    public void testPendingBatchesFailOnStop() throws InterruptedException {
+        startServices(batchingSettings(TimeValue.timeValueHours(1), 100));
+        final CountDownLatch latch = new CountDownLatch(1);
+        serviceA.sendRequest(serviceB.getLocalNode(), ACTION, new SimpleTestRequest("ok-0", false), TransportRequestOptions.EMPTY,
+            new TransportResponseHandler<SimpleTestResponse>() {
+                @Override
+                public SimpleTestResponse read(StreamInput in) throws IOException {
+                    return new SimpleTestResponse(in);
+                }
+
+                @Override
+                public void handleResponse(SimpleTestResponse response) {
+                    fail("the pending batch must fail when the service stops");
+                }
+
+                @Override
+                public void handleException(TransportException exp) {
+                    assertThat(exp.getCause(), instanceOf(NodeClosedException.class));
+                    latch.countDown();
+                }
+            });
+        serviceA.stop();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+}
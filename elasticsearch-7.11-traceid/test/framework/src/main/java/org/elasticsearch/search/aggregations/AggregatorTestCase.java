@@ -61,6 +61,7 @@ import org.elasticsearch.index.analysis.IndexAnalyzers;
 import org.elasticsearch.index.analysis.NamedAnalyzer;
 import org.elasticsearch.index.cache.bitset.BitsetFilterCache;
 import org.elasticsearch.index.cache.query.DisabledQueryCache;
+import org.elasticsearch.index.codec.rollup.SegmentRollupCache;
 import org.elasticsearch.index.fielddata.IndexFieldData;
 import org.elasticsearch.index.fielddata.IndexFieldDataCache;
 import org.elasticsearch.index.mapper.BinaryFieldMapper;
@@ -275,6 +276,7 @@ public abstract class AggregatorTestCase extends ESTestCase {
             () -> buildSubSearchContext(indexSettings, queryShardContext, bitsetFilterCache),
             releasables::add,
             bitsetFilterCache,
+            new SegmentRollupCache(breakerService.getBreaker(CircuitBreaker.ACCOUNTING)),
             randomInt(),
             () -> 0L,
             () -> false
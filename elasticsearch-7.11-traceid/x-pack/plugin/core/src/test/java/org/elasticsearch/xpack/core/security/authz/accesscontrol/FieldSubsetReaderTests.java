@@ -54,11 +54,14 @@ import org.elasticsearch.cluster.metadata.MappingMetadata;
 import org.elasticsearch.cluster.metadata.Metadata;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
 import org.elasticsearch.common.lucene.index.SequentialStoredFieldsLeafReader;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.mapper.FieldNamesFieldMapper;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesStoredFieldsCache;
 import org.elasticsearch.index.mapper.SourceFieldMapper;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.xpack.core.security.authz.permission.FieldPermissions;
@@ -204,6 +207,50 @@ public class FieldSubsetReaderTests extends ESTestCase {
         IOUtils.close(ir, iw, dir);
     }
 
+    /**
+     * test that the stored fields cache doesn't share documents between filtered and unfiltered views of a segment
+     */
+    public void testStoredFieldsCache() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = new IndexWriterConfig(null);
+        IndexWriter iw = new IndexWriter(dir, iwc);
+
+        // add document with 2 fields
+        Document doc = new Document();
+        doc.add(new StoredField("fieldA", "testA"));
+        doc.add(new StoredField("fieldB", "testB"));
+        iw.addDocument(doc);
+
+        IndicesStoredFieldsCache cache = new IndicesStoredFieldsCache(Settings.builder()
+            .put(IndicesStoredFieldsCache.INDICES_STORED_FIELDS_CACHE_SIZE_SETTING.getKey(), "1mb").build());
+        DirectoryReader reader = ElasticsearchDirectoryReader.wrap(DirectoryReader.open(iw), new ShardId("_index", "_na_", 0));
+        DirectoryReader filtered = FieldSubsetReader.wrap(reader, new CharacterRunAutomaton(Automata.makeString("fieldA")));
+        // the subset reader shares the core cache key of the segment
+        assertSame(reader.leaves().get(0).reader().getCoreCacheHelper().getKey(),
+            filtered.leaves().get(0).reader().getCoreCacheHelper().getKey());
+        DirectoryReader cachedFiltered = cache.wrap(filtered);
+        DirectoryReader cachedUnfiltered = cache.wrap(reader);
+
+        boolean filteredFirst = randomBoolean();
+        for (int round = 0; round < 2; round++) {
+            if (filteredFirst) {
+                Document d2 = cachedFiltered.document(0);
+                assertEquals(1, d2.getFields().size());
+                assertEquals("testA", d2.get("fieldA"));
+            }
+            Document d2 = cachedUnfiltered.document(0);
+            assertEquals(2, d2.getFields().size());
+            assertEquals("testB", d2.get("fieldB"));
+            if (filteredFirst == false) {
+                d2 = cachedFiltered.document(0);
+                assertEquals(1, d2.getFields().size());
+                assertEquals("testA", d2.get("fieldA"));
+            }
+        }
+
+        IOUtils.close(cachedUnfiltered, filtered, cache, iw, dir);
+    }
+
     /**
      * test filtering two stored fields (binary)
      */